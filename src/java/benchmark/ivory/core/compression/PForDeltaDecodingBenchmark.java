@@ -0,0 +1,140 @@
+/*
+ * Ivory: A Hadoop toolkit for web-scale information retrieval
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package ivory.core.compression;
+
+import ivory.core.data.index.Posting;
+import ivory.core.data.index.PostingsListDocSortedPositionalPForDelta;
+import ivory.core.data.index.TermPositions;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.kamikaze.pfordelta.PForDelta;
+
+/**
+ * Compares {@link PForDeltaBlockDecoder} with the decoder in kamikaze, first on bare blocks and
+ * then through the reader of {@link PostingsListDocSortedPositionalPForDelta}, a posting at a
+ * time and a block at a time. Run with {@code ant benchmark}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class PForDeltaDecodingBenchmark {
+  private static final int BLOCK_SIZE = PostingsListDocSortedPositionalPForDelta.BLOCK_SIZE;
+  private static final int NUM_BLOCKS = 1024;
+  private static final int NUM_POSTINGS = 100000;
+
+  // Average gap between docnos: small gaps give narrow blocks, large gaps wide ones.
+  @Param({ "4", "64", "4096" })
+  public int averageGap;
+
+  private int[][] blocks;
+  private final int[] out = new int[BLOCK_SIZE];
+  private final PForDeltaBlockDecoder decoder = new PForDeltaBlockDecoder();
+
+  private PostingsListDocSortedPositionalPForDelta postings;
+  private final Posting posting = new Posting();
+  private final int[] docnos = new int[BLOCK_SIZE];
+  private final int[] tfs = new int[BLOCK_SIZE];
+
+  @Setup
+  public void setup() throws IOException {
+    Random r = new Random(0);
+
+    blocks = new int[NUM_BLOCKS][];
+    int[] gaps = new int[BLOCK_SIZE];
+    for (int i = 0; i < NUM_BLOCKS; i++) {
+      for (int j = 0; j < BLOCK_SIZE; j++) {
+        gaps[j] = 1 + r.nextInt(2 * averageGap);
+      }
+      blocks[i] = PForDelta.compressOneBlockOpt(gaps, BLOCK_SIZE);
+    }
+
+    PostingsListDocSortedPositionalPForDelta list = new PostingsListDocSortedPositionalPForDelta();
+    list.setCollectionDocumentCount(NUM_POSTINGS * 2 * averageGap);
+    list.setNumberOfPostings(NUM_POSTINGS);
+    int docno = 0;
+    for (int i = 0; i < NUM_POSTINGS; i++) {
+      docno += 1 + r.nextInt(2 * averageGap);
+      short tf = (short) (1 + r.nextInt(3));
+      int[] pos = new int[tf];
+      for (int j = 0; j < tf; j++) {
+        pos[j] = (j == 0 ? 0 : pos[j - 1]) + 1 + r.nextInt(50);
+      }
+      list.add(docno, tf, new TermPositions(pos, tf));
+    }
+
+    postings = PostingsListDocSortedPositionalPForDelta.create(list.serialize());
+    postings.setCollectionDocumentCount(NUM_POSTINGS * 2 * averageGap);
+  }
+
+  @Benchmark
+  public void kamikazeBlocks(Blackhole bh) {
+    for (int i = 0; i < NUM_BLOCKS; i++) {
+      PForDelta.decompressOneBlock(out, blocks[i], BLOCK_SIZE);
+      bh.consume(out);
+    }
+  }
+
+  @Benchmark
+  public void unrolledBlocks(Blackhole bh) {
+    for (int i = 0; i < NUM_BLOCKS; i++) {
+      decoder.decode(out, blocks[i], BLOCK_SIZE);
+      bh.consume(out);
+    }
+  }
+
+  @Benchmark
+  public int readerNextPosting() {
+    PostingsListDocSortedPositionalPForDelta.PostingsReader reader = postings.getPostingsReader();
+    int sum = 0;
+    while (reader.nextPosting(posting)) {
+      sum += posting.getTf();
+    }
+    return sum;
+  }
+
+  @Benchmark
+  public int readerNextBlock() {
+    PostingsListDocSortedPositionalPForDelta.PostingsReader reader = postings.getPostingsReader();
+    int sum = 0;
+    int n;
+    while ((n = reader.nextBlock(docnos, tfs)) > 0) {
+      for (int i = 0; i < n; i++) {
+        sum += tfs[i];
+      }
+    }
+    return sum;
+  }
+}
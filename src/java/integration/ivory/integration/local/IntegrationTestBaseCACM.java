@@ -25,6 +25,8 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 
 import edu.umd.cloud9.collection.DocnoMapping;
+import edu.umd.cloud9.collection.trec.TrecDocnoMapping;
+import edu.umd.cloud9.collection.trec.TrecDocumentInputFormat;
 
 public abstract class IntegrationTestBaseCACM {
   private static final Logger LOG = Logger.getLogger(IntegrationTestBaseCACM.class);
@@ -38,18 +40,7 @@ public abstract class IntegrationTestBaseCACM {
 
     fs.delete(new Path(index), true);
 
-    List<String> jars = Lists.newArrayList();
-    jars.add(IntegrationUtils.getJar("lib", "cloud9"));
-    jars.add(IntegrationUtils.getJar("lib", "guava"));
-    jars.add(IntegrationUtils.getJar("lib", "dsiutils"));
-    jars.add(IntegrationUtils.getJar("lib", "fastutil"));
-    jars.add(IntegrationUtils.getJar("lib", "jsap"));
-    jars.add(IntegrationUtils.getJar("lib", "sux4j"));
-    jars.add(IntegrationUtils.getJar("lib", "commons-collections"));
-    jars.add(IntegrationUtils.getJar("lib", "kamikaze"));
-    jars.add(IntegrationUtils.getJar("lib", "lintools-datatypes-1.0.0"));
-
-    String libjars = String.format("-libjars=%s", Joiner.on(",").join(jars));
+    String libjars = getLibjars();
 
     String[] cmdArgs = new String[] { "hadoop jar", IntegrationUtils.getJar("dist", "ivory"),
         ivory.app.PreprocessTrecCollection.class.getCanonicalName(),
@@ -66,6 +57,49 @@ public abstract class IntegrationTestBaseCACM {
 
     IntegrationUtils.exec(Joiner.on(" ").join(cmdArgs));
 
+    runQueries(index, fs);
+  }
+
+  public void runBuildIndexLocal(String index, String[] args) throws Exception {
+    Configuration conf = new Configuration();
+    FileSystem fs = FileSystem.getLocal(conf);
+
+    assertTrue(fs.exists(collectionPath));
+
+    fs.delete(new Path(index), true);
+
+    String[] cmdArgs = (String[]) ArrayUtils.addAll(new String[] {
+        "hadoop jar", IntegrationUtils.getJar("dist", "ivory"),
+        ivory.app.BuildIndexLocal.class.getCanonicalName(), IntegrationUtils.LOCAL_ARGS,
+        getLibjars(),
+        "-" + PreprocessCollection.COLLECTION_NAME, "CACM",
+        "-" + PreprocessCollection.COLLECTION_PATH, collectionPath.toString(),
+        "-" + PreprocessCollection.INDEX_PATH, index,
+        "-" + PreprocessCollection.DOCNO_MAPPING, TrecDocnoMapping.class.getCanonicalName(),
+        "-" + PreprocessCollection.INPUTFORMAT, TrecDocumentInputFormat.class.getCanonicalName() },
+        args);
+
+    IntegrationUtils.exec(Joiner.on(" ").join(cmdArgs));
+
+    runQueries(index, fs);
+  }
+
+  private static String getLibjars() {
+    List<String> jars = Lists.newArrayList();
+    jars.add(IntegrationUtils.getJar("lib", "cloud9"));
+    jars.add(IntegrationUtils.getJar("lib", "guava"));
+    jars.add(IntegrationUtils.getJar("lib", "dsiutils"));
+    jars.add(IntegrationUtils.getJar("lib", "fastutil"));
+    jars.add(IntegrationUtils.getJar("lib", "jsap"));
+    jars.add(IntegrationUtils.getJar("lib", "sux4j"));
+    jars.add(IntegrationUtils.getJar("lib", "commons-collections"));
+    jars.add(IntegrationUtils.getJar("lib", "kamikaze"));
+    jars.add(IntegrationUtils.getJar("lib", "lintools-datatypes-1.0.0"));
+
+    return String.format("-libjars=%s", Joiner.on(",").join(jars));
+  }
+
+  private static void runQueries(String index, FileSystem fs) throws Exception {
     // Done with indexing, now do retrieval run.
     String[] params = new String[] {
         "data/cacm/run.cacm.xml",
@@ -0,0 +1,27 @@
+package ivory.integration.local;
+
+import ivory.app.BuildIndexLocal;
+
+import java.util.Random;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+public class VerifyLocalCACMPositionalIndexSingleJVM extends IntegrationTestBaseCACM {
+  private static final Random RANDOM = new Random();
+
+  @Test
+  public void runBuildIndex() throws Exception {
+    String index = this.getClass().getCanonicalName() + "-index-" + RANDOM.nextInt(10000);
+    String[] args = new String[] {
+        "-" + BuildIndexLocal.INDEX_PARTITIONS, "1",
+        "-" + BuildIndexLocal.THREADS, "2" };
+
+    runBuildIndexLocal(index, args);
+  }
+
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(VerifyLocalCACMPositionalIndexSingleJVM.class);
+  }
+}
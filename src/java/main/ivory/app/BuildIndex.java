@@ -42,6 +42,7 @@ public class BuildIndex extends Configured implements Tool {
   public static final String INDEX_PARTITIONS = "indexPartitions";
 
   public static final String POSITIONAL_INDEX_IP = "positionalIndexIP";
+  public static final String POSITIONAL_INDEX_IP_WITH_SKIPS = "positionalIndexWithSkipsIP";
   public static final String POSITIONAL_INDEX_LP = "positionalIndexLP";
   public static final String NONPOSITIONAL_INDEX_IP = "nonpositionalIndexIP";
 
@@ -50,6 +51,8 @@ public class BuildIndex extends Configured implements Tool {
   public int run(String[] args) throws Exception {
     Options options = new Options();
     options.addOption(new Option(POSITIONAL_INDEX_IP, "build positional index (IP algorithm)"));
+    options.addOption(new Option(POSITIONAL_INDEX_IP_WITH_SKIPS,
+        "build positional index with skip tables (IP algorithm)"));
     options.addOption(new Option(POSITIONAL_INDEX_LP, "build positional index (LP algorithm)"));
     options.addOption(new Option(NONPOSITIONAL_INDEX_IP, "build nonpositional index (IP algorithm)"));
 
@@ -94,6 +97,15 @@ public class BuildIndex extends Configured implements Tool {
       conf.set(Constants.PostingsListsType,
           ivory.core.data.index.PostingsListDocSortedPositional.class.getCanonicalName());
 
+      new BuildIPInvertedIndexDocSorted(conf).run();
+      new BuildIntPostingsForwardIndex(conf).run();
+    } else if (cmdline.hasOption(POSITIONAL_INDEX_IP_WITH_SKIPS)) {
+      LOG.info(String.format(" -%s", POSITIONAL_INDEX_IP_WITH_SKIPS));
+      conf.set(Constants.IndexPath, indexPath);
+      conf.setInt(Constants.NumReduceTasks, indexPartitions);
+      conf.set(Constants.PostingsListsType,
+          ivory.core.data.index.PostingsListDocSortedPositionalWithSkips.class.getCanonicalName());
+
       new BuildIPInvertedIndexDocSorted(conf).run();
       new BuildIntPostingsForwardIndex(conf).run();
     } else if (cmdline.hasOption(POSITIONAL_INDEX_LP)) {
@@ -103,10 +115,8 @@ public class BuildIndex extends Configured implements Tool {
       conf.set(Constants.PostingsListsType,
           ivory.core.data.index.PostingsListDocSortedPositional.class.getCanonicalName());
 
-      conf.setFloat("Ivory.IndexingMapMemoryThreshold", 0.9f);
-      conf.setFloat("Ivory.IndexingReduceMemoryThreshold", 0.9f);
+      conf.setInt("Ivory.IndexingMapMemoryBudget", 1024);
       conf.setInt("Ivory.MaxHeap", 2048);
-      conf.setInt("Ivory.MaxNDocsBeforeFlush", 50000);
 
       new BuildLPInvertedIndexDocSorted(conf).run();
       new BuildIntPostingsForwardIndex(conf).run();
@@ -120,8 +130,9 @@ public class BuildIndex extends Configured implements Tool {
       new BuildIPInvertedIndexDocSorted(conf).run();
       new BuildIntPostingsForwardIndex(conf).run();
     } else {
-      LOG.info(String.format("Nothing to do. Specify one of the following: %s, %s, %s",
-          POSITIONAL_INDEX_IP, POSITIONAL_INDEX_LP, NONPOSITIONAL_INDEX_IP));
+      LOG.info(String.format("Nothing to do. Specify one of the following: %s, %s, %s, %s",
+          POSITIONAL_INDEX_IP, POSITIONAL_INDEX_IP_WITH_SKIPS, POSITIONAL_INDEX_LP,
+          NONPOSITIONAL_INDEX_IP));
     }
 
     return 0;
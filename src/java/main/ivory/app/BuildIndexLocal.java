@@ -0,0 +1,205 @@
+/*
+ * Ivory: A Hadoop toolkit for web-scale information retrieval research
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package ivory.app;
+
+import ivory.core.Constants;
+import ivory.core.index.LocalIndexBuilder;
+import ivory.core.tokenize.GalagoTokenizer;
+import ivory.core.tokenize.Tokenizer;
+
+import java.util.Arrays;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.GnuParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.OptionBuilder;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.InputFormat;
+import org.apache.hadoop.mapreduce.lib.input.SequenceFileInputFormat;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+import org.apache.log4j.Logger;
+
+import edu.umd.cloud9.collection.DocnoMapping;
+
+/**
+ * Preprocesses a collection and builds a positional index for it in a single JVM, without
+ * MapReduce, for collections that fit on one machine. Takes the same options as
+ * {@link PreprocessCollection}, and produces the same index as {@link PreprocessCollection}
+ * followed by {@link BuildIndex}.
+ */
+@SuppressWarnings("unchecked")
+public class BuildIndexLocal extends Configured implements Tool {
+  private static final Logger LOG = Logger.getLogger(BuildIndexLocal.class);
+
+  public static final String INDEX_PARTITIONS = "indexPartitions";
+  public static final String THREADS = "threads";
+  public static final String MEMORY_BUDGET = "memoryBudget";
+
+  @SuppressWarnings({ "static-access" })
+  protected static Options createOptions() {
+    Options options = PreprocessCollection.createOptions();
+
+    options.addOption(OptionBuilder.withArgName("num").hasArg()
+        .withDescription("(optional) number of index partitions: 64 default")
+        .create(INDEX_PARTITIONS));
+    options.addOption(OptionBuilder.withArgName("num").hasArg()
+        .withDescription("(optional) number of threads: number of processors default")
+        .create(THREADS));
+    options.addOption(OptionBuilder.withArgName("MB").hasArg()
+        .withDescription("(optional) memory for buffering postings: "
+            + LocalIndexBuilder.DEFAULT_MEMORY_BUDGET + " default")
+        .create(MEMORY_BUDGET));
+
+    return options;
+  }
+
+  /**
+   * Runs this tool.
+   */
+  @Override
+  public int run(String[] args) throws Exception {
+    Options options = createOptions();
+
+    CommandLine cmdline;
+    CommandLineParser parser = new GnuParser();
+
+    try {
+      cmdline = parser.parse(options, args);
+    } catch (ParseException exp) {
+      System.err.println("Error parsing command line: " + exp.getMessage());
+      return -1;
+    }
+
+    if (!cmdline.hasOption(PreprocessCollection.COLLECTION_PATH)
+        || !cmdline.hasOption(PreprocessCollection.COLLECTION_NAME)
+        || !cmdline.hasOption(PreprocessCollection.INDEX_PATH)
+        || !cmdline.hasOption(PreprocessCollection.DOCNO_MAPPING)) {
+      System.out.println("args: " + Arrays.toString(args));
+      HelpFormatter formatter = new HelpFormatter();
+      formatter.setWidth(120);
+      formatter.printHelp(this.getClass().getName(), options);
+      ToolRunner.printGenericCommandUsage(System.out);
+      return -1;
+    }
+
+    String collection = cmdline.getOptionValue(PreprocessCollection.COLLECTION_PATH);
+    String collectionName = cmdline.getOptionValue(PreprocessCollection.COLLECTION_NAME);
+    String indexPath = cmdline.getOptionValue(PreprocessCollection.INDEX_PATH);
+
+    int docnoOffset = cmdline.hasOption(PreprocessCollection.DOCNO_OFFSET) ?
+        Integer.parseInt(cmdline.getOptionValue(PreprocessCollection.DOCNO_OFFSET)) : 0;
+    int minDf = cmdline.hasOption(PreprocessCollection.MIN_DF) ?
+        Integer.parseInt(cmdline.getOptionValue(PreprocessCollection.MIN_DF)) : 2;
+    int indexPartitions = cmdline.hasOption(INDEX_PARTITIONS) ?
+        Integer.parseInt(cmdline.getOptionValue(INDEX_PARTITIONS)) : 64;
+    int threads = cmdline.hasOption(THREADS) ?
+        Integer.parseInt(cmdline.getOptionValue(THREADS)) :
+        Runtime.getRuntime().availableProcessors();
+    int memoryBudget = cmdline.hasOption(MEMORY_BUDGET) ?
+        Integer.parseInt(cmdline.getOptionValue(MEMORY_BUDGET)) :
+        LocalIndexBuilder.DEFAULT_MEMORY_BUDGET;
+
+    Class<? extends DocnoMapping> docnoMappingClass = null;
+    try {
+      docnoMappingClass = (Class<? extends DocnoMapping>)
+          Class.forName(cmdline.getOptionValue(PreprocessCollection.DOCNO_MAPPING));
+    } catch (ClassNotFoundException e) {
+      throw new RuntimeException(e);
+    }
+
+    @SuppressWarnings("rawtypes")
+    Class<? extends InputFormat> inputFormatClass = SequenceFileInputFormat.class;
+    if (cmdline.hasOption(PreprocessCollection.INPUTFORMAT)) {
+      try {
+        inputFormatClass = (Class<? extends InputFormat<?, ?>>)
+            Class.forName(cmdline.getOptionValue(PreprocessCollection.INPUTFORMAT));
+      } catch (ClassNotFoundException e) {
+        throw new RuntimeException(e);
+      }
+    }
+
+    Class<? extends Tokenizer> tokenizerClass = GalagoTokenizer.class;
+    if (cmdline.hasOption(PreprocessCollection.TOKENIZER)) {
+      try {
+        tokenizerClass = (Class<? extends Tokenizer>)
+            Class.forName(cmdline.getOptionValue(PreprocessCollection.TOKENIZER));
+      } catch (ClassNotFoundException e) {
+        throw new RuntimeException(e);
+      }
+    }
+
+    LOG.info("Tool name: " + this.getClass().getSimpleName());
+    LOG.info(String.format(" -%s %s", PreprocessCollection.COLLECTION_PATH, collection));
+    LOG.info(String.format(" -%s %s", PreprocessCollection.COLLECTION_NAME, collectionName));
+    LOG.info(String.format(" -%s %s", PreprocessCollection.INDEX_PATH, indexPath));
+    LOG.info(String.format(" -%s %s", PreprocessCollection.DOCNO_MAPPING,
+        docnoMappingClass.getCanonicalName()));
+    LOG.info(String.format(" -%s %s", PreprocessCollection.INPUTFORMAT,
+        inputFormatClass.getCanonicalName()));
+    LOG.info(String.format(" -%s %s", PreprocessCollection.TOKENIZER,
+        tokenizerClass.getCanonicalName()));
+    LOG.info(String.format(" -%s %d", PreprocessCollection.MIN_DF, minDf));
+    LOG.info(String.format(" -%s %d", INDEX_PARTITIONS, indexPartitions));
+    LOG.info(String.format(" -%s %d", THREADS, threads));
+    LOG.info(String.format(" -%s %d", MEMORY_BUDGET, memoryBudget));
+
+    Configuration conf = getConf();
+    FileSystem fs = FileSystem.get(conf);
+
+    // Create the index directory if it doesn't already exist.
+    Path p = new Path(indexPath);
+    if (!fs.exists(p)) {
+      LOG.info("Index directory " + p + " doesn't exist, creating.");
+      fs.mkdirs(p);
+    } else {
+      LOG.info("Index directory " + p + " already exists!");
+      return -1;
+    }
+
+    conf.set(Constants.CollectionName, collectionName);
+    conf.set(Constants.CollectionPath, collection);
+    conf.set(Constants.IndexPath, indexPath);
+    conf.set(Constants.InputFormat, inputFormatClass.getCanonicalName());
+    conf.set(Constants.Tokenizer, tokenizerClass.getCanonicalName());
+    conf.set(Constants.DocnoMappingClass, docnoMappingClass.getCanonicalName());
+
+    conf.setInt(Constants.DocnoOffset, docnoOffset);
+    conf.setInt(Constants.MinDf, minDf);
+    conf.setInt(Constants.MaxDf, Integer.MAX_VALUE);
+
+    conf.setInt(Constants.NumReduceTasks, indexPartitions);
+    conf.set(Constants.PostingsListsType,
+        ivory.core.data.index.PostingsListDocSortedPositional.class.getCanonicalName());
+    conf.setInt(Constants.LocalIndexingThreads, threads);
+    conf.setInt(Constants.LocalIndexingMemoryBudget, memoryBudget);
+
+    new LocalIndexBuilder(conf).run();
+
+    return 0;
+  }
+
+  public static void main(String[] args) throws Exception {
+    ToolRunner.run(new BuildIndexLocal(), args);
+  }
+}
@@ -27,6 +27,8 @@ import ivory.core.preprocess.ComputeGlobalTermStatistics;
 import ivory.core.tokenize.GalagoTokenizer;
 import ivory.core.tokenize.Tokenizer;
 
+import java.io.IOException;
+
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
 import org.apache.commons.cli.GnuParser;
@@ -170,9 +172,13 @@ public class PreprocessCollection extends Configured implements Tool {
 
     // Create the index directory if it doesn't already exist.
     Path p = new Path(indexPath);
+    boolean rebuildIntDocVectors = false;
     if (!fs.exists(p)) {
       LOG.info("Index directory " + p + " doesn't exist, creating.");
       fs.mkdirs(p);
+    } else if (hasDictionaryOnly(new RetrievalEnvironment(indexPath, fs), fs)) {
+      LOG.info("Index directory " + p + " has a dictionary but no int doc vectors, rebuilding them.");
+      rebuildIntDocVectors = true;
     } else {
       LOG.info("Index directory " + p + " already exists!");
       return -1;
@@ -192,6 +198,17 @@ public class PreprocessCollection extends Configured implements Tool {
     conf.setInt(Constants.MinDf, minDf);
     conf.setInt(Constants.MaxDf, Integer.MAX_VALUE);
 
+    if (rebuildIntDocVectors) {
+      // The docno mapping, doc lengths and dictionary are still there, so don't build the term doc
+      // vectors again: if they were deleted too, BuildIntDocVectors tokenizes the collection
+      // straight into termids.
+      fs.delete(new Path(env.getIntDocVectorsForwardIndex()), true);
+      new BuildIntDocVectors(conf).run();
+      new BuildIntDocVectorsForwardIndex(conf).run();
+
+      return 0;
+    }
+
     Path mappingFile = env.getDocnoMappingData();
     docnoMappingClass.newInstance().getBuilder().build(new Path(collection), mappingFile, conf);
 
@@ -206,6 +223,16 @@ public class PreprocessCollection extends Configured implements Tool {
     return 0;
   }
 
+  // Whether an index holds a docno mapping and a dictionary, but its int doc vectors are gone.
+  private static boolean hasDictionaryOnly(RetrievalEnvironment env, FileSystem fs)
+      throws IOException {
+    return fs.exists(env.getDocnoMappingData())
+        && fs.exists(new Path(env.getIndexTermsData()))
+        && fs.exists(new Path(env.getIndexTermIdsData()))
+        && fs.exists(new Path(env.getIndexTermIdMappingData()))
+        && !fs.exists(new Path(env.getIntDocVectorsDirectory()));
+  }
+
   public static void main(String[] args) throws Exception {
     ToolRunner.run(new PreprocessCollection(), args);
   }
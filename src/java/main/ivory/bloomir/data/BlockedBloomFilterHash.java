@@ -0,0 +1,175 @@
+package ivory.bloomir.data;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A cache-friendly Bloom filter. The bit vector is split into blocks
+ * of 512 bits (one 64-byte cache line). A key is first hashed to a
+ * block, and all of its hash functions then probe bits within that
+ * block, so that a membership test touches a single cache line
+ * instead of one per hash function.
+ *
+ * Filters smaller than a block consist of a single, shorter block.
+ */
+public class BlockedBloomFilterHash extends Signature {
+  private static final int SEED = 0x7ed55d16;
+  private static final int GOLDEN = 0x9e3779b9;
+  private static final int WORDS_PER_BLOCK = 8;  // 8 * 64 bits = 64 bytes
+  private long[] words;
+  private int blockWords;
+  private int blockBits;
+  private int nbBlocks;
+  private int nbHash;
+
+  private BlockedBloomFilterHash() {
+  }
+
+  /**
+   * Constructor
+   * @param vectorSize The vector size of <i>this</i> filter. It is rounded
+   * up to a multiple of the block size.
+   * @param nbHash Number of hash functions.
+   */
+  public BlockedBloomFilterHash(int vectorSize, int nbHash) {
+    Preconditions.checkArgument(vectorSize > 0);
+    Preconditions.checkArgument(nbHash > 0);
+
+    int nbWords = (vectorSize + 63) >>> 6;
+    this.nbHash = nbHash;
+    blockWords = Math.min(WORDS_PER_BLOCK, nbWords);
+    nbBlocks = (nbWords + blockWords - 1) / blockWords;
+    blockBits = blockWords << 6;
+    words = new long[nbBlocks * blockWords];
+  }
+
+  @Override public void add(int key) {
+    int h = hash(key, SEED);
+    int base = reduce(h, nbBlocks) * blockWords;
+    int g = h * GOLDEN;
+    int delta = hash(key, h) | 1;
+    for(int i = 0; i < nbHash; i++) {
+      int bit = reduce(g, blockBits);
+      words[base + (bit >>> 6)] |= 1L << bit;
+      g += delta;
+    }
+  }
+
+  @Override public boolean membershipTest(int key) {
+    return test(key);
+  }
+
+  @Override public void membershipTest(int[] keys, int n, BitSet out) {
+    Preconditions.checkNotNull(keys);
+    Preconditions.checkNotNull(out);
+
+    for(int j = out.nextSetBit(0); j >= 0 && j < n; j = out.nextSetBit(j + 1)) {
+      if(!test(keys[j])) {
+        out.clear(j);
+      }
+    }
+  }
+
+  // The first probe reuses the hash that selects the block, and the second
+  // hash is only computed for keys that pass it.
+  private boolean test(int key) {
+    int h = hash(key, SEED);
+    int base = reduce(h, nbBlocks) * blockWords;
+    int g = h * GOLDEN;
+    int bit = reduce(g, blockBits);
+    if((words[base + (bit >>> 6)] & (1L << bit)) == 0) {
+      return false;
+    }
+    if(nbHash > 1) {
+      int delta = hash(key, h) | 1;
+      for(int i = 1; i < nbHash; i++) {
+        g += delta;
+        bit = reduce(g, blockBits);
+        if((words[base + (bit >>> 6)] & (1L << bit)) == 0) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  // Maps a hash value to [0, n) using its high bits, without a division.
+  private static int reduce(int h, int n) {
+    return (int) (((h & 0xffffffffL) * n) >>> 32);
+  }
+
+  /**
+   * Jenkin's integer hash function
+   *
+   * @param key Key to be hashed
+   * @param seed Seed to the hash algorithm
+   * @return The hash value of the given input
+   */
+  private static int hash(int a, int seed) {
+    a = (a+seed) + (a<<12);
+    a = (a^0xc761c23c) ^ (a>>>19);
+    a = (a+0x165667b1) + (a<<5);
+    a = (a+0xd3a2646c) ^ (a<<9);
+    a = (a+0xfd7046c5) + (a<<3);
+    return (a^0xb55a4f09) ^ (a>>>16);
+  }
+
+  /**
+   * Reads and returns an instance of this class from the given input
+   *
+   * @param in DataInput stream
+   * @return A BlockedBloomFilterHash object
+   */
+  public static BlockedBloomFilterHash readInstance(DataInput in) throws IOException {
+    Preconditions.checkNotNull(in);
+
+    BlockedBloomFilterHash signature = new BlockedBloomFilterHash();
+    signature.readFields(in);
+    return signature;
+  }
+
+  @Override public void readFields(DataInput in) throws IOException {
+    Preconditions.checkNotNull(in);
+
+    nbHash = in.readInt();
+    blockWords = in.readInt();
+    nbBlocks = in.readInt();
+    blockBits = blockWords << 6;
+    words = new long[nbBlocks * blockWords];
+    for(int i = 0; i < words.length; i++) {
+      words[i] = in.readLong();
+    }
+  }
+
+  @Override public void write(DataOutput out) throws IOException {
+    Preconditions.checkNotNull(out);
+
+    out.writeInt(nbHash);
+    out.writeInt(blockWords);
+    out.writeInt(nbBlocks);
+    for(int i = 0; i < words.length; i++) {
+      out.writeLong(words[i]);
+    }
+  }
+
+  @Override public boolean equals(Object o) {
+    Preconditions.checkNotNull(o);
+    if(!(o instanceof BlockedBloomFilterHash)) {
+      return false;
+    }
+
+    BlockedBloomFilterHash other = (BlockedBloomFilterHash) o;
+    if(this.nbHash != other.nbHash) {
+      return false;
+    }
+    if(this.blockWords != other.blockWords) {
+      return false;
+    }
+    return Arrays.equals(this.words, other.words);
+  }
+}
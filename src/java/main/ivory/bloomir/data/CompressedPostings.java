@@ -13,13 +13,17 @@ import org.apache.hadoop.io.Writable;
 /**
  * A compressed postings list representation. This class uses
  * PForDelta to compress a given set of document ids into
- * blocks of equal size.
+ * blocks of equal size. The last document id of every block
+ * is kept uncompressed in a header, so that the block holding
+ * a given document id can be located without decompressing
+ * any blocks (see {@link #findBlock}).
  *
  * @author Nima Asadi
  */
 public class CompressedPostings implements Writable {
   private static int blockSize = 128;
   private int[][] compressedBlocks;
+  private int[] lastDocnos;
   private int lastBlockSize;
 
   protected CompressedPostings() {
@@ -53,6 +57,7 @@ public class CompressedPostings implements Writable {
     // Data is stored in blocks of equal size..
     int nbBlocks = (int) Math.ceil(((double) data.length) / ((double) blockSize));
     compressedBlocks = new int[nbBlocks][];
+    lastDocnos = new int[nbBlocks];
 
     int[] temp = new int[blockSize];
 
@@ -66,6 +71,7 @@ public class CompressedPostings implements Writable {
         pre = data[i * blockSize + j];
       }
       compressedBlocks[i] = PForDelta.compressOneBlockOpt(temp, blockSize);
+      lastDocnos[i] = pre;
     }
 
     // Compress the last block
@@ -78,6 +84,7 @@ public class CompressedPostings implements Writable {
       pre = data[(nbBlocks - 1) * blockSize + j];
     }
     compressedBlocks[nbBlocks - 1] = PForDelta.compressOneBlockOpt(temp, remaining);
+    lastDocnos[nbBlocks - 1] = pre;
     lastBlockSize = remaining;
   }
 
@@ -121,6 +128,53 @@ public class CompressedPostings implements Writable {
     return compressedBlocks.length;
   }
 
+  /**
+   * @param blockNumber Block index.
+   * @return The last (and largest) document id in the specified block.
+   */
+  public int getLastDocno(int blockNumber) {
+    return lastDocnos[blockNumber];
+  }
+
+  /**
+   * Finds the first block, starting from a given block, that may
+   * contain a given document id, using a galloping search over the
+   * block headers. No blocks are decompressed.
+   *
+   * @param docno Document id to search for
+   * @param fromBlock Block index to start the search from
+   * @return Index of the first block at or after <i>fromBlock</i> whose
+   * last document id is greater than or equal to <i>docno</i>, or the number
+   * of blocks if there is no such block.
+   */
+  public int findBlock(int docno, int fromBlock) {
+    Preconditions.checkArgument(fromBlock >= 0);
+
+    int n = lastDocnos.length;
+    if(fromBlock >= n || lastDocnos[fromBlock] >= docno) {
+      return fromBlock;
+    }
+
+    // Gallop until we overshoot, then binary search the last step.
+    // Invariant: lastDocnos[lo] < docno.
+    int lo = fromBlock;
+    int step = 1;
+    while(lo + step < n && lastDocnos[lo + step] < docno) {
+      lo += step;
+      step *= 2;
+    }
+    int hi = Math.min(lo + step, n);
+    while(hi - lo > 1) {
+      int mid = (lo + hi) >>> 1;
+      if(lastDocnos[mid] < docno) {
+        lo = mid;
+      } else {
+        hi = mid;
+      }
+    }
+    return hi;
+  }
+
   /**
    * @return The actual block size.
    */
@@ -192,7 +246,9 @@ public class CompressedPostings implements Writable {
 
     lastBlockSize = input.readInt();
     compressedBlocks = new int[input.readInt()][];
+    lastDocnos = new int[compressedBlocks.length];
     for(int i = 0; i < compressedBlocks.length; i++) {
+      lastDocnos[i] = input.readInt();
       compressedBlocks[i] = new int[input.readInt()];
       for(int j = 0; j < compressedBlocks[i].length; j++) {
         compressedBlocks[i][j] = input.readInt();
@@ -206,6 +262,7 @@ public class CompressedPostings implements Writable {
     output.writeInt(lastBlockSize);
     output.writeInt(compressedBlocks.length);
     for(int i = 0; i < compressedBlocks.length; i++) {
+      output.writeInt(lastDocnos[i]);
       output.writeInt(compressedBlocks[i].length);
       for(int j = 0; j < compressedBlocks[i].length; j++) {
         output.writeInt(compressedBlocks[i][j]);
@@ -225,6 +282,9 @@ public class CompressedPostings implements Writable {
       return false;
     }
     for(int i = 0; i < this.compressedBlocks.length; i++) {
+      if(this.lastDocnos[i] != other.lastDocnos[i]) {
+        return false;
+      }
       if(this.compressedBlocks[i].length != other.compressedBlocks[i].length) {
         return false;
       }
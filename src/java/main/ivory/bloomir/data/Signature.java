@@ -1,5 +1,7 @@
 package ivory.bloomir.data;
 
+import java.util.BitSet;
+
 import org.apache.hadoop.io.Writable;
 
 /**
@@ -23,4 +25,24 @@ public abstract class Signature implements  Writable {
    * signature or not.
    */
   public abstract boolean membershipTest(int key);
+
+  /**
+   * Performs membership tests for a batch of keys. For each of the first
+   * <i>n</i> keys whose bit is set in <i>out</i>, the bit is cleared if
+   * the key does not exist in the signature. Keys whose bits are already
+   * clear are not tested, so that a conjunction of signatures can be
+   * evaluated by passing the same BitSet to each signature in turn.
+   *
+   * @param keys Keys to be checked.
+   * @param n Number of keys to check.
+   * @param out Bit <i>i</i> indicates whether <i>keys[i]</i> is still a
+   * candidate.
+   */
+  public void membershipTest(int[] keys, int n, BitSet out) {
+    for(int i = out.nextSetBit(0); i >= 0 && i < n; i = out.nextSetBit(i + 1)) {
+      if(!membershipTest(keys[i])) {
+        out.clear(i);
+      }
+    }
+  }
 }
@@ -49,7 +49,7 @@ public class SignatureIO {
           int id = input.readInt();
           int df = input.readInt();
           if(df <= bloomConfig.getIdentityHashThreshold()) {
-            signatures[id] = BloomFilterHash.readInstance(input);
+            signatures[id] = BlockedBloomFilterHash.readInstance(input);
           } else {
             signatures[id] = BloomFilterIdentityHash.readInstance(input);
           }
@@ -107,8 +107,8 @@ public class SignatureIO {
         //Decide which filter to use based on the configuration parameters
         int df = pl.getDf();
         if (df <= bloomConfig.getIdentityHashThreshold()) {
-          filter = new BloomFilterHash(df * bloomConfig.getBitsPerElement(),
-                                       bloomConfig.getHashCount());
+          filter = new BlockedBloomFilterHash(df * bloomConfig.getBitsPerElement(),
+                                              bloomConfig.getHashCount());
         } else {
           filter = new BloomFilterIdentityHash(bloomConfig.getDocumentCount());
         }
@@ -11,6 +11,7 @@ import ivory.core.RetrievalEnvironment;
 import ivory.core.data.stat.SpamPercentileScore;
 
 import java.io.IOException;
+import java.util.BitSet;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FSDataOutputStream;
@@ -29,6 +30,8 @@ import edu.umd.cloud9.collection.DocnoMapping;
  */
 public class BloomRanker {
   private final int[] decomp = new int[CompressedPostings.getBlockSize()];
+  private final int[] candidates = new int[CompressedPostings.getBlockSize()];
+  private final BitSet picks = new BitSet(CompressedPostings.getBlockSize());
 
   private CompressedPostings[] postings;  //Postings lists
   private int[] dfs;  //Df values
@@ -94,29 +97,29 @@ public class BloomRanker {
       }
     }
 
+    //Test the candidates of each block against all signatures at once
     CompressedPostings ps = postings[query[indexOfMinDf]];
     int cnt = 0;
     int nbBlocks = ps.getBlockCount();
     for (int i = 0; i < nbBlocks; i++) {
       int bSize = ps.decompressBlock(decomp, i);
       int docno = 0;
-      boolean pick = true;
-
       for(int j = 0; j < bSize; j++) {
         docno += decomp[j];
-        pick = true;
-        for(int p = 0; p < list.length; p++) {
-          if(!list[p].membershipTest(docno)) {
-            pick = false;
-            break;
-          }
-        }
-        if(pick) {
-          results[cnt] = docno;
-          cnt++;
-          if(cnt >= hits) {
-            return results;
-          }
+        candidates[j] = docno;
+      }
+
+      picks.clear();
+      picks.set(0, bSize);
+      for(int p = 0; p < list.length && !picks.isEmpty(); p++) {
+        list[p].membershipTest(candidates, bSize, picks);
+      }
+
+      for(int j = picks.nextSetBit(0); j >= 0; j = picks.nextSetBit(j + 1)) {
+        results[cnt] = candidates[j];
+        cnt++;
+        if(cnt >= hits) {
+          return results;
         }
       }
     }
@@ -30,90 +30,88 @@ public class SmallAdaptiveRanker {
     CompressedPostingsIO.loadPostings(postingsIndex, fs, postings, dfs);
   }
 
+  // Per-term cursors, reused across queries: the decompressed docnos of the
+  // current block, its index and length, and the position within it.
+  private int[][] blocks = new int[0][];
+  private int[] blockNumbers = new int[0];
+  private int[] blockLengths = new int[0];
+  private int[] positions = new int[0];
+
+  private void resetCursors(int n) {
+    if(blocks.length < n) {
+      blocks = new int[n][CompressedPostings.getBlockSize()];
+      blockNumbers = new int[n];
+      blockLengths = new int[n];
+      positions = new int[n];
+    }
+    for(int i = 0; i < n; i++) {
+      blockNumbers[i] = -1;
+    }
+  }
+
   /**
-   * Performs a galloping-search followed by a standard binary search.
+   * Moves a cursor to the first document id that is greater than or equal
+   * to a key. The block holding the key is found from the block headers,
+   * so only that block is decompressed, and it is then searched by galloping
+   * from the current position.
    *
    * @param post Compressed postings list
-   * @param p An array that holds the decompressed postings for a term.
-   *          This helps remember the decompressed postings and therefore
-   *          avoids redundancy.
-   * @param low Low index for binary search
-   * @param high High index for binary search
+   * @param c Index of the cursor over this postings list
    * @param key Value to search for
-   * @return An integer array. The elements of this array are as follows:
-   *         [0]: the new 'low' index
-   *         [1]: the value of the key if it was found. This element
-   *              is meaningless otherwise.
+   * @return The first document id greater than or equal to the key, or
+   *         -1 if the postings list is exhausted.
    */
-  private int[] binarySearch(CompressedPostings post, int[] p, int low, int high, int key) {
-    int lo = low;
-    int hi = high;
-
-    //Gallop
-    int current = low;
-    boolean first = true;
-    while(true) {
-      if(first) {
-        first = false;
-      } else {
-        if(current == 0) {
-          current = 1;
-        } else {
-          current *= 2;
-        }
-      }
-
-      if(current > high) {
-        hi = high;
-        break;
-      }
-
-      // If the postings from this block are not decompressed
-      if(p[current] == 0) {
-        decompress(post, p, post.getBlockNumber(current));
-      }
-
-      if(p[current] < key) {
-        lo = current;
-      } else if(p[current] > key) {
-        hi = current;
-        break;
-      } else {
-        return new int[] {current + 1, p[current]};
+  private int advance(CompressedPostings post, int c, int key) {
+    int[] block = blocks[c];
+    int b = blockNumbers[c];
+    int pos = positions[c];
+
+    if(b < 0 || key > post.getLastDocno(b)) {
+      b = post.findBlock(key, b + 1);
+      if(b >= post.getBlockCount()) {
+        return -1;
       }
+      blockLengths[c] = decompress(post, block, b);
+      blockNumbers[c] = b;
+      pos = 0;
     }
 
-    while (lo <= hi) {
-      int mid = lo + (hi - lo) / 2;
-
-      if(p[mid] == 0) {
-        decompress(post, p, post.getBlockNumber(mid));
+    // The last docno of the block is at least the key, so the search
+    // always ends inside the block.
+    if(block[pos] < key) {
+      int len = blockLengths[c];
+      int lo = pos;
+      int step = 1;
+      while(lo + step < len && block[lo + step] < key) {
+        lo += step;
+        step *= 2;
       }
-      if (key < p[mid]) {
-        hi = mid - 1;
-      } else if (key > p[mid]) {
-        lo = mid + 1;
-      } else {
-        return new int[]{mid + 1, key};
+      int hi = Math.min(lo + step, len - 1);
+      while(hi - lo > 1) {
+        int mid = (lo + hi) >>> 1;
+        if(block[mid] < key) {
+          lo = mid;
+        } else {
+          hi = mid;
+        }
       }
-    }
-    if(lo <= high) {
-      return new int[]{lo, p[lo]};
+      pos = hi;
     }
 
-    return new int[] {lo, p[high]};
+    positions[c] = pos;
+    return block[pos];
   }
 
   private final int[] decomp = new int[CompressedPostings.getBlockSize()];
-  public void decompress(CompressedPostings p, int[] ds, int blockNumber) {
+  private int decompress(CompressedPostings p, int[] block, int blockNumber) {
     int blSize = p.decompressBlock(decomp, blockNumber);
-    int pos = p.getBlockStartIndex(blockNumber);
     int val = 0;
 
     for(int k = 0; k < blSize; k++) {
       val += decomp[k];
-      ds[pos++] = val;
+      block[k] = val;
     }
+    return blSize;
   }
 
   public int[] rank(int[] query, int hits) throws IOException {
@@ -145,19 +143,10 @@ public class SmallAdaptiveRanker {
       return results;
     }
 
-    int[] myLow = new int[query.length];
-    int[] myHigh = new int[query.length];
-    int[][] ds = new int[query.length][];
+    resetCursors(query.length);
 
-    for(int i = 0; i < query.length; i++) {
-      myHigh[i] = dfs[query[i]] - 1;
-      myLow[i] = 0;
-      ds[i] = new int[myHigh[i] + 1];
-    }
-
-    decompress(postings[query[0]], ds[0], 0);
     int cnt = 0;
-    int value = ds[0][0];
+    int value = advance(postings[query[0]], 0, 0);
     int index = 1;
     int found = 1;
     while(true) {
@@ -165,12 +154,12 @@ public class SmallAdaptiveRanker {
         index = 0;
       }
 
-      if(myLow[index] > myHigh[index]) {
+      int r = advance(postings[query[index]], index, value);
+      if(r < 0) {
         return results;
       }
 
-      int[] r = binarySearch(postings[query[index]], ds[index], myLow[index], myHigh[index], value);
-      if(r[1] == value) {
+      if(r == value) {
         found++;
         if(found == query.length) {
           results[cnt] = value;
@@ -179,24 +168,14 @@ public class SmallAdaptiveRanker {
             return results;
           }
           found = 1;
-          int next = r[0];
-          if(next > myHigh[index]) {
+          value = advance(postings[query[index]], index, value + 1);
+          if(value < 0) {
             return results;
           }
-          if(ds[index][next] == 0) {
-            decompress(postings[query[index]], ds[index], postings[query[index]].getBlockNumber(next));
-          }
-          value = ds[index][next];
         }
       } else {
         found = 1;
-        value = r[1];
-      }
-
-      if((r[0] == myLow[index] && r[0] == myHigh[index]) || r[0] > myHigh[index]) {
-        myLow[index] = myHigh[index] + 1;
-      } else {
-        myLow[index] = r[0];
+        value = r;
       }
       index++;
     }
@@ -34,6 +34,7 @@ public class OptionManager {
   public static final String DOCUMENT_PATH = "document";
   public static final String JUDGMENT_PATH = "candidate";
   public static final String FEATURE_PATH = "feature";
+  public static final String THREADS = "threads";
 
   private Options options;
   private CommandLine cmdline;
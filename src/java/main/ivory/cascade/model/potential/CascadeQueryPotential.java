@@ -22,8 +22,6 @@ import ivory.smrf.model.builder.ExpressionGenerator;
 import ivory.smrf.model.potential.QueryPotential;
 import ivory.smrf.model.score.ScoringFunction;
 
-import java.util.Arrays;
-
 
 /**
  * @author Lidan Wang
@@ -93,9 +91,8 @@ public class CascadeQueryPotential extends QueryPotential {
       //getPositions() only defined for term features
       if (termNodes.size()==1){
 
-        int [] p = postingsReader.getPositions();
-          
-        positions = Arrays.copyOf(p, p.length);
+        // Not copied: CascadeEval copies the positions it keeps before the reader moves on.
+        positions = postingsReader.getPositions();
 
       }
       tf = postingsReader.getTf();  //even if two terms match, tf can be 0, i.e., if they aren't within the window size in the doc
@@ -32,10 +32,8 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.Map;
-import java.util.Set;
 
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
@@ -48,6 +46,8 @@ import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 import org.xml.sax.SAXException;
 
+import tl.lin.data.array.ArrayListOfFloats;
+import tl.lin.data.array.ArrayListOfInts;
 
 import com.google.common.collect.Maps;
 
@@ -79,39 +79,38 @@ public class CascadeBatchQueryRunner extends BatchQueryRunner{
 
 	}
 
-	public HashMap readInternalInputFile(String internalInputFile){
-		HashMap<String, LinkedList<float[]>> savedResults= new HashMap<String, LinkedList<float[]>>();
-		
+	public Map<String, CascadeSavedResults> readInternalInputFile(String internalInputFile){
+		Map<String, CascadeSavedResults> savedResults = Maps.newHashMap();
+
 		if (internalInputFile!=null){
 			BufferedReader in;
 			try{
 				in = new BufferedReader(new InputStreamReader(fs.open(new Path(internalInputFile))));
 				String line;
 				 //Docnos and scores for a given query
-				LinkedList<float[]> results = new LinkedList<float[]>();
+				ArrayListOfInts docnos = new ArrayListOfInts();
+				ArrayListOfFloats scores = new ArrayListOfFloats();
 				String qid = "";
-				float [] docno_score = new float[2];
 
 				while ((line = in.readLine()) != null && line.trim().length()> 0) {
 					String [] tokens = line.split("\\s+");
-					
+
 					//# qid internal_docno score
 					if (!(qid.equals(tokens[0]))){
 						if (!(qid.equals(""))){
-							savedResults.put(qid, results);
+							savedResults.put(qid, new CascadeSavedResults(docnos.getArray(), scores.getArray(), docnos.size()));
 						}
 						qid = tokens[0];
-						results = new LinkedList<float[]>();
+						docnos = new ArrayListOfInts();
+						scores = new ArrayListOfFloats();
 					}
-					docno_score = new float[2];
-					//docno_score[0] = Integer.parseInt(qid);
-					docno_score[0] = (float)(Double.parseDouble(tokens[1]));
-					docno_score[1] = (float)(Double.parseDouble(tokens[2]));
-					results.add(docno_score);
+					docnos.add(Integer.parseInt(tokens[1]));
+					scores.add((float)(Double.parseDouble(tokens[2])));
 				}
 
 				 //put last group of query and results in
-				savedResults.put(qid, results);
+				savedResults.put(qid, new CascadeSavedResults(docnos.getArray(), scores.getArray(), docnos.size()));
+				in.close();
 			}
 			catch (Exception e){
                                 System.out.println("Problem reading "+internalInputFile);
@@ -124,29 +123,7 @@ public class CascadeBatchQueryRunner extends BatchQueryRunner{
 			}
 		}
 
-		HashMap savedResults_return = new HashMap();
-		
-		Set set = savedResults.entrySet();
-		Iterator itr = set.iterator();
-
-		while (itr.hasNext()){
-			Map.Entry me = (Map.Entry) itr.next();
-
-			String key = (String)(me.getKey());
-			LinkedList val = (LinkedList) (me.getValue());
-
-			float [][] results = new float[val.size()][2];
-			float [] r;
-			for (int i=0; i<val.size(); i++){
-				r = (float[]) (val.get(i));
-				results[i][0] = r[0];
-				results[i][1] = r[1];
-			}
-
-			savedResults_return.put(key, results);
-		}		
-		return savedResults_return;
-
+		return savedResults;
 	}
 
 	public void runQueries() {
@@ -162,7 +139,7 @@ public class CascadeBatchQueryRunner extends BatchQueryRunner{
 			String internalInputFile = internalInputFiles[modelCnt];
 
 			//Initialize mDocSet for each query if there is internalInputFile
-			HashMap savedResults_prevStage = readInternalInputFile(internalInputFile);
+			Map<String, CascadeSavedResults> savedResults_prevStage = readInternalInputFile(internalInputFile);
 
 			Node modelNode = models.get(modelID);
 			Node expanderNode = expanders.get(modelID);
@@ -0,0 +1,117 @@
+/*
+ * Ivory: A Hadoop toolkit for web-scale information retrieval
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package ivory.cascade.retrieval;
+
+import java.util.Arrays;
+
+/**
+ * <p>
+ * Working memory of {@link CascadeEval}, held in primitive arrays that are reused from one query to
+ * the next. Arrays only grow, so once a thread has run a few queries, ranking allocates nothing in
+ * proportion to the number of documents. A {@code CascadeBuffers} object must not be shared by
+ * threads; a query runner keeps one per thread.
+ * </p>
+ *
+ * <p>
+ * The first cascade stage keeps the top documents in slots: a slot holds the docno, score and
+ * length of a document, and the positions of each query term in it, which the later stages use to
+ * score proximity features without going back to the postings. The current ranking is kept in
+ * three columns, {@code docnos}, {@code scores} and {@code slots}, in rank order.
+ * </p>
+ */
+public class CascadeBuffers {
+  // Current ranking, in rank order.
+  int[] docnos = new int[0];
+  float[] scores = new float[0];
+  int[] slots = new int[0];
+
+  // Documents in the slots, and the heap of slots used to select the top documents.
+  int[] slotDocnos = new int[0];
+  float[] slotScores = new float[0];
+  int[] docLengths = new int[0];
+  int[] heap = new int[0];
+
+  // Positions of each term in the document in each slot, at index slot * numTerms + term.
+  private int[][] positions = new int[0][];
+  private int[] numPositions = new int[0];
+  private int numTerms;
+
+  // Positions of each term in the document being scored by the first stage.
+  int[][] termPositions = new int[0][];
+
+  /**
+   * Makes room for a ranking of up to {@code numDocs} documents and for the positions of
+   * {@code numTerms} terms in each.
+   */
+  void reset(int numDocs, int numTerms) {
+    if (docnos.length < numDocs) {
+      int capacity = Math.max(numDocs, docnos.length + (docnos.length >> 1));
+      docnos = new int[capacity];
+      scores = new float[capacity];
+      slots = new int[capacity];
+      slotDocnos = new int[capacity];
+      slotScores = new float[capacity];
+      docLengths = new int[capacity];
+      heap = new int[capacity];
+    }
+
+    int size = docnos.length * numTerms;
+    if (positions.length < size) {
+      // Keep the position arrays grown so far; only the mapping to slots changes.
+      positions = Arrays.copyOf(positions, size);
+      numPositions = new int[size];
+    }
+    if (termPositions.length < numTerms) {
+      termPositions = new int[numTerms][];
+    }
+    this.numTerms = numTerms;
+  }
+
+  /**
+   * Copies the positions of a term in the document in a slot.
+   */
+  void setPositions(int slot, int term, int[] p) {
+    int i = slot * numTerms + term;
+    if (positions[i] == null || positions[i].length < p.length) {
+      positions[i] = new int[Math.max(p.length, 8)];
+    }
+    System.arraycopy(p, 0, positions[i], 0, p.length);
+    numPositions[i] = p.length;
+  }
+
+  /**
+   * Records that a term does not occur in the document in a slot.
+   */
+  void clearPositions(int slot, int term) {
+    numPositions[slot * numTerms + term] = 0;
+  }
+
+  /**
+   * Returns the positions of a term in the document in a slot. Only the first
+   * {@link #getNumPositions} are valid.
+   */
+  int[] getPositions(int slot, int term) {
+    return positions[slot * numTerms + term];
+  }
+
+  /**
+   * Returns the number of positions of a term in the document in a slot, i.e., its tf.
+   */
+  int getNumPositions(int slot, int term) {
+    return numPositions[slot * numTerms + term];
+  }
+}
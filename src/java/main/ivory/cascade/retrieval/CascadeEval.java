@@ -18,7 +18,6 @@ package ivory.cascade.retrieval;
 
 import ivory.cascade.model.CascadeClique;
 import ivory.core.ConfigurationException;
-import ivory.core.RetrievalEnvironment;
 import ivory.core.RetrievalException;
 import ivory.smrf.model.Clique;
 import ivory.smrf.model.DocumentNode;
@@ -28,23 +27,25 @@ import ivory.smrf.model.MarkovRandomField;
 import ivory.smrf.model.score.ScoringFunction;
 import ivory.smrf.retrieval.Accumulator;
 
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.BitSet;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
-import java.util.PriorityQueue;
-import java.util.Set;
 
 import org.apache.log4j.Logger;
 
-
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
-import com.google.common.collect.Sets;
 
 /**
+ * Ranks documents with a cascade model. The first stage scores the candidate documents with the
+ * term features, keeping the top documents along with the positions of the query terms in them.
+ * Each later stage prunes the ranking and rescores the documents that are left with its features,
+ * computing proximity features from the kept positions.
+ *
+ * All per-document state lives in a {@link CascadeBuffers} object, which is reused across queries.
+ *
  * @author Lidan Wang
  */
 public class CascadeEval {
@@ -52,15 +53,7 @@ public class CascadeEval {
 
   static int INITIAL_STAGE_NUM_RESULTS = 20000;
 
-  /**
-   * Pool of accumulators.
-   */
-  private CascadeAccumulator[] mAccumulators = null;
-
-  /**
-   * Sorted list of accumulators.
-   */
-  private final PriorityQueue<CascadeAccumulator> mSortedAccumulators = new PriorityQueue<CascadeAccumulator>();
+  public static int defaultNumDocs = 9999999;
 
   /**
    * Comparator used to sort cliques by their max score.
@@ -70,23 +63,17 @@ public class CascadeEval {
   /**
    * Markov Random Field that we are using to generate the ranking.
    */
-  private MarkovRandomField mMRF = null;
+  private final MarkovRandomField mMRF;
 
   /**
-   * If defined, only documents within this set will be scored.
+   * MRF document nodes.
    */
-  private int[] mDocSet = null;
-  float[] accumulated_scores = null;
-
-  // Declare these so don't have to repeatedly declaring them in the methods
-  double[] mDocSet_tmp;
-  float[] accumulated_scores_tmp;
-  int[] order;
+  private final DocumentNode[] mDocNodes;
 
   /**
-   * MRF document nodes.
+   * Reusable working memory.
    */
-  private List<DocumentNode> mDocNodes = null;
+  private final CascadeBuffers buffers;
 
   /**
    * Maximum number of results to return.
@@ -94,170 +81,37 @@ public class CascadeEval {
   private int mNumResults;
 
   // saved results from internalInputFile
-  private float[][] mSavedResults;
+  private final CascadeSavedResults mSavedResults;
 
   // K value used in cascade model
-  private int mK;
+  private final int mK;
 
   // Cost of this cascade model = # documents * sum of unit per document cost over the cliques
   float cascadeCost = 0;
 
+  // Number of documents in the current ranking, which is held in the buffers.
+  private int numDocs = 0;
 
-  // docs that will be passed around
-  int[][][] keptDocs;
-  int[] keptDocLengths;
+  // Mean score of the current ranking, for use in pruning.
+  private float meanScore = 0;
 
-  // single terms in cliques used in first stage, which clique number they correspond to, keyed by
-  // the concept, value is the cliqueNumber or termCollectionFrequency
-  Map<String, Integer> termToCliqueNumber = Maps.newHashMap();
-  Map<String, Long> cf = Maps.newHashMap();
-  Map<String, Integer> df = Maps.newHashMap();
+  // Single terms in cliques used in first stage, mapped to the clique number, which is also where
+  // their positions are kept.
+  private final Map<String, Integer> termToCliqueNumber = Maps.newHashMap();
 
-  // for pruning use
-  float meanScore = 0;
-  float stddev = 0;
-
-  int numQueryTerms;
-
-  public static int defaultNumDocs = 9999999;
-
-  public CascadeEval(MarkovRandomField mrf, int numResults, String qid, float[][] savedResults,
-      int K) {
-    this(mrf, null, numResults, qid, savedResults, K);
+  public CascadeEval(MarkovRandomField mrf, int numResults, String qid,
+      CascadeSavedResults savedResults, int K) {
+    this(mrf, numResults, qid, savedResults, K, new CascadeBuffers());
   }
 
-  public CascadeEval(MarkovRandomField mrf, int[] docSet, int numResults, String qid,
-      float[][] savedResults, int K) {
+  public CascadeEval(MarkovRandomField mrf, int numResults, String qid,
+      CascadeSavedResults savedResults, int K, CascadeBuffers buffers) {
     mMRF = mrf;
-    mDocSet = docSet;
     mNumResults = numResults;
     mDocNodes = getDocNodes();
     mSavedResults = savedResults;
     mK = K;
-
-    // Lidan: get # query terms
-    numQueryTerms = mMRF.getQueryTerms().length;
-
-    keptDocs = new int[INITIAL_STAGE_NUM_RESULTS + 1][numQueryTerms][];
-
-    keptDocLengths = new int[INITIAL_STAGE_NUM_RESULTS + 1];
-  }
-
-  // Lidan: assuming mDocSet[] & accumulated_scores[] sorted by descending order of scores!
-  // Lidan: this method modifies mDocSet[] & accumulated_scores[] (class variables)
-  public void pruneDocuments(String pruner, float pruner_param) {
-
-    // After pruning, make sure have max(RetrievalEnvironment.mCascade_K, |retained docs|)
-    // documents!
-
-    int[] mDocSet_tmp = new int[mDocSet.length];
-    float[] accumulated_scores_tmp = new float[accumulated_scores.length];
-
-    int retainSize = 0;
-
-    if (pruner.equals("score")) {
-      float max_score = accumulated_scores[0];
-      float min_score = accumulated_scores[accumulated_scores.length - 1];
-
-      float score_threshold = (max_score - min_score) * pruner_param + min_score;
-
-      for (int i = 0; i < accumulated_scores.length; i++) {
-        if (score_threshold <= accumulated_scores[i]) {
-          retainSize++;
-        } else {
-          break;
-        }
-      }
-    } else if (pruner.equals("mean-max")) {
-      float max_score = accumulated_scores[0];
-      float mean_score = 0;
-      for (int j = 0; j < accumulated_scores.length; j++) {
-        mean_score += accumulated_scores[j];
-      }
-      mean_score = mean_score / (float) accumulated_scores.length;
-      float score_threshold = pruner_param * max_score + (1.0f - pruner_param) * mean_score;
-
-      for (int i = 0; i < accumulated_scores.length; i++) {
-        if (score_threshold <= accumulated_scores[i]) {
-          retainSize++;
-        } else {
-          break;
-        }
-      }
-    } else if (pruner.equals("rank")) {
-      // if pruner_param = 0.3 --> remove bottom 30% of the docs!
-      retainSize = (int) ((1.0 - pruner_param) * ((double) (mDocSet.length)));
-    } else if (pruner.equals("z-score")) {
-      // compute mean
-      float avgScores = 0.0f;
-
-      for (int i = 0; i < accumulated_scores.length; i++) {
-        avgScores += accumulated_scores[i];
-      }
-      avgScores = avgScores / (float) accumulated_scores.length;
-
-      // compute variance
-      float variance = 0.0f;
-      for (int i = 0; i < accumulated_scores.length; i++) {
-        variance += (accumulated_scores[i] - avgScores) * (accumulated_scores[i] - avgScores);
-      }
-      float stddev = (float) Math.sqrt(variance);
-
-      float[] z_scores = new float[accumulated_scores.length];
-      for (int i = 0; i < z_scores.length; i++) {
-        z_scores[i] = (accumulated_scores[i] - avgScores) / stddev;
-      }
-    } else {
-      throw new RetrievalException("PruningFunction " + pruner + " is not supported!");
-    }
-
-    if (retainSize < mK) {
-      if (mDocSet.length >= mK) {
-        retainSize = mK;
-      } else if (mK != defaultNumDocs) {
-        // When training the model, set the # output docs large on purpose so that output size =
-        // retained docs size
-
-        retainSize = mDocSet.length;
-      }
-    }
-
-    if (retainSize > mDocSet.length) {
-      retainSize = mDocSet.length;
-    }
-
-    for (int i = 0; i < retainSize; i++) {
-      mDocSet_tmp[i] = mDocSet[i];
-      accumulated_scores_tmp[i] = accumulated_scores[i];
-    }
-    mDocSet = new int[retainSize];
-    accumulated_scores = new float[retainSize];
-
-    for (int i = 0; i < retainSize; i++) {
-      mDocSet[i] = mDocSet_tmp[i];
-      accumulated_scores[i] = accumulated_scores_tmp[i];
-    }
-
-  }
-
-  // Lidan: operate on class vars mDocSet[] & accumulated_scores
-  public void sortDocumentsByDocnos() {
-    order = new int[mDocSet.length];
-    mDocSet_tmp = new double[mDocSet.length];
-    accumulated_scores_tmp = new float[mDocSet.length];
-
-    for (int i = 0; i < order.length; i++) {
-      order[i] = i;
-      mDocSet_tmp[i] = mDocSet[i];
-      accumulated_scores_tmp[i] = accumulated_scores[i];
-    }
-
-    ivory.smrf.model.constrained.ConstraintModel.Quicksort(mDocSet_tmp, order, 0, order.length - 1);
-
-    for (int i = 0; i < order.length; i++) {
-      mDocSet[i] = (int) mDocSet_tmp[i];
-      accumulated_scores[i] = accumulated_scores_tmp[order[i]];
-    }
+    this.buffers = buffers;
   }
 
   // Total cost of the cascade model: # documents * sum of unit per document cost over each clique
@@ -268,19 +122,6 @@ public class CascadeEval {
   }
 
   public Accumulator[] rank() {
-    if (mSavedResults != null) {
-      mDocSet = new int[mSavedResults.length];
-      accumulated_scores = new float[mSavedResults.length];
-
-      for (int i = 0; i < mSavedResults.length; i++) {
-        mDocSet[i] = (int) mSavedResults[i][0];
-        accumulated_scores[i] = mSavedResults[i][1];
-      }
-
-      keptDocs = new int[mDocSet.length + 1][numQueryTerms][];
-      keptDocLengths = new int[mDocSet.length + 1];
-    }
-
     // Initialize the MRF ==> this will clear out postings readers cache!
     try {
       mMRF.initialize();
@@ -290,30 +131,30 @@ public class CascadeEval {
     }
 
     int totalCnt = mMRF.getCliques().size();
-    Map<Integer, Set<CascadeClique>> cascadeStages = Maps.newHashMap();
+    // Cliques of each stage, in the order of the MRF, so that scores are summed in the same order
+    // from one run to the next.
+    Map<Integer, List<CascadeClique>> cascadeStages = Maps.newHashMap();
     for (Clique c : mMRF.getCliques()) {
       CascadeClique cc = (CascadeClique) c;
       int stage = cc.getCascadeStage();
-      if ( cascadeStages.containsKey(stage)) {
+      if (cascadeStages.containsKey(stage)) {
         cascadeStages.get(stage).add(cc);
       } else {
-        cascadeStages.put(stage, Sets.newHashSet(cc));
+        cascadeStages.put(stage, Lists.newArrayList(cc));
       }
     }
 
-    CascadeAccumulator[] results = null;
     // Cascade stage starts at 0
     int cascadeStage = 0;
     int cnt = 0;
 
-    String pruningFunction = null;
-    float pruningParameter = -1;
-    int termMatches = 0;
-
     while (cnt != totalCnt) { // if not have gone thru all cascade stages
       float subTotal_cascadeCost = 0;
 
-      if (cascadeStage < 1) { // only call once, then use keptDocs[][][]
+      String pruningFunction = null;
+      float pruningParameter = -1;
+
+      if (cascadeStage < 1) { // only call once, then use the positions kept in the buffers
         mMRF.removeAllCliques();
 
         for (CascadeClique c : cascadeStages.get(cascadeStage)) {
@@ -323,58 +164,39 @@ public class CascadeEval {
           pruningFunction = c.getPruningFunction();
           pruningParameter = c.getPruningParameter();
 
-          int numDocs = Integer.MAX_VALUE;
-
-          if (mDocSet == null) {
-            numDocs = c.getNumberOfPostings();
+          if (mSavedResults == null) {
             // (not) ignore cost of first stage from the cost model
-            subTotal_cascadeCost += c.cost * numDocs;
+            subTotal_cascadeCost += c.cost * c.getNumberOfPostings();
           } else {
             subTotal_cascadeCost += c.cost;
           }
         }
 
-        if (mDocSet != null) {
-          // Lidan: mDocSet[] & accumulated_scores[] should be sorted by doc scores!
-          // Lidan: this method opereates on mDocSet[] & accumulated_scores[]!
-          pruneDocuments(pruningFunction, pruningParameter);
-
-          // Lidan: will score all documents in the retained documenet set
-          mNumResults = mDocSet.length;
-
-          sortDocumentsByDocnos();
+        int docSetSize = -1;
+        if (mSavedResults != null) {
+          // Lidan: will score all documents in the retained document set
+          docSetSize = pruneSavedResults(CascadePruner.forName(pruningFunction), pruningParameter);
+          mNumResults = docSetSize;
 
           // Cost = cost of applying the feature on the retained documents after pruning
           subTotal_cascadeCost = subTotal_cascadeCost * mNumResults;
         } else {
           // Lidan: first cascade stage, just output 20000 documents
           mNumResults = INITIAL_STAGE_NUM_RESULTS;
-
-          if (cascadeStage != 0) {
-            System.out.println("Should be the first stage here!");
-            System.exit(-1);
-          }
         }
 
-        // Create single pool of reusable accumulators.
-        mAccumulators = new CascadeAccumulator[mNumResults + 1];
-        for (int i = 0; i < mNumResults + 1; i++) {
-          mAccumulators[i] = new CascadeAccumulator(0, 0.0f);
-        }
-
-        results = executeInitialStage();
+        executeInitialStage(docSetSize);
 
         cascadeStage++;
       } else {
         String featureID = null;
         ScoringFunction scoringFunction = null;
-
         int mSize = -1;
-        String[][] concepts_this_stage = new String[totalCnt][];
-        float[] clique_wgts = new float[concepts_this_stage.length];
-
-        int cntConcepts = 0;
 
+        // All features in a stage are scored with the feature type, scoring function and window
+        // size of the last one.
+        List<String[]> concepts = Lists.newArrayList();
+        List<Float> cliqueWeights = Lists.newArrayList();
         for (CascadeClique c : cascadeStages.get(cascadeStage)) {
           cnt++;
           pruningFunction = c.getPruningFunction();
@@ -385,325 +207,138 @@ public class CascadeEval {
 
           mSize = c.getWindowSize(); // window width
           if (mSize == -1 && !(featureID.equals("termWt"))) {
-            throw new RetrievalException("Only term features don't support getWindowSize()! " + featureID);
+            throw new RetrievalException("Only term features don't support getWindowSize()! "
+                + featureID);
           }
-          concepts_this_stage[cntConcepts] = c.getSingleTerms();
-          clique_wgts[cntConcepts] = c.getWeight();
+          concepts.add(c.getSingleTerms());
+          cliqueWeights.add(c.getWeight());
 
-          cntConcepts++;
           subTotal_cascadeCost += c.cost;
         }
 
-        // for use in pruning
-
-        // score-based
-        float max_score = results[0].score;
-        float min_score = results[results.length - 1].score;
-        float score_threshold = (max_score - min_score) * pruningParameter + min_score;
-        float mean_max_score_threshold = pruningParameter * max_score + (1.0f - pruningParameter) * meanScore;
-
-        // rank-based
-        int retainSize = (int) ((1.0 - pruningParameter) * ((double) (results.length)));
-        int size = 0;
-
-        // Clear priority queue.
-        mSortedAccumulators.clear();
-
-        float[] termCollectionFreqs = new float[cntConcepts];
-        float[] termDFs = new float[cntConcepts];
-        int[][] termIndexes = new int[cntConcepts][];
-
-        float sumScore = 0;
-
-        for (int j = 0; j < cntConcepts; j++) {
-          String[] singleTerms = concepts_this_stage[j];
-
-          int termIndex1 = termToCliqueNumber.get(singleTerms[0]);
-
-          if (featureID.indexOf("termWt") != -1) {
-            float termCollectionFreq = cf.get(singleTerms[0]);
-            termCollectionFreqs[j] = termCollectionFreq;
-
-            float termDF = df.get(singleTerms[0]);
-            termDFs[j] = termDF;
-
-            termIndexes[j] = new int[1];
-            termIndexes[j][0] = termIndex1;
-
-            if (singleTerms.length != 1) {
-              System.out.println("Should have length 1 " + singleTerms.length);
-              System.exit(-1);
-            }
-          } else {
-            int termIndex2 = termToCliqueNumber.get(singleTerms[1]);
+        boolean isTerm = featureID.equals("termWt");
+        boolean isOrdered = featureID.equals("orderedWt");
+        if (!isTerm && !isOrdered && !featureID.equals("unorderedWt")) {
+          throw new RetrievalException("Invalid featureID " + featureID);
+        }
 
-            termIndexes[j] = new int[2];
-            termIndexes[j][0] = termIndex1;
-            termIndexes[j][1] = termIndex2;
+        int numConcepts = concepts.size();
+        int[] termIndexes1 = new int[numConcepts];
+        int[] termIndexes2 = new int[numConcepts];
+        float[] clique_wgts = new float[numConcepts];
+        for (int j = 0; j < numConcepts; j++) {
+          String[] singleTerms = concepts.get(j);
+          if (singleTerms.length != (isTerm ? 1 : 2)) {
+            throw new RetrievalException("Features of type " + featureID
+                + " have the wrong number of terms: " + singleTerms.length);
+          }
 
-            if (singleTerms.length != 2) {
-              System.out.println("Should have length 2 " + singleTerms.length);
-              System.exit(-1);
-            }
+          termIndexes1[j] = termToCliqueNumber.get(singleTerms[0]);
+          if (!isTerm) {
+            termIndexes2[j] = termToCliqueNumber.get(singleTerms[1]);
           }
+          clique_wgts[j] = cliqueWeights.get(j);
         }
 
-        // iterate over results documents, which are sorted in scores
-        for (int i = 0; i < results.length; i++) {
-          // pruning, if okay, scoring, update pruning stats for next cascade stage
+        if (!isTerm) {
+          // Proximity features are scored with the default df and cf.
+          GlobalTermEvidence termEvidence = scoringFunction.getGlobalTermEvidence();
+          termEvidence.cf = mMRF.getRetrievalEnvironment().getDefaultCf();
+          termEvidence.df = mMRF.getRetrievalEnvironment().getDefaultDf();
+          scoringFunction.initialize(termEvidence, scoringFunction.getGlobalEvidence());
+        }
 
-          boolean passedPruning = false;
-          if (pruningFunction.equals("rank")) {
-            if (i < retainSize) {
-              passedPruning = true;
-            } else {
-              if (size < mK && mK != defaultNumDocs) {
-                passedPruning = true;
-              } else {
-                break;
-              }
-            }
-          } else if (pruningFunction.equals("score")) {
-            if (results[i].score > score_threshold) {
-              passedPruning = true;
-            } else {
-              if (size < mK && mK != defaultNumDocs) {
-                passedPruning = true;
-              } else {
-                break;
-              }
-            }
-          } else if (pruningFunction.equals("mean-max")) {
-            if (results[i].score > mean_max_score_threshold) {
-              passedPruning = true;
+        // Documents are sorted by score, so those that pass pruning are the top ones.
+        CascadePruner pruner = CascadePruner.forName(pruningFunction);
+        int size = applyMinimum(
+            pruner.getRetainSize(buffers.scores, numDocs, pruningParameter, meanScore, false),
+            numDocs);
+
+        float sumScore = 0;
+        for (int i = 0; i < size; i++) {
+          int slot = buffers.slots[i];
+          int docLen = buffers.docLengths[slot];
+          float docScore_cascade = 0;
+
+          for (int j = 0; j < numConcepts; j++) {
+            int tf1 = buffers.getNumPositions(slot, termIndexes1[j]);
+            if (isTerm) {
+              docScore_cascade += clique_wgts[j] * scoringFunction.getScore(tf1, docLen);
             } else {
-              if (size < mK && mK != defaultNumDocs) {
-                passedPruning = true;
-              } else {
-                break;
+              int tf2 = buffers.getNumPositions(slot, termIndexes2[j]);
+
+              int matches = 0;
+              if (tf1 > 0 && tf2 > 0) { // both query terms are in the doc
+                int[] positions1 = buffers.getPositions(slot, termIndexes1[j]);
+                int[] positions2 = buffers.getPositions(slot, termIndexes2[j]);
+                matches = isOrdered ? countOrderedWindows(positions1, tf1, positions2, tf2, mSize)
+                    : countUnorderedWindows(positions1, tf1, positions2, tf2, mSize);
               }
+
+              docScore_cascade += clique_wgts[j] * scoringFunction.getScore(matches, docLen);
             }
-          } else {
-            throw new RetrievalException("Not supported pruner! "+pruningFunction);
           }
 
-          if (passedPruning) {
-            size++;
-
-            int docIndex = results[i].index_into_keptDocs;
-            int docLen = keptDocLengths[docIndex];
-            float docScore_cascade = 0;
-
-            for (int j = 0; j < cntConcepts; j++) {
-              if (featureID.equals("termWt")) {
-                int termIndex1 = termIndexes[j][0];
-                int[] positions1 = keptDocs[docIndex][termIndex1];
-
-                int tf = 0;
-                if (positions1 != null) {
-                  tf = positions1.length;
-                }
-
-                docScore_cascade += clique_wgts[j] * scoringFunction.getScore(tf, docLen);
-
-              } else { // term proximity
-
-                // merge into a single stream and compute matches. Assume there are only two
-                // terms!!!
-
-                int termIndex1 = termIndexes[j][0];
-                int termIndex2 = termIndexes[j][1];
-
-                int[] positions1 = keptDocs[docIndex][termIndex1];
-                int[] positions2 = keptDocs[docIndex][termIndex2];
-
-                int matches = 0;
-
-                if (positions1 != null && positions2 != null) { // both query terms are in the doc
-
-                  termMatches++;
-                  int[] ids = new int[positions1.length];
-                  Arrays.fill(ids, 0);
-                  int length = positions1.length;
-
-                  int length2 = positions2.length;
-
-                  int[] newPositions = new int[length + length2];
-                  int[] newIds = new int[length + length2];
-
-                  int posA = 0;
-                  int posB = 0;
-
-                  int ii = 0;
-                  while (ii < length + length2) {
-                    if (posB == length2 || posA < length && positions1[posA] <= positions2[posB]) {
-                      newPositions[ii] = positions1[posA];
-                      newIds[ii] = ids[posA];
-                      posA++;
-                    } else {
-                      newPositions[ii] = positions2[posB];
-                      newIds[ii] = 1;
-                      posB++;
-                    }
-                    ii++;
-                  }
-
-                  int[] positions = newPositions;
-                  ids = newIds;
-
-                  BitSet mMatchedIds = new BitSet(2); // Assume there are only two terms!!!
-
-                  if (featureID.equals("orderedWt")) {
-
-                    for (ii = 0; ii < positions.length; ii++) {
-                      mMatchedIds.clear();
-                      int maxGap = 0;
-                      boolean ordered = true;
-                      mMatchedIds.set(ids[ii]);
-                      int matchedIDCounts = 1;
-                      int lastMatchedID = ids[ii];
-                      int lastMatchedPos = positions[ii];
-
-                      for (int jj = ii + 1; jj < positions.length; jj++) {
-                        int curID = ids[jj];
-                        int curPos = positions[jj];
-                        if (!mMatchedIds.get(curID)) {
-                          mMatchedIds.set(curID);
-                          matchedIDCounts++;
-                          if (curID < lastMatchedID) {
-                            ordered = false;
-                          }
-                          if (curPos - lastMatchedPos > maxGap) {
-                            maxGap = curPos - lastMatchedPos;
-                          }
-                        }
-                        // stop looking if the maximum gap is too large
-                        // or the terms appear out of order
-                        if (maxGap > mSize || !ordered) {
-                          break;
-                        }
-                        // did we match all the terms, and in order?
-                        if (matchedIDCounts == 2 && ordered) {
-                          matches++;
-                          break;
-                        }
-                      }
-                    }
-                  } else if (featureID.equals("unorderedWt")) {
-
-                    for (ii = 0; ii < positions.length; ii++) {
-                      mMatchedIds.clear();
-
-                      mMatchedIds.set(ids[ii]);
-                      int matchedIDCounts = 1;
-                      int startPos = positions[ii];
-
-                      for (int jj = ii + 1; jj < positions.length; jj++) {
-                        int curID = ids[jj];
-                        int curPos = positions[jj];
-                        int windowSize = curPos - startPos + 1;
-
-                        if (!mMatchedIds.get(curID)) {
-                          mMatchedIds.set(curID);
-                          matchedIDCounts++;
-                        }
-                        // stop looking if we've exceeded the maximum window size
-                        if (windowSize > mSize) {
-                          break;
-                        }
-                        // did we match all the terms?
-                        if (matchedIDCounts == 2) {
-                          matches++;
-                          break;
-                        }
-                      }
-                    }
-                  } else {
-                    System.out.println("Invalid featureID " + featureID);
-                    System.exit(-1);
-                  }
-                } // end if this is a match, i.e., both query terms are in the doc
-
-//                float s = getScore(matches, docLen, RetrievalEnvironment.defaultCf,
-//                    (float) RetrievalEnvironment.defaultDf, scoringFunctionName);
-//                docScore_cascade += clique_wgts[j] * s;
-                
-                GlobalTermEvidence termEvidence = scoringFunction.getGlobalTermEvidence();
-                termEvidence.cf = RetrievalEnvironment.defaultCf;
-                termEvidence.df = RetrievalEnvironment.defaultDf;
-
-                scoringFunction.initialize(termEvidence, scoringFunction.getGlobalEvidence());
-                docScore_cascade += clique_wgts[j] * scoringFunction.getScore(matches, docLen);
-
-              } // end else it's proximity feature
-            } // end for (each concept)
-
-            // accumulate doc score in results[i] across cascade stages
-            results[i].score += docScore_cascade;
-
-            mSortedAccumulators.add(results[i]);
-
-            sumScore += results[i].score;
-
-          } // end if passed pruning
-        } // end iterating over docs
-
-        // order based on new scores in results[], put into priority queue
-        if (size != mSortedAccumulators.size()) {
-          throw new RetrievalException("They should be equal right here " + size + " "
-              + mSortedAccumulators.size());
+          // accumulate doc score across cascade stages
+          buffers.scores[i] += docScore_cascade;
+          sumScore += buffers.scores[i];
         }
 
-        CascadeAccumulator[] results_tmp = new CascadeAccumulator[size];
-
-        meanScore = sumScore / (float) size; // update stats for use in pruning in next cascade stage
-        stddev = 0;
-
-        for (int i = 0; i < results_tmp.length; i++) {
-          results_tmp[results_tmp.length - 1 - i] = mSortedAccumulators.poll();
-
-          stddev += (results_tmp[results_tmp.length - 1 - i].score - meanScore)
-              * (results_tmp[results_tmp.length - 1 - i].score - meanScore);
-        }
-        results = results_tmp;
-
-        stddev = (float) Math.sqrt(stddev);
-
-        // Create single pool of reusable accumulators.
-        // Use mNumResults from prev iteration, since we don't know how many docs are kept until
-        // we're done iterating through the documents
+        // order based on new scores
+        numDocs = size;
+        meanScore = sumScore / (float) size; // for use in pruning in next cascade stage
+        sortByScore(buffers.scores, buffers.docnos, buffers.slots, 0, size);
 
         cascadeStage++;
 
         subTotal_cascadeCost = subTotal_cascadeCost * size;
-
       } // end if not first stage
 
       cascadeCost += subTotal_cascadeCost;
-
     } // end while
 
-    CascadeAccumulator[] results_return = results;
+    Accumulator[] results = new Accumulator[numDocs > mK ? mK : numDocs];
+    for (int i = 0; i < results.length; i++) {
+      results[i] = new Accumulator(buffers.docnos[i], buffers.scores[i]);
+    }
 
-    if (results.length > mK) {
-      results_return = new CascadeAccumulator[mK];
+    return results;
+  }
 
-      for (int i = 0; i < mK; i++) {
-        results_return[i] = new CascadeAccumulator(results[i].docno, results[i].score);
-      }
+  // Prunes the saved results, assumed to be sorted by descending score, and puts the docnos of the
+  // documents that are left into the buffers, in ascending order. Returns the number of documents.
+  private int pruneSavedResults(CascadePruner pruner, float param) {
+    int n = mSavedResults.size();
+    float[] savedScores = mSavedResults.getScores();
+
+    float mean = 0;
+    for (int j = 0; j < n; j++) {
+      mean += savedScores[j];
     }
+    mean = mean / (float) n;
 
-    return results_return;
-  }
+    int retainSize = applyMinimum(pruner.getRetainSize(savedScores, n, param, mean, true), n);
 
-  public CascadeAccumulator[] executeInitialStage() {
+    buffers.reset(retainSize, mMRF.getCliques().size());
+    System.arraycopy(mSavedResults.getDocnos(), 0, buffers.docnos, 0, retainSize);
+    Arrays.sort(buffers.docnos, 0, retainSize);
 
-    // point to next position in keptDocs array that hasn't been filled
-    int indexCntKeptDocs = 0;
+    return retainSize;
+  }
 
-    // Clear priority queue.
-    mSortedAccumulators.clear();
+  // However hard a stage prunes, make sure to keep K documents, or all of them if there are
+  // fewer. When training the model, K is set large on purpose so that all retained docs are
+  // output.
+  private int applyMinimum(int retainSize, int n) {
+    if (retainSize < mK && mK != defaultNumDocs) {
+      retainSize = mK;
+    }
+    return Math.min(retainSize, n);
+  }
 
+  // Scores the candidate documents, or the first docSetSize docnos in the buffers if docSetSize
+  // isn't negative, with the first-stage cliques, and keeps the top mNumResults documents.
+  private void executeInitialStage(int docSetSize) {
     // Cliques associated with the MRF.
     List<Clique> cliques = mMRF.getCliques();
 
@@ -711,17 +346,12 @@ public class CascadeEval {
       throw new RetrievalException("Shouldn't have size 0!");
     }
 
-    // Current accumulator.
-    CascadeAccumulator a = mAccumulators[0];
-
     // Maximum possible score that this MRF can achieve.
     float mrfMaxScore = 0.0f;
     for (Clique c : cliques) {
       if (!((((CascadeClique) c).getParamID()).equals("termWt"))) {
-        System.out
-            .println("In this faster cascade implementation, first stage must be term in order to get positions[] values! "
-                + ((CascadeClique) c).getParamID());
-        System.exit(-1);
+        throw new RetrievalException("The first cascade stage must only have term features, "
+            + "whose positions are kept for the later stages! " + ((CascadeClique) c).getParamID());
       }
       mrfMaxScore += c.getMaxScore();
     }
@@ -729,6 +359,17 @@ public class CascadeEval {
     // Sort cliques according to their max scores.
     Collections.sort(cliques, maxScoreComparator);
 
+    int numTerms = cliques.size();
+    termToCliqueNumber.clear();
+    for (int i = 0; i < numTerms; i++) {
+      termToCliqueNumber.put(cliques.get(i).getConcept().trim().toLowerCase(), i);
+    }
+
+    buffers.reset(mNumResults, numTerms);
+    int[][] termPositions = buffers.termPositions;
+    int[] heap = buffers.heap;
+    int heapSize = 0;
+
     // Score that must be achieved to enter result set.
     double scoreThreshold = Double.NEGATIVE_INFINITY;
 
@@ -736,17 +377,15 @@ public class CascadeEval {
     int docsetOffset = 0;
 
     int docno = 0;
-    if (mDocSet != null) {
-      docno = docsetOffset < mDocSet.length ? mDocSet[docsetOffset++] : Integer.MAX_VALUE;
+    if (docSetSize >= 0) {
+      docno = docsetOffset < docSetSize ? buffers.docnos[docsetOffset++] : Integer.MAX_VALUE;
     } else {
       docno = mMRF.getNextCandidate();
     }
 
-    boolean firstTime = true;
-
     while (docno < Integer.MAX_VALUE) {
-      for (DocumentNode documentNode : mDocNodes) {
-        documentNode.setDocno(docno);
+      for (int i = 0; i < mDocNodes.length; i++) {
+        mDocNodes[i].setDocno(docno);
       }
 
       // Document-at-a-time scoring.
@@ -755,28 +394,17 @@ public class CascadeEval {
 
       float score = 0.0f;
 
-      // Lidan: accumulate document scores across the cascade stages
-//      if (mDocSet != null && cascadeStage != 0) {
-//        score = accumulated_scores[docsetOffset - 1];
-//      }
-
-      // for each query term, its position in a document
-      int[][] termPositions = new int[cliques.size()][];
+      // for each query term, its positions in the document
+      Arrays.fill(termPositions, 0, numTerms, null);
       int doclen = -1;
 
-      for (int i = 0; i < cliques.size(); i++) {
+      for (int i = 0; i < numTerms; i++) {
         // Current clique that we're scoring.
         CascadeClique c = (CascadeClique) cliques.get(i);
 
-        if (firstTime) {
-          termToCliqueNumber.put(c.getConcept().trim().toLowerCase(), i);
-          cf.put(c.getConcept().trim().toLowerCase(), c.termCollectionCF());
-          df.put(c.getConcept().trim().toLowerCase(), c.termCollectionDF());
-        }
-
         if (score + docMaxScore <= scoreThreshold) {
           // Advance postings readers (but don't score).
-          for (int j = i; j < cliques.size(); j++) {
+          for (int j = i; j < numTerms; j++) {
             cliques.get(j).setNextCandidate(docno + 1);
           }
           skipped = true;
@@ -798,73 +426,219 @@ public class CascadeEval {
 
         // stuff needed for document evaluation in the next stage
         int[] p = c.getPositions();
-
         if (p != null) {
-          termPositions[i] = Arrays.copyOf(p, p.length);
+          termPositions[i] = p;
           doclen = c.getDocLen();
         }
       }
 
-      firstTime = false;
-
-      // Keep track of mNumResults best accumulators.
-      if (!skipped && score > scoreThreshold) {
-        a.docno = docno;
-        a.score = score;
-        a.index_into_keptDocs = indexCntKeptDocs;
-        keptDocLengths[indexCntKeptDocs] = doclen;
-
-        mSortedAccumulators.add(a);
-
-        // save positional information for each query term in the document
-        for (int j = 0; j < termPositions.length; j++) {
-
-          if (termPositions[j] != null) {
-            keptDocs[indexCntKeptDocs][j] = Arrays.copyOf(termPositions[j], termPositions[j].length);
+      // Keep track of mNumResults best documents.
+      if (!skipped && score > scoreThreshold && mNumResults > 0) {
+        int slot = -1;
+        if (heapSize < mNumResults) {
+          slot = heapSize;
+          setSlot(slot, docno, score, doclen, numTerms);
+          heap[heapSize++] = slot;
+          siftUp(heapSize - 1);
+        } else {
+          // Re-use the slot of the worst document, if this one beats it. The score threshold is
+          // only set once the heap has filled up, and then the new document always beats it.
+          if (isBetter(score, docno, buffers.slotScores[heap[0]], buffers.slotDocnos[heap[0]])) {
+            slot = heap[0];
+            setSlot(slot, docno, score, doclen, numTerms);
+            siftDown(0, heapSize);
           }
+          scoreThreshold = buffers.slotScores[heap[0]];
         }
+      }
 
-        if (mSortedAccumulators.size() == mNumResults + 1) {
-          a = mSortedAccumulators.poll(); // Re-use the accumulator of the removed document
+      if (docSetSize >= 0) {
+        docno = docsetOffset < docSetSize ? buffers.docnos[docsetOffset++] : Integer.MAX_VALUE;
+      } else {
+        docno = mMRF.getNextCandidate();
+      }
+    }
 
-          // After maximum # docs been put into queue, each time a new document is added, an old
-          // document will be ejected, use the spot freed by the ejected document to store the new
-          // document positional info in keptDocs
+    // Take the documents off the heap, worst first, into the ranking.
+    numDocs = heapSize;
+    meanScore = 0;
+    for (int i = numDocs - 1; i >= 0; i--) {
+      int slot = heap[0];
+      heap[0] = heap[--heapSize];
+      siftDown(0, heapSize);
+
+      buffers.docnos[i] = buffers.slotDocnos[slot];
+      buffers.scores[i] = buffers.slotScores[slot];
+      buffers.slots[i] = slot;
+      meanScore += buffers.scores[i];
+    }
+    meanScore /= numDocs;
+  }
 
-          indexCntKeptDocs = a.index_into_keptDocs;
-          keptDocs[indexCntKeptDocs] = new int[numQueryTerms][];
+  // Puts a document in a slot, along with the positions in termPositions.
+  private void setSlot(int slot, int docno, float score, int doclen, int numTerms) {
+    buffers.slotDocnos[slot] = docno;
+    buffers.slotScores[slot] = score;
+    buffers.docLengths[slot] = doclen;
+    for (int j = 0; j < numTerms; j++) {
+      if (buffers.termPositions[j] != null) {
+        buffers.setPositions(slot, j, buffers.termPositions[j]);
+      } else {
+        buffers.clearPositions(slot, j);
+      }
+    }
+  }
 
-          scoreThreshold = mSortedAccumulators.peek().score;
+  // Heap of slots, with the worst document on top.
+  private void siftUp(int i) {
+    int[] heap = buffers.heap;
+    int slot = heap[i];
+    while (i > 0) {
+      int parent = (i - 1) >>> 1;
+      if (!isBetter(buffers.slotScores[heap[parent]], buffers.slotDocnos[heap[parent]],
+          buffers.slotScores[slot], buffers.slotDocnos[slot])) {
+        break;
+      }
+      heap[i] = heap[parent];
+      i = parent;
+    }
+    heap[i] = slot;
+  }
 
-        } else {
-          a = mAccumulators[mSortedAccumulators.size()]; // Next non-used accumulator in the
-                                                         // accumulator pool
-          indexCntKeptDocs++;
-        }
+  private void siftDown(int i, int heapSize) {
+    int[] heap = buffers.heap;
+    int slot = heap[i];
+    while (true) {
+      int child = 2 * i + 1;
+      if (child >= heapSize) {
+        break;
+      }
+      if (child + 1 < heapSize && isBetter(buffers.slotScores[heap[child]],
+          buffers.slotDocnos[heap[child]], buffers.slotScores[heap[child + 1]],
+          buffers.slotDocnos[heap[child + 1]])) {
+        child++;
+      }
+      if (!isBetter(buffers.slotScores[slot], buffers.slotDocnos[slot],
+          buffers.slotScores[heap[child]], buffers.slotDocnos[heap[child]])) {
+        break;
+      }
+      heap[i] = heap[child];
+      i = child;
+    }
+    heap[i] = slot;
+  }
 
+  // Documents are ranked by score, with ties broken by docno, as in Accumulator.
+  private static boolean isBetter(float score1, int docno1, float score2, int docno2) {
+    return score1 > score2 || (score1 == score2 && docno1 > docno2);
+  }
+
+  // Sorts documents [lo, hi) of the ranking, best first.
+  static void sortByScore(float[] scores, int[] docnos, int[] slots, int lo, int hi) {
+    while (hi - lo > 16) {
+      int mid = (lo + hi) >>> 1;
+      float pivotScore = scores[mid];
+      int pivotDocno = docnos[mid];
+
+      int i = lo;
+      int j = hi - 1;
+      while (i <= j) {
+        while (isBetter(scores[i], docnos[i], pivotScore, pivotDocno)) {
+          i++;
+        }
+        while (isBetter(pivotScore, pivotDocno, scores[j], docnos[j])) {
+          j--;
+        }
+        if (i <= j) {
+          swap(scores, docnos, slots, i++, j--);
+        }
       }
 
-      if (mDocSet != null) {
-        docno = docsetOffset < mDocSet.length ? mDocSet[docsetOffset++] : Integer.MAX_VALUE;
+      // Recurse into the smaller part, and loop over the larger one.
+      if (j - lo < hi - i) {
+        sortByScore(scores, docnos, slots, lo, j + 1);
+        lo = i;
       } else {
-        docno = mMRF.getNextCandidate();
+        sortByScore(scores, docnos, slots, i, hi);
+        hi = j + 1;
       }
     }
 
-    // Grab the accumulators off the stack, in (reverse) order.
-    CascadeAccumulator[] results_tmp = new CascadeAccumulator[Math.min(mNumResults,
-        mSortedAccumulators.size())];
-
-    for (int i = 0; i < results_tmp.length; i++) {
-      results_tmp[results_tmp.length - 1 - i] = mSortedAccumulators.poll();
-      meanScore += results_tmp[results_tmp.length - 1 - i].score;
+    for (int i = lo + 1; i < hi; i++) {
+      for (int j = i; j > lo && isBetter(scores[j], docnos[j], scores[j - 1], docnos[j - 1]); j--) {
+        swap(scores, docnos, slots, j, j - 1);
+      }
     }
+  }
 
-    meanScore /= results_tmp.length;
+  private static void swap(float[] scores, int[] docnos, int[] slots, int i, int j) {
+    float s = scores[i];
+    scores[i] = scores[j];
+    scores[j] = s;
+    int d = docnos[i];
+    docnos[i] = docnos[j];
+    docnos[j] = d;
+    int k = slots[i];
+    slots[i] = slots[j];
+    slots[j] = k;
+  }
 
-    CascadeAccumulator[] results = results_tmp;
+  /**
+   * Counts the ordered windows of two terms, given their sorted positions: each position of the
+   * first term starts a window, which matches if the next position of the second term, at or after
+   * it, is at most {@code size} positions away.
+   */
+  static int countOrderedWindows(int[] positions1, int n1, int[] positions2, int n2, int size) {
+    int matches = 0;
+    int k = 0;
+    for (int i = 0; i < n1; i++) {
+      while (k < n2 && positions2[k] < positions1[i]) {
+        k++;
+      }
+      if (k == n2) {
+        break;
+      }
+      if (positions2[k] - positions1[i] <= size) {
+        matches++;
+      }
+    }
+    return matches;
+  }
 
-    return results;
+  /**
+   * Counts the unordered windows of two terms, given their sorted positions: each position of
+   * either term starts a window, which matches if the next position of the other term spans at
+   * most {@code size} positions with it. When both terms are at the same position, the first term
+   * comes first.
+   */
+  static int countUnorderedWindows(int[] positions1, int n1, int[] positions2, int n2, int size) {
+    int matches = 0;
+    int k = 0;
+    for (int i = 0; i < n1; i++) {
+      while (k < n2 && positions2[k] < positions1[i]) {
+        k++;
+      }
+      if (k == n2) {
+        break;
+      }
+      if (positions2[k] - positions1[i] + 1 <= size) {
+        matches++;
+      }
+    }
+
+    k = 0;
+    for (int i = 0; i < n2; i++) {
+      while (k < n1 && positions1[k] <= positions2[i]) {
+        k++;
+      }
+      if (k == n1) {
+        break;
+      }
+      if (positions1[k] - positions2[i] + 1 <= size) {
+        matches++;
+      }
+    }
+    return matches;
   }
 
   /**
@@ -881,8 +655,8 @@ public class CascadeEval {
     mNumResults = numResults;
   }
 
-  private List<DocumentNode> getDocNodes() {
-    ArrayList<DocumentNode> docNodes = new ArrayList<DocumentNode>();
+  private DocumentNode[] getDocNodes() {
+    List<DocumentNode> docNodes = Lists.newArrayList();
 
     // Check which of the nodes are DocumentNodes.
     List<GraphNode> nodes = mMRF.getNodes();
@@ -891,6 +665,6 @@ public class CascadeEval {
         docNodes.add((DocumentNode) node);
       }
     }
-    return docNodes;
+    return docNodes.toArray(new DocumentNode[docNodes.size()]);
   }
 }
@@ -0,0 +1,116 @@
+/*
+ * Ivory: A Hadoop toolkit for web-scale information retrieval
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package ivory.cascade.retrieval;
+
+import ivory.core.RetrievalException;
+
+/**
+ * Pruning functions applied before each cascade stage. Given the scores of the documents that
+ * survived the previous stage, sorted in descending order, a pruner decides how many of them, from
+ * the top, are passed on to the stage. Pruners are named in the model specification by the first
+ * token of the <code>prune</code> attribute of a feature, e.g., <code>prune="rank 0.3"</code>.
+ */
+public enum CascadePruner {
+  /**
+   * Keeps documents scoring above the point that lies a fraction {@code param} of the way from the
+   * min score to the max score.
+   */
+  SCORE("score") {
+    @Override
+    public int getRetainSize(float[] scores, int n, float param, float meanScore, boolean keepTies) {
+      if (n == 0) {
+        return 0;
+      }
+      float threshold = (scores[0] - scores[n - 1]) * param + scores[n - 1];
+      return countAbove(scores, n, threshold, keepTies);
+    }
+  },
+
+  /**
+   * Keeps documents scoring above the interpolation of the max score and the mean score, with
+   * weight {@code param} on the max score.
+   */
+  MEAN_MAX("mean-max") {
+    @Override
+    public int getRetainSize(float[] scores, int n, float param, float meanScore, boolean keepTies) {
+      if (n == 0) {
+        return 0;
+      }
+      float threshold = param * scores[0] + (1.0f - param) * meanScore;
+      return countAbove(scores, n, threshold, keepTies);
+    }
+  },
+
+  /**
+   * Drops a fraction {@code param} of the documents from the bottom of the ranking, e.g., 0.3
+   * removes the bottom 30% of the documents.
+   */
+  RANK("rank") {
+    @Override
+    public int getRetainSize(float[] scores, int n, float param, float meanScore, boolean keepTies) {
+      return (int) ((1.0 - param) * ((double) n));
+    }
+  };
+
+  private final String name;
+
+  private CascadePruner(String name) {
+    this.name = name;
+  }
+
+  /**
+   * Returns the number of documents to keep.
+   *
+   * @param scores document scores, sorted in descending order
+   * @param n number of documents
+   * @param param pruning parameter
+   * @param meanScore mean score of the documents
+   * @param keepTies whether to keep documents that score exactly the threshold
+   */
+  public abstract int getRetainSize(float[] scores, int n, float param, float meanScore,
+      boolean keepTies);
+
+  /**
+   * Returns the name of this pruner in model specifications.
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Returns the pruner with a given name.
+   *
+   * @throws RetrievalException if there is no such pruner
+   */
+  public static CascadePruner forName(String name) {
+    for (CascadePruner pruner : values()) {
+      if (pruner.name.equals(name)) {
+        return pruner;
+      }
+    }
+    throw new RetrievalException("PruningFunction " + name + " is not supported!");
+  }
+
+  // Scores are sorted, so the documents to keep are a prefix of the ranking.
+  private static int countAbove(float[] scores, int n, float threshold, boolean keepTies) {
+    int size = 0;
+    while (size < n && (scores[size] > threshold || (keepTies && scores[size] == threshold))) {
+      size++;
+    }
+    return size;
+  }
+}
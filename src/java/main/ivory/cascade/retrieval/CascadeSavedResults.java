@@ -0,0 +1,65 @@
+/*
+ * Ivory: A Hadoop toolkit for web-scale information retrieval
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package ivory.cascade.retrieval;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Ranked list of a query saved by a previous run of a cascade model (its internal output file),
+ * from which the next run starts. Docnos and scores are held in parallel arrays, sorted by
+ * descending score.
+ */
+public class CascadeSavedResults {
+  private final int[] docnos;
+  private final float[] scores;
+  private final int size;
+
+  /**
+   * Creates a {@code CascadeSavedResults} object.
+   *
+   * @param docnos docnos, sorted by descending score
+   * @param scores scores, in descending order
+   * @param size number of documents
+   */
+  public CascadeSavedResults(int[] docnos, float[] scores, int size) {
+    Preconditions.checkArgument(size <= docnos.length && size <= scores.length);
+    this.docnos = docnos;
+    this.scores = scores;
+    this.size = size;
+  }
+
+  /**
+   * Returns the docnos. Only the first {@link #size()} are valid.
+   */
+  public int[] getDocnos() {
+    return docnos;
+  }
+
+  /**
+   * Returns the scores. Only the first {@link #size()} are valid.
+   */
+  public float[] getScores() {
+    return scores;
+  }
+
+  /**
+   * Returns the number of documents.
+   */
+  public int size() {
+    return size;
+  }
+}
@@ -48,15 +48,23 @@ public class CascadeThreadedQueryRunner implements CascadeQueryRunner {
 	private ExecutorService mThreadPool;
 	private Map<String, Future<Accumulator[]>> mQueryResults;
 	private int mNumHits;
-	private Map<Integer, Float[][]> savedResults_prevStage = Maps.newHashMap(); //for all queries
+	private Map<String, CascadeSavedResults> savedResults_prevStage; //for all queries
 	private int mK; //K value used in cascade model
 
+	// Working memory of the cascade, reused by all queries run on a thread.
+	private final ThreadLocal<CascadeBuffers> buffers = new ThreadLocal<CascadeBuffers>() {
+		@Override
+		protected CascadeBuffers initialValue() {
+			return new CascadeBuffers();
+		}
+	};
+
 	//assume no more than 1000 queries
 	private float [] cascadeCostAllQueries = new float[1000];
 	private float [] cascadeCostAllQueries_lastStage = new float[1000];
 
 	public CascadeThreadedQueryRunner(MRFBuilder builder, MRFExpander expander, int numThreads,
-	    int numHits, Map<Integer, Float[][]> savedResults, int K) {
+	    int numHits, Map<String, CascadeSavedResults> savedResults, int K) {
 		Preconditions.checkNotNull(builder);
 
 		assert (numThreads > 0);
@@ -181,11 +189,7 @@ public class CascadeThreadedQueryRunner implements CascadeQueryRunner {
 				startTime = System.currentTimeMillis();
 
 				// Build the MRF for this query.
-				Object r = savedResults_prevStage.get(mQid);
-				float [][] savedResults = null; //store docno and score
-				if (r!=null){
-					savedResults = (float[][]) r;
-				}
+				CascadeSavedResults savedResults = savedResults_prevStage.get(mQid);
 				MarkovRandomField mrf = mBuilder.buildMRF(mQuery); 
 
 				// Run initial query, if necessary.
@@ -200,7 +204,7 @@ public class CascadeThreadedQueryRunner implements CascadeQueryRunner {
 				else{
 					if (RetrievalEnvironment.mIsNewModel){
 
-						CascadeEval ranker = new CascadeEval (mrf, mNumHits, mQid, savedResults, mK);
+						CascadeEval ranker = new CascadeEval (mrf, mNumHits, mQid, savedResults, mK, buffers.get());
 
 						// Rank the documents using the cascade model. 
                         	                results = ranker.rank();
@@ -27,6 +27,14 @@ public class Constants {
   public static final String TermIndexWindow = "Ivory.TermIndexWindow";
   public static final String MinSplitSize = "Ivory.MinSplitSize";
   public static final String TermDocVectorSegments = "Ivory.TermDocVectorSegments";
+
+  /**
+   * Whether {@link ivory.core.preprocess.BuildIntDocVectors} should tokenize the collection straight
+   * into termids, rather than read the term doc vectors: false by default. The collection is tokenized
+   * regardless of this setting for indexes whose term doc vectors were deleted.
+   */
+  public static final String IntDocVectorsFromCollection = "Ivory.IntDocVectorsFromCollection";
+
   public static final String Language = "Ivory.Lang";
   public static final String Stemming = "Ivory.IsStemming";
   public static final String StopwordList = "Ivory.Stopwordlist";
@@ -36,21 +44,48 @@ public class Constants {
   public static final String TargetTokenizer = "Ivory.TargetTokenizer";
   public static final String TargetLanguage = "Ivory.TargetLang";
 
+  /**
+   * Memory budget for the LP indexing algorithm: spill in the map phase once partial postings take
+   * up this many MB. Must be less than 2048.
+   */
+  public static final String IndexingMapMemoryBudget = "Ivory.IndexingMapMemoryBudget";
+
+  /**
+   * Number of threads for building an index in a single JVM with
+   * {@link ivory.core.index.LocalIndexBuilder}: number of processors by default.
+   */
+  public static final String LocalIndexingThreads = "Ivory.LocalIndexingThreads";
+
+  /**
+   * Memory budget for building an index in a single JVM, in MB: the partial postings buffered by
+   * all threads together are spilled to disk once they take up this much.
+   */
+  public static final String LocalIndexingMemoryBudget = "Ivory.LocalIndexingMemoryBudget";
+
   /**
    * Memory threshold for the LP indexing algorithm: spill in the map phase after memory fills up to
    * this fraction. Setting is a value between > 0.0 and < 1.0;
+   *
+   * @deprecated the LP indexing algorithm now spills on {@link #IndexingMapMemoryBudget}
    */
+  @Deprecated
   public static final String IndexingMapMemoryThreshold = "Ivory.IndexingMapMemoryThreshold";
 
   /**
    * Memory threshold for the LP indexing algorithm: spill in the reduce phase after memory fills up to
    * this fraction. Setting is a value between > 0.0 and < 1.0;
+   *
+   * @deprecated the LP indexing algorithm now merges all partial lists of a term in one pass
    */
+  @Deprecated
   public static final String IndexingReduceMemoryThreshold = "Ivory.IndexingReduceMemoryThreshold";
 
   /**
    * In the LP indexing algorithm, maximum number of documents to process before forcing a flush,
    * regardless of available memory.
+   *
+   * @deprecated the LP indexing algorithm now spills on {@link #IndexingMapMemoryBudget}
    */
+  @Deprecated
   public static final String MaxNDocsBeforeFlush = "Ivory.MaxNDocsBeforeFlush";
 }
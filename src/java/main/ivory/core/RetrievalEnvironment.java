@@ -17,6 +17,8 @@
 package ivory.core;
 
 import ivory.core.data.dictionary.DefaultFrequencySortedDictionary;
+import ivory.core.data.dictionary.FrequencySortedDictionary;
+import ivory.core.data.dictionary.MappedFrequencySortedDictionary;
 import ivory.core.data.document.IntDocVector;
 import ivory.core.data.document.IntDocVectorsForwardIndex;
 import ivory.core.data.document.TermDocVector;
@@ -24,13 +26,19 @@ import ivory.core.data.document.TermDocVectorsForwardIndex;
 import ivory.core.data.index.IntPostingsForwardIndex;
 import ivory.core.data.index.Posting;
 import ivory.core.data.index.PostingsList;
+import ivory.core.data.index.PostingsListCache;
 import ivory.core.data.index.PostingsReader;
 import ivory.core.data.index.ProximityPostingsReaderOrderedWindow;
 import ivory.core.data.index.ProximityPostingsReaderUnorderedWindow;
 import ivory.core.data.stat.DocLengthTable;
 import ivory.core.data.stat.DocLengthTable2B;
+import ivory.core.data.stat.DocLengthTableMapped;
 import ivory.core.data.stat.DocScoreTable;
+import ivory.core.data.stat.GlobalTermStatistics;
+import ivory.core.data.stat.PhraseStatisticsTable;
+import ivory.core.tokenize.TokenSink;
 import ivory.core.tokenize.Tokenizer;
+import ivory.core.util.MappedFile;
 import ivory.smrf.model.builder.Expression;
 import ivory.smrf.model.importance.ConceptImportanceModel;
 
@@ -43,6 +51,8 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileSystem;
@@ -63,20 +73,36 @@ import edu.umd.cloud9.io.FSProperty;
 public class RetrievalEnvironment {
 	private static final Logger LOG = Logger.getLogger(RetrievalEnvironment.class);
 
-	// Postings reader cache.
-	private final Map<String, PostingsReader> mPostingsReaderCache = new HashMap<String, PostingsReader>(); 	
+	// Default size of the postings list cache, in bytes.
+	public static final long DEFAULT_POSTINGS_CACHE_SIZE = 256L * 1024 * 1024;
+
+	// Default number of document vectors to cache for relevance feedback.
+	public static final int DEFAULT_DOCVECTOR_CACHE_SIZE = 1024;
+
+	// Postings list cache, keyed by term id.
+	private volatile PostingsListCache postingsCache = new PostingsListCache(DEFAULT_POSTINGS_CACHE_SIZE);
 
 	protected int numDocs;                   // Number of documents in collection.
 	protected int numDocsLocal = -1;
 	protected long collectionSize;           // Number of terms in the collection.
 
-	public static int defaultDf;                 // Default df value.
-	public static long defaultCf;                // Default cf value.
+	protected int defaultDf;                 // Default df value.
+	protected long defaultCf;                // Default cf value.
 
 	protected String postingsType;           // Type of postings in the index.
 	protected DocLengthTable doclengths;     // Document length lookup.
 	protected Tokenizer tokenizer;           // Tokenizer for parsing queries.
-	protected DefaultFrequencySortedDictionary termidMap;  // Mapping from terms to term ids.
+	protected FrequencySortedDictionary termidMap;  // Mapping from terms to term ids.
+
+	// Df and cf of every term, read on first use.
+	private volatile GlobalTermStatistics termStatistics;
+	private boolean noTermStatistics = false;
+
+	// Precomputed df and cf of proximity expressions, if the index has them.
+	protected PhraseStatisticsTable phraseStats;
+
+	// Proximity expressions in their string form, e.g., "#od1(a b)".
+	private static final Pattern PROXIMITY_EXPRESSION = Pattern.compile("#(od|uw)(\\d+)\\(\\s*(.*?)\\s*\\)");
 
 	protected IntPostingsForwardIndex postingsIndex;     // Forward index into postings.
 	protected IntDocVectorsForwardIndex docvectorsIndex; // Forward index into int doc vectors.
@@ -111,6 +137,7 @@ public class RetrievalEnvironment {
 
 		// Suppress verbose output.
 		Logger.getLogger(DocLengthTable2B.class).setLevel(Level.WARN);
+		Logger.getLogger(DocLengthTableMapped.class).setLevel(Level.WARN);
 
 		// get number of documents
 		numDocs = readCollectionDocumentCount();
@@ -157,22 +184,39 @@ public class RetrievalEnvironment {
 		LOG.info("Done!");
 
 		try {
-			termidMap = new DefaultFrequencySortedDictionary(new Path(getIndexTermsData()),
-			    new Path(getIndexTermIdsData()), new Path(getIndexTermIdMappingData()), fs);
+			// Map the dictionary if the index has one in that format and is local.
+			if (MappedFile.canMap(fs) && fs.exists(new Path(getIndexDictionaryData()))) {
+				termidMap = new MappedFrequencySortedDictionary(new Path(getIndexDictionaryData()), fs);
+			} else {
+				termidMap = new DefaultFrequencySortedDictionary(new Path(getIndexTermsData()),
+				    new Path(getIndexTermIdsData()), new Path(getIndexTermIdMappingData()), fs);
+			}
 		} catch (Exception e) {
 			throw new ConfigurationException("Error initializing dictionary!");
 		}
 
 		try {
 			docvectorsIndex = new IntDocVectorsForwardIndex(indexPath, fs);
+			docvectorsIndex.setCacheSize(DEFAULT_DOCVECTOR_CACHE_SIZE);
 		} catch (Exception e) {
 			LOG.warn("Unable to load IntDocVectorsForwardIndex: relevance feedback will not be available.");
 		}
 
+		// Map the precomputed statistics of proximity expressions, if there are any.
+		if (MappedFile.canMap(fs) && fs.exists(new Path(getPhraseStatisticsData()))) {
+			phraseStats = new PhraseStatisticsTable(new Path(getPhraseStatisticsData()), fs);
+			LOG.info("Phrase statistics: " + phraseStats.getNumPhrases() + " phrases");
+		}
+
 		// Read the table of doc lengths.
 		if (loadDoclengths) {
 			LOG.info("Loading doclengths table...");
-			doclengths = new DocLengthTable2B(getDoclengthsData(), fs);
+			// Map the table when the index is local, rather than reading it all onto the heap.
+			if (MappedFile.canMap(fs)) {
+				doclengths = new DocLengthTableMapped(getDoclengthsData(), fs);
+			} else {
+				doclengths = new DocLengthTable2B(getDoclengthsData(), fs);
+			}
 			LOG.info(" - Number of docs: " + doclengths.getDocCount());
 			LOG.info(" - Avg. doc length: " + doclengths.getAvgDocLength());
 			LOG.info("Done!");
@@ -244,6 +288,11 @@ public class RetrievalEnvironment {
 						readers.add(reader);
 				}
 
+				// No postings for any of the terms, so there can be no windows either.
+				if (readers.isEmpty()) {
+					return null;
+				}
+
 				postingsReader = new ProximityPostingsReaderOrderedWindow(readers.toArray(new PostingsReader[0]), gapSize);
 			} else if (exp.getType().equals(Expression.Type.UW)) {
 				int windowSize = exp.getWindow();
@@ -256,6 +305,11 @@ public class RetrievalEnvironment {
 						readers.add(reader);
 				}
 
+				// No postings for any of the terms, so there can be no windows either.
+				if (readers.isEmpty()) {
+					return null;
+				}
+
 				postingsReader = new ProximityPostingsReaderUnorderedWindow(readers.toArray(new PostingsReader[0]), windowSize);
 			} else {
 				postingsReader = constructPostingsReader(exp.getTerms()[0]);
@@ -269,32 +323,69 @@ public class RetrievalEnvironment {
 
 	protected PostingsReader constructPostingsReader(String expression) throws Exception {
 		//LOG.info("**constructPostingsReader("+expression+")");
-		PostingsReader reader = null;
-
-		if (mPostingsReaderCache != null) {
-			reader = mPostingsReaderCache.get(expression);
+		PostingsList list = getPostingsList(expression);
+		if (list == null) {
+			return null;
 		}
 
-		if (reader == null) {
-			PostingsList list = getPostingsList(expression);
-			if (list == null) {
-				return null;
-			}
+		// Always hand out a fresh cursor: readers are stateful and must not be shared.
+		return list.getPostingsReader();
+	}
 
-			reader = (PostingsReader) list.getPostingsReader();
+	/**
+	 * Readers are no longer cached, so there is nothing to clear; postings lists are held in a
+	 * bounded cache instead (see {@link #getPostingsListCache()}).
+	 *
+	 * @deprecated use {@link #clearPostingsListCache()} to drop cached postings lists
+	 */
+	@Deprecated
+	public void clearPostingsReaderCache() {
+	}
 
-			if (mPostingsReaderCache != null) {
-				mPostingsReaderCache.put(expression, reader);
-			}
-		}
+	/**
+	 * Sets the size of the postings list cache, in bytes, discarding its current contents. A size
+	 * of zero disables caching.
+	 */
+	public void setPostingsListCacheSize(long bytes) {
+		postingsCache = new PostingsListCache(bytes);
+	}
 
-		return reader;
+	/**
+	 * Returns the postings list cache, e.g., to inspect hit, miss, and eviction counts.
+	 */
+	public PostingsListCache getPostingsListCache() {
+		return postingsCache;
 	}
 
-	public void clearPostingsReaderCache() {
-		mPostingsReaderCache.clear();
+	/**
+	 * Removes all postings lists from the cache.
+	 */
+	public void clearPostingsListCache() {
+		postingsCache.clear();
 	}
 
+	private final PostingsListCache.Loader postingsLoader = new PostingsListCache.Loader() {
+		@Override
+		public PostingsList load(int termid) throws IOException {
+			PostingsList value = postingsIndex.getPostingsList(termid);
+			if (value == null) {
+				return null;
+			}
+
+			if (numDocsLocal != -1) {
+				value.setCollectionDocumentCount(numDocsLocal);
+			} else {
+				value.setCollectionDocumentCount(numDocs);
+			}
+
+			return value;
+		}
+	};
+
+	/**
+	 * Returns the postings list for a term. Postings lists are cached and shared, and so should be
+	 * treated as read-only; use {@link PostingsList#getPostingsReader()} to iterate over them.
+	 */
 	public PostingsList getPostingsList(String term) {
 		//LOG.info("**getPostingsList("+term+")");
 		int termid = termidMap.getId(term);
@@ -311,7 +402,7 @@ public class RetrievalEnvironment {
 
 		PostingsList value;
 		try {
-			value = postingsIndex.getPostingsList(termid);
+			value = postingsCache.get(termid, postingsLoader);
 
 			if (value == null) {
 				LOG.error("[1] couldn't find PostingsList for term \"" + term + "\"");
@@ -322,39 +413,75 @@ public class RetrievalEnvironment {
 			return null;
 		}
 
-		if (numDocsLocal != -1) {
-			value.setCollectionDocumentCount(numDocsLocal);
-		} else {
-			value.setCollectionDocumentCount(numDocs);
-		}
-
 		return value;
 	}
 
 	public IntDocVector[] documentVectors(int[] docSet) {
-		IntDocVector[] dvs = new IntDocVector[docSet.length];
+		return documentVectors(docSet, new IntDocVector[docSet.length]);
+	}
 
+	/**
+	 * Fetches the document vectors for a set of docnos in one batch, reading them into the
+	 * instances already held in {@code dvs} where possible.
+	 *
+	 * @see IntDocVectorsForwardIndex#getDocVectors(int[], IntDocVector[])
+	 */
+	public IntDocVector[] documentVectors(int[] docSet, IntDocVector[] dvs) {
 		try {
-			for (int i = 0; i < docSet.length; i++) {
-				dvs[i] = docvectorsIndex.getDocVector(docSet[i]);
-			}
+			return docvectorsIndex.getDocVectors(docSet, dvs);
 		} catch (IOException e) {
 			LOG.error("Unable to retrieve document vectors!");
 			return null;
 		}
+	}
 
-		return dvs;
+	/**
+	 * Sets the number of document vectors to keep in the LRU cache, discarding its current contents.
+	 * A size of zero disables caching.
+	 */
+	public void setDocVectorCacheSize(int vectors) {
+		if (docvectorsIndex == null) {
+			LOG.warn("No IntDocVectorsForwardIndex: ignoring doc vector cache size.");
+			return;
+		}
+		docvectorsIndex.setCacheSize(vectors);
+	}
+
+	/**
+	 * Returns the df and cf of every term, or null if the index doesn't have df and cf tables. The
+	 * tables are read on first use.
+	 */
+	public GlobalTermStatistics getTermStatistics() {
+		GlobalTermStatistics stats = termStatistics;
+		if (stats == null) {
+			synchronized (this) {
+				if (termStatistics == null && !noTermStatistics) {
+					try {
+						termStatistics = new GlobalTermStatistics(this, fs);
+					} catch (IOException e) {
+						LOG.warn("Unable to load df and cf tables: term statistics will be read from postings.");
+						noTermStatistics = true;
+					}
+				}
+				stats = termStatistics;
+			}
+		}
+		return stats;
 	}
 
 	/**
 	 * Returns the collection frequency of a particular expression.
 	 */
 	public long collectionFrequency(String expression) {
-		// Heuristic: we currently don't support cf for proximity expressions.
-		if (expression.startsWith("#od")) {
-			return defaultCf;
-		} else if (expression.startsWith("#uw")) {
-			return defaultCf;
+		// Proximity expressions get the default cf, unless their statistics have been precomputed.
+		if (expression.startsWith("#od") || expression.startsWith("#uw")) {
+			Expression exp = parseProximityExpression(expression);
+			return exp == null ? defaultCf : collectionFrequency(exp);
+		}
+
+		GlobalTermStatistics stats = getTermStatistics();
+		if (stats != null) {
+			return stats.getCf(termidMap.getId(expression));
 		}
 
 		try {
@@ -365,15 +492,31 @@ public class RetrievalEnvironment {
 		}
 	}
 
+	/**
+	 * Returns the collection frequency of an expression. Proximity expressions get their
+	 * precomputed cf if there is one, and the default cf otherwise.
+	 */
+	public long collectionFrequency(Expression exp) {
+		if (exp.getType().equals(Expression.Type.TERM)) {
+			return collectionFrequency(exp.getTerms()[0]);
+		}
+		int phrase = findPhrase(exp);
+		return phrase < 0 ? defaultCf : phraseStats.getCf(phrase);
+	}
+
 	/**
 	 * Returns the document frequency of a particular expression.
 	 */
 	public int documentFrequency(String expression) {
-		// Heuristic: we currently don't support df for proximity expressions.
-		if (expression.startsWith("#od")) {
-			return defaultDf;
-		} else if (expression.startsWith("#uw")) {
-			return defaultDf;
+		// Proximity expressions get the default df, unless their statistics have been precomputed.
+		if (expression.startsWith("#od") || expression.startsWith("#uw")) {
+			Expression exp = parseProximityExpression(expression);
+			return exp == null ? defaultDf : documentFrequency(exp);
+		}
+
+		GlobalTermStatistics stats = getTermStatistics();
+		if (stats != null) {
+			return stats.getDf(termidMap.getId(expression));
 		}
 
 		try {
@@ -384,6 +527,60 @@ public class RetrievalEnvironment {
 		}
 	}
 
+	/**
+	 * Returns the document frequency of an expression. Proximity expressions get their
+	 * precomputed df if there is one, and the default df otherwise.
+	 */
+	public int documentFrequency(Expression exp) {
+		if (exp.getType().equals(Expression.Type.TERM)) {
+			return documentFrequency(exp.getTerms()[0]);
+		}
+		int phrase = findPhrase(exp);
+		return phrase < 0 ? defaultDf : phraseStats.getDf(phrase);
+	}
+
+	/**
+	 * Returns the precomputed statistics of proximity expressions, or null if the index doesn't
+	 * have any.
+	 */
+	public PhraseStatisticsTable getPhraseStatistics() {
+		return phraseStats;
+	}
+
+	/**
+	 * Returns whether the df and cf of a proximity expression have been precomputed, rather than
+	 * being defaults.
+	 */
+	public boolean hasPhraseStatistics(Expression exp) {
+		return findPhrase(exp) >= 0;
+	}
+
+	// Returns the index of a proximity expression in the phrase statistics table, or -1.
+	private int findPhrase(Expression exp) {
+		boolean ordered = exp.getType().equals(Expression.Type.OD);
+		if (phraseStats == null || exp.getTerms().length != 2
+		    || !(ordered || exp.getType().equals(Expression.Type.UW))) {
+			return -1;
+		}
+
+		int termid1 = termidMap.getId(exp.getTerms()[0]);
+		int termid2 = termidMap.getId(exp.getTerms()[1]);
+		if (termid1 <= 0 || termid2 <= 0) {
+			return -1;
+		}
+		return phraseStats.find(ordered, exp.getWindow(), termid1, termid2);
+	}
+
+	// Parses a proximity expression such as "#od1(a b)", or returns null if it isn't one.
+	private static Expression parseProximityExpression(String expression) {
+		Matcher m = PROXIMITY_EXPRESSION.matcher(expression);
+		if (!m.matches()) {
+			return null;
+		}
+		return new Expression(m.group(1).equals("od") ? Expression.Type.OD : Expression.Type.UW,
+		    Integer.parseInt(m.group(2)), m.group(3).split("\\s+"));
+	}
+
 	public String getTermFromId(int termid) {
 		return termidMap.getTerm(termid);
 	}
@@ -404,6 +601,19 @@ public class RetrievalEnvironment {
 		return tokenizer.processContent(text);
 	}
 
+	/**
+	 * Tokenizes text like {@link #tokenize(String)}, streaming the tokens into
+	 * a sink instead of returning them as an array.
+	 * 
+	 * @param text
+	 *            text to tokenize
+	 * @param sink
+	 *            receives each token
+	 */
+	public void tokenize(String text, TokenSink sink) {
+		tokenizer.processContent(text, sink);
+	}
+
 	/**
 	 * Returns the default document frequency.
 	 */
@@ -547,6 +757,24 @@ public class RetrievalEnvironment {
 		return appendPath(indexPath, "index-termid-mapping.dat");
 	}
 
+	/**
+	 * Returns file that contains the precomputed document and collection
+	 * frequencies of proximity expressions, in the format read by
+	 * {@link PhraseStatisticsTable}.
+	 */
+	public String getPhraseStatisticsData() {
+		return appendPath(indexPath, "phrase-stats.dat");
+	}
+
+	/**
+	 * Returns file that contains the dictionary in the format read by
+	 * {@link MappedFrequencySortedDictionary}, which maps terms to term ids and
+	 * back without loading anything onto the heap.
+	 */
+	public String getIndexDictionaryData() {
+		return appendPath(indexPath, "index-dictionary.dat");
+	}
+
 	/**
 	 * Returns file that contains a list of document frequencies sorted by the
 	 * alphabetical order of terms. The file consists of a stream of ints, read
@@ -96,6 +96,17 @@ public class BitInputStream  {
 	public void close() throws IOException {
 		dis.close();
 	}
+
+	/**
+	 * Restarts reading from the current position of the underlying stream,
+	 * e.g., after the caller has repositioned it. Offsets are counted from there.
+	 * @throws java.io.IOException if an I/O error occurs
+	 */
+	public void restart() throws IOException {
+		byteOffset = 0;
+		bitOffset = 0;
+		byteRead = dis.readByte();
+	}
 	
 	/**
 	 * Returns the byte offset of the stream. 
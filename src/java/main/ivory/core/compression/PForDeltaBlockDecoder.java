@@ -0,0 +1,881 @@
+/*
+ * Ivory: A Hadoop toolkit for web-scale information retrieval
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package ivory.core.compression;
+
+import java.util.Arrays;
+
+import com.google.common.base.Preconditions;
+import com.kamikaze.pfordelta.PForDelta;
+
+/**
+ * Decoder for blocks compressed with {@code com.kamikaze.pfordelta.PForDelta}, producing exactly
+ * what {@code PForDelta.decompressOneBlock} does, only faster. A block is a header word (bit
+ * width b and number of exceptions), followed by the low b bits of every value packed 32 values
+ * to b words, followed by the positions and high bits of the exceptions, both Simple16 coded.
+ * The packed values are unpacked 32 at a time by straight-line code specialized for each bit
+ * width, with no branches or variable shifts for the JIT to deal with; any values left over at
+ * the end of a short block are read one at a time. Exceptions are rare, and are left to
+ * kamikaze's Simple16 decoder. Unlike {@code decompressOneBlock}, decoding doesn't allocate.
+ * Instances hold scratch space, so they aren't thread-safe.
+ */
+public class PForDeltaBlockDecoder {
+  // Simple16 decodes up to 28 values at a time, and may run past the ones we asked for.
+  private static final int S16_SLACK = 28;
+
+  private int[] exceptionPositions = new int[128 + S16_SLACK];
+  private int[] exceptionHighBits = new int[128 + S16_SLACK];
+
+  /**
+   * Decodes a block.
+   *
+   * @param out array to hold the values, with room for at least {@code n} of them
+   * @param block compressed block
+   * @param n number of values in the block
+   */
+  public void decode(int[] out, int[] block, int n) {
+    Preconditions.checkArgument(out.length >= n);
+
+    int numExceptions = block[0] & 0x3ffffff;
+    int bits = (block[0] >>> 26) & 0x1f;
+
+    int groups = n >>> 5;
+    switch (bits) {
+      case 0: Arrays.fill(out, 0, n, 0); groups = (n + 31) >>> 5; break; // Tail included.
+      case 1: unpack1(out, block, groups); break;
+      case 2: unpack2(out, block, groups); break;
+      case 3: unpack3(out, block, groups); break;
+      case 4: unpack4(out, block, groups); break;
+      case 5: unpack5(out, block, groups); break;
+      case 6: unpack6(out, block, groups); break;
+      case 7: unpack7(out, block, groups); break;
+      case 8: unpack8(out, block, groups); break;
+      case 9: unpack9(out, block, groups); break;
+      case 10: unpack10(out, block, groups); break;
+      case 11: unpack11(out, block, groups); break;
+      case 12: unpack12(out, block, groups); break;
+      case 13: unpack13(out, block, groups); break;
+      case 16: unpack16(out, block, groups); break;
+      case 20: unpack20(out, block, groups); break;
+      case 28: unpack28(out, block, groups); break;
+      default: groups = 0; break;
+    }
+
+    // Values that don't fill a group of 32.
+    for (int i = groups << 5; i < n; i++) {
+      out[i] = readBits(block, 32 + i * bits, bits);
+    }
+
+    if (numExceptions > 0) {
+      patchExceptions(out, block, 32 + n * bits, numExceptions, bits);
+    }
+  }
+
+  /**
+   * Decodes a block of gaps, e.g., between docnos, turning them back into the values.
+   *
+   * @param out array to hold the values, with room for at least {@code n} of them
+   * @param block compressed block
+   * @param n number of values in the block
+   */
+  public void decodeGaps(int[] out, int[] block, int n) {
+    decode(out, block, n);
+    for (int i = 1; i < n; i++) {
+      out[i] += out[i - 1];
+    }
+  }
+
+  private void patchExceptions(int[] out, int[] block, int offset, int numExceptions, int bits) {
+    if (exceptionPositions.length < numExceptions + S16_SLACK) {
+      exceptionPositions = new int[numExceptions + S16_SLACK];
+      exceptionHighBits = new int[numExceptions + S16_SLACK];
+    }
+
+    offset += PForDelta.decompressBlockByS16(exceptionPositions, block, offset, numExceptions);
+    PForDelta.decompressBlockByS16(exceptionHighBits, block, offset, numExceptions);
+
+    int highMask = bits == 0 ? -1 : (1 << (32 - bits)) - 1;
+    for (int i = 0; i < numExceptions; i++) {
+      int p = exceptionPositions[i];
+      out[p] |= (exceptionHighBits[i] & highMask) << bits;
+    }
+  }
+
+  // Reads a value of the given width starting at the given bit offset.
+  private static int readBits(int[] in, int offset, int bits) {
+    if (bits == 0) {
+      return 0;
+    }
+
+    int word = offset >>> 5;
+    int shift = offset & 31;
+    int value = in[word] >>> shift;
+    if (shift + bits > 32) {
+      value |= in[word + 1] << (32 - shift);
+    }
+    return bits == 32 ? value : value & ((1 << bits) - 1);
+  }
+
+  // The methods below unpack groups of 32 values of a fixed width, starting right after the
+  // header. They all follow the same pattern, and were generated rather than written by hand.
+
+  private static void unpack1(int[] out, int[] in, int groups) {
+    for (int g = 0, o = 0, i = 1; g < groups; g++, o += 32, i += 1) {
+      final int w0 = in[i];
+      out[o] = w0 & 0x1;
+      out[o + 1] = (w0 >>> 1) & 0x1;
+      out[o + 2] = (w0 >>> 2) & 0x1;
+      out[o + 3] = (w0 >>> 3) & 0x1;
+      out[o + 4] = (w0 >>> 4) & 0x1;
+      out[o + 5] = (w0 >>> 5) & 0x1;
+      out[o + 6] = (w0 >>> 6) & 0x1;
+      out[o + 7] = (w0 >>> 7) & 0x1;
+      out[o + 8] = (w0 >>> 8) & 0x1;
+      out[o + 9] = (w0 >>> 9) & 0x1;
+      out[o + 10] = (w0 >>> 10) & 0x1;
+      out[o + 11] = (w0 >>> 11) & 0x1;
+      out[o + 12] = (w0 >>> 12) & 0x1;
+      out[o + 13] = (w0 >>> 13) & 0x1;
+      out[o + 14] = (w0 >>> 14) & 0x1;
+      out[o + 15] = (w0 >>> 15) & 0x1;
+      out[o + 16] = (w0 >>> 16) & 0x1;
+      out[o + 17] = (w0 >>> 17) & 0x1;
+      out[o + 18] = (w0 >>> 18) & 0x1;
+      out[o + 19] = (w0 >>> 19) & 0x1;
+      out[o + 20] = (w0 >>> 20) & 0x1;
+      out[o + 21] = (w0 >>> 21) & 0x1;
+      out[o + 22] = (w0 >>> 22) & 0x1;
+      out[o + 23] = (w0 >>> 23) & 0x1;
+      out[o + 24] = (w0 >>> 24) & 0x1;
+      out[o + 25] = (w0 >>> 25) & 0x1;
+      out[o + 26] = (w0 >>> 26) & 0x1;
+      out[o + 27] = (w0 >>> 27) & 0x1;
+      out[o + 28] = (w0 >>> 28) & 0x1;
+      out[o + 29] = (w0 >>> 29) & 0x1;
+      out[o + 30] = (w0 >>> 30) & 0x1;
+      out[o + 31] = w0 >>> 31;
+    }
+  }
+
+  private static void unpack2(int[] out, int[] in, int groups) {
+    for (int g = 0, o = 0, i = 1; g < groups; g++, o += 32, i += 2) {
+      final int w0 = in[i];
+      final int w1 = in[i + 1];
+      out[o] = w0 & 0x3;
+      out[o + 1] = (w0 >>> 2) & 0x3;
+      out[o + 2] = (w0 >>> 4) & 0x3;
+      out[o + 3] = (w0 >>> 6) & 0x3;
+      out[o + 4] = (w0 >>> 8) & 0x3;
+      out[o + 5] = (w0 >>> 10) & 0x3;
+      out[o + 6] = (w0 >>> 12) & 0x3;
+      out[o + 7] = (w0 >>> 14) & 0x3;
+      out[o + 8] = (w0 >>> 16) & 0x3;
+      out[o + 9] = (w0 >>> 18) & 0x3;
+      out[o + 10] = (w0 >>> 20) & 0x3;
+      out[o + 11] = (w0 >>> 22) & 0x3;
+      out[o + 12] = (w0 >>> 24) & 0x3;
+      out[o + 13] = (w0 >>> 26) & 0x3;
+      out[o + 14] = (w0 >>> 28) & 0x3;
+      out[o + 15] = w0 >>> 30;
+      out[o + 16] = w1 & 0x3;
+      out[o + 17] = (w1 >>> 2) & 0x3;
+      out[o + 18] = (w1 >>> 4) & 0x3;
+      out[o + 19] = (w1 >>> 6) & 0x3;
+      out[o + 20] = (w1 >>> 8) & 0x3;
+      out[o + 21] = (w1 >>> 10) & 0x3;
+      out[o + 22] = (w1 >>> 12) & 0x3;
+      out[o + 23] = (w1 >>> 14) & 0x3;
+      out[o + 24] = (w1 >>> 16) & 0x3;
+      out[o + 25] = (w1 >>> 18) & 0x3;
+      out[o + 26] = (w1 >>> 20) & 0x3;
+      out[o + 27] = (w1 >>> 22) & 0x3;
+      out[o + 28] = (w1 >>> 24) & 0x3;
+      out[o + 29] = (w1 >>> 26) & 0x3;
+      out[o + 30] = (w1 >>> 28) & 0x3;
+      out[o + 31] = w1 >>> 30;
+    }
+  }
+
+  private static void unpack3(int[] out, int[] in, int groups) {
+    for (int g = 0, o = 0, i = 1; g < groups; g++, o += 32, i += 3) {
+      final int w0 = in[i];
+      final int w1 = in[i + 1];
+      final int w2 = in[i + 2];
+      out[o] = w0 & 0x7;
+      out[o + 1] = (w0 >>> 3) & 0x7;
+      out[o + 2] = (w0 >>> 6) & 0x7;
+      out[o + 3] = (w0 >>> 9) & 0x7;
+      out[o + 4] = (w0 >>> 12) & 0x7;
+      out[o + 5] = (w0 >>> 15) & 0x7;
+      out[o + 6] = (w0 >>> 18) & 0x7;
+      out[o + 7] = (w0 >>> 21) & 0x7;
+      out[o + 8] = (w0 >>> 24) & 0x7;
+      out[o + 9] = (w0 >>> 27) & 0x7;
+      out[o + 10] = ((w0 >>> 30) | (w1 << 2)) & 0x7;
+      out[o + 11] = (w1 >>> 1) & 0x7;
+      out[o + 12] = (w1 >>> 4) & 0x7;
+      out[o + 13] = (w1 >>> 7) & 0x7;
+      out[o + 14] = (w1 >>> 10) & 0x7;
+      out[o + 15] = (w1 >>> 13) & 0x7;
+      out[o + 16] = (w1 >>> 16) & 0x7;
+      out[o + 17] = (w1 >>> 19) & 0x7;
+      out[o + 18] = (w1 >>> 22) & 0x7;
+      out[o + 19] = (w1 >>> 25) & 0x7;
+      out[o + 20] = (w1 >>> 28) & 0x7;
+      out[o + 21] = ((w1 >>> 31) | (w2 << 1)) & 0x7;
+      out[o + 22] = (w2 >>> 2) & 0x7;
+      out[o + 23] = (w2 >>> 5) & 0x7;
+      out[o + 24] = (w2 >>> 8) & 0x7;
+      out[o + 25] = (w2 >>> 11) & 0x7;
+      out[o + 26] = (w2 >>> 14) & 0x7;
+      out[o + 27] = (w2 >>> 17) & 0x7;
+      out[o + 28] = (w2 >>> 20) & 0x7;
+      out[o + 29] = (w2 >>> 23) & 0x7;
+      out[o + 30] = (w2 >>> 26) & 0x7;
+      out[o + 31] = w2 >>> 29;
+    }
+  }
+
+  private static void unpack4(int[] out, int[] in, int groups) {
+    for (int g = 0, o = 0, i = 1; g < groups; g++, o += 32, i += 4) {
+      final int w0 = in[i];
+      final int w1 = in[i + 1];
+      final int w2 = in[i + 2];
+      final int w3 = in[i + 3];
+      out[o] = w0 & 0xf;
+      out[o + 1] = (w0 >>> 4) & 0xf;
+      out[o + 2] = (w0 >>> 8) & 0xf;
+      out[o + 3] = (w0 >>> 12) & 0xf;
+      out[o + 4] = (w0 >>> 16) & 0xf;
+      out[o + 5] = (w0 >>> 20) & 0xf;
+      out[o + 6] = (w0 >>> 24) & 0xf;
+      out[o + 7] = w0 >>> 28;
+      out[o + 8] = w1 & 0xf;
+      out[o + 9] = (w1 >>> 4) & 0xf;
+      out[o + 10] = (w1 >>> 8) & 0xf;
+      out[o + 11] = (w1 >>> 12) & 0xf;
+      out[o + 12] = (w1 >>> 16) & 0xf;
+      out[o + 13] = (w1 >>> 20) & 0xf;
+      out[o + 14] = (w1 >>> 24) & 0xf;
+      out[o + 15] = w1 >>> 28;
+      out[o + 16] = w2 & 0xf;
+      out[o + 17] = (w2 >>> 4) & 0xf;
+      out[o + 18] = (w2 >>> 8) & 0xf;
+      out[o + 19] = (w2 >>> 12) & 0xf;
+      out[o + 20] = (w2 >>> 16) & 0xf;
+      out[o + 21] = (w2 >>> 20) & 0xf;
+      out[o + 22] = (w2 >>> 24) & 0xf;
+      out[o + 23] = w2 >>> 28;
+      out[o + 24] = w3 & 0xf;
+      out[o + 25] = (w3 >>> 4) & 0xf;
+      out[o + 26] = (w3 >>> 8) & 0xf;
+      out[o + 27] = (w3 >>> 12) & 0xf;
+      out[o + 28] = (w3 >>> 16) & 0xf;
+      out[o + 29] = (w3 >>> 20) & 0xf;
+      out[o + 30] = (w3 >>> 24) & 0xf;
+      out[o + 31] = w3 >>> 28;
+    }
+  }
+
+  private static void unpack5(int[] out, int[] in, int groups) {
+    for (int g = 0, o = 0, i = 1; g < groups; g++, o += 32, i += 5) {
+      final int w0 = in[i];
+      final int w1 = in[i + 1];
+      final int w2 = in[i + 2];
+      final int w3 = in[i + 3];
+      final int w4 = in[i + 4];
+      out[o] = w0 & 0x1f;
+      out[o + 1] = (w0 >>> 5) & 0x1f;
+      out[o + 2] = (w0 >>> 10) & 0x1f;
+      out[o + 3] = (w0 >>> 15) & 0x1f;
+      out[o + 4] = (w0 >>> 20) & 0x1f;
+      out[o + 5] = (w0 >>> 25) & 0x1f;
+      out[o + 6] = ((w0 >>> 30) | (w1 << 2)) & 0x1f;
+      out[o + 7] = (w1 >>> 3) & 0x1f;
+      out[o + 8] = (w1 >>> 8) & 0x1f;
+      out[o + 9] = (w1 >>> 13) & 0x1f;
+      out[o + 10] = (w1 >>> 18) & 0x1f;
+      out[o + 11] = (w1 >>> 23) & 0x1f;
+      out[o + 12] = ((w1 >>> 28) | (w2 << 4)) & 0x1f;
+      out[o + 13] = (w2 >>> 1) & 0x1f;
+      out[o + 14] = (w2 >>> 6) & 0x1f;
+      out[o + 15] = (w2 >>> 11) & 0x1f;
+      out[o + 16] = (w2 >>> 16) & 0x1f;
+      out[o + 17] = (w2 >>> 21) & 0x1f;
+      out[o + 18] = (w2 >>> 26) & 0x1f;
+      out[o + 19] = ((w2 >>> 31) | (w3 << 1)) & 0x1f;
+      out[o + 20] = (w3 >>> 4) & 0x1f;
+      out[o + 21] = (w3 >>> 9) & 0x1f;
+      out[o + 22] = (w3 >>> 14) & 0x1f;
+      out[o + 23] = (w3 >>> 19) & 0x1f;
+      out[o + 24] = (w3 >>> 24) & 0x1f;
+      out[o + 25] = ((w3 >>> 29) | (w4 << 3)) & 0x1f;
+      out[o + 26] = (w4 >>> 2) & 0x1f;
+      out[o + 27] = (w4 >>> 7) & 0x1f;
+      out[o + 28] = (w4 >>> 12) & 0x1f;
+      out[o + 29] = (w4 >>> 17) & 0x1f;
+      out[o + 30] = (w4 >>> 22) & 0x1f;
+      out[o + 31] = w4 >>> 27;
+    }
+  }
+
+  private static void unpack6(int[] out, int[] in, int groups) {
+    for (int g = 0, o = 0, i = 1; g < groups; g++, o += 32, i += 6) {
+      final int w0 = in[i];
+      final int w1 = in[i + 1];
+      final int w2 = in[i + 2];
+      final int w3 = in[i + 3];
+      final int w4 = in[i + 4];
+      final int w5 = in[i + 5];
+      out[o] = w0 & 0x3f;
+      out[o + 1] = (w0 >>> 6) & 0x3f;
+      out[o + 2] = (w0 >>> 12) & 0x3f;
+      out[o + 3] = (w0 >>> 18) & 0x3f;
+      out[o + 4] = (w0 >>> 24) & 0x3f;
+      out[o + 5] = ((w0 >>> 30) | (w1 << 2)) & 0x3f;
+      out[o + 6] = (w1 >>> 4) & 0x3f;
+      out[o + 7] = (w1 >>> 10) & 0x3f;
+      out[o + 8] = (w1 >>> 16) & 0x3f;
+      out[o + 9] = (w1 >>> 22) & 0x3f;
+      out[o + 10] = ((w1 >>> 28) | (w2 << 4)) & 0x3f;
+      out[o + 11] = (w2 >>> 2) & 0x3f;
+      out[o + 12] = (w2 >>> 8) & 0x3f;
+      out[o + 13] = (w2 >>> 14) & 0x3f;
+      out[o + 14] = (w2 >>> 20) & 0x3f;
+      out[o + 15] = w2 >>> 26;
+      out[o + 16] = w3 & 0x3f;
+      out[o + 17] = (w3 >>> 6) & 0x3f;
+      out[o + 18] = (w3 >>> 12) & 0x3f;
+      out[o + 19] = (w3 >>> 18) & 0x3f;
+      out[o + 20] = (w3 >>> 24) & 0x3f;
+      out[o + 21] = ((w3 >>> 30) | (w4 << 2)) & 0x3f;
+      out[o + 22] = (w4 >>> 4) & 0x3f;
+      out[o + 23] = (w4 >>> 10) & 0x3f;
+      out[o + 24] = (w4 >>> 16) & 0x3f;
+      out[o + 25] = (w4 >>> 22) & 0x3f;
+      out[o + 26] = ((w4 >>> 28) | (w5 << 4)) & 0x3f;
+      out[o + 27] = (w5 >>> 2) & 0x3f;
+      out[o + 28] = (w5 >>> 8) & 0x3f;
+      out[o + 29] = (w5 >>> 14) & 0x3f;
+      out[o + 30] = (w5 >>> 20) & 0x3f;
+      out[o + 31] = w5 >>> 26;
+    }
+  }
+
+  private static void unpack7(int[] out, int[] in, int groups) {
+    for (int g = 0, o = 0, i = 1; g < groups; g++, o += 32, i += 7) {
+      final int w0 = in[i];
+      final int w1 = in[i + 1];
+      final int w2 = in[i + 2];
+      final int w3 = in[i + 3];
+      final int w4 = in[i + 4];
+      final int w5 = in[i + 5];
+      final int w6 = in[i + 6];
+      out[o] = w0 & 0x7f;
+      out[o + 1] = (w0 >>> 7) & 0x7f;
+      out[o + 2] = (w0 >>> 14) & 0x7f;
+      out[o + 3] = (w0 >>> 21) & 0x7f;
+      out[o + 4] = ((w0 >>> 28) | (w1 << 4)) & 0x7f;
+      out[o + 5] = (w1 >>> 3) & 0x7f;
+      out[o + 6] = (w1 >>> 10) & 0x7f;
+      out[o + 7] = (w1 >>> 17) & 0x7f;
+      out[o + 8] = (w1 >>> 24) & 0x7f;
+      out[o + 9] = ((w1 >>> 31) | (w2 << 1)) & 0x7f;
+      out[o + 10] = (w2 >>> 6) & 0x7f;
+      out[o + 11] = (w2 >>> 13) & 0x7f;
+      out[o + 12] = (w2 >>> 20) & 0x7f;
+      out[o + 13] = ((w2 >>> 27) | (w3 << 5)) & 0x7f;
+      out[o + 14] = (w3 >>> 2) & 0x7f;
+      out[o + 15] = (w3 >>> 9) & 0x7f;
+      out[o + 16] = (w3 >>> 16) & 0x7f;
+      out[o + 17] = (w3 >>> 23) & 0x7f;
+      out[o + 18] = ((w3 >>> 30) | (w4 << 2)) & 0x7f;
+      out[o + 19] = (w4 >>> 5) & 0x7f;
+      out[o + 20] = (w4 >>> 12) & 0x7f;
+      out[o + 21] = (w4 >>> 19) & 0x7f;
+      out[o + 22] = ((w4 >>> 26) | (w5 << 6)) & 0x7f;
+      out[o + 23] = (w5 >>> 1) & 0x7f;
+      out[o + 24] = (w5 >>> 8) & 0x7f;
+      out[o + 25] = (w5 >>> 15) & 0x7f;
+      out[o + 26] = (w5 >>> 22) & 0x7f;
+      out[o + 27] = ((w5 >>> 29) | (w6 << 3)) & 0x7f;
+      out[o + 28] = (w6 >>> 4) & 0x7f;
+      out[o + 29] = (w6 >>> 11) & 0x7f;
+      out[o + 30] = (w6 >>> 18) & 0x7f;
+      out[o + 31] = w6 >>> 25;
+    }
+  }
+
+  private static void unpack8(int[] out, int[] in, int groups) {
+    for (int g = 0, o = 0, i = 1; g < groups; g++, o += 32, i += 8) {
+      final int w0 = in[i];
+      final int w1 = in[i + 1];
+      final int w2 = in[i + 2];
+      final int w3 = in[i + 3];
+      final int w4 = in[i + 4];
+      final int w5 = in[i + 5];
+      final int w6 = in[i + 6];
+      final int w7 = in[i + 7];
+      out[o] = w0 & 0xff;
+      out[o + 1] = (w0 >>> 8) & 0xff;
+      out[o + 2] = (w0 >>> 16) & 0xff;
+      out[o + 3] = w0 >>> 24;
+      out[o + 4] = w1 & 0xff;
+      out[o + 5] = (w1 >>> 8) & 0xff;
+      out[o + 6] = (w1 >>> 16) & 0xff;
+      out[o + 7] = w1 >>> 24;
+      out[o + 8] = w2 & 0xff;
+      out[o + 9] = (w2 >>> 8) & 0xff;
+      out[o + 10] = (w2 >>> 16) & 0xff;
+      out[o + 11] = w2 >>> 24;
+      out[o + 12] = w3 & 0xff;
+      out[o + 13] = (w3 >>> 8) & 0xff;
+      out[o + 14] = (w3 >>> 16) & 0xff;
+      out[o + 15] = w3 >>> 24;
+      out[o + 16] = w4 & 0xff;
+      out[o + 17] = (w4 >>> 8) & 0xff;
+      out[o + 18] = (w4 >>> 16) & 0xff;
+      out[o + 19] = w4 >>> 24;
+      out[o + 20] = w5 & 0xff;
+      out[o + 21] = (w5 >>> 8) & 0xff;
+      out[o + 22] = (w5 >>> 16) & 0xff;
+      out[o + 23] = w5 >>> 24;
+      out[o + 24] = w6 & 0xff;
+      out[o + 25] = (w6 >>> 8) & 0xff;
+      out[o + 26] = (w6 >>> 16) & 0xff;
+      out[o + 27] = w6 >>> 24;
+      out[o + 28] = w7 & 0xff;
+      out[o + 29] = (w7 >>> 8) & 0xff;
+      out[o + 30] = (w7 >>> 16) & 0xff;
+      out[o + 31] = w7 >>> 24;
+    }
+  }
+
+  private static void unpack9(int[] out, int[] in, int groups) {
+    for (int g = 0, o = 0, i = 1; g < groups; g++, o += 32, i += 9) {
+      final int w0 = in[i];
+      final int w1 = in[i + 1];
+      final int w2 = in[i + 2];
+      final int w3 = in[i + 3];
+      final int w4 = in[i + 4];
+      final int w5 = in[i + 5];
+      final int w6 = in[i + 6];
+      final int w7 = in[i + 7];
+      final int w8 = in[i + 8];
+      out[o] = w0 & 0x1ff;
+      out[o + 1] = (w0 >>> 9) & 0x1ff;
+      out[o + 2] = (w0 >>> 18) & 0x1ff;
+      out[o + 3] = ((w0 >>> 27) | (w1 << 5)) & 0x1ff;
+      out[o + 4] = (w1 >>> 4) & 0x1ff;
+      out[o + 5] = (w1 >>> 13) & 0x1ff;
+      out[o + 6] = (w1 >>> 22) & 0x1ff;
+      out[o + 7] = ((w1 >>> 31) | (w2 << 1)) & 0x1ff;
+      out[o + 8] = (w2 >>> 8) & 0x1ff;
+      out[o + 9] = (w2 >>> 17) & 0x1ff;
+      out[o + 10] = ((w2 >>> 26) | (w3 << 6)) & 0x1ff;
+      out[o + 11] = (w3 >>> 3) & 0x1ff;
+      out[o + 12] = (w3 >>> 12) & 0x1ff;
+      out[o + 13] = (w3 >>> 21) & 0x1ff;
+      out[o + 14] = ((w3 >>> 30) | (w4 << 2)) & 0x1ff;
+      out[o + 15] = (w4 >>> 7) & 0x1ff;
+      out[o + 16] = (w4 >>> 16) & 0x1ff;
+      out[o + 17] = ((w4 >>> 25) | (w5 << 7)) & 0x1ff;
+      out[o + 18] = (w5 >>> 2) & 0x1ff;
+      out[o + 19] = (w5 >>> 11) & 0x1ff;
+      out[o + 20] = (w5 >>> 20) & 0x1ff;
+      out[o + 21] = ((w5 >>> 29) | (w6 << 3)) & 0x1ff;
+      out[o + 22] = (w6 >>> 6) & 0x1ff;
+      out[o + 23] = (w6 >>> 15) & 0x1ff;
+      out[o + 24] = ((w6 >>> 24) | (w7 << 8)) & 0x1ff;
+      out[o + 25] = (w7 >>> 1) & 0x1ff;
+      out[o + 26] = (w7 >>> 10) & 0x1ff;
+      out[o + 27] = (w7 >>> 19) & 0x1ff;
+      out[o + 28] = ((w7 >>> 28) | (w8 << 4)) & 0x1ff;
+      out[o + 29] = (w8 >>> 5) & 0x1ff;
+      out[o + 30] = (w8 >>> 14) & 0x1ff;
+      out[o + 31] = w8 >>> 23;
+    }
+  }
+
+  private static void unpack10(int[] out, int[] in, int groups) {
+    for (int g = 0, o = 0, i = 1; g < groups; g++, o += 32, i += 10) {
+      final int w0 = in[i];
+      final int w1 = in[i + 1];
+      final int w2 = in[i + 2];
+      final int w3 = in[i + 3];
+      final int w4 = in[i + 4];
+      final int w5 = in[i + 5];
+      final int w6 = in[i + 6];
+      final int w7 = in[i + 7];
+      final int w8 = in[i + 8];
+      final int w9 = in[i + 9];
+      out[o] = w0 & 0x3ff;
+      out[o + 1] = (w0 >>> 10) & 0x3ff;
+      out[o + 2] = (w0 >>> 20) & 0x3ff;
+      out[o + 3] = ((w0 >>> 30) | (w1 << 2)) & 0x3ff;
+      out[o + 4] = (w1 >>> 8) & 0x3ff;
+      out[o + 5] = (w1 >>> 18) & 0x3ff;
+      out[o + 6] = ((w1 >>> 28) | (w2 << 4)) & 0x3ff;
+      out[o + 7] = (w2 >>> 6) & 0x3ff;
+      out[o + 8] = (w2 >>> 16) & 0x3ff;
+      out[o + 9] = ((w2 >>> 26) | (w3 << 6)) & 0x3ff;
+      out[o + 10] = (w3 >>> 4) & 0x3ff;
+      out[o + 11] = (w3 >>> 14) & 0x3ff;
+      out[o + 12] = ((w3 >>> 24) | (w4 << 8)) & 0x3ff;
+      out[o + 13] = (w4 >>> 2) & 0x3ff;
+      out[o + 14] = (w4 >>> 12) & 0x3ff;
+      out[o + 15] = w4 >>> 22;
+      out[o + 16] = w5 & 0x3ff;
+      out[o + 17] = (w5 >>> 10) & 0x3ff;
+      out[o + 18] = (w5 >>> 20) & 0x3ff;
+      out[o + 19] = ((w5 >>> 30) | (w6 << 2)) & 0x3ff;
+      out[o + 20] = (w6 >>> 8) & 0x3ff;
+      out[o + 21] = (w6 >>> 18) & 0x3ff;
+      out[o + 22] = ((w6 >>> 28) | (w7 << 4)) & 0x3ff;
+      out[o + 23] = (w7 >>> 6) & 0x3ff;
+      out[o + 24] = (w7 >>> 16) & 0x3ff;
+      out[o + 25] = ((w7 >>> 26) | (w8 << 6)) & 0x3ff;
+      out[o + 26] = (w8 >>> 4) & 0x3ff;
+      out[o + 27] = (w8 >>> 14) & 0x3ff;
+      out[o + 28] = ((w8 >>> 24) | (w9 << 8)) & 0x3ff;
+      out[o + 29] = (w9 >>> 2) & 0x3ff;
+      out[o + 30] = (w9 >>> 12) & 0x3ff;
+      out[o + 31] = w9 >>> 22;
+    }
+  }
+
+  private static void unpack11(int[] out, int[] in, int groups) {
+    for (int g = 0, o = 0, i = 1; g < groups; g++, o += 32, i += 11) {
+      final int w0 = in[i];
+      final int w1 = in[i + 1];
+      final int w2 = in[i + 2];
+      final int w3 = in[i + 3];
+      final int w4 = in[i + 4];
+      final int w5 = in[i + 5];
+      final int w6 = in[i + 6];
+      final int w7 = in[i + 7];
+      final int w8 = in[i + 8];
+      final int w9 = in[i + 9];
+      final int w10 = in[i + 10];
+      out[o] = w0 & 0x7ff;
+      out[o + 1] = (w0 >>> 11) & 0x7ff;
+      out[o + 2] = ((w0 >>> 22) | (w1 << 10)) & 0x7ff;
+      out[o + 3] = (w1 >>> 1) & 0x7ff;
+      out[o + 4] = (w1 >>> 12) & 0x7ff;
+      out[o + 5] = ((w1 >>> 23) | (w2 << 9)) & 0x7ff;
+      out[o + 6] = (w2 >>> 2) & 0x7ff;
+      out[o + 7] = (w2 >>> 13) & 0x7ff;
+      out[o + 8] = ((w2 >>> 24) | (w3 << 8)) & 0x7ff;
+      out[o + 9] = (w3 >>> 3) & 0x7ff;
+      out[o + 10] = (w3 >>> 14) & 0x7ff;
+      out[o + 11] = ((w3 >>> 25) | (w4 << 7)) & 0x7ff;
+      out[o + 12] = (w4 >>> 4) & 0x7ff;
+      out[o + 13] = (w4 >>> 15) & 0x7ff;
+      out[o + 14] = ((w4 >>> 26) | (w5 << 6)) & 0x7ff;
+      out[o + 15] = (w5 >>> 5) & 0x7ff;
+      out[o + 16] = (w5 >>> 16) & 0x7ff;
+      out[o + 17] = ((w5 >>> 27) | (w6 << 5)) & 0x7ff;
+      out[o + 18] = (w6 >>> 6) & 0x7ff;
+      out[o + 19] = (w6 >>> 17) & 0x7ff;
+      out[o + 20] = ((w6 >>> 28) | (w7 << 4)) & 0x7ff;
+      out[o + 21] = (w7 >>> 7) & 0x7ff;
+      out[o + 22] = (w7 >>> 18) & 0x7ff;
+      out[o + 23] = ((w7 >>> 29) | (w8 << 3)) & 0x7ff;
+      out[o + 24] = (w8 >>> 8) & 0x7ff;
+      out[o + 25] = (w8 >>> 19) & 0x7ff;
+      out[o + 26] = ((w8 >>> 30) | (w9 << 2)) & 0x7ff;
+      out[o + 27] = (w9 >>> 9) & 0x7ff;
+      out[o + 28] = (w9 >>> 20) & 0x7ff;
+      out[o + 29] = ((w9 >>> 31) | (w10 << 1)) & 0x7ff;
+      out[o + 30] = (w10 >>> 10) & 0x7ff;
+      out[o + 31] = w10 >>> 21;
+    }
+  }
+
+  private static void unpack12(int[] out, int[] in, int groups) {
+    for (int g = 0, o = 0, i = 1; g < groups; g++, o += 32, i += 12) {
+      final int w0 = in[i];
+      final int w1 = in[i + 1];
+      final int w2 = in[i + 2];
+      final int w3 = in[i + 3];
+      final int w4 = in[i + 4];
+      final int w5 = in[i + 5];
+      final int w6 = in[i + 6];
+      final int w7 = in[i + 7];
+      final int w8 = in[i + 8];
+      final int w9 = in[i + 9];
+      final int w10 = in[i + 10];
+      final int w11 = in[i + 11];
+      out[o] = w0 & 0xfff;
+      out[o + 1] = (w0 >>> 12) & 0xfff;
+      out[o + 2] = ((w0 >>> 24) | (w1 << 8)) & 0xfff;
+      out[o + 3] = (w1 >>> 4) & 0xfff;
+      out[o + 4] = (w1 >>> 16) & 0xfff;
+      out[o + 5] = ((w1 >>> 28) | (w2 << 4)) & 0xfff;
+      out[o + 6] = (w2 >>> 8) & 0xfff;
+      out[o + 7] = w2 >>> 20;
+      out[o + 8] = w3 & 0xfff;
+      out[o + 9] = (w3 >>> 12) & 0xfff;
+      out[o + 10] = ((w3 >>> 24) | (w4 << 8)) & 0xfff;
+      out[o + 11] = (w4 >>> 4) & 0xfff;
+      out[o + 12] = (w4 >>> 16) & 0xfff;
+      out[o + 13] = ((w4 >>> 28) | (w5 << 4)) & 0xfff;
+      out[o + 14] = (w5 >>> 8) & 0xfff;
+      out[o + 15] = w5 >>> 20;
+      out[o + 16] = w6 & 0xfff;
+      out[o + 17] = (w6 >>> 12) & 0xfff;
+      out[o + 18] = ((w6 >>> 24) | (w7 << 8)) & 0xfff;
+      out[o + 19] = (w7 >>> 4) & 0xfff;
+      out[o + 20] = (w7 >>> 16) & 0xfff;
+      out[o + 21] = ((w7 >>> 28) | (w8 << 4)) & 0xfff;
+      out[o + 22] = (w8 >>> 8) & 0xfff;
+      out[o + 23] = w8 >>> 20;
+      out[o + 24] = w9 & 0xfff;
+      out[o + 25] = (w9 >>> 12) & 0xfff;
+      out[o + 26] = ((w9 >>> 24) | (w10 << 8)) & 0xfff;
+      out[o + 27] = (w10 >>> 4) & 0xfff;
+      out[o + 28] = (w10 >>> 16) & 0xfff;
+      out[o + 29] = ((w10 >>> 28) | (w11 << 4)) & 0xfff;
+      out[o + 30] = (w11 >>> 8) & 0xfff;
+      out[o + 31] = w11 >>> 20;
+    }
+  }
+
+  private static void unpack13(int[] out, int[] in, int groups) {
+    for (int g = 0, o = 0, i = 1; g < groups; g++, o += 32, i += 13) {
+      final int w0 = in[i];
+      final int w1 = in[i + 1];
+      final int w2 = in[i + 2];
+      final int w3 = in[i + 3];
+      final int w4 = in[i + 4];
+      final int w5 = in[i + 5];
+      final int w6 = in[i + 6];
+      final int w7 = in[i + 7];
+      final int w8 = in[i + 8];
+      final int w9 = in[i + 9];
+      final int w10 = in[i + 10];
+      final int w11 = in[i + 11];
+      final int w12 = in[i + 12];
+      out[o] = w0 & 0x1fff;
+      out[o + 1] = (w0 >>> 13) & 0x1fff;
+      out[o + 2] = ((w0 >>> 26) | (w1 << 6)) & 0x1fff;
+      out[o + 3] = (w1 >>> 7) & 0x1fff;
+      out[o + 4] = ((w1 >>> 20) | (w2 << 12)) & 0x1fff;
+      out[o + 5] = (w2 >>> 1) & 0x1fff;
+      out[o + 6] = (w2 >>> 14) & 0x1fff;
+      out[o + 7] = ((w2 >>> 27) | (w3 << 5)) & 0x1fff;
+      out[o + 8] = (w3 >>> 8) & 0x1fff;
+      out[o + 9] = ((w3 >>> 21) | (w4 << 11)) & 0x1fff;
+      out[o + 10] = (w4 >>> 2) & 0x1fff;
+      out[o + 11] = (w4 >>> 15) & 0x1fff;
+      out[o + 12] = ((w4 >>> 28) | (w5 << 4)) & 0x1fff;
+      out[o + 13] = (w5 >>> 9) & 0x1fff;
+      out[o + 14] = ((w5 >>> 22) | (w6 << 10)) & 0x1fff;
+      out[o + 15] = (w6 >>> 3) & 0x1fff;
+      out[o + 16] = (w6 >>> 16) & 0x1fff;
+      out[o + 17] = ((w6 >>> 29) | (w7 << 3)) & 0x1fff;
+      out[o + 18] = (w7 >>> 10) & 0x1fff;
+      out[o + 19] = ((w7 >>> 23) | (w8 << 9)) & 0x1fff;
+      out[o + 20] = (w8 >>> 4) & 0x1fff;
+      out[o + 21] = (w8 >>> 17) & 0x1fff;
+      out[o + 22] = ((w8 >>> 30) | (w9 << 2)) & 0x1fff;
+      out[o + 23] = (w9 >>> 11) & 0x1fff;
+      out[o + 24] = ((w9 >>> 24) | (w10 << 8)) & 0x1fff;
+      out[o + 25] = (w10 >>> 5) & 0x1fff;
+      out[o + 26] = (w10 >>> 18) & 0x1fff;
+      out[o + 27] = ((w10 >>> 31) | (w11 << 1)) & 0x1fff;
+      out[o + 28] = (w11 >>> 12) & 0x1fff;
+      out[o + 29] = ((w11 >>> 25) | (w12 << 7)) & 0x1fff;
+      out[o + 30] = (w12 >>> 6) & 0x1fff;
+      out[o + 31] = w12 >>> 19;
+    }
+  }
+
+  private static void unpack16(int[] out, int[] in, int groups) {
+    for (int g = 0, o = 0, i = 1; g < groups; g++, o += 32, i += 16) {
+      final int w0 = in[i];
+      final int w1 = in[i + 1];
+      final int w2 = in[i + 2];
+      final int w3 = in[i + 3];
+      final int w4 = in[i + 4];
+      final int w5 = in[i + 5];
+      final int w6 = in[i + 6];
+      final int w7 = in[i + 7];
+      final int w8 = in[i + 8];
+      final int w9 = in[i + 9];
+      final int w10 = in[i + 10];
+      final int w11 = in[i + 11];
+      final int w12 = in[i + 12];
+      final int w13 = in[i + 13];
+      final int w14 = in[i + 14];
+      final int w15 = in[i + 15];
+      out[o] = w0 & 0xffff;
+      out[o + 1] = w0 >>> 16;
+      out[o + 2] = w1 & 0xffff;
+      out[o + 3] = w1 >>> 16;
+      out[o + 4] = w2 & 0xffff;
+      out[o + 5] = w2 >>> 16;
+      out[o + 6] = w3 & 0xffff;
+      out[o + 7] = w3 >>> 16;
+      out[o + 8] = w4 & 0xffff;
+      out[o + 9] = w4 >>> 16;
+      out[o + 10] = w5 & 0xffff;
+      out[o + 11] = w5 >>> 16;
+      out[o + 12] = w6 & 0xffff;
+      out[o + 13] = w6 >>> 16;
+      out[o + 14] = w7 & 0xffff;
+      out[o + 15] = w7 >>> 16;
+      out[o + 16] = w8 & 0xffff;
+      out[o + 17] = w8 >>> 16;
+      out[o + 18] = w9 & 0xffff;
+      out[o + 19] = w9 >>> 16;
+      out[o + 20] = w10 & 0xffff;
+      out[o + 21] = w10 >>> 16;
+      out[o + 22] = w11 & 0xffff;
+      out[o + 23] = w11 >>> 16;
+      out[o + 24] = w12 & 0xffff;
+      out[o + 25] = w12 >>> 16;
+      out[o + 26] = w13 & 0xffff;
+      out[o + 27] = w13 >>> 16;
+      out[o + 28] = w14 & 0xffff;
+      out[o + 29] = w14 >>> 16;
+      out[o + 30] = w15 & 0xffff;
+      out[o + 31] = w15 >>> 16;
+    }
+  }
+
+  private static void unpack20(int[] out, int[] in, int groups) {
+    for (int g = 0, o = 0, i = 1; g < groups; g++, o += 32, i += 20) {
+      final int w0 = in[i];
+      final int w1 = in[i + 1];
+      final int w2 = in[i + 2];
+      final int w3 = in[i + 3];
+      final int w4 = in[i + 4];
+      final int w5 = in[i + 5];
+      final int w6 = in[i + 6];
+      final int w7 = in[i + 7];
+      final int w8 = in[i + 8];
+      final int w9 = in[i + 9];
+      final int w10 = in[i + 10];
+      final int w11 = in[i + 11];
+      final int w12 = in[i + 12];
+      final int w13 = in[i + 13];
+      final int w14 = in[i + 14];
+      final int w15 = in[i + 15];
+      final int w16 = in[i + 16];
+      final int w17 = in[i + 17];
+      final int w18 = in[i + 18];
+      final int w19 = in[i + 19];
+      out[o] = w0 & 0xfffff;
+      out[o + 1] = ((w0 >>> 20) | (w1 << 12)) & 0xfffff;
+      out[o + 2] = (w1 >>> 8) & 0xfffff;
+      out[o + 3] = ((w1 >>> 28) | (w2 << 4)) & 0xfffff;
+      out[o + 4] = ((w2 >>> 16) | (w3 << 16)) & 0xfffff;
+      out[o + 5] = (w3 >>> 4) & 0xfffff;
+      out[o + 6] = ((w3 >>> 24) | (w4 << 8)) & 0xfffff;
+      out[o + 7] = w4 >>> 12;
+      out[o + 8] = w5 & 0xfffff;
+      out[o + 9] = ((w5 >>> 20) | (w6 << 12)) & 0xfffff;
+      out[o + 10] = (w6 >>> 8) & 0xfffff;
+      out[o + 11] = ((w6 >>> 28) | (w7 << 4)) & 0xfffff;
+      out[o + 12] = ((w7 >>> 16) | (w8 << 16)) & 0xfffff;
+      out[o + 13] = (w8 >>> 4) & 0xfffff;
+      out[o + 14] = ((w8 >>> 24) | (w9 << 8)) & 0xfffff;
+      out[o + 15] = w9 >>> 12;
+      out[o + 16] = w10 & 0xfffff;
+      out[o + 17] = ((w10 >>> 20) | (w11 << 12)) & 0xfffff;
+      out[o + 18] = (w11 >>> 8) & 0xfffff;
+      out[o + 19] = ((w11 >>> 28) | (w12 << 4)) & 0xfffff;
+      out[o + 20] = ((w12 >>> 16) | (w13 << 16)) & 0xfffff;
+      out[o + 21] = (w13 >>> 4) & 0xfffff;
+      out[o + 22] = ((w13 >>> 24) | (w14 << 8)) & 0xfffff;
+      out[o + 23] = w14 >>> 12;
+      out[o + 24] = w15 & 0xfffff;
+      out[o + 25] = ((w15 >>> 20) | (w16 << 12)) & 0xfffff;
+      out[o + 26] = (w16 >>> 8) & 0xfffff;
+      out[o + 27] = ((w16 >>> 28) | (w17 << 4)) & 0xfffff;
+      out[o + 28] = ((w17 >>> 16) | (w18 << 16)) & 0xfffff;
+      out[o + 29] = (w18 >>> 4) & 0xfffff;
+      out[o + 30] = ((w18 >>> 24) | (w19 << 8)) & 0xfffff;
+      out[o + 31] = w19 >>> 12;
+    }
+  }
+
+  private static void unpack28(int[] out, int[] in, int groups) {
+    for (int g = 0, o = 0, i = 1; g < groups; g++, o += 32, i += 28) {
+      final int w0 = in[i];
+      final int w1 = in[i + 1];
+      final int w2 = in[i + 2];
+      final int w3 = in[i + 3];
+      final int w4 = in[i + 4];
+      final int w5 = in[i + 5];
+      final int w6 = in[i + 6];
+      final int w7 = in[i + 7];
+      final int w8 = in[i + 8];
+      final int w9 = in[i + 9];
+      final int w10 = in[i + 10];
+      final int w11 = in[i + 11];
+      final int w12 = in[i + 12];
+      final int w13 = in[i + 13];
+      final int w14 = in[i + 14];
+      final int w15 = in[i + 15];
+      final int w16 = in[i + 16];
+      final int w17 = in[i + 17];
+      final int w18 = in[i + 18];
+      final int w19 = in[i + 19];
+      final int w20 = in[i + 20];
+      final int w21 = in[i + 21];
+      final int w22 = in[i + 22];
+      final int w23 = in[i + 23];
+      final int w24 = in[i + 24];
+      final int w25 = in[i + 25];
+      final int w26 = in[i + 26];
+      final int w27 = in[i + 27];
+      out[o] = w0 & 0xfffffff;
+      out[o + 1] = ((w0 >>> 28) | (w1 << 4)) & 0xfffffff;
+      out[o + 2] = ((w1 >>> 24) | (w2 << 8)) & 0xfffffff;
+      out[o + 3] = ((w2 >>> 20) | (w3 << 12)) & 0xfffffff;
+      out[o + 4] = ((w3 >>> 16) | (w4 << 16)) & 0xfffffff;
+      out[o + 5] = ((w4 >>> 12) | (w5 << 20)) & 0xfffffff;
+      out[o + 6] = ((w5 >>> 8) | (w6 << 24)) & 0xfffffff;
+      out[o + 7] = w6 >>> 4;
+      out[o + 8] = w7 & 0xfffffff;
+      out[o + 9] = ((w7 >>> 28) | (w8 << 4)) & 0xfffffff;
+      out[o + 10] = ((w8 >>> 24) | (w9 << 8)) & 0xfffffff;
+      out[o + 11] = ((w9 >>> 20) | (w10 << 12)) & 0xfffffff;
+      out[o + 12] = ((w10 >>> 16) | (w11 << 16)) & 0xfffffff;
+      out[o + 13] = ((w11 >>> 12) | (w12 << 20)) & 0xfffffff;
+      out[o + 14] = ((w12 >>> 8) | (w13 << 24)) & 0xfffffff;
+      out[o + 15] = w13 >>> 4;
+      out[o + 16] = w14 & 0xfffffff;
+      out[o + 17] = ((w14 >>> 28) | (w15 << 4)) & 0xfffffff;
+      out[o + 18] = ((w15 >>> 24) | (w16 << 8)) & 0xfffffff;
+      out[o + 19] = ((w16 >>> 20) | (w17 << 12)) & 0xfffffff;
+      out[o + 20] = ((w17 >>> 16) | (w18 << 16)) & 0xfffffff;
+      out[o + 21] = ((w18 >>> 12) | (w19 << 20)) & 0xfffffff;
+      out[o + 22] = ((w19 >>> 8) | (w20 << 24)) & 0xfffffff;
+      out[o + 23] = w20 >>> 4;
+      out[o + 24] = w21 & 0xfffffff;
+      out[o + 25] = ((w21 >>> 28) | (w22 << 4)) & 0xfffffff;
+      out[o + 26] = ((w22 >>> 24) | (w23 << 8)) & 0xfffffff;
+      out[o + 27] = ((w23 >>> 20) | (w24 << 12)) & 0xfffffff;
+      out[o + 28] = ((w24 >>> 16) | (w25 << 16)) & 0xfffffff;
+      out[o + 29] = ((w25 >>> 12) | (w26 << 20)) & 0xfffffff;
+      out[o + 30] = ((w26 >>> 8) | (w27 << 24)) & 0xfffffff;
+      out[o + 31] = w27 >>> 4;
+    }
+  }
+}
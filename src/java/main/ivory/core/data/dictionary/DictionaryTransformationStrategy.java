@@ -13,6 +13,19 @@ public class DictionaryTransformationStrategy {
     return TransformationStrategies.prefixFreeUtf16();
   }
 
+  /**
+   * Orders terms held in memory the same way {@link WritableComparator} orders serialized terms.
+   */
+  public static class Comparator implements java.util.Comparator<CharSequence> {
+    private final TransformationStrategy<CharSequence> strategy =
+        DictionaryTransformationStrategy.getStrategy();
+
+    @Override
+    public int compare(CharSequence t1, CharSequence t2) {
+      return strategy.toBitVector(t1).compareTo(strategy.toBitVector(t2));
+    }
+  }
+
   public static class WritableComparator extends org.apache.hadoop.io.WritableComparator {
     private final TransformationStrategy<CharSequence> strategy =
         DictionaryTransformationStrategy.getStrategy();
@@ -0,0 +1,468 @@
+/*
+ * Ivory: A Hadoop toolkit for web-scale information retrieval
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package ivory.core.data.dictionary;
+
+import ivory.core.RetrievalEnvironment;
+import ivory.core.util.MappedFile;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.Iterator;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.log4j.Logger;
+
+import com.google.common.base.Charsets;
+
+/**
+ * <p>
+ * An implementation of {@link FrequencySortedDictionary} that is queried directly from a
+ * memory-mapped file, with nothing to deserialize and nothing on the heap. Opening the dictionary
+ * takes constant time, and processes on the same host share a single copy of it in the page
+ * cache. As with {@link DefaultFrequencySortedDictionary}, term ids start at 1, which corresponds
+ * to the most frequent term. The file must be on the local file system.
+ * </p>
+ *
+ * <p>
+ * The file holds the following, with all numbers big-endian:
+ * </p>
+ *
+ * <ul>
+ * <li>A header: the number of terms <i>n</i> (int), the number of terms per front-coded block
+ * (int), the number of hash buckets <i>b</i> (int), and the hash seed (long).</li>
+ * <li>A minimal perfect hash from terms to slots, as <i>b</i> ints, one per hash bucket. A term
+ * hashes to a bucket, and the bucket's value either picks the hash function that maps the term to
+ * its slot (if non-negative), or is the slot itself, as <i>-(slot + 1)</i>.</li>
+ * <li>The term id in each slot, as <i>n</i> ints.</li>
+ * <li>For each term id, the position of the term in lexicographic order, as <i>n</i> ints.</li>
+ * <li>The offset of each front-coded block in the file, as longs.</li>
+ * <li>The terms in lexicographic order, UTF-8 encoded and front-coded in blocks. The first term of
+ * a block is stored as its length followed by its bytes; every other term as the length of the
+ * prefix it shares with the term before it, the length of the rest, and the rest. Lengths are
+ * variable-length encoded, seven bits per byte.</li>
+ * </ul>
+ *
+ * <p>
+ * A perfect hash maps terms that aren't in the dictionary to arbitrary slots, so lookups check the
+ * term stored for the id they find before returning it.
+ * </p>
+ */
+public class MappedFrequencySortedDictionary implements FrequencySortedDictionary {
+  private static final Logger LOG = Logger.getLogger(MappedFrequencySortedDictionary.class);
+
+  // Number of terms, terms per block, number of buckets, and hash seed.
+  private static final int HEADER_SIZE = 20;
+
+  private static final int BLOCK_SIZE = 16;
+  private static final int AVG_BUCKET_SIZE = 4;
+  private static final int MAX_HASH_FUNCTIONS = 1 << 24;
+  private static final int MAX_ATTEMPTS = 16;
+
+  private final MappedFile data;
+  private final int numTerms;
+  private final int blockSize;
+  private final int numBuckets;
+  private final long seed;
+
+  // Where each section starts.
+  private final long bucketsPos;
+  private final long slotsPos;
+  private final long idToIndexPos;
+  private final long blockOffsetsPos;
+
+  /**
+   * Opens a dictionary file.
+   *
+   * @param file dictionary file
+   * @param fs file system, which must be the local file system
+   * @throws IOException
+   */
+  public MappedFrequencySortedDictionary(Path file, FileSystem fs) throws IOException {
+    data = MappedFile.map(file, fs);
+    numTerms = data.getInt(0);
+    blockSize = data.getInt(4);
+    numBuckets = data.getInt(8);
+    seed = data.getLong(12);
+
+    bucketsPos = HEADER_SIZE;
+    slotsPos = bucketsPos + 4L * numBuckets;
+    idToIndexPos = slotsPos + 4L * numTerms;
+    blockOffsetsPos = idToIndexPos + 4L * numTerms;
+
+    LOG.info("Mapped dictionary of " + numTerms + " terms: " + data.length() + " bytes.");
+  }
+
+  @Override
+  public int size() {
+    return numTerms;
+  }
+
+  @Override
+  public int getId(String term) {
+    if (numTerms == 0) {
+      return -1;
+    }
+
+    long h = hash(term, seed);
+    int bucketValue = data.getInt(bucketsPos + 4L * bucket(h, numBuckets));
+    int id = data.getInt(slotsPos + 4L * slot(h, bucketValue, numTerms));
+
+    return term.equals(getTerm(id)) ? id : -1;
+  }
+
+  @Override
+  public String getTerm(int id) {
+    if (id < 1 || id > numTerms) {
+      return null;
+    }
+
+    int index = data.getInt(idToIndexPos + 4L * (id - 1));
+    long pos = data.getLong(blockOffsetsPos + 8L * (index / blockSize));
+
+    // Decode the block up to the term we want.
+    byte[] bytes = new byte[32];
+    int length = 0;
+    for (int i = 0; i <= index % blockSize; i++) {
+      int prefix = 0;
+      if (i > 0) {
+        prefix = readVInt(pos);
+        pos += vIntSize(prefix);
+      }
+      int suffix = readVInt(pos);
+      pos += vIntSize(suffix);
+
+      length = prefix + suffix;
+      if (length > bytes.length) {
+        bytes = Arrays.copyOf(bytes, Math.max(length, 2 * bytes.length));
+      }
+      for (int j = prefix; j < length; j++) {
+        bytes[j] = data.get(pos++);
+      }
+    }
+
+    return new String(bytes, 0, length, Charsets.UTF_8);
+  }
+
+  /**
+   * Returns an iterator over the dictionary in order of term id.
+   */
+  @Override
+  public Iterator<String> iterator() {
+    return new Iterator<String>() {
+      private int cur = 1;
+
+      @Override
+      public boolean hasNext() {
+        return cur <= numTerms;
+      }
+
+      @Override
+      public String next() {
+        return getTerm(cur++);
+      }
+
+      @Override
+      public void remove() {
+        throw new UnsupportedOperationException();
+      }
+    };
+  }
+
+  private int readVInt(long pos) {
+    int value = 0;
+    for (int shift = 0;; shift += 7) {
+      byte b = data.get(pos++);
+      value |= (b & 0x7f) << shift;
+      if (b >= 0) {
+        return value;
+      }
+    }
+  }
+
+  private static void writeVInt(DataOutput out, int value) throws IOException {
+    while ((value & ~0x7f) != 0) {
+      out.writeByte((value & 0x7f) | 0x80);
+      value >>>= 7;
+    }
+    out.writeByte(value);
+  }
+
+  private static int vIntSize(int value) {
+    int size = 1;
+    while ((value & ~0x7f) != 0) {
+      value >>>= 7;
+      size++;
+    }
+    return size;
+  }
+
+  // 64-bit hash of a term: FNV-1a over its chars, followed by a finalizer to spread the bits.
+  private static long hash(String term, long seed) {
+    long h = 0xcbf29ce484222325L ^ seed;
+    for (int i = 0; i < term.length(); i++) {
+      h ^= term.charAt(i);
+      h *= 0x100000001b3L;
+    }
+    return mix(h);
+  }
+
+  // The finalizer from MurmurHash3.
+  private static long mix(long h) {
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return h;
+  }
+
+  private static int bucket(long h, int numBuckets) {
+    return (int) ((h >>> 1) % numBuckets);
+  }
+
+  private static int slot(long h, int bucketValue, int numTerms) {
+    if (bucketValue < 0) {
+      return -bucketValue - 1;
+    }
+    return (int) ((mix(h ^ (bucketValue + 1) * 0x9e3779b97f4a7c15L) >>> 1) % numTerms);
+  }
+
+  /**
+   * Writes out a dictionary.
+   *
+   * @param terms terms in order of term id, i.e., {@code terms[i]} has term id <i>i</i> + 1
+   * @param out where to write the dictionary
+   * @throws IOException
+   */
+  public static void write(final String[] terms, DataOutput out) throws IOException {
+    int n = terms.length;
+    int numBuckets = Math.max(1, (n + AVG_BUCKET_SIZE - 1) / AVG_BUCKET_SIZE);
+
+    // Find a hash function that works out. With a good hash, the first one almost always does.
+    long seed = 0;
+    int[] buckets = null;
+    int[] slots = null;
+    for (int attempt = 0; buckets == null; attempt++) {
+      if (attempt == MAX_ATTEMPTS) {
+        throw new IOException("Unable to build a perfect hash for " + n + " terms!");
+      }
+      seed = mix(attempt + 1);
+      slots = new int[n];
+      buckets = buildHash(terms, seed, numBuckets, slots);
+    }
+
+    // Lexicographic order of the terms.
+    Integer[] sorted = new Integer[n];
+    for (int i = 0; i < n; i++) {
+      sorted[i] = i;
+    }
+    Arrays.sort(sorted, new Comparator<Integer>() {
+      @Override
+      public int compare(Integer a, Integer b) {
+        return terms[a].compareTo(terms[b]);
+      }
+    });
+    int[] idToIndex = new int[n];
+    for (int i = 0; i < n; i++) {
+      idToIndex[sorted[i]] = i;
+    }
+
+    // Work out where each block will start.
+    int numBlocks = (n + BLOCK_SIZE - 1) / BLOCK_SIZE;
+    long pos = HEADER_SIZE + 4L * numBuckets + 8L * n + 8L * numBlocks;
+    long[] blockOffsets = new long[numBlocks];
+    byte[] prev = null;
+    for (int i = 0; i < n; i++) {
+      byte[] cur = terms[sorted[i]].getBytes(Charsets.UTF_8);
+      if (i % BLOCK_SIZE == 0) {
+        blockOffsets[i / BLOCK_SIZE] = pos;
+        pos += vIntSize(cur.length) + cur.length;
+      } else {
+        int prefix = sharedPrefix(prev, cur);
+        pos += vIntSize(prefix) + vIntSize(cur.length - prefix) + cur.length - prefix;
+      }
+      prev = cur;
+    }
+
+    out.writeInt(n);
+    out.writeInt(BLOCK_SIZE);
+    out.writeInt(numBuckets);
+    out.writeLong(seed);
+    for (int b : buckets) {
+      out.writeInt(b);
+    }
+    for (int id : slots) {
+      out.writeInt(id);
+    }
+    for (int index : idToIndex) {
+      out.writeInt(index);
+    }
+    for (long offset : blockOffsets) {
+      out.writeLong(offset);
+    }
+    for (int i = 0; i < n; i++) {
+      byte[] cur = terms[sorted[i]].getBytes(Charsets.UTF_8);
+      int prefix = 0;
+      if (i % BLOCK_SIZE != 0) {
+        prefix = sharedPrefix(prev, cur);
+        writeVInt(out, prefix);
+      }
+      writeVInt(out, cur.length - prefix);
+      out.write(cur, prefix, cur.length - prefix);
+      prev = cur;
+    }
+  }
+
+  private static int sharedPrefix(byte[] a, byte[] b) {
+    int i = 0;
+    while (i < a.length && i < b.length && a[i] == b[i]) {
+      i++;
+    }
+    return i;
+  }
+
+  // Builds a minimal perfect hash with the hash-and-displace method, filling in the term id in
+  // each slot. Buckets are placed largest first, each with the first hash function that sends all
+  // of its terms to free slots; buckets of one term just take a free slot. Returns the bucket
+  // values, or null if the terms can't be placed with this seed.
+  private static int[] buildHash(String[] terms, long seed, int numBuckets, int[] slots) {
+    int n = terms.length;
+    long[] hashes = new long[n];
+    for (int i = 0; i < n; i++) {
+      hashes[i] = hash(terms[i], seed);
+    }
+
+    // Terms with the same hash can never be told apart.
+    long[] sortedHashes = Arrays.copyOf(hashes, n);
+    Arrays.sort(sortedHashes);
+    for (int i = 1; i < n; i++) {
+      if (sortedHashes[i] == sortedHashes[i - 1]) {
+        return null;
+      }
+    }
+
+    // Group the terms by bucket.
+    int[] bucketStart = new int[numBuckets + 1];
+    for (int i = 0; i < n; i++) {
+      bucketStart[bucket(hashes[i], numBuckets) + 1]++;
+    }
+    int maxBucketSize = 0;
+    for (int b = 0; b < numBuckets; b++) {
+      maxBucketSize = Math.max(maxBucketSize, bucketStart[b + 1]);
+      bucketStart[b + 1] += bucketStart[b];
+    }
+    int[] members = new int[n];
+    int[] fill = Arrays.copyOf(bucketStart, numBuckets);
+    for (int i = 0; i < n; i++) {
+      members[fill[bucket(hashes[i], numBuckets)]++] = i;
+    }
+
+    // Order the buckets by decreasing size.
+    int[] sizeStart = new int[maxBucketSize + 2];
+    for (int b = 0; b < numBuckets; b++) {
+      sizeStart[maxBucketSize - (bucketStart[b + 1] - bucketStart[b]) + 1]++;
+    }
+    for (int s = 0; s <= maxBucketSize; s++) {
+      sizeStart[s + 1] += sizeStart[s];
+    }
+    int[] order = new int[numBuckets];
+    for (int b = 0; b < numBuckets; b++) {
+      order[sizeStart[maxBucketSize - (bucketStart[b + 1] - bucketStart[b])]++] = b;
+    }
+
+    int[] buckets = new int[numBuckets];
+    BitSet taken = new BitSet(n);
+    int[] candidate = new int[maxBucketSize];
+    int nextFree = 0;
+    for (int b : order) {
+      int start = bucketStart[b];
+      int size = bucketStart[b + 1] - start;
+      if (size == 0) {
+        break;
+      }
+
+      if (size == 1) {
+        nextFree = taken.nextClearBit(nextFree);
+        taken.set(nextFree);
+        slots[nextFree] = members[start] + 1;
+        buckets[b] = -nextFree - 1;
+        continue;
+      }
+
+      int f = 0;
+      search: for (; f < MAX_HASH_FUNCTIONS; f++) {
+        for (int i = 0; i < size; i++) {
+          candidate[i] = slot(hashes[members[start + i]], f, n);
+          if (taken.get(candidate[i])) {
+            continue search;
+          }
+          for (int j = 0; j < i; j++) {
+            if (candidate[j] == candidate[i]) {
+              continue search;
+            }
+          }
+        }
+        break;
+      }
+      if (f == MAX_HASH_FUNCTIONS) {
+        return null;
+      }
+
+      buckets[b] = f;
+      for (int i = 0; i < size; i++) {
+        taken.set(candidate[i]);
+        slots[candidate[i]] = members[start + i] + 1;
+      }
+    }
+
+    return buckets;
+  }
+
+  /**
+   * Converts the dictionary of an index into the format read by this class.
+   */
+  public static void main(String[] args) throws Exception {
+    if (args.length != 1) {
+      System.out.println("usage: [index-path]");
+      System.exit(-1);
+    }
+
+    FileSystem fs = FileSystem.get(new Configuration());
+    RetrievalEnvironment env = new RetrievalEnvironment(args[0], fs);
+
+    DefaultFrequencySortedDictionary dictionary = new DefaultFrequencySortedDictionary(
+        new Path(env.getIndexTermsData()), new Path(env.getIndexTermIdsData()),
+        new Path(env.getIndexTermIdMappingData()), fs);
+
+    String[] terms = new String[dictionary.size()];
+    for (int i = 0; i < terms.length; i++) {
+      terms[i] = dictionary.getTerm(i + 1);
+    }
+
+    FSDataOutputStream out = fs.create(new Path(env.getIndexDictionaryData()), true);
+    write(terms, out);
+    out.close();
+
+    System.out.println("Wrote " + terms.length + " terms to " + env.getIndexDictionaryData());
+  }
+}
@@ -24,11 +24,18 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FSDataInputStream;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
 import org.apache.hadoop.io.IntWritable;
 import org.apache.hadoop.io.SequenceFile;
 import org.apache.log4j.Logger;
@@ -40,7 +47,11 @@ import edu.umd.cloud9.debug.MemoryUsageUtils;
 /**
  * Object providing an index into one or more {@code SequenceFile}s
  * containing {@link IntDocVector}s, providing random access to the document
- * vectors.
+ * vectors. Batches of document vectors can be fetched with
+ * {@link #getDocVectors(int[], IntDocVector[])}, which reads each part file
+ * once, in offset order. Part files are opened on first use and kept open
+ * until {@link #close()}. Recently fetched vectors can optionally be kept in
+ * an LRU cache (see {@link #setCacheSize(int)}).
  *
  * @see BuildIntDocVectorsForwardIndex
  *
@@ -60,6 +71,18 @@ public class IntDocVectorsForwardIndex {
   private final int docnoOffset;
   private final int collectionDocumentCount;
 
+  // LRU cache of serialized doc vectors, keyed by docno. Vectors are cached in serialized form so
+  // that hits can be read into the caller's instances, just like vectors read from disk.
+  private final LinkedHashMap<Integer, byte[]> cache =
+      new LinkedHashMap<Integer, byte[]>(16, 0.75f, true);
+  private int maxCachedVectors = 0;
+
+  // Class of the stored document vectors, known once a part file has been opened.
+  private volatile Class<?> valueClass = null;
+
+  // Open part files, indexed by file number. Reads from a part file synchronize on its reader.
+  private SequenceFile.Reader[] readers = new SequenceFile.Reader[0];
+
   /**
    * Creates an {@code IntDocVectorsIndex} object.
    *
@@ -102,50 +125,189 @@ public class IntDocVectorsForwardIndex {
     }
   }
 
+  /**
+   * Sets the maximum number of document vectors to keep in the LRU cache, discarding its current
+   * contents. A size of zero (the default) disables caching.
+   *
+   * @param vectors maximum number of document vectors to cache
+   */
+  public synchronized void setCacheSize(int vectors) {
+    Preconditions.checkArgument(vectors >= 0);
+    maxCachedVectors = vectors;
+    cache.clear();
+  }
+
   /**
    * Returns the document vector given a docno.
    *
    * @return {@code IntDocVector} for the appropriate docno
    */
   public IntDocVector getDocVector(int docno) throws IOException {
-    Preconditions.checkArgument(!(docno > collectionDocumentCount || docno < 1));
+    return getDocVectors(new int[] { docno }, new IntDocVector[1])[0];
+  }
 
-    long pos = positions[docno - docnoOffset - 1];
+  /**
+   * Fetches the document vectors for a batch of docnos. Requests are sorted by part file and
+   * offset, so that each part file is opened once and read front to back. Non-null entries of
+   * {@code vectors} are reused: vector {@code i} is read into {@code vectors[i]} if it holds an
+   * instance of the right class, and into a new instance otherwise. An entry is set to
+   * {@code null} if its document vector cannot be found.
+   *
+   * @param docnos docnos of the document vectors to fetch
+   * @param vectors array to hold the document vectors, at least as long as {@code docnos}
+   * @return {@code vectors}
+   */
+  public IntDocVector[] getDocVectors(final int[] docnos, IntDocVector[] vectors)
+      throws IOException {
+    Preconditions.checkNotNull(docnos);
+    Preconditions.checkNotNull(vectors);
+    Preconditions.checkArgument(vectors.length >= docnos.length);
 
-    int fileNo = (int) (pos / BigNumber);
-    pos = pos % BigNumber;
+    // Serve what we can from the cache, and gather up the rest.
+    DataInputBuffer cachedIn = null;
+    Integer[] pending = new Integer[docnos.length];
+    int numPending = 0;
+    for (int i = 0; i < docnos.length; i++) {
+      int docno = docnos[i];
+      Preconditions.checkArgument(!(docno > collectionDocumentCount || docno < 1));
 
-    SequenceFile.Reader reader = null;
-    try {
-      reader = new SequenceFile.Reader(conf,
-          SequenceFile.Reader.file(new Path(path + "/part-m-" + FORMAT.format(fileNo))));
-    } catch (IOException e) {
-      // Try alternative naming scheme for the old API.
-      reader = new SequenceFile.Reader(conf,
-          SequenceFile.Reader.file(new Path(path + "/part-" + FORMAT.format(fileNo))));
+      byte[] bytes = null;
+      if (maxCachedVectors > 0) {
+        synchronized (this) {
+          bytes = cache.get(docno);
+        }
+      }
+
+      if (bytes == null) {
+        pending[numPending++] = i;
+        continue;
+      }
+
+      if (cachedIn == null) {
+        cachedIn = new DataInputBuffer();
+      }
+      cachedIn.reset(bytes, bytes.length);
+      vectors[i] = reuseOrCreate(vectors[i]);
+      vectors[i].readFields(cachedIn);
     }
 
+    if (numPending == 0) {
+      return vectors;
+    }
+
+    // Visit the remaining vectors in file order: positions encode the file number, then the offset.
+    Arrays.sort(pending, 0, numPending, new Comparator<Integer>() {
+      @Override
+      public int compare(Integer i, Integer j) {
+        long pi = positions[docnos[i] - docnoOffset - 1];
+        long pj = positions[docnos[j] - docnoOffset - 1];
+        return pi < pj ? -1 : (pi == pj ? 0 : 1);
+      }
+    });
+
+    SequenceFile.Reader reader = null;
+    int currentFileNo = -1;
     IntWritable key = new IntWritable();
-    IntDocVector value;
+    DataOutputBuffer cachedOut = null;
+
+    for (int n = 0; n < numPending; n++) {
+      int i = pending[n];
+      int docno = docnos[i];
+      long pos = positions[docno - docnoOffset - 1];
+
+      int fileNo = (int) (pos / BigNumber);
+      pos = pos % BigNumber;
+
+      if (fileNo != currentFileNo) {
+        reader = getReader(fileNo);
+        currentFileNo = fileNo;
+      }
+
+      vectors[i] = reuseOrCreate(vectors[i]);
+
+      synchronized (reader) {
+        // Consecutive records need no seek.
+        if (reader.getPosition() != pos) {
+          reader.seek(pos);
+        }
+        reader.next(key, vectors[i]);
+      }
+
+      if (key.get() != docno) {
+        LOG.error("unable to doc vector for docno " + docno + ": found docno " + key + " instead");
+        vectors[i] = null;
+        continue;
+      }
+
+      if (maxCachedVectors > 0) {
+        if (cachedOut == null) {
+          cachedOut = new DataOutputBuffer();
+        }
+        cachedOut.reset();
+        vectors[i].write(cachedOut);
+        cache(docno, Arrays.copyOf(cachedOut.getData(), cachedOut.getLength()));
+      }
+    }
+
+    return vectors;
+  }
+
+  /**
+   * Closes all open part files.
+   */
+  public synchronized void close() throws IOException {
+    for (SequenceFile.Reader reader : readers) {
+      if (reader != null) {
+        reader.close();
+      }
+    }
+    readers = new SequenceFile.Reader[0];
+  }
+
+  private IntDocVector reuseOrCreate(IntDocVector vector) {
+    if (vector != null && valueClass.isInstance(vector)) {
+      return vector;
+    }
 
     try {
-      value = (IntDocVector) reader.getValueClass().newInstance();
+      return (IntDocVector) valueClass.newInstance();
     } catch (Exception e) {
-      reader.close();
       throw new RuntimeException("Unable to instantiate key/value pair!");
     }
+  }
+
+  private synchronized void cache(int docno, byte[] bytes) {
+    cache.put(docno, bytes);
 
-    reader.seek(pos);
-    reader.next(key, value);
+    Iterator<Map.Entry<Integer, byte[]>> iter = cache.entrySet().iterator();
+    while (cache.size() > maxCachedVectors && iter.hasNext()) {
+      iter.next();
+      iter.remove();
+    }
+  }
 
-    if (key.get() != docno) {
-      LOG.error("unable to doc vector for docno " + docno + ": found docno " + key + " instead");
-      reader.close();
-      return null;
+  private synchronized SequenceFile.Reader getReader(int fileNo) throws IOException {
+    if (fileNo >= readers.length) {
+      readers = Arrays.copyOf(readers, fileNo + 1);
     }
 
-    reader.close();
-    return value;
+    if (readers[fileNo] == null) {
+      readers[fileNo] = openReader(fileNo);
+      valueClass = readers[fileNo].getValueClass();
+    }
+
+    return readers[fileNo];
+  }
+
+  private SequenceFile.Reader openReader(int fileNo) throws IOException {
+    try {
+      return new SequenceFile.Reader(conf,
+          SequenceFile.Reader.file(new Path(path + "/part-m-" + FORMAT.format(fileNo))));
+    } catch (IOException e) {
+      // Try alternative naming scheme for the old API.
+      return new SequenceFile.Reader(conf,
+          SequenceFile.Reader.file(new Path(path + "/part-" + FORMAT.format(fileNo))));
+    }
   }
 
   /**
@@ -26,12 +26,13 @@ import java.io.ByteArrayOutputStream;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
-import java.util.Iterator;
 import java.util.Map;
 import java.util.SortedMap;
 
 import org.apache.hadoop.io.WritableUtils;
 
+import tl.lin.data.array.ArrayListOfInts;
+
 /**
  * Implementation of {@link IntDocVector} that lazily decodes term and
  * positional information on demand.
@@ -41,6 +42,9 @@ import org.apache.hadoop.io.WritableUtils;
  */
 public class LazyIntDocVector implements IntDocVector {
   private SortedMap<Integer, int[]> termPositionsMap = null;
+  private int[] terms = null;
+  private ArrayListOfInts[] positions = null;
+  private int numTermsToWrite;
   private byte[] bytes = null;
   private int numTerms;
 
@@ -55,6 +59,24 @@ public class LazyIntDocVector implements IntDocVector {
 
   public void setTermPositionsMap(SortedMap<Integer, int[]> termPositionsMap) {
     this.termPositionsMap = termPositionsMap;
+    this.terms = null;
+    this.positions = null;
+  }
+
+  /**
+   * Sets the term positions from parallel arrays, without boxing them into a map: the first
+   * <code>n</code> termids, which must be increasing, and their positions. The arrays are
+   * referenced, not copied, until the vector is written out.
+   *
+   * @param terms termids, in increasing order
+   * @param positions positions of each term
+   * @param n number of terms
+   */
+  public void setTermPositions(int[] terms, ArrayListOfInts[] positions, int n) {
+    this.termPositionsMap = null;
+    this.terms = terms;
+    this.positions = positions;
+    this.numTermsToWrite = n;
   }
 
   @Override
@@ -64,7 +86,7 @@ public class LazyIntDocVector implements IntDocVector {
       // doc vector; if that's the case, simply write out the byte array
       WritableUtils.writeVInt(out, numTerms);
       writeRawBytes(out);
-    } else if (termPositionsMap != null) {
+    } else if (termPositionsMap != null || terms != null) {
       writeTermPositionsMap(out);
     } else {
       throw new RuntimeException("Unable to write LazyIntDocVector!");
@@ -82,7 +104,7 @@ public class LazyIntDocVector implements IntDocVector {
 
   private void writeTermPositionsMap(DataOutput out) {
     try {
-      numTerms = termPositionsMap.size();
+      numTerms = termPositionsMap != null ? termPositionsMap.size() : numTermsToWrite;
 
       // Write # of terms.
       WritableUtils.writeVInt(out, numTerms);
@@ -92,36 +114,17 @@ public class LazyIntDocVector implements IntDocVector {
       bytesOut = new ByteArrayOutputStream();
       bitsOut = new BitOutputStream(bytesOut);
 
-      Iterator<Map.Entry<Integer, int[]>> it = termPositionsMap.entrySet().iterator();
-      Map.Entry<Integer, int[]> posting = it.next();
-      int[] positions = posting.getValue();
       TermPositions tp = new TermPositions();
-      // Write out the first termid.
-      int lastTerm = posting.getKey().intValue();
-      bitsOut.writeBinary(32, lastTerm);
-      // Write out the tf value.
-      bitsOut.writeGamma((short) positions.length);
-      tp.set(positions, (short) positions.length);
-      // Write out the positions.
-      writePositions(bitsOut, tp);
-
-      int curTerm;
-      while (it.hasNext()) {
-        posting = it.next();
-        curTerm = posting.getKey().intValue();
-        positions = posting.getValue();
-        int tgap = curTerm - lastTerm;
-        if (tgap <= 0) {
-          throw new RuntimeException("Error: encountered invalid t-gap. termid=" + curTerm);
+      int lastTerm = -1;
+      if (termPositionsMap != null) {
+        for (Map.Entry<Integer, int[]> posting : termPositionsMap.entrySet()) {
+          int[] positions = posting.getValue();
+          lastTerm = writeTerm(posting.getKey().intValue(), lastTerm, positions, positions.length, tp);
+        }
+      } else {
+        for (int i = 0; i < numTerms; i++) {
+          lastTerm = writeTerm(terms[i], lastTerm, positions[i].getArray(), positions[i].size(), tp);
         }
-        // Write out the gap.
-        bitsOut.writeGamma(tgap);
-        tp.set(positions, (short) positions.length);
-        // Write out the tf value.
-        bitsOut.writeGamma((short) positions.length);
-        // Write out the positions.
-        writePositions(bitsOut, tp);
-        lastTerm = curTerm;
       }
 
       bitsOut.padAndFlush();
@@ -136,6 +139,28 @@ public class LazyIntDocVector implements IntDocVector {
     }
   }
 
+  // Writes out a term (the first one in full, the others as t-gaps), its tf, and its positions.
+  private int writeTerm(int curTerm, int lastTerm, int[] positions, int tf, TermPositions tp)
+      throws IOException {
+    if (lastTerm < 0) {
+      // Write out the first termid.
+      bitsOut.writeBinary(32, curTerm);
+    } else {
+      int tgap = curTerm - lastTerm;
+      if (tgap <= 0) {
+        throw new RuntimeException("Error: encountered invalid t-gap. termid=" + curTerm);
+      }
+      // Write out the gap.
+      bitsOut.writeGamma(tgap);
+    }
+    // Write out the tf value.
+    bitsOut.writeGamma((short) tf);
+    tp.set(positions, (short) tf);
+    // Write out the positions.
+    writePositions(bitsOut, tp);
+    return curTerm;
+  }
+
   @Override
   public void readFields(DataInput in) throws IOException {
     numTerms = WritableUtils.readVInt(in);
@@ -19,6 +19,8 @@ package ivory.core.data.index;
 import ivory.core.RetrievalEnvironment;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.text.DecimalFormat;
@@ -27,15 +29,34 @@ import java.text.NumberFormat;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FSDataInputStream;
 import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocalFileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.IntWritable;
 import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.util.ReflectionUtils;
 import org.apache.log4j.Logger;
 
 import com.google.common.base.Preconditions;
 
 import edu.umd.cloud9.debug.MemoryUsageUtils;
 
+/**
+ * Object providing an index into one or more {@code SequenceFile}s containing
+ * {@link PostingsList}s, providing random access to the postings lists.
+ *
+ * <p>
+ * Each {@code part-NNNNN} file is opened at most once, the first time a term
+ * that lives in it is requested, and the handle is kept open for the lifetime
+ * of this object. Postings are fetched with positioned reads directly at the
+ * offset recorded in the forward index, so lookups never re-open files or
+ * re-parse {@code SequenceFile} headers, and a single instance can be shared
+ * across threads. Compressed {@code SequenceFile}s cannot be read this way, so
+ * for those we fall back to a single shared {@code SequenceFile.Reader} per
+ * file, with access serialized.
+ * </p>
+ *
+ * @see ivory.core.index.BuildIntPostingsForwardIndex
+ */
 public class IntPostingsForwardIndex {
   private static final Logger LOG = Logger.getLogger(IntPostingsForwardIndex.class);
   private static final NumberFormat FORMAT = new DecimalFormat("00000");
@@ -44,9 +65,18 @@ public class IntPostingsForwardIndex {
   // this value, which seems safe, at least for a while... :)
   public static final long BigNumber = 1000000000000000L;
 
+  // Escape value preceding sync markers in a SequenceFile, and the length of the sync marker that
+  // follows; these mirror the (private) constants in SequenceFile.
+  private static final int SYNC_ESCAPE = -1;
+  private static final int SYNC_HASH_SIZE = 16;
+
   private final long[] positions;
   private final String postingsPath;
   private final Configuration conf;
+  private final FileSystem fs;
+
+  // Open segments, indexed by file number; populated lazily.
+  private Segment[] segments = new Segment[0];
 
   public IntPostingsForwardIndex(String indexPath, FileSystem fs) throws IOException {
     Preconditions.checkNotNull(indexPath);
@@ -56,6 +86,10 @@ public class IntPostingsForwardIndex {
     RetrievalEnvironment env = new RetrievalEnvironment(indexPath, fs);
     postingsPath = env.getPostingsDirectory();
 
+    // Positioned reads on the checksummed local filesystem re-open the file under the covers, so
+    // go straight to the raw filesystem instead.
+    this.fs = fs instanceof LocalFileSystem ? ((LocalFileSystem) fs).getRawFileSystem() : fs;
+
     FSDataInputStream posInput = fs.open(new Path(env.getPostingsIndexData()));
 
     int l = posInput.readInt();
@@ -63,52 +97,129 @@ public class IntPostingsForwardIndex {
     for (int i = 0; i < l; i++) {
       positions[i] = posInput.readLong();
     }
+    posInput.close();
   }
 
   public PostingsList getPostingsList(int termid) throws IOException {
-    // TODO: This method re-opens the SequenceFile on every access. Would be more efficient to cache
-    // the file handles.
-
     long pos = positions[termid - 1];
 
     int fileNo = (int) (pos / BigNumber);
     pos = pos % BigNumber;
 
-    // Open up the SequenceFile.
-    SequenceFile.Reader reader = null;
-    try {
-      reader = new SequenceFile.Reader(conf,
-          SequenceFile.Reader.file(new Path(postingsPath + "/part-" + FORMAT.format(fileNo))));
-    } catch (IOException e) {
-      // Try alternative naming scheme for output of new API.
-      reader = new SequenceFile.Reader(conf,
-          SequenceFile.Reader.file(new Path(postingsPath + "/part-r-" + FORMAT.format(fileNo))));
-    }
+    Segment segment = getSegment(fileNo);
 
     IntWritable key = new IntWritable();
-    PostingsList value = null;
-    try {
-      value = (PostingsList) Class.forName(reader.getValueClassName()).newInstance();
-    } catch (Exception e) {
-      e.printStackTrace();
-      reader.close();
-      return null;
-    }
+    PostingsList value = ReflectionUtils.newInstance(segment.valueClass, conf);
 
-    reader.seek(pos);
-    reader.next(key, value);
+    segment.read(pos, key, value);
 
     if (key.get() != termid) {
       LOG.error("unable to fetch postings for term \"" + termid + "\": found key \""
           + key + "\" instead");
-      reader.close();
       return null;
     }
 
-    reader.close();
     return value;
   }
 
+  /**
+   * Closes all open postings files.
+   */
+  public synchronized void close() throws IOException {
+    for (Segment segment : segments) {
+      if (segment != null) {
+        segment.close();
+      }
+    }
+    segments = new Segment[0];
+  }
+
+  private synchronized Segment getSegment(int fileNo) throws IOException {
+    if (fileNo >= segments.length) {
+      Segment[] expanded = new Segment[fileNo + 1];
+      System.arraycopy(segments, 0, expanded, 0, segments.length);
+      segments = expanded;
+    }
+
+    if (segments[fileNo] == null) {
+      Path path = new Path(postingsPath + "/part-" + FORMAT.format(fileNo));
+      if (!fs.exists(path)) {
+        // Try alternative naming scheme for output of new API.
+        path = new Path(postingsPath + "/part-r-" + FORMAT.format(fileNo));
+      }
+      segments[fileNo] = new Segment(path);
+    }
+
+    return segments[fileNo];
+  }
+
+  /**
+   * An open {@code part-NNNNN} file of postings.
+   */
+  private class Segment {
+    private final Class<? extends PostingsList> valueClass;
+    private final FSDataInputStream in;
+    private final SequenceFile.Reader reader;
+
+    public Segment(Path path) throws IOException {
+      SequenceFile.Reader header = new SequenceFile.Reader(conf, SequenceFile.Reader.file(path));
+      valueClass = header.getValueClass().asSubclass(PostingsList.class);
+
+      if (header.isCompressed()) {
+        LOG.warn(path + " is compressed: falling back to sequential reads.");
+        reader = header;
+        in = null;
+      } else {
+        header.close();
+        reader = null;
+        in = fs.open(path);
+      }
+    }
+
+    public void read(long pos, IntWritable key, PostingsList value) throws IOException {
+      if (reader != null) {
+        synchronized (reader) {
+          reader.seek(pos);
+          reader.next(key, value);
+        }
+        return;
+      }
+
+      // Each record is laid out as: record length, key length, key bytes, value bytes. A record
+      // may be preceded by a sync marker, which is flagged by an escape value.
+      byte[] lengths = new byte[8];
+      in.readFully(pos, lengths, 0, 4);
+      if (readInt(lengths, 0) == SYNC_ESCAPE) {
+        pos += 4 + SYNC_HASH_SIZE;
+      }
+      in.readFully(pos, lengths, 0, 8);
+
+      int recordLength = readInt(lengths, 0);
+      int keyLength = readInt(lengths, 4);
+
+      byte[] record = new byte[recordLength];
+      in.readFully(pos + 8, record, 0, recordLength);
+
+      DataInputStream data = new DataInputStream(new ByteArrayInputStream(record));
+      key.readFields(data);
+      data.skipBytes(keyLength - 4);
+      value.readFields(data);
+    }
+
+    public void close() throws IOException {
+      if (reader != null) {
+        reader.close();
+      } else {
+        in.close();
+      }
+    }
+  }
+
+  private static int readInt(byte[] b, int off) {
+    return ((b[off] & 0xff) << 24) | ((b[off + 1] & 0xff) << 16) |
+        ((b[off + 2] & 0xff) << 8) | (b[off + 3] & 0xff);
+  }
+
   public static void main(String[] args) throws Exception {
     if (args.length != 1) {
       System.out.println("usage: [indexPath]");
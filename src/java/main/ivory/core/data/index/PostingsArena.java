@@ -0,0 +1,359 @@
+/*
+ * Ivory: A Hadoop toolkit for web-scale information retrieval
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package ivory.core.data.index;
+
+import java.util.Arrays;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * <p>
+ * Buffer for partial positional postings lists, compressed as they are added. For each term, a
+ * posting is written as the d-gap from the term's previous docno, the tf, and the term positions as
+ * p-gaps, all as variable-length integers. Docnos for each term must therefore be added in
+ * increasing order.
+ * </p>
+ *
+ * <p>
+ * Bytes are carved out of fixed-size pages. Each term's postings live in a chain of slices that
+ * start small and double in size up to a limit, where the last four bytes of each slice hold the
+ * address of the next one. The whole buffer is thus a handful of large arrays no matter how many
+ * terms it holds, and {@link #getBytesUsed()} accounts for every byte of them. Pages and tables are
+ * kept across calls to {@link #clear()}, so a buffer that is repeatedly filled and flushed stops
+ * allocating once it has reached its working size.
+ * </p>
+ */
+public class PostingsArena {
+  private static final int PAGE_BITS = 16;
+  private static final int PAGE_SIZE = 1 << PAGE_BITS;
+  private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+  // Slice sizes, in bytes, including the pointer to the next slice.
+  private static final int FIRST_SLICE_SIZE = 16;
+  private static final int MAX_SLICE_SIZE = 1024;
+
+  // Per-term tables: number of parallel int arrays below.
+  private static final int TERM_TABLES = 7;
+
+  private byte[][] pages = new byte[16][];
+  private int pagesAllocated = 0;
+  private int pagesUsed = 0;
+  private int pageOffset = PAGE_SIZE;  // Offset into the current page; forces a new page at first.
+
+  private int numTerms = 0;
+  private int[] termids = new int[1024];
+  private int[] df = new int[1024];
+  private int[] lastDocno = new int[1024];
+  private int[] firstSlice = new int[1024];
+  private int[] writePos = new int[1024];
+  private int[] sliceEnd = new int[1024];
+  private int[] sliceSize = new int[1024];
+
+  // Open-addressing hash table from term id to index into the per-term tables, plus one (0 marks
+  // an empty bucket).
+  private int[] buckets = new int[2048];
+
+  /**
+   * Adds a posting.
+   *
+   * @param termid term id
+   * @param docno docno, which must be greater than the last docno added for this term
+   * @param positions term positions, in increasing order
+   * @param tf number of positions to take from {@code positions}
+   */
+  public void add(int termid, int docno, int[] positions, int tf) {
+    Preconditions.checkArgument(tf > 0);
+
+    int t = lookup(termid);
+    int dgap = docno - lastDocno[t];
+    if (dgap <= 0) {
+      throw new IllegalArgumentException("Error: encountered invalid d-gap. docno=" + docno
+          + ", previous docno=" + lastDocno[t]);
+    }
+
+    writeVInt(t, dgap);
+    writeVInt(t, tf);
+    writeVInt(t, positions[0]);
+    for (int i = 1; i < tf; i++) {
+      writeVInt(t, positions[i] - positions[i - 1]);
+    }
+
+    lastDocno[t] = docno;
+    df[t]++;
+  }
+
+  /**
+   * Returns the number of terms with postings.
+   */
+  public int size() {
+    return numTerms;
+  }
+
+  /**
+   * Returns the term id of the {@code i}th term, in the order terms were first added.
+   */
+  public int getTermid(int i) {
+    return termids[i];
+  }
+
+  /**
+   * Returns the number of postings of the {@code i}th term.
+   */
+  public int getDf(int i) {
+    return df[i];
+  }
+
+  /**
+   * Returns the number of bytes held by this buffer: pages handed out to terms, plus the per-term
+   * tables.
+   */
+  public long getBytesUsed() {
+    return (long) pagesUsed * PAGE_SIZE + 4L * (termids.length * TERM_TABLES + buckets.length);
+  }
+
+  /**
+   * Removes all postings. Memory is kept for reuse.
+   */
+  public void clear() {
+    Arrays.fill(buckets, 0);
+    numTerms = 0;
+    pagesUsed = 0;
+    pageOffset = PAGE_SIZE;
+  }
+
+  /**
+   * Returns a reader over the postings of the {@code i}th term.
+   */
+  public Reader getReader(int i) {
+    Reader reader = new Reader();
+    reader.reset(i);
+    return reader;
+  }
+
+  /**
+   * Cursor over the postings of one term. A reader can be moved to another term with
+   * {@link #reset(int)}, and is invalidated by further additions to the buffer.
+   */
+  public class Reader {
+    private int remaining;
+    private int pos;
+    private int end;
+    private int size;
+
+    private int docno;
+    private int tf;
+    private int[] positions = new int[16];
+
+    private Reader() {}
+
+    /**
+     * Moves this reader to the start of the postings of the {@code i}th term.
+     */
+    public void reset(int i) {
+      remaining = df[i];
+      pos = firstSlice[i];
+      size = FIRST_SLICE_SIZE;
+      end = pos + size - 4;
+      docno = 0;
+      tf = 0;
+    }
+
+    /**
+     * Decodes the next posting.
+     *
+     * @return {@code false} if there are no more postings
+     */
+    public boolean nextPosting() {
+      if (remaining == 0) {
+        return false;
+      }
+      remaining--;
+
+      docno += readVInt();
+      tf = readVInt();
+      if (positions.length < tf) {
+        positions = new int[Math.max(tf, positions.length * 2)];
+      }
+      int p = 0;
+      for (int i = 0; i < tf; i++) {
+        p += readVInt();
+        positions[i] = p;
+      }
+
+      return true;
+    }
+
+    public int getDocno() {
+      return docno;
+    }
+
+    public int getTf() {
+      return tf;
+    }
+
+    /**
+     * Returns the term positions of the current posting. Only the first {@link #getTf()} entries
+     * are valid, and the array is overwritten by the next call to {@link #nextPosting()}.
+     */
+    public int[] getPositions() {
+      return positions;
+    }
+
+    private int readVInt() {
+      int b = readByte();
+      int value = b & 0x7f;
+      for (int shift = 7; (b & 0x80) != 0; shift += 7) {
+        b = readByte();
+        value |= (b & 0x7f) << shift;
+      }
+      return value;
+    }
+
+    private int readByte() {
+      if (pos == end) {
+        // Follow the pointer to the next slice.
+        pos = readInt(end);
+        size = Math.min(size * 2, MAX_SLICE_SIZE);
+        end = pos + size - 4;
+      }
+      int b = pages[pos >>> PAGE_BITS][pos & PAGE_MASK];
+      pos++;
+      return b;
+    }
+  }
+
+  private int lookup(int termid) {
+    int mask = buckets.length - 1;
+    int b = hash(termid) & mask;
+    while (buckets[b] != 0) {
+      int t = buckets[b] - 1;
+      if (termids[t] == termid) {
+        return t;
+      }
+      b = (b + 1) & mask;
+    }
+
+    // New term.
+    int t = numTerms++;
+    if (t == termids.length) {
+      growTermTables();
+    }
+    termids[t] = termid;
+    df[t] = 0;
+    lastDocno[t] = 0;
+    firstSlice[t] = allocate(FIRST_SLICE_SIZE);
+    writePos[t] = firstSlice[t];
+    sliceSize[t] = FIRST_SLICE_SIZE;
+    sliceEnd[t] = firstSlice[t] + FIRST_SLICE_SIZE - 4;
+    buckets[b] = t + 1;
+
+    // Keep the load factor at most one half.
+    if (2 * numTerms > buckets.length) {
+      rehash();
+    }
+
+    return t;
+  }
+
+  private static int hash(int termid) {
+    int h = termid * 0x9e3779b9;
+    return h ^ (h >>> 16);
+  }
+
+  private void rehash() {
+    buckets = new int[buckets.length * 2];
+    int mask = buckets.length - 1;
+    for (int t = 0; t < numTerms; t++) {
+      int b = hash(termids[t]) & mask;
+      while (buckets[b] != 0) {
+        b = (b + 1) & mask;
+      }
+      buckets[b] = t + 1;
+    }
+  }
+
+  private void growTermTables() {
+    int n = termids.length * 2;
+    termids = Arrays.copyOf(termids, n);
+    df = Arrays.copyOf(df, n);
+    lastDocno = Arrays.copyOf(lastDocno, n);
+    firstSlice = Arrays.copyOf(firstSlice, n);
+    writePos = Arrays.copyOf(writePos, n);
+    sliceEnd = Arrays.copyOf(sliceEnd, n);
+    sliceSize = Arrays.copyOf(sliceSize, n);
+  }
+
+  // Returns the address of a new slice, which never straddles two pages.
+  private int allocate(int size) {
+    if (pageOffset + size > PAGE_SIZE) {
+      if (pagesUsed == Integer.MAX_VALUE >>> PAGE_BITS) {
+        throw new IllegalStateException("Error: postings buffer is full!");
+      }
+      if (pagesUsed == pagesAllocated) {
+        if (pagesAllocated == pages.length) {
+          pages = Arrays.copyOf(pages, pages.length * 2);
+        }
+        pages[pagesAllocated++] = new byte[PAGE_SIZE];
+      }
+      pagesUsed++;
+      pageOffset = 0;
+    }
+
+    int address = ((pagesUsed - 1) << PAGE_BITS) | pageOffset;
+    pageOffset += size;
+    return address;
+  }
+
+  private void writeVInt(int t, int value) {
+    while ((value & ~0x7f) != 0) {
+      writeByte(t, (value & 0x7f) | 0x80);
+      value >>>= 7;
+    }
+    writeByte(t, value);
+  }
+
+  private void writeByte(int t, int b) {
+    int pos = writePos[t];
+    if (pos == sliceEnd[t]) {
+      // Chain on a new slice, twice as large as the current one.
+      int size = Math.min(sliceSize[t] * 2, MAX_SLICE_SIZE);
+      int next = allocate(size);
+      writeInt(pos, next);
+      pos = next;
+      sliceSize[t] = size;
+      sliceEnd[t] = next + size - 4;
+    }
+    pages[pos >>> PAGE_BITS][pos & PAGE_MASK] = (byte) b;
+    writePos[t] = pos + 1;
+  }
+
+  private void writeInt(int address, int value) {
+    byte[] page = pages[address >>> PAGE_BITS];
+    int offset = address & PAGE_MASK;
+    page[offset] = (byte) (value >>> 24);
+    page[offset + 1] = (byte) (value >>> 16);
+    page[offset + 2] = (byte) (value >>> 8);
+    page[offset + 3] = (byte) value;
+  }
+
+  private int readInt(int address) {
+    byte[] page = pages[address >>> PAGE_BITS];
+    int offset = address & PAGE_MASK;
+    return ((page[offset] & 0xff) << 24) | ((page[offset + 1] & 0xff) << 16)
+        | ((page[offset + 2] & 0xff) << 8) | (page[offset + 3] & 0xff);
+  }
+}
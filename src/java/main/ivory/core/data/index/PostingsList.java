@@ -137,6 +137,13 @@ public interface PostingsList extends Writable {
 	 * Returns the raw byte array representation of this postings list.
 	 */
 	public byte[] getRawBytes();
+
+	/**
+	 * Returns the number of bytes taken up by the encoded postings held in
+	 * memory. This is meant to be cheap, e.g., for sizing cache entries, and
+	 * does not need to match the length of {@link #serialize()} exactly.
+	 */
+	public long getSizeInBytes();
 	
 	public byte[] serialize() throws IOException;
 }
@@ -0,0 +1,192 @@
+/*
+ * Ivory: A Hadoop toolkit for web-scale information retrieval
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package ivory.core.data.index;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * <p>
+ * Thread-safe cache of {@link PostingsList}s keyed by term id, bounded by the total number of
+ * bytes held. Entries are evicted in least-recently-used order once the budget is exceeded.
+ * </p>
+ *
+ * <p>
+ * Cached postings lists are shared between callers and must be treated as read-only: callers
+ * should obtain a cursor through {@link PostingsList#getPostingsReader()}, which returns a fresh
+ * reader over the encoded postings each time, rather than sharing readers.
+ * </p>
+ *
+ * <p>
+ * Loads happen outside the cache lock, so two threads missing on the same term at the same time
+ * may both load it; the second insert simply replaces the first.
+ * </p>
+ */
+public class PostingsListCache {
+  // Rough per-entry overhead (map entry, postings list object, boxed key), in bytes.
+  private static final int ENTRY_OVERHEAD = 128;
+
+  /**
+   * Callback used to load a postings list on a cache miss.
+   */
+  public static interface Loader {
+    /**
+     * Loads the postings list for a term id, or returns {@code null} if there is none.
+     */
+    PostingsList load(int termid) throws IOException;
+  }
+
+  private final long maxBytes;
+  private final LinkedHashMap<Integer, Entry> entries =
+      new LinkedHashMap<Integer, Entry>(16, 0.75f, true);
+
+  private long bytes = 0;
+  private long hits = 0;
+  private long misses = 0;
+  private long evictions = 0;
+
+  private static class Entry {
+    final PostingsList list;
+    final long size;
+
+    Entry(PostingsList list, long size) {
+      this.list = list;
+      this.size = size;
+    }
+  }
+
+  /**
+   * Creates a cache holding at most {@code maxBytes} bytes of postings. A budget of zero disables
+   * caching entirely.
+   *
+   * @param maxBytes maximum number of bytes to hold
+   */
+  public PostingsListCache(long maxBytes) {
+    Preconditions.checkArgument(maxBytes >= 0);
+    this.maxBytes = maxBytes;
+  }
+
+  /**
+   * Returns the postings list for a term id, loading it with {@code loader} on a miss.
+   *
+   * @param termid term id
+   * @param loader loader to use on a cache miss
+   * @return postings list, or {@code null} if the loader returns {@code null}
+   */
+  public PostingsList get(int termid, Loader loader) throws IOException {
+    synchronized (this) {
+      Entry entry = entries.get(termid);
+      if (entry != null) {
+        hits++;
+        return entry.list;
+      }
+      misses++;
+    }
+
+    PostingsList list = loader.load(termid);
+    if (list == null) {
+      return null;
+    }
+
+    long size = sizeOf(list);
+    if (size > maxBytes) {
+      // Too big to ever fit; don't flush the entire cache for it.
+      return list;
+    }
+
+    synchronized (this) {
+      Entry old = entries.put(termid, new Entry(list, size));
+      if (old != null) {
+        bytes -= old.size;
+      }
+      bytes += size;
+
+      Iterator<Map.Entry<Integer, Entry>> iter = entries.entrySet().iterator();
+      while (bytes > maxBytes && iter.hasNext()) {
+        bytes -= iter.next().getValue().size;
+        iter.remove();
+        evictions++;
+      }
+    }
+
+    return list;
+  }
+
+  /**
+   * Removes all entries from this cache. Counters are left untouched.
+   */
+  public synchronized void clear() {
+    entries.clear();
+    bytes = 0;
+  }
+
+  /**
+   * Returns the maximum number of bytes this cache will hold.
+   */
+  public long getCapacity() {
+    return maxBytes;
+  }
+
+  /**
+   * Returns the number of bytes currently held.
+   */
+  public synchronized long getSize() {
+    return bytes;
+  }
+
+  /**
+   * Returns the number of postings lists currently held.
+   */
+  public synchronized int getCount() {
+    return entries.size();
+  }
+
+  /**
+   * Returns the number of lookups that were served from the cache.
+   */
+  public synchronized long getHitCount() {
+    return hits;
+  }
+
+  /**
+   * Returns the number of lookups that required a load.
+   */
+  public synchronized long getMissCount() {
+    return misses;
+  }
+
+  /**
+   * Returns the number of entries evicted to stay within the byte budget.
+   */
+  public synchronized long getEvictionCount() {
+    return evictions;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return String.format("PostingsListCache[%d lists, %d/%d bytes, %d hits, %d misses, %d evictions]",
+        entries.size(), bytes, maxBytes, hits, misses, evictions);
+  }
+
+  private static long sizeOf(PostingsList list) {
+    return list.getSizeInBytes() + ENTRY_OVERHEAD;
+  }
+}
@@ -147,6 +147,11 @@ public class PostingsListDocSortedNonPositional implements PostingsList {
     return rawBytes;
   }
 
+  @Override
+  public long getSizeInBytes() {
+    return rawBytes == null ? 0 : rawBytes.length;
+  }
+
   @Override
   public void setCollectionDocumentCount(int docs) {
     collectionSize = docs;
@@ -277,6 +282,7 @@ public class PostingsListDocSortedNonPositional implements PostingsList {
     private int innerGolombParam;
     private int innerCollectionSize;
     private PostingsList postingsList;
+    private final Posting skipPosting = new Posting();  // Scratch posting for skipTo().
 
     public PostingsReader(byte[] bytes, int numPostings, int collectionSize,
         PostingsListDocSortedNonPositional list) throws IOException {
@@ -336,6 +342,16 @@ public class PostingsListDocSortedNonPositional implements PostingsList {
       return true;
     }
 
+    @Override
+    public boolean skipTo(int docno) {
+      while (cnt == 0 || innerPrevDocno < docno) {
+        if (!nextPosting(skipPosting)) {
+          return false;
+        }
+      }
+      return true;
+    }
+
     @Override
     public int[] getPositions() {
       throw new UnsupportedOperationException();
@@ -185,6 +185,16 @@ public class PostingsListDocSortedPositional implements PostingsList {
     return postingsAdded;
   }
 
+  /**
+   * Returns the number of bits of encoded postings written so far, i.e., the offset at which the
+   * next posting added will start.
+   *
+   * @return number of bits written so far
+   */
+  protected long getBitsWritten() {
+    return bitsOut.getByteOffset() * 8 + bitsOut.getBitOffset();
+  }
+
   @Override
   public PostingsReader getPostingsReader() {
     Preconditions.checkNotNull(rawBytes);
@@ -204,6 +214,11 @@ public class PostingsListDocSortedPositional implements PostingsList {
     return rawBytes;
   }
 
+  @Override
+  public long getSizeInBytes() {
+    return rawBytes == null ? 0 : rawBytes.length;
+  }
+
   @Override
   public void setCollectionDocumentCount(int docs) {
     Preconditions.checkArgument(docs > 0);
@@ -322,6 +337,30 @@ public class PostingsListDocSortedPositional implements PostingsList {
         new DataInputStream(new ByteArrayInputStream(bytes)));
   }
 
+  /**
+   * Creates a postings list that shares the encoded postings of another. Since
+   * {@link #readFields(DataInput)} reads into a fresh byte array every time, this is a cheap way to
+   * hold on to a postings list whose object is about to be reused, e.g., by Hadoop.
+   *
+   * @param other postings list with encoded postings
+   * @return postings list sharing the encoded postings of {@code other}
+   */
+  public static PostingsListDocSortedPositional shallowCopy(PostingsListDocSortedPositional other) {
+    Preconditions.checkNotNull(other.rawBytes);
+
+    PostingsListDocSortedPositional p = new PostingsListDocSortedPositional();
+    p.rawBytes = other.rawBytes;
+    p.postingsAdded = other.postingsAdded;
+    p.numPostings = other.numPostings;
+    p.sumOfPostingsScore = other.sumOfPostingsScore;
+    p.df = other.df;
+    p.cf = other.cf;
+    p.collectionDocumentCount = other.collectionDocumentCount;
+    p.golombParam = other.golombParam;
+
+    return p;
+  }
+
   /**
    * {@code PostingsReader} for {@code PostingsListDocSortedPositional}.
    *
@@ -339,6 +378,7 @@ public class PostingsListDocSortedPositional implements PostingsList {
     private int innerCollectionSize;
     private boolean needToReadPositions = false;
     private PostingsList postingsList;
+    private final Posting skipPosting = new Posting();  // Scratch posting for skipTo().
 
     protected PostingsReader(byte[] bytes, int numPostings, int collectionSize,
         PostingsListDocSortedPositional list) throws IOException {
@@ -408,6 +448,49 @@ public class PostingsListDocSortedPositional implements PostingsList {
       return true;
     }
 
+    @Override
+    public boolean skipTo(int docno) {
+      while (cnt == 0 || innerPrevDocno < docno) {
+        if (!nextPosting(skipPosting)) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    /**
+     * Returns the number of postings read so far.
+     *
+     * @return number of postings read so far
+     */
+    protected int getPostingsRead() {
+      return cnt;
+    }
+
+    /**
+     * Repositions this reader at the start of a posting, for formats that record where postings
+     * begin in the bit stream.
+     *
+     * @param bitOffset offset of the posting in the encoded postings, in bits
+     * @param postingsRead number of postings preceding it
+     * @param prevDocno docno of the posting preceding it
+     */
+    protected void seek(long bitOffset, int postingsRead, int prevDocno) {
+      try {
+        bytesIn.reset();
+        bytesIn.skip(bitOffset / 8);
+        bitsIn.restart();
+        bitsIn.skipBits((int) (bitOffset % 8));
+      } catch (IOException e) {
+        throw new RuntimeException("Error seeking in postings: bitOffset=" + bitOffset, e);
+      }
+
+      cnt = postingsRead;
+      innerPrevDocno = prevDocno;
+      curPositions = null;
+      needToReadPositions = false;
+    }
+
     @Override
     public int[] getPositions() {
       if (curPositions != null) {
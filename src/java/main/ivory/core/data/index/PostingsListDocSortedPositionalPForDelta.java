@@ -16,6 +16,8 @@
 
 package ivory.core.data.index;
 
+import ivory.core.compression.PForDeltaBlockDecoder;
+
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.DataInput;
@@ -41,6 +43,11 @@ import com.google.common.collect.Lists;
  * @author Nima Asadi
  */
 public class PostingsListDocSortedPositionalPForDelta implements PostingsList {
+  /**
+   * Number of postings in each block, except possibly the last.
+   */
+  public static final int BLOCK_SIZE = 128;
+
   private int[][] docidCompressed; //Docid blocks
   private int[][] offsetCompressed; //Offset blocks
   private int[][] tfCompressed; //Term frequency blocks
@@ -115,11 +122,38 @@ public class PostingsListDocSortedPositionalPForDelta implements PostingsList {
     return new PostingsReader(postingsAdded, this);
   }
 
+  // Returns the number of postings in a block.
+  private int getBlockSize(int block) {
+    return block == docidCompressed.length - 1 ? lastBlockSize : BLOCK_SIZE;
+  }
+
+  // Returns the number of term positions in a block of positions.
+  private int getPositionsBlockSize(int block) {
+    return block == positionsCompressed.length - 1 ? positionsLastBlockSize : BLOCK_SIZE;
+  }
+
   @Override
   public byte[] getRawBytes() {
     return null;
   }
 
+  @Override
+  public long getSizeInBytes() {
+    return 4 * (countInts(docidCompressed) + countInts(offsetCompressed) + countInts(tfCompressed)
+        + countInts(positionsCompressed));
+  }
+
+  private static long countInts(int[][] blocks) {
+    if (blocks == null) {
+      return 0;
+    }
+    long n = 0;
+    for (int[] block : blocks) {
+      n += block.length;
+    }
+    return n;
+  }
+
   @Override
   public void setCollectionDocumentCount(int docs) {
     Preconditions.checkArgument(docs > 0);
@@ -268,18 +302,27 @@ public class PostingsListDocSortedPositionalPForDelta implements PostingsList {
   }
 
   /**
-   * {@code PostingsReader} for {@code PostingsListDocSortedPositionalPForDelta}.
+   * {@code PostingsReader} for {@code PostingsListDocSortedPositionalPForDelta}. Besides the
+   * posting-at-a-time interface, postings can be read a block at a time with
+   * {@link #nextBlock(int[], int[])} and {@link #getBlockPositions(int[], int[])}.
    *
    * @author Nima Asadi
    */
   public static class PostingsReader implements ivory.core.data.index.PostingsReader {
+    private final PForDeltaBlockDecoder decoder = new PForDeltaBlockDecoder();
+
+    // Decoded blocks, and which blocks they hold.
+    private final int[] docidBlock = new int[BLOCK_SIZE];
+    private final int[] offsetBlock = new int[BLOCK_SIZE];
+    private final int[] tfBlock = new int[BLOCK_SIZE];
+    private final int[] positionBlock = new int[BLOCK_SIZE];
     private int currentBlock = -1;
     private int currentOffsetBlock = -1;
     private int currentPositionBlock = -1;
-    private int[] docidBlock = null;
-    private int[] offsetBlock = null;
-    private int[] tfBlock = null;
-    private int[] positionBlock = null;
+
+    // Postings returned by the last call to nextBlock(), if that was the last thing we did.
+    private int bulkStart = 0;
+    private int bulkCount = 0;
 
     private int cnt = 0;
     private int[] curPositions;
@@ -287,17 +330,13 @@ public class PostingsListDocSortedPositionalPForDelta implements PostingsList {
     private int innerPrevDocno;
     private int innerNumPostings;
     private PostingsListDocSortedPositionalPForDelta postingsList;
+    private final Posting skipPosting = new Posting();  // Scratch posting for skipTo().
 
     protected PostingsReader(int numPostings,
         PostingsListDocSortedPositionalPForDelta list) {
       Preconditions.checkNotNull(list);
       Preconditions.checkArgument(numPostings > 0);
 
-      docidBlock = new int[PForDeltaUtility.BLOCK_SIZE];
-      tfBlock = new int[PForDeltaUtility.BLOCK_SIZE];
-      offsetBlock = new int[PForDeltaUtility.BLOCK_SIZE];
-      positionBlock = new int[PForDeltaUtility.BLOCK_SIZE];
-
       innerNumPostings = numPostings;
       postingsList = list;
     }
@@ -312,10 +351,7 @@ public class PostingsListDocSortedPositionalPForDelta implements PostingsList {
       currentBlock = -1;
       currentOffsetBlock = -1;
       currentPositionBlock = -1;
-      docidBlock = new int[PForDeltaUtility.BLOCK_SIZE];
-      tfBlock = new int[PForDeltaUtility.BLOCK_SIZE];
-      offsetBlock = new int[PForDeltaUtility.BLOCK_SIZE];
-      positionBlock = new int[PForDeltaUtility.BLOCK_SIZE];
+      bulkCount = 0;
       cnt = 0;
     }
 
@@ -325,130 +361,164 @@ public class PostingsListDocSortedPositionalPForDelta implements PostingsList {
         return false;
       }
 
-      int blockNumber = (int) ((double) cnt / (double) PForDeltaUtility.BLOCK_SIZE);
-      int inBlockIndex = cnt % PForDeltaUtility.BLOCK_SIZE;
-
-      // If this is the last block, use lastBlockSize instead of the default
-      // block size
-      if(blockNumber == postingsList.docidCompressed.length - 1 &&
-         currentBlock != blockNumber) {
-        docidBlock = new int[postingsList.lastBlockSize];
-        tfBlock = new int[postingsList.lastBlockSize];
-      }
-
-      if(currentBlock != blockNumber) {
-        //Docids are gap-compressed
-        PForDelta.decompressOneBlock(docidBlock, postingsList.docidCompressed[blockNumber], docidBlock.length);
-        for(int i = 1; i < docidBlock.length; i++) {
-          docidBlock[i] += docidBlock[i - 1];
-        }
-        PForDelta.decompressOneBlock(tfBlock, postingsList.tfCompressed[blockNumber], tfBlock.length);
-      }
+      loadBlock(cnt / BLOCK_SIZE);
+      int inBlockIndex = cnt % BLOCK_SIZE;
 
       p.setDocno(docidBlock[inBlockIndex]);
       p.setTf((short) tfBlock[inBlockIndex]);
 
-      currentBlock = blockNumber;
       cnt++;
       innerPrevDocno = p.getDocno();
       innerPrevTf = p.getTf();
       curPositions = null;
+      bulkCount = 0;
 
       return true;
     }
 
     @Override
-    public int[] getPositions() {
-      if (curPositions != null) {
-        return curPositions;
+    public boolean skipTo(int docno) {
+      while (cnt == 0 || innerPrevDocno < docno) {
+        if (!nextPosting(skipPosting)) {
+          return false;
+        }
       }
+      return true;
+    }
 
-      // Grab the offset value for the current posting
-      int cnt = this.cnt - 1;
-      int blockNumber = (int) ((double) cnt / (double) PForDeltaUtility.BLOCK_SIZE);
-      int inBlockIndex = cnt % PForDeltaUtility.BLOCK_SIZE;
-
-      // If this is the last block, use lastBlockSize instead of the default
-      // block size
-      if(blockNumber == postingsList.offsetCompressed.length - 1 &&
-         currentOffsetBlock != blockNumber) {
-        offsetBlock = new int[postingsList.lastBlockSize];
+    /**
+     * Reads the postings from the next one up to the end of its block in one go, leaving the last
+     * of them as the current posting.
+     *
+     * @param docnos array to hold the docnos, with room for {@link #BLOCK_SIZE} of them
+     * @param tfs array to hold the term frequencies, with room for {@link #BLOCK_SIZE} of them
+     * @return number of postings read, or zero if there are no more postings
+     */
+    public int nextBlock(int[] docnos, int[] tfs) {
+      if(!hasMorePostings()) {
+        return 0;
       }
 
-      if(currentOffsetBlock != blockNumber) {
-        // Offset values are gap-compressed
-        PForDelta.decompressOneBlock(offsetBlock, postingsList.offsetCompressed[blockNumber], offsetBlock.length);
-        for(int i = 1; i < offsetBlock.length; i++) {
-          offsetBlock[i] += offsetBlock[i - 1];
-        }
+      int blockNumber = cnt / BLOCK_SIZE;
+      int start = cnt % BLOCK_SIZE;
+      int size = postingsList.getBlockSize(blockNumber);
+      int n = size - start;
+
+      if(start == 0 && currentBlock != blockNumber) {
+        // Nothing to reuse, so decode straight into the caller's arrays.
+        decoder.decodeGaps(docnos, postingsList.docidCompressed[blockNumber], size);
+        decoder.decode(tfs, postingsList.tfCompressed[blockNumber], size);
+      } else {
+        loadBlock(blockNumber);
+        System.arraycopy(docidBlock, start, docnos, 0, n);
+        System.arraycopy(tfBlock, start, tfs, 0, n);
       }
 
-      int[] pos = new int[getTf()];
+      cnt += n;
+      innerPrevDocno = docnos[n - 1];
+      innerPrevTf = (short) tfs[n - 1];
+      curPositions = null;
+      bulkStart = start;
+      bulkCount = n;
 
-      // Term positions of a posting can span multiple blocks.
-      // Therefore, we have to compute the position (i.e.,
-      // block number and offset within the block) where term positions
-      // begin and the position where the list ends.
-      int beginOffset = offsetBlock[inBlockIndex];
-      int endOffset = beginOffset + pos.length - 1;
-      int beginBlock = (int) ((double) beginOffset/(double) PForDeltaUtility.BLOCK_SIZE);
-
-      if(beginBlock != currentPositionBlock &&
-         beginBlock == postingsList.positionsCompressed.length - 1) {
-        positionBlock = new int[postingsList.positionsLastBlockSize];
-      }
+      return n;
+    }
 
-      // If the block we are going to probe is different from
-      // the current block that has been decompressed
-      if(beginBlock != currentPositionBlock) {
-        PForDelta.decompressOneBlock(positionBlock, postingsList.positionsCompressed[beginBlock], positionBlock.length);
-      }
+    /**
+     * Decodes the term positions of all the postings read by the last call to
+     * {@link #nextBlock(int[], int[])}, which must be the last thing this reader did. Positions of
+     * the i-th posting end up in {@code positions}, from index {@code offsets[i]} up to (but not
+     * including) {@code offsets[i + 1]}.
+     *
+     * @param offsets array to hold where the positions of each posting start, with room for one
+     *     more than the number of postings
+     * @param positions array to hold the positions, with room for the sum of the tfs
+     * @return total number of positions
+     */
+    public int getBlockPositions(int[] offsets, int[] positions) {
+      Preconditions.checkState(bulkCount > 0, "No block of postings to decode positions for.");
 
-      int posIndex = 0;
-      beginOffset %= PForDeltaUtility.BLOCK_SIZE;
-      int endBlock = (int) ((double) endOffset / (double) PForDeltaUtility.BLOCK_SIZE);
-      endOffset %= PForDeltaUtility.BLOCK_SIZE;
-
-      // If the list of term positions span across mutliple blocks
-      if(endBlock != beginBlock) {
-        pos[posIndex++] = positionBlock[beginOffset];
-        for(int i = beginOffset + 1; i < positionBlock.length; i++) {
-          pos[posIndex] = positionBlock[i] + pos[posIndex - 1];
-          posIndex++;
-        }
+      int blockNumber = (cnt - 1) / BLOCK_SIZE;
+      loadOffsetBlock(blockNumber);
 
-        for(int i = beginBlock + 1; i < endBlock; i++) {
-          PForDelta.decompressOneBlock(positionBlock, postingsList.positionsCompressed[i], positionBlock.length);
-          for(int j = 0; j < positionBlock.length; j++) {
-            pos[posIndex] = positionBlock[j] + pos[posIndex - 1];
-            posIndex++;
-          }
+      int base = offsetBlock[bulkStart];
+      for(int i = 0; i < bulkCount; i++) {
+        offsets[i] = offsetBlock[bulkStart + i] - base;
+      }
+      int total = offsetBlock[bulkStart + bulkCount - 1] + innerPrevTf - base;
+      offsets[bulkCount] = total;
+
+      // Positions are stored as gaps, restarting at every posting.
+      copyPositions(base, total, positions);
+      for(int i = 0; i < bulkCount; i++) {
+        for(int j = offsets[i] + 1; j < offsets[i + 1]; j++) {
+          positions[j] += positions[j - 1];
         }
+      }
 
-        if(endBlock == postingsList.positionsCompressed.length - 1) {
-          positionBlock = new int[postingsList.positionsLastBlockSize];
-        }
+      return total;
+    }
 
-        PForDelta.decompressOneBlock(positionBlock, postingsList.positionsCompressed[endBlock], positionBlock.length);
+    @Override
+    public int[] getPositions() {
+      if (curPositions != null) {
+        return curPositions;
+      }
 
-        for(int i = 0; i <= endOffset; i++) {
-          pos[posIndex] = positionBlock[i] + pos[posIndex - 1];
-          posIndex++;
-        }
-      } else {
-        pos[posIndex++] = positionBlock[beginOffset];
-        for(int i = beginOffset + 1; i <= endOffset; i++) {
-          pos[posIndex] = positionBlock[i] + pos[posIndex - 1];
-          posIndex++;
-        }
+      // Grab the offset value for the current posting
+      int cnt = this.cnt - 1;
+      loadOffsetBlock(cnt / BLOCK_SIZE);
+
+      int[] pos = new int[getTf()];
+      copyPositions(offsetBlock[cnt % BLOCK_SIZE], pos.length, pos);
+      for(int i = 1; i < pos.length; i++) {
+        pos[i] += pos[i - 1];
       }
 
-      currentPositionBlock = endBlock;
-      currentOffsetBlock = blockNumber;
       curPositions = pos;
       return pos;
     }
 
+    // Decodes the docnos and tfs of a block, unless we already have.
+    private void loadBlock(int blockNumber) {
+      if(currentBlock != blockNumber) {
+        int size = postingsList.getBlockSize(blockNumber);
+        decoder.decodeGaps(docidBlock, postingsList.docidCompressed[blockNumber], size);
+        decoder.decode(tfBlock, postingsList.tfCompressed[blockNumber], size);
+        currentBlock = blockNumber;
+      }
+    }
+
+    // Decodes the offsets of a block, unless we already have.
+    private void loadOffsetBlock(int blockNumber) {
+      if(currentOffsetBlock != blockNumber) {
+        decoder.decodeGaps(offsetBlock, postingsList.offsetCompressed[blockNumber],
+            postingsList.getBlockSize(blockNumber));
+        currentOffsetBlock = blockNumber;
+      }
+    }
+
+    // Copies length entries of the term positions, starting at the given offset, into out. Term
+    // positions of a posting can span multiple blocks.
+    private void copyPositions(int offset, int length, int[] out) {
+      int outIndex = 0;
+      while(length > 0) {
+        int blockNumber = offset / BLOCK_SIZE;
+        int inBlockIndex = offset % BLOCK_SIZE;
+        if(currentPositionBlock != blockNumber) {
+          decoder.decode(positionBlock, postingsList.positionsCompressed[blockNumber],
+              postingsList.getPositionsBlockSize(blockNumber));
+          currentPositionBlock = blockNumber;
+        }
+
+        int n = Math.min(length, BLOCK_SIZE - inBlockIndex);
+        System.arraycopy(positionBlock, inBlockIndex, out, outIndex, n);
+        offset += n;
+        outIndex += n;
+        length -= n;
+      }
+    }
+
     @Override
     public boolean getPositions(TermPositions tp) {
       int[] pos = getPositions();
@@ -722,7 +792,7 @@ public class PostingsListDocSortedPositionalPForDelta implements PostingsList {
   private static final DocListComparator comparator = new DocListComparator();
 
   private static class PForDeltaUtility {
-    public static final int BLOCK_SIZE = 128;
+    public static final int BLOCK_SIZE = PostingsListDocSortedPositionalPForDelta.BLOCK_SIZE;
 
     private int[][] docidCompressed;
     private int[][] offsetCompressed;
@@ -0,0 +1,247 @@
+/*
+ * Ivory: A Hadoop toolkit for web-scale information retrieval
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package ivory.core.data.index;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.hadoop.io.WritableUtils;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Positional postings list with an embedded skip table. Postings are encoded exactly as in
+ * {@link PostingsListDocSortedPositional}, but the list is divided into blocks of
+ * {@link #SKIP_INTERVAL} postings, and for each block we record where it starts in the bit
+ * stream, the docno of its last posting, and the largest tf in it. This lets
+ * {@link PostingsReader#skipTo(int)} jump over whole blocks without decoding them, and gives
+ * rankers an upper bound on the tf of any document in a block. Merging is not supported.
+ */
+public class PostingsListDocSortedPositionalWithSkips extends PostingsListDocSortedPositional {
+  // Number of postings in each block.
+  public static final int SKIP_INTERVAL = 128;
+
+  private int numBlocks;
+  private long[] blockOffsets;    // Bit offset of the first posting of each block.
+  private int[] blockLastDocnos;  // Docno of the last posting of each block.
+  private short[] blockMaxTfs;    // Largest tf in each block.
+
+  public PostingsListDocSortedPositionalWithSkips() {
+    super();
+    clearSkips();
+  }
+
+  @Override
+  public void clear() {
+    super.clear();
+    clearSkips();
+  }
+
+  private void clearSkips() {
+    numBlocks = 0;
+    blockOffsets = new long[4];
+    blockLastDocnos = new int[4];
+    blockMaxTfs = new short[4];
+  }
+
+  @Override
+  public void add(int docno, short tf, TermPositions pos) {
+    if (size() % SKIP_INTERVAL == 0) {
+      if (numBlocks == blockOffsets.length) {
+        blockOffsets = Arrays.copyOf(blockOffsets, numBlocks * 2);
+        blockLastDocnos = Arrays.copyOf(blockLastDocnos, numBlocks * 2);
+        blockMaxTfs = Arrays.copyOf(blockMaxTfs, numBlocks * 2);
+      }
+      blockOffsets[numBlocks] = getBitsWritten();
+      blockMaxTfs[numBlocks] = 0;
+      numBlocks++;
+    }
+
+    super.add(docno, tf, pos);
+
+    blockLastDocnos[numBlocks - 1] = docno;
+    if (tf > blockMaxTfs[numBlocks - 1]) {
+      blockMaxTfs[numBlocks - 1] = tf;
+    }
+  }
+
+  /**
+   * Returns the number of blocks in the skip table.
+   *
+   * @return number of blocks in the skip table
+   */
+  public int getNumberOfBlocks() {
+    return numBlocks;
+  }
+
+  /**
+   * Returns the largest tf of any posting in this list.
+   *
+   * @return largest tf of any posting in this list
+   */
+  public short getMaxTf() {
+    short maxTf = 0;
+    for (int i = 0; i < numBlocks; i++) {
+      if (blockMaxTfs[i] > maxTf) {
+        maxTf = blockMaxTfs[i];
+      }
+    }
+    return maxTf;
+  }
+
+  @Override
+  public long getSizeInBytes() {
+    // Encoded postings, plus an offset, a last docno and a max tf for each block.
+    return super.getSizeInBytes() + numBlocks * (8 + 4 + 2);
+  }
+
+  // Returns the first block at or after block from whose last docno is at least docno, or
+  // numBlocks if there isn't one.
+  private int findBlock(int docno, int from) {
+    int lo = from;
+    int hi = numBlocks;
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (blockLastDocnos[mid] < docno) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      }
+    }
+    return lo;
+  }
+
+  @Override
+  public PostingsReader getPostingsReader() {
+    Preconditions.checkNotNull(getRawBytes());
+    Preconditions.checkArgument(getCollectionDocumentCount() > 0);
+    Preconditions.checkArgument(size() > 0);
+
+    try {
+      return new PostingsReader(getRawBytes(), size(), getCollectionDocumentCount(), this);
+    } catch (IOException e) {
+      e.printStackTrace();
+      return null;
+    }
+  }
+
+  @Override
+  public void readFields(DataInput in) throws IOException {
+    super.readFields(in);
+
+    numBlocks = WritableUtils.readVInt(in);
+    blockOffsets = new long[numBlocks];
+    blockLastDocnos = new int[numBlocks];
+    blockMaxTfs = new short[numBlocks];
+
+    // Offsets and docnos are stored as gaps from the previous block.
+    long prevOffset = 0;
+    int prevDocno = 0;
+    for (int i = 0; i < numBlocks; i++) {
+      blockOffsets[i] = prevOffset + WritableUtils.readVLong(in);
+      blockLastDocnos[i] = prevDocno + WritableUtils.readVInt(in);
+      blockMaxTfs[i] = (short) WritableUtils.readVInt(in);
+      prevOffset = blockOffsets[i];
+      prevDocno = blockLastDocnos[i];
+    }
+  }
+
+  @Override
+  public void write(DataOutput out) throws IOException {
+    super.write(out);
+
+    WritableUtils.writeVInt(out, numBlocks);
+    long prevOffset = 0;
+    int prevDocno = 0;
+    for (int i = 0; i < numBlocks; i++) {
+      WritableUtils.writeVLong(out, blockOffsets[i] - prevOffset);
+      WritableUtils.writeVInt(out, blockLastDocnos[i] - prevDocno);
+      WritableUtils.writeVInt(out, blockMaxTfs[i]);
+      prevOffset = blockOffsets[i];
+      prevDocno = blockLastDocnos[i];
+    }
+  }
+
+  public static PostingsListDocSortedPositionalWithSkips create(DataInput in) throws IOException {
+    PostingsListDocSortedPositionalWithSkips p = new PostingsListDocSortedPositionalWithSkips();
+    p.readFields(in);
+
+    return p;
+  }
+
+  public static PostingsListDocSortedPositionalWithSkips create(byte[] bytes) throws IOException {
+    return PostingsListDocSortedPositionalWithSkips.create(
+        new DataInputStream(new ByteArrayInputStream(bytes)));
+  }
+
+  /**
+   * {@code PostingsReader} for {@code PostingsListDocSortedPositionalWithSkips}.
+   */
+  public static class PostingsReader extends PostingsListDocSortedPositional.PostingsReader {
+    private final PostingsListDocSortedPositionalWithSkips list;
+
+    protected PostingsReader(byte[] bytes, int numPostings, int collectionSize,
+        PostingsListDocSortedPositionalWithSkips list) throws IOException {
+      super(bytes, numPostings, collectionSize, list);
+      this.list = list;
+    }
+
+    @Override
+    public boolean skipTo(int docno) {
+      int read = getPostingsRead();
+      if (read > 0 && getDocno() >= docno) {
+        return true;
+      }
+
+      // Find the block holding the target, never looking behind the current one.
+      int block = list.findBlock(docno, read == 0 ? 0 : (read - 1) / SKIP_INTERVAL);
+      if (block == list.numBlocks) {
+        return false;
+      }
+
+      // Jump to the start of that block if it's ahead of us, then scan within the block.
+      if (block * SKIP_INTERVAL > read) {
+        seek(list.blockOffsets[block], block * SKIP_INTERVAL, list.blockLastDocnos[block - 1]);
+      }
+
+      return super.skipTo(docno);
+    }
+
+    /**
+     * Returns an upper bound on the tf of a document in this postings list: the largest tf in the
+     * block the docno falls in, or zero if the docno lies past the last posting.
+     *
+     * @param docno docno
+     * @return upper bound on the tf of the document
+     */
+    public short getMaxTf(int docno) {
+      // Usually the docno falls in the block we're reading, so check that first.
+      int read = getPostingsRead();
+      int block = read == 0 ? 0 : (read - 1) / SKIP_INTERVAL;
+      if ((block > 0 && list.blockLastDocnos[block - 1] >= docno)
+          || list.blockLastDocnos[block] < docno) {
+        block = list.findBlock(docno, 0);
+      }
+
+      return block == list.numBlocks ? 0 : list.blockMaxTfs[block];
+    }
+  }
+}
@@ -30,6 +30,19 @@ public interface PostingsReader {
    */
   boolean nextPosting(Posting posting);
 
+  /**
+   * Advances to the first posting whose docno is greater than or equal to {@code docno}, which
+   * then becomes the current posting. Does nothing if the current posting already qualifies; a
+   * reader that hasn't read any postings yet always reads at least one. Implementations may use
+   * skip information to avoid decoding the postings in between; formats without it simply decode
+   * postings until reaching the target. If there is no such posting, the position of the reader
+   * is undefined afterwards.
+   *
+   * @param docno target docno
+   * @return {@code true} if such a posting exists, {@code false} otherwise
+   */
+  boolean skipTo(int docno);
+
   /**
    * Checks to see if there are any more postings to be read.
    *
@@ -24,6 +24,7 @@ import com.google.common.base.Preconditions;
 public abstract class ProximityPostingsReader implements PostingsReader {
   protected final PostingsReader[] readers;   // Readers for terms that make up ordered window.
   protected final int size;                   // Size of ordered window.
+  private boolean started = false;            // Whether any postings have been read.
 
   public ProximityPostingsReader(PostingsReader[] readers, int size) {
     Preconditions.checkArgument(size > 0);
@@ -76,33 +77,52 @@ public abstract class ProximityPostingsReader implements PostingsReader {
 
   @Override
   public boolean nextPosting(Posting posting) {
-    // Advance the reader at the minimum docno.
-    PostingsReader minReader = null;
-    PostingsReader maxReader = null;
-    for (PostingsReader reader : readers) {
-      int docno = reader.getDocno();
-      if (minReader == null || docno < minReader.getDocno()) {
-        minReader = reader;
-      }
-      if (maxReader == null || docno > maxReader.getDocno()) {
-        maxReader = reader;
-      }
+    if (!skipTo(started ? getDocno() + 1 : 0)) {
+      return false;
     }
-    if (minReader != null && minReader.hasMorePostings() && minReader.nextPosting(posting)) {
-      if (posting.getDocno() > maxReader.getDocno()) {
-        maxReader = minReader;
-      }
-    } else {
+
+    posting.setDocno(getDocno());
+    posting.setTf(countMatches());
+
+    return true;
+  }
+
+  @Override
+  public boolean skipTo(int docno) {
+    if (readers.length == 0) {
       return false;
     }
+    if (started && getDocno() >= docno && isMatching()) {
+      return true;
+    }
+    started = true;
 
-    posting.setDocno(maxReader.getDocno());
-    if (isMatching()) {
-      posting.setTf(countMatches());
-    } else {
-      posting.setTf((short) 0);
+    for (PostingsReader reader : readers) {
+      if (!reader.skipTo(docno)) {
+        return false;
+      }
     }
 
+    // Skip the readers that are behind to the furthest one until all of them line up on the same
+    // document. The term readers belong to this reader alone, so nothing else will move them
+    // forward for us; stopping before they line up would miss matches.
+    int target = getDocno();
+    boolean aligned;
+    do {
+      aligned = true;
+      for (PostingsReader reader : readers) {
+        if (reader.getDocno() < target) {
+          if (!reader.skipTo(target)) {
+            return false;
+          }
+          if (reader.getDocno() > target) {
+            target = reader.getDocno();
+            aligned = false;
+          }
+        }
+      }
+    } while (!aligned);
+
     return true;
   }
 
@@ -142,6 +162,7 @@ public abstract class ProximityPostingsReader implements PostingsReader {
     for (PostingsReader reader : readers) {
       reader.reset();
     }
+    started = false;
   }
 
   @Override
@@ -154,7 +175,9 @@ public abstract class ProximityPostingsReader implements PostingsReader {
     throw new UnsupportedOperationException();
   }
 
+  /**
+   * Returns the number of matching windows in the current document, capped at
+   * {@code Short.MAX_VALUE}.
+   */
   abstract protected short countMatches();
-
-  abstract protected int countMatches(int[] positions, int[] ids);
 }
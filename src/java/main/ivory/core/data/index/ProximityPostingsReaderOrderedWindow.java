@@ -16,69 +16,46 @@
 
 package ivory.core.data.index;
 
-import java.util.Arrays;
-import java.util.BitSet;
-
 /**
+ * Counts ordered windows. A window starts at each position of the first term, and matches if the
+ * next occurrence of each of the other terms, at or after the start, comes in query order, with at
+ * most {@code size} positions between consecutive terms. Each term's next occurrence only moves
+ * forward as the start does, so the count takes a single pass over the positions.
+ *
  * @author Don Metzler
  */
 public class ProximityPostingsReaderOrderedWindow extends ProximityPostingsReader {
-  private static final int BUFFER_SIZE = 4096;
-
-  protected int numReaders;
-  protected BitSet matchedIds = null;
-  protected int[] newPositions = new int[BUFFER_SIZE];
-  protected int[] newIds = new int[BUFFER_SIZE];
+  protected final int numReaders;
+  private final int[][] positions;  // Positions of each term in the current document.
+  private final int[] cursors;      // Next occurrence of each term at or after the window start.
 
   public ProximityPostingsReaderOrderedWindow(PostingsReader[] readers, int size) {
     super(readers, size);
 
     numReaders = readers.length;
-    matchedIds = new BitSet(numReaders);
+    positions = new int[numReaders][];
+    cursors = new int[numReaders];
   }
 
   @Override
   protected short countMatches() {
-    int matches = 0;
-
-    // Merge all position lists into single stream.
-    int[] positions = readers[0].getPositions();
-    int[] ids = new int[positions.length];
-    Arrays.fill(ids, 0);
-    int length = positions.length;
-
-    for (int id = 1; id < readers.length; id++) {
-      int[] p = readers[id].getPositions();
-
-      if (length + p.length > newPositions.length) {
-        newPositions = new int[length + p.length];
-        newIds = new int[length + p.length];
-      }
+    for (int id = 0; id < numReaders; id++) {
+      positions[id] = readers[id].getPositions();
+      cursors[id] = 0;
+    }
 
-      int posA = 0;
-      int posB = 0;
-      int i = 0;
-      while (i < length + p.length) {
-        if (posB == p.length || (posA < length && positions[posA] <= p[posB])) {
-          newPositions[i] = positions[posA];
-          newIds[i] = ids[posA];
-          posA++;
-        } else {
-          newPositions[i] = p[posB];
-          newIds[i] = id;
-          posB++;
+    int matches = 0;
+    if (numReaders == 1) {
+      // A lone term matches at every position but the last.
+      matches = Math.max(0, positions[0].length - 1);
+    } else {
+      for (int start : positions[0]) {
+        if (matchesAt(start)) {
+          matches++;
         }
-        i++;
       }
-
-      length += p.length;
-      positions = Arrays.copyOf(newPositions, length);
-      ids = Arrays.copyOf(newIds, length);
     }
 
-    // Count matches.
-    matches = countMatches(positions, ids);
-
     // Truncate tf to Short.MAX_VALUE.
     if (matches > Short.MAX_VALUE) {
       matches = Short.MAX_VALUE;
@@ -87,51 +64,23 @@ public class ProximityPostingsReaderOrderedWindow extends ProximityPostingsReade
     return (short) matches;
   }
 
-  @Override
-  protected int countMatches(int[] positions, int[] ids) {
-    int matches = 0;
-
-    for (int i = 0; i < positions.length; i++) {
-      int maxGap = 0;
-      boolean ordered = true;
-
-      matchedIds.clear();
-      matchedIds.set(ids[i]);
-      int matchedIDCounts = 1;
-
-      int lastMatchedID = ids[i];
-      int lastMatchedPos = positions[i];
-
-      for (int j = i + 1; j < positions.length; j++) {
-        int curID = ids[j];
-        int curPos = positions[j];
-        if (!matchedIds.get(curID)) {
-          matchedIds.set(curID);
-          matchedIDCounts++;
-          if (curID < lastMatchedID) {
-            ordered = false;
-          }
-          if (curPos - lastMatchedPos > maxGap) {
-            maxGap = curPos - lastMatchedPos;
-          }
-
-          lastMatchedPos = curPos;
-          lastMatchedID = curID;
-        }
-
-        // Stop looking if the maximum gap is too large or the terms appear out of order.
-        if (maxGap > size || !ordered) {
-          break;
-        }
+  private boolean matchesAt(int start) {
+    int prevPos = start;
+    for (int id = 1; id < numReaders; id++) {
+      int[] p = positions[id];
+      int c = cursors[id];
+      while (c < p.length && p[c] < start) {
+        c++;
+      }
+      cursors[id] = c;
 
-        // Did we match all the terms, and in order?
-        if (matchedIDCounts == numReaders && ordered) {
-          matches++;
-          break;
-        }
+      // Stop looking if the term doesn't occur, appears out of order, or the gap is too large.
+      if (c == p.length || p[c] < prevPos || p[c] - prevPos > size) {
+        return false;
       }
+      prevPos = p[c];
     }
 
-    return matches;
+    return true;
   }
 }
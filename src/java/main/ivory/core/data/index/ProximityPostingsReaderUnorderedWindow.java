@@ -16,69 +16,57 @@
 
 package ivory.core.data.index;
 
-import java.util.Arrays;
-import java.util.BitSet;
-
 /**
+ * Counts unordered windows. The positions of all terms are merged into a single stream (ties go
+ * to the earlier term), and a window starts at each position in it. The window matches if every
+ * other term occurs later in the stream within {@code size} positions of the start. The merge
+ * keeps a cursor per term, which after consuming a position already points at that term's next
+ * occurrence, so the count takes a single pass over the positions.
+ *
  * @author Don Metzler
  */
 public class ProximityPostingsReaderUnorderedWindow extends ProximityPostingsReader {
-  private static final int BUFFER_SIZE = 4096;
-
-  protected int numReaders;
-  protected BitSet matchedIds = null;
-  protected int[] newPositions = new int[BUFFER_SIZE];
-  protected int[] newIds = new int[BUFFER_SIZE];
+  protected final int numReaders;
+  private final int[][] positions;  // Positions of each term in the current document.
+  private final int[] cursors;      // Next position of each term in the merged stream.
 
   public ProximityPostingsReaderUnorderedWindow(PostingsReader[] readers, int size) {
     super(readers, size);
 
     numReaders = readers.length;
-    matchedIds = new BitSet(numReaders);
+    positions = new int[numReaders][];
+    cursors = new int[numReaders];
   }
 
   @Override
   protected short countMatches() {
-    int matches = 0;
-
-    // Merge all position lists into single stream.
-    int[] positions = readers[0].getPositions();
-    int[] ids = new int[positions.length];
-    Arrays.fill(ids, 0);
-    int length = positions.length;
-
-    for (int id = 1; id < readers.length; id++) {
-      int[] p = readers[id].getPositions();
-
-      if (length + p.length > newPositions.length) {
-        newPositions = new int[length + p.length];
-        newIds = new int[length + p.length];
-      }
+    for (int id = 0; id < numReaders; id++) {
+      positions[id] = readers[id].getPositions();
+      cursors[id] = 0;
+    }
 
-      int posA = 0;
-      int posB = 0;
-      int i = 0;
-      while (i < length + p.length) {
-        if (posB == p.length || (posA < length && positions[posA] <= p[posB])) {
-          newPositions[i] = positions[posA];
-          newIds[i] = ids[posA];
-          posA++;
-        } else {
-          newPositions[i] = p[posB];
-          newIds[i] = id;
-          posB++;
+    int matches = 0;
+    while (true) {
+      // Take the next position in the merged stream.
+      int startId = -1;
+      int start = 0;
+      for (int id = 0; id < numReaders; id++) {
+        if (cursors[id] < positions[id].length
+            && (startId == -1 || positions[id][cursors[id]] < start)) {
+          startId = id;
+          start = positions[id][cursors[id]];
         }
-        i++;
       }
+      if (startId == -1) {
+        break;
+      }
+      cursors[startId]++;
 
-      length += p.length;
-      positions = Arrays.copyOf(newPositions, length);
-      ids = Arrays.copyOf(newIds, length);
+      if (matchesAt(startId, start)) {
+        matches++;
+      }
     }
 
-    // Count matches.
-    matches = countMatches(positions, ids);
-
     // Truncate tf to Short.MAX_VALUE.
     if (matches > Short.MAX_VALUE) {
       matches = Short.MAX_VALUE;
@@ -87,39 +75,21 @@ public class ProximityPostingsReaderUnorderedWindow extends ProximityPostingsRea
     return (short) matches;
   }
 
-  @Override
-  public int countMatches(int[] positions, int[] ids) {
-    int matches = 0;
-
-    for (int i = 0; i < positions.length; i++) {
-      matchedIds.clear();
-      matchedIds.set(ids[i]);
-      int matchedIDCounts = 1;
-
-      int startPos = positions[i];
+  private boolean matchesAt(int startId, int start) {
+    int end = start + size - 1;
 
-      for (int j = i + 1; j < positions.length; j++) {
-        int curID = ids[j];
-        int curPos = positions[j];
-        int windowSize = curPos - startPos + 1;
-        if (!matchedIds.get(curID)) {
-          matchedIds.set(curID);
-          matchedIDCounts++;
-        }
-
-        // Stop looking if we've exceeded the maximum window size.
-        if (windowSize > size) {
-          break;
-        }
+    // A lone term matches if its next position falls within the window.
+    if (numReaders == 1) {
+      return cursors[0] < positions[0].length && positions[0][cursors[0]] <= end;
+    }
 
-        // Did we match all the terms?
-        if (matchedIDCounts == numReaders) {
-          matches++;
-          break;
-        }
+    for (int id = 0; id < numReaders; id++) {
+      if (id != startId
+          && (cursors[id] == positions[id].length || positions[id][cursors[id]] > end)) {
+        return false;
       }
     }
 
-    return matches;
+    return true;
   }
 }
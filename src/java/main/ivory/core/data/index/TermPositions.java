@@ -213,34 +213,21 @@ public class TermPositions implements Writable {
    */
   public int getEncodedSize() {
     // If this is a newly created object, then we haven't computed the encoded size yet, since this
-    // is done as part of the deserialization process... if this is the case, then run through a
-    // mock encoding to compute the encoded size.
+    // is done as part of the deserialization process... if this is the case, add up the lengths of
+    // the gamma codes: 2 * floor(log2(x)) + 1 bits for x.
     if (totalBits == 0) {
-      try {
-        ByteArrayOutputStream b = new ByteArrayOutputStream();
-        BitOutputStream t = new BitOutputStream(b);
-        for (int i = 0; i < tf; i++) {
-          if (i == 0) {
-            t.writeGamma(positions[0]);
-          } else {
-            int pgap = positions[i] - positions[i - 1];
-            if (positions[i] <= 0 || pgap == 0) {
-              throw new RuntimeException("Error: invalid term positions " + toString());
-            }
-
-            t.writeGamma(pgap);
+      int bits = 0;
+      for (int i = 0; i < tf; i++) {
+        int x = positions[i];
+        if (i > 0) {
+          x -= positions[i - 1];
+          if (positions[i] <= 0 || x == 0) {
+            throw new RuntimeException("Error: invalid term positions " + toString());
           }
         }
-
-        int bitOffset = t.getBitOffset();
-        int byteOffset = (int) t.getByteOffset();
-        t.padAndFlush();
-        t.close();
-
-        totalBits = byteOffset * 8 + bitOffset;
-      } catch (Exception e) {
-        e.printStackTrace();
+        bits += 2 * (31 - Integer.numberOfLeadingZeros(x)) + 1;
       }
+      totalBits = bits;
     }
 
     return totalBits;
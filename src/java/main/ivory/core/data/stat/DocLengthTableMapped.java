@@ -0,0 +1,115 @@
+/*
+ * Ivory: A Hadoop toolkit for web-scale information retrieval
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package ivory.core.data.stat;
+
+import ivory.core.util.MappedFile;
+
+import java.io.IOException;
+
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.log4j.Logger;
+
+/**
+ * <p>
+ * Object that keeps track of the length of each document in the collection by memory-mapping the
+ * document length data file, which must be on the local file system. Nothing is read onto the heap:
+ * lengths are looked up directly in the mapped file, so loading takes constant time, and retrieval
+ * processes on the same host share one copy of the data in the page cache.
+ * </p>
+ *
+ * <p>
+ * The data file has the same format as for {@link DocLengthTable4B}, optionally followed by a
+ * long holding the sum of all document lengths. If the sum is there, the average document length
+ * is computed from it; otherwise, it takes a pass over the mapped data.
+ * </p>
+ *
+ * <p>
+ * Lengths are capped at 65535, as in {@link DocLengthTable2B}, so that a local run ranks documents
+ * the same way as a run over the same index on HDFS.
+ * </p>
+ */
+public class DocLengthTableMapped implements DocLengthTable {
+  static final Logger LOG = Logger.getLogger(DocLengthTableMapped.class);
+
+  // Docno offset and number of documents.
+  private static final int HEADER_SIZE = 8;
+
+  // Longest length that DocLengthTable2B can hold.
+  private static final int MAX_DOC_LENGTH = Short.MAX_VALUE - Short.MIN_VALUE;
+
+  private final MappedFile data;
+  private final int docnoOffset;
+  private final int docCount;
+  private final float avgDocLength;
+
+  /**
+   * Creates a new {@code DocLengthTableMapped}.
+   *
+   * @param file document length data file
+   * @param fs FileSystem to read from, which must be the local file system
+   * @throws IOException
+   */
+  public DocLengthTableMapped(Path file, FileSystem fs) throws IOException {
+    data = MappedFile.map(file, fs);
+    docnoOffset = data.getInt(0);
+    docCount = data.getInt(4);
+
+    LOG.info("Docno offset: " + docnoOffset);
+    LOG.info("Number of docs: " + docCount);
+
+    long end = HEADER_SIZE + 4L * docCount;
+    if (data.length() < end) {
+      throw new IOException("Error: doc length data file " + file + " is truncated!");
+    }
+
+    long docLengthSum = 0;
+    if (data.length() >= end + 8) {
+      docLengthSum = data.getLong(end);
+    } else {
+      LOG.info("No sum of doc lengths in " + file + ", computing it...");
+      for (long pos = HEADER_SIZE; pos < end; pos += 4) {
+        docLengthSum += data.getInt(pos);
+      }
+    }
+
+    // Compute average doc length.
+    avgDocLength = docLengthSum * 1.0f / docCount;
+  }
+
+  @Override
+  public int getDocLength(int docno) {
+    // The first docno is docnoOffset + 1.
+    int length = data.getInt(HEADER_SIZE + 4L * (docno - docnoOffset - 1));
+    return length > MAX_DOC_LENGTH ? MAX_DOC_LENGTH : length;
+  }
+
+  @Override
+  public int getDocnoOffset() {
+    return docnoOffset;
+  }
+
+  @Override
+  public float getAvgDocLength() {
+    return avgDocLength;
+  }
+
+  @Override
+  public int getDocCount() {
+    return docCount;
+  }
+}
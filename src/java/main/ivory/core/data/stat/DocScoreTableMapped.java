@@ -0,0 +1,74 @@
+/*
+ * Ivory: A Hadoop toolkit for web-scale information retrieval
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package ivory.core.data.stat;
+
+import ivory.core.util.MappedFile;
+
+import java.io.IOException;
+
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.log4j.Logger;
+
+/**
+ * Document scores looked up directly in a memory-mapped data file, in the same format as for
+ * {@link DocScoreTable4BF}: the docno offset, the number of documents, then one float per
+ * document. The file must be on the local file system. Loading takes constant time, and processes
+ * on the same host share one copy of the scores in the page cache.
+ */
+public class DocScoreTableMapped implements DocScoreTable {
+  static final Logger LOG = Logger.getLogger(DocScoreTableMapped.class);
+
+  // Docno offset and number of documents.
+  private static final int HEADER_SIZE = 8;
+
+  private MappedFile data;
+  private int docs;
+  private int docnoOffset;
+
+  public DocScoreTableMapped() {}
+
+  @Override
+  public void initialize(String file, FileSystem fs) throws IOException {
+    data = MappedFile.map(new Path(file), fs);
+    docnoOffset = data.getInt(0);
+    docs = data.getInt(4);
+
+    LOG.info("Docno offset: " + docnoOffset);
+    LOG.info("Number of docs: " + docs);
+
+    if (data.length() < HEADER_SIZE + 4L * docs) {
+      throw new IOException("Error: doc score data file " + file + " is truncated!");
+    }
+  }
+
+  @Override
+  public float getScore(int docno) {
+    // The first docno is docnoOffset + 1.
+    return data.getFloat(HEADER_SIZE + 4L * (docno - docnoOffset - 1));
+  }
+
+  @Override
+  public int getDocnoOffset() {
+    return docnoOffset;
+  }
+
+  @Override
+  public int getDocCount() {
+    return docs;
+  }
+}
@@ -0,0 +1,88 @@
+/*
+ * Ivory: A Hadoop toolkit for web-scale information retrieval
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package ivory.core.data.stat;
+
+import ivory.core.RetrievalEnvironment;
+
+import java.io.IOException;
+
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Collection-wide document and collection frequencies of every term, looked up by term id. This
+ * gives term statistics without having to read the postings of a term, e.g., to score candidate
+ * concepts for query expansion.
+ */
+public class GlobalTermStatistics {
+  private final DfTable dfs;
+  private final CfTable cfs;
+
+  /**
+   * Creates a {@code GlobalTermStatistics} object from df and cf tables.
+   *
+   * @param dfs document frequencies, by term id
+   * @param cfs collection frequencies, by term id
+   */
+  public GlobalTermStatistics(DfTable dfs, CfTable cfs) {
+    this.dfs = Preconditions.checkNotNull(dfs);
+    this.cfs = Preconditions.checkNotNull(cfs);
+    Preconditions.checkArgument(dfs.getVocabularySize() == cfs.getVocabularySize(),
+        "df and cf tables have different vocabulary sizes!");
+  }
+
+  /**
+   * Reads the df and cf tables of an index.
+   *
+   * @param env retrieval environment of the index
+   * @param fs FileSystem to read from
+   * @throws IOException
+   */
+  public GlobalTermStatistics(RetrievalEnvironment env, FileSystem fs) throws IOException {
+    this(new DfTableArray(new Path(env.getDfByIntData()), fs),
+        new CfTableArray(new Path(env.getCfByIntData()), fs));
+  }
+
+  /**
+   * Returns the document frequency of a term, or zero if the term id is out of range.
+   */
+  public int getDf(int termid) {
+    if (termid <= 0 || termid > dfs.getVocabularySize()) {
+      return 0;
+    }
+    return dfs.getDf(termid);
+  }
+
+  /**
+   * Returns the collection frequency of a term, or zero if the term id is out of range.
+   */
+  public long getCf(int termid) {
+    if (termid <= 0 || termid > cfs.getVocabularySize()) {
+      return 0;
+    }
+    return cfs.getCf(termid);
+  }
+
+  /**
+   * Returns the number of terms in the tables.
+   */
+  public int getVocabularySize() {
+    return dfs.getVocabularySize();
+  }
+}
@@ -0,0 +1,208 @@
+/*
+ * Ivory: A Hadoop toolkit for web-scale information retrieval
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package ivory.core.data.stat;
+
+import ivory.core.util.MappedFile;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+import tl.lin.data.array.ArrayListOfInts;
+import tl.lin.data.array.ArrayListOfLongs;
+
+/**
+ * <p>
+ * Precomputed document and collection frequencies of ordered and unordered windows of two terms,
+ * e.g., <code>#od1(a b)</code> and <code>#uw8(a b)</code>, by memory-mapping the phrase statistics
+ * data file, which must be on the local file system. Phrases are looked up by binary search in
+ * the mapped file, so nothing is read onto the heap.
+ * </p>
+ *
+ * <p>
+ * The data file holds the number of phrases, followed by one record per phrase, sorted by window
+ * type and size and then by term ids: the window type and size (an int, with the size shifted left
+ * by one and the lowest bit set for unordered windows), the two term ids (ints), df (an int), and
+ * cf (a long). Data files are written with {@link Writer}.
+ * </p>
+ */
+public class PhraseStatisticsTable {
+  private static final int HEADER_SIZE = 4;
+  private static final int RECORD_SIZE = 24;
+
+  private final MappedFile data;
+  private final int numPhrases;
+
+  /**
+   * Creates a new {@code PhraseStatisticsTable}.
+   *
+   * @param file phrase statistics data file
+   * @param fs FileSystem to read from, which must be the local file system
+   * @throws IOException
+   */
+  public PhraseStatisticsTable(Path file, FileSystem fs) throws IOException {
+    data = MappedFile.map(file, fs);
+    numPhrases = data.getInt(0);
+
+    if (data.length() < HEADER_SIZE + (long) RECORD_SIZE * numPhrases) {
+      throw new IOException("Error: phrase statistics data file " + file + " is truncated!");
+    }
+  }
+
+  /**
+   * Returns the number of phrases in the table.
+   */
+  public int getNumPhrases() {
+    return numPhrases;
+  }
+
+  /**
+   * Looks up a phrase.
+   *
+   * @param ordered whether the window is ordered
+   * @param window window size
+   * @param termid1 term id of the first term
+   * @param termid2 term id of the second term
+   * @return index of the phrase in the table, or -1 if it isn't there
+   */
+  public int find(boolean ordered, int window, int termid1, int termid2) {
+    int kind = kind(ordered, window);
+    int lo = 0;
+    int hi = numPhrases - 1;
+    while (lo <= hi) {
+      int mid = (lo + hi) >>> 1;
+      long pos = HEADER_SIZE + (long) RECORD_SIZE * mid;
+      int c = compare(data.getInt(pos), data.getInt(pos + 4), data.getInt(pos + 8),
+          kind, termid1, termid2);
+      if (c < 0) {
+        lo = mid + 1;
+      } else if (c > 0) {
+        hi = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Returns the document frequency of the phrase at an index returned by {@link #find}.
+   */
+  public int getDf(int index) {
+    return data.getInt(HEADER_SIZE + (long) RECORD_SIZE * index + 12);
+  }
+
+  /**
+   * Returns the collection frequency of the phrase at an index returned by {@link #find}.
+   */
+  public long getCf(int index) {
+    return data.getLong(HEADER_SIZE + (long) RECORD_SIZE * index + 16);
+  }
+
+  private static int kind(boolean ordered, int window) {
+    return (window << 1) | (ordered ? 0 : 1);
+  }
+
+  private static int compare(int kind1, int a1, int b1, int kind2, int a2, int b2) {
+    if (kind1 != kind2) {
+      return kind1 < kind2 ? -1 : 1;
+    }
+    if (a1 != a2) {
+      return a1 < a2 ? -1 : 1;
+    }
+    if (b1 != b2) {
+      return b1 < b2 ? -1 : 1;
+    }
+    return 0;
+  }
+
+  /**
+   * Collects phrase statistics and writes them out in the format read by
+   * {@link PhraseStatisticsTable}.
+   */
+  public static class Writer {
+    private final ArrayListOfInts kinds = new ArrayListOfInts();
+    private final ArrayListOfInts termids1 = new ArrayListOfInts();
+    private final ArrayListOfInts termids2 = new ArrayListOfInts();
+    private final ArrayListOfInts dfs = new ArrayListOfInts();
+    private final ArrayListOfLongs cfs = new ArrayListOfLongs();
+
+    /**
+     * Adds the statistics of a phrase. Phrases must not be added more than once.
+     */
+    public void add(boolean ordered, int window, int termid1, int termid2, int df, long cf) {
+      kinds.add(kind(ordered, window));
+      termids1.add(termid1);
+      termids2.add(termid2);
+      dfs.add(df);
+      cfs.add(cf);
+    }
+
+    /**
+     * Returns the number of phrases added so far.
+     */
+    public int size() {
+      return kinds.size();
+    }
+
+    /**
+     * Writes out the phrases added so far.
+     *
+     * @param file phrase statistics data file
+     * @param fs FileSystem to write to
+     * @throws IOException
+     */
+    public void write(Path file, FileSystem fs) throws IOException {
+      int n = kinds.size();
+      Integer[] order = new Integer[n];
+      for (int i = 0; i < n; i++) {
+        order[i] = i;
+      }
+      Arrays.sort(order, new Comparator<Integer>() {
+        public int compare(Integer x, Integer y) {
+          return Writer.this.compare(x, y);
+        }
+      });
+
+      FSDataOutputStream out = fs.create(file, true);
+      out.writeInt(n);
+      for (int i = 0; i < n; i++) {
+        int j = order[i];
+        if (i > 0 && compare(order[i - 1], j) == 0) {
+          out.close();
+          throw new IOException("Error: duplicate phrase " + termids1.get(j) + " "
+              + termids2.get(j) + "!");
+        }
+        out.writeInt(kinds.get(j));
+        out.writeInt(termids1.get(j));
+        out.writeInt(termids2.get(j));
+        out.writeInt(dfs.get(j));
+        out.writeLong(cfs.get(j));
+      }
+      out.close();
+    }
+
+    private int compare(int x, int y) {
+      return PhraseStatisticsTable.compare(kinds.get(x), termids1.get(x), termids2.get(x),
+          kinds.get(y), termids1.get(y), termids2.get(y));
+    }
+  }
+}
@@ -19,11 +19,10 @@ package ivory.core.index;
 import ivory.core.Constants;
 import ivory.core.RetrievalEnvironment;
 import ivory.core.data.document.IntDocVector;
-import ivory.core.data.index.PostingsAccumulator;
+import ivory.core.data.index.PostingsArena;
 import ivory.core.data.index.PostingsList;
 import ivory.core.data.index.PostingsListDocSortedPositional;
 import ivory.core.data.index.TermPositions;
-import ivory.core.util.QuickSort;
 
 import java.io.IOException;
 import java.util.ArrayList;
@@ -43,8 +42,6 @@ import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
 import org.apache.hadoop.mapreduce.lib.output.SequenceFileOutputFormat;
 import org.apache.log4j.Logger;
 
-import tl.lin.data.map.HMapIV;
-import tl.lin.data.map.MapIV;
 import edu.umd.cloud9.util.PowerTool;
 
 /**
@@ -59,122 +56,107 @@ public class BuildLPInvertedIndexDocSorted extends PowerTool {
   protected static enum Docs { Total }
   protected static enum MapTime { Spilling, Parsing }
   protected static enum MapStats { PL1, df1 }
-  protected static enum MemoryFlushes { AfterMemoryFilled, AfterNDocs, AtClose, Total }
+  protected static enum MemoryFlushes { AfterMemoryFilled, OutOfOrderDocnos, AtClose, Total }
   protected static enum ReduceTime { Total, Merging, Spilling }
   protected static enum Reduce { Merges, OnePL }
   protected static enum IndexedTerms { Total }
 
+  // Default budget for partial postings in each mapper, in MB.
+  private static final int DEFAULT_MAP_MEMORY_BUDGET = 1024;
+
   private static class MyMapper extends
       Mapper<IntWritable, IntDocVector, IntWritable, PostingsListDocSortedPositional> {
     private static final IntWritable TERM = new IntWritable();
-    // Runtime object to get the used amount of memory.
-    private static final Runtime runtime = Runtime.getRuntime();
-
-    private static float MAP_MEMORY_THRESHOLD = 0.9f;    // Memory usage threshold.
-    private static int MAX_DOCS_BEFORE_FLUSH = 50000;    // Max number of docs before flushing.
 
-    private int docno;                       // Current docno.
+    private long memoryBudget;               // Bytes of partial postings to hold before flushing.
+    private int prevDocno = 0;               // Previous docno in the current run.
     private int collectionDocumentCount;     // Total number of docs in collection.
-    private int docs = 0;                    // Number of documents read so far.
 
-    private PostingsListDocSortedPositional postingsList = new PostingsListDocSortedPositional();
-    private HMapIV<PostingsAccumulator> partialPostings = new HMapIV<PostingsAccumulator>();
+    private final PostingsListDocSortedPositional postingsList =
+        new PostingsListDocSortedPositional();
+    private final PostingsArena partialPostings = new PostingsArena();
+    private final TermPositions tp = new TermPositions();
 
     @Override
     public void setup(Context context) {
       Configuration conf = context.getConfiguration();
-      MAP_MEMORY_THRESHOLD = conf.getFloat("Ivory.IndexingMapMemoryThreshold", 0.9f);
-      MAX_DOCS_BEFORE_FLUSH = conf.getInt("Ivory.MaxNDocsBeforeFlush", 50000);
-      collectionDocumentCount = conf.getInt("Ivory.CollectionDocumentCount", 0);
+      memoryBudget = conf.getInt(Constants.IndexingMapMemoryBudget, DEFAULT_MAP_MEMORY_BUDGET)
+          * 1024L * 1024L;
+      collectionDocumentCount = conf.getInt(Constants.CollectionDocumentCount, 0);
     }
 
     @Override
     public void map(IntWritable key, IntDocVector doc, Context context)
         throws IOException, InterruptedException {
-      docno = key.get();
+      int docno = key.get();
 
-      // Check if we should flush what we have so far.
-      flushPostings(false, context);
+      // Postings are gap-encoded as they arrive, so docnos must increase within a run: if they
+      // don't, start a new one.
+      if (docno <= prevDocno) {
+        flushPostings(context);
+        context.getCounter(MemoryFlushes.OutOfOrderDocnos).increment(1);
+      }
 
       long startTime = System.currentTimeMillis();
 
       IntDocVector.Reader r = doc.getReader();
-      int term;
-      int[] tp;
-
       int dl = 0;
-      PostingsAccumulator pl;
       while (r.hasMoreTerms()) {
-        term = r.nextTerm();
-        tp = r.getPositions();
-        pl = partialPostings.get(term);
-        if (pl == null) {
-          pl = new PostingsAccumulator();
-          partialPostings.put(term, pl);
-        }
-        pl.add(docno, tp);
-        dl += tp.length;
+        int term = r.nextTerm();
+        int[] positions = r.getPositions();
+        partialPostings.add(term, docno, positions, positions.length);
+        dl += positions.length;
       }
+      prevDocno = docno;
       context.getCounter(MapTime.Parsing).increment(System.currentTimeMillis() - startTime);
 
       // Update number of indexed terms.
       context.getCounter(IndexedTerms.Total).increment(dl);
-
-      docs++;
-      flushPostings(false, context);
       context.getCounter(Docs.Total).increment(1);
-    }
 
-    private boolean flushPostings(boolean force, Context context)
-        throws IOException, InterruptedException {
-      if (!force) {
-        float memoryUsagePercent = 1 - (runtime.freeMemory() * 1.0f / runtime.totalMemory());
-        context.setStatus("m" + memoryUsagePercent);
-        if (memoryUsagePercent < MAP_MEMORY_THRESHOLD && docs % MAX_DOCS_BEFORE_FLUSH != 0) {
-            return false;
-        }
-        if (memoryUsagePercent >= MAP_MEMORY_THRESHOLD) {
-          context.getCounter(MemoryFlushes.AfterMemoryFilled).increment(1);
-        } else {
-          context.getCounter(MemoryFlushes.AfterNDocs).increment(1);
-        }
-      }
-
-      if (partialPostings.size() == 0) {
-        return true;
+      if (partialPostings.getBytesUsed() >= memoryBudget) {
+        flushPostings(context);
+        context.getCounter(MemoryFlushes.AfterMemoryFilled).increment(1);
       }
+    }
 
-      TermPositions tp = new TermPositions();
+    private void flushPostings(Context context) throws IOException, InterruptedException {
       // Start the timer.
       long startTime = System.currentTimeMillis();
-      for (MapIV.Entry<PostingsAccumulator> e : partialPostings.entrySet()) {
+      context.getCounter(MemoryFlushes.Total).increment(1);
+
+      PostingsArena.Reader reader = null;
+      for (int i = 0; i < partialPostings.size(); i++) {
         // Emit a partial posting list for each term.
-        TERM.set(e.getKey());
+        TERM.set(partialPostings.getTermid(i));
         context.setStatus("t" + TERM.get());
-        PostingsAccumulator pl = e.getValue();
         postingsList.clear();
         postingsList.setCollectionDocumentCount(collectionDocumentCount);
-        postingsList.setNumberOfPostings(pl.size());
-
-        int[] docnos = pl.getDocnos();
-        int[][] positions = pl.getPositions();
-        QuickSort.quicksortWithStack(positions, docnos, 0, pl.size() - 1);
-        for (int i = 0; i < pl.size(); i++) {
-          tp.set(positions[i], (short) positions[i].length);
-          postingsList.add(docnos[i], tp.getTf(), tp);
+        postingsList.setNumberOfPostings(partialPostings.getDf(i));
+
+        if (reader == null) {
+          reader = partialPostings.getReader(i);
+        } else {
+          reader.reset(i);
+        }
+        while (reader.nextPosting()) {
+          short tf = (short) reader.getTf();
+          tp.set(reader.getPositions(), tf);
+          postingsList.add(reader.getDocno(), tf, tp);
         }
         context.write(TERM, postingsList);
       }
       context.getCounter(MapTime.Spilling).increment(System.currentTimeMillis() - startTime);
+
       partialPostings.clear();
-      return true;
+      prevDocno = 0;
     }
 
     @Override
     public void cleanup(Context context) throws IOException, InterruptedException {
       // Force flushing.
       if (partialPostings.size() > 0) {
-        flushPostings(true, context);
+        flushPostings(context);
         context.getCounter(MemoryFlushes.AtClose).increment(1);
       }
     }
@@ -182,25 +164,19 @@ public class BuildLPInvertedIndexDocSorted extends PowerTool {
 
   public static class MyReducer extends 
       Reducer<IntWritable, PostingsListDocSortedPositional, IntWritable, PostingsListDocSortedPositional> {
-    private static float REDUCE_MEMORY_THRESHOLD = 0.9f;
-    private static final Runtime runtime = Runtime.getRuntime();
-
     private int collectionDocumentCount = 0;
 
-    // A list of merged partial lists.
-    private List<PostingsList> mergedList = new ArrayList<PostingsList>();
-
-    // A list of incoming partial lists since last merging.
-    private List<PostingsList> incomingLists = new ArrayList<PostingsList>();
+    // Partial lists of the current term.
+    private final List<PostingsList> partialLists = new ArrayList<PostingsList>();
 
     // Final merged list.
-    private PostingsListDocSortedPositional finalPostingsList = new PostingsListDocSortedPositional();
+    private final PostingsListDocSortedPositional finalPostingsList =
+        new PostingsListDocSortedPositional();
 
     @Override
     public void setup(Context context) {
       Configuration conf = context.getConfiguration();
-      REDUCE_MEMORY_THRESHOLD = conf.getFloat("Ivory.IndexingReduceMemoryThreshold", 0.9f);
-      collectionDocumentCount = conf.getInt("Ivory.CollectionDocumentCount", 0);
+      collectionDocumentCount = conf.getInt(Constants.CollectionDocumentCount, 0);
     }
 
     @Override
@@ -216,65 +192,28 @@ public class BuildLPInvertedIndexDocSorted extends PowerTool {
         context.write(term, pl);
         context.getCounter(Reduce.OnePL).increment(1);
       } else {
-        // Has at least 2 partial lists...
-        mergedList.clear();
-        incomingLists.clear();
-
-        // Add the first.
-        incomingLists.add(PostingsListDocSortedPositional.create(pl.serialize()));
-
-        // Add the rest (at least another one).
+        // Has at least 2 partial lists. Hadoop reuses the value object, but each list it reads
+        // gets fresh encoded postings, so hold on to those rather than copying them.
+        partialLists.clear();
+        partialLists.add(PostingsListDocSortedPositional.shallowCopy(pl));
         do {
-          incomingLists.add(PostingsListDocSortedPositional.create(iter.next().serialize()));
-          mergeLists(false, incomingLists, mergedList, context);
+          partialLists.add(PostingsListDocSortedPositional.shallowCopy(iter.next()));
         } while (iter.hasNext());
 
-        // Force merging lists at the end.
-        mergeLists(true, incomingLists, mergedList, context);
+        // Merge all the partial lists in a single pass.
+        long startTime = System.currentTimeMillis();
+        finalPostingsList.clear();
+        PostingsListDocSortedPositional.mergeList(finalPostingsList, partialLists,
+            collectionDocumentCount);
+        context.getCounter(Reduce.Merges).increment(1);
+        context.getCounter(ReduceTime.Merging).increment(System.currentTimeMillis() - startTime);
 
-        if (mergedList.size() == 1) {
-          context.write(term, (PostingsListDocSortedPositional) mergedList.get(0));
-        } else {
-          LOG.info("Merging the master list");
-          finalPostingsList.clear();
-          PostingsListDocSortedPositional.mergeList(finalPostingsList, mergedList, collectionDocumentCount);
-          context.write(term, finalPostingsList);
-        }
+        context.write(term, finalPostingsList);
+        partialLists.clear();
       }
       long duration = System.currentTimeMillis() - start;
       context.getCounter(ReduceTime.Total).increment(duration);
     }
-
-    private boolean mergeLists(boolean forced, List<PostingsList> lists,
-        List<PostingsList> mergedList, Context context) throws IOException {
-      if (lists.size() == 0) {
-        return false;
-      }
-
-      float memoryUsagePercent = 1 - (runtime.freeMemory() * 1.0f / runtime.totalMemory());
-      context.setStatus("m" + memoryUsagePercent);
-      if (!forced && (memoryUsagePercent < REDUCE_MEMORY_THRESHOLD)) {
-        return false;
-      }
-
-      // Start the timer.
-      long startTime = System.currentTimeMillis();
-      LOG.info(">> merging a list of " + lists.size() + " partial lists");
-      if (lists.size() > 1) {
-        PostingsListDocSortedPositional merged = new PostingsListDocSortedPositional();
-        PostingsListDocSortedPositional.mergeList(merged, lists, collectionDocumentCount);
-        lists.clear();
-        mergedList.add(PostingsListDocSortedPositional.create(merged.serialize()));
-        context.getCounter(Reduce.Merges).increment(1);
-      } else {
-        PostingsList pl = lists.remove(0);
-        pl.setCollectionDocumentCount(collectionDocumentCount);
-        mergedList.add(pl);
-      }
-
-      context.getCounter(ReduceTime.Merging).increment(System.currentTimeMillis() - startTime);
-      return true;
-    }
   }
 
   public static final String[] RequiredParameters = { Constants.NumReduceTasks, Constants.IndexPath };
@@ -307,10 +246,8 @@ public class BuildLPInvertedIndexDocSorted extends PowerTool {
         (Class<? extends PostingsList>) Class.forName(postingsType);
 
     // These are the default values for the LP algorithm.
-    float mapMemoryThreshold = conf.getFloat(Constants.IndexingMapMemoryThreshold, 0.9f);
-    float reduceMemoryThreshold = conf.getFloat(Constants.IndexingReduceMemoryThreshold, 0.9f);
+    int mapMemoryBudget = conf.getInt(Constants.IndexingMapMemoryBudget, DEFAULT_MAP_MEMORY_BUDGET);
     int maxHeap = conf.getInt(Constants.MaxHeap, 2048);
-    int maxNDocsBeforeFlush = conf.getInt(Constants.MaxNDocsBeforeFlush, 50000);
 
     LOG.info("PowerTool: " + BuildLPInvertedIndexDocSorted.class.getSimpleName());
     LOG.info(String.format(" - %s: %s", Constants.IndexPath, indexPath));
@@ -319,10 +256,8 @@ public class BuildLPInvertedIndexDocSorted extends PowerTool {
     LOG.info(String.format(" - %s: %s", Constants.PostingsListsType, postingsClass.getCanonicalName()));
     LOG.info(String.format(" - %s: %s", Constants.NumReduceTasks, reduceTasks));
     LOG.info(String.format(" - %s: %s", Constants.MinSplitSize, minSplitSize));
-    LOG.info(String.format(" - %s: %s", Constants.IndexingMapMemoryThreshold, mapMemoryThreshold));
-    LOG.info(String.format(" - %s: %s", Constants.IndexingReduceMemoryThreshold, reduceMemoryThreshold));
+    LOG.info(String.format(" - %s: %s", Constants.IndexingMapMemoryBudget, mapMemoryBudget));
     LOG.info(String.format(" - %s: %s", Constants.MaxHeap, maxHeap));
-    LOG.info(String.format(" - %s: %s", Constants.MaxNDocsBeforeFlush, maxNDocsBeforeFlush));
 
     if (!fs.exists(new Path(indexPath))) {
       fs.mkdirs(new Path(indexPath));
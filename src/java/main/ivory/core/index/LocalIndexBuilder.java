@@ -0,0 +1,899 @@
+/*
+ * Ivory: A Hadoop toolkit for web-scale information retrieval
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package ivory.core.index;
+
+import ivory.core.Constants;
+import ivory.core.RetrievalEnvironment;
+import ivory.core.data.dictionary.DefaultFrequencySortedDictionary;
+import ivory.core.data.dictionary.DictionaryTransformationStrategy;
+import ivory.core.data.document.IntDocVectorsForwardIndex;
+import ivory.core.data.document.LazyIntDocVector;
+import ivory.core.data.document.LazyTermDocVector;
+import ivory.core.data.document.TermDocVectorsForwardIndex;
+import ivory.core.data.index.IntPostingsForwardIndex;
+import ivory.core.data.index.PostingsArena;
+import ivory.core.data.index.PostingsList;
+import ivory.core.data.index.PostingsListDocSortedPositional;
+import ivory.core.data.index.TermPositions;
+import ivory.core.preprocess.BuildDictionary;
+import ivory.core.tokenize.DocumentProcessingUtils;
+import ivory.core.tokenize.Tokenizer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.SortedMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.DefaultCodec;
+import org.apache.hadoop.mapreduce.InputFormat;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
+import org.apache.hadoop.util.ReflectionUtils;
+import org.apache.log4j.Logger;
+
+import tl.lin.data.array.ArrayListOfInts;
+import tl.lin.data.array.ArrayListOfLongs;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import edu.umd.cloud9.collection.DocnoMapping;
+import edu.umd.cloud9.collection.Indexable;
+import edu.umd.cloud9.util.PowerTool;
+
+/**
+ * <p>
+ * Builds an index in a single JVM, without MapReduce. The stages are the same as those run by
+ * {@link ivory.app.PreprocessCollection} followed by {@link BuildIPInvertedIndexDocSorted} and
+ * {@link BuildIntPostingsForwardIndex}, and so is the output, but each stage runs as tasks on a
+ * fork/join pool:
+ * </p>
+ *
+ * <ol>
+ * <li>Each input split is parsed into term doc vectors, one part file per split, while document
+ * lengths and term statistics are collected.</li>
+ * <li>The dictionary is written from the term statistics.</li>
+ * <li>Each part file of term doc vectors is converted into int doc vectors and inverted. Partial
+ * postings are buffered in a {@link PostingsArena}, and spilled to a run on disk whenever the
+ * buffer fills up. Each run is laid out in sections, one per index partition, of terms sorted by
+ * term id.</li>
+ * <li>Each index partition is written by merging its sections of all the runs.</li>
+ * </ol>
+ *
+ * <p>
+ * The memory used for buffering postings is bounded by {@link Constants#LocalIndexingMemoryBudget}
+ * across all threads. Runs are spilled early when the docnos of a part file go backwards, since the
+ * postings of a term in a run must be sorted by docno; docnos are normally increasing within an
+ * input file, in which case each thread spills only when its buffer is full.
+ * </p>
+ */
+public class LocalIndexBuilder extends PowerTool {
+  private static final Logger LOG = Logger.getLogger(LocalIndexBuilder.class);
+
+  public static final int DEFAULT_MEMORY_BUDGET = 1024;
+
+  // The address space of a PostingsArena is limited to 2 GB.
+  private static final long MAX_ARENA_BYTES = 1536L * 1024 * 1024;
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  public static final String[] RequiredParameters = {
+      Constants.CollectionName,
+      Constants.CollectionPath,
+      Constants.IndexPath,
+      Constants.InputFormat,
+      Constants.Tokenizer,
+      Constants.DocnoMappingClass,
+      Constants.DocnoOffset,
+      Constants.NumReduceTasks };
+
+  @Override
+  public String[] getRequiredParameters() {
+    return RequiredParameters;
+  }
+
+  public LocalIndexBuilder(Configuration conf) {
+    super(conf);
+  }
+
+  private Configuration conf;
+  private FileSystem fs;
+  private RetrievalEnvironment env;
+  private DocnoMapping docnoMapping;
+  private int docnoOffset;
+  private int numPartitions;
+  private long arenaBudget;
+
+  private final Map<String, TermStatistics> termStatistics = Maps.newHashMap();
+  private final List<Run> runs = Collections.synchronizedList(Lists.<Run>newArrayList());
+  private final AtomicInteger numRuns = new AtomicInteger();
+  private Path runsPath;
+
+  @SuppressWarnings("rawtypes")
+  public int runTool() throws Exception {
+    conf = getConf();
+    fs = FileSystem.get(conf);
+
+    String indexPath = conf.get(Constants.IndexPath);
+    String collectionName = conf.get(Constants.CollectionName);
+    String collectionPath = conf.get(Constants.CollectionPath);
+    String inputFormat = conf.get(Constants.InputFormat);
+    String tokenizer = conf.get(Constants.Tokenizer);
+    String mappingClass = conf.get(Constants.DocnoMappingClass);
+    String postingsType = conf.get(Constants.PostingsListsType,
+        PostingsListDocSortedPositional.class.getCanonicalName());
+    int minDf = conf.getInt(Constants.MinDf, 2);
+    int maxDf = conf.getInt(Constants.MaxDf, Integer.MAX_VALUE);
+    int threads = conf.getInt(Constants.LocalIndexingThreads,
+        Runtime.getRuntime().availableProcessors());
+    int memoryBudget = conf.getInt(Constants.LocalIndexingMemoryBudget, DEFAULT_MEMORY_BUDGET);
+    docnoOffset = conf.getInt(Constants.DocnoOffset, 0);
+    numPartitions = conf.getInt(Constants.NumReduceTasks, 0);
+
+    LOG.info("PowerTool: " + LocalIndexBuilder.class.getSimpleName());
+    LOG.info(String.format(" - %s: %s", Constants.IndexPath, indexPath));
+    LOG.info(String.format(" - %s: %s", Constants.CollectionName, collectionName));
+    LOG.info(String.format(" - %s: %s", Constants.CollectionPath, collectionPath));
+    LOG.info(String.format(" - %s: %s", Constants.InputFormat, inputFormat));
+    LOG.info(String.format(" - %s: %s", Constants.Tokenizer, tokenizer));
+    LOG.info(String.format(" - %s: %s", Constants.DocnoMappingClass, mappingClass));
+    LOG.info(String.format(" - %s: %s", Constants.DocnoOffset, docnoOffset));
+    LOG.info(String.format(" - %s: %s", Constants.MinDf, minDf));
+    LOG.info(String.format(" - %s: %s", Constants.MaxDf, maxDf));
+    LOG.info(String.format(" - %s: %s", Constants.PostingsListsType, postingsType));
+    LOG.info(String.format(" - %s: %s", Constants.NumReduceTasks, numPartitions));
+    LOG.info(String.format(" - %s: %s", Constants.LocalIndexingThreads, threads));
+    LOG.info(String.format(" - %s: %s", Constants.LocalIndexingMemoryBudget, memoryBudget));
+
+    if (numPartitions <= 0) {
+      throw new RuntimeException("Error: number of index partitions must be positive!");
+    }
+
+    env = new RetrievalEnvironment(indexPath, fs);
+    if (fs.exists(new Path(env.getTermDocVectorsDirectory()))
+        || fs.exists(new Path(env.getPostingsDirectory()))) {
+      LOG.info("Index already exists: no indexing will be performed.");
+      return 0;
+    }
+
+    // Docno mappings come with their own builders, which may well run MapReduce jobs themselves.
+    docnoMapping = (DocnoMapping) Class.forName(mappingClass).newInstance();
+    Path mappingFile = env.getDocnoMappingData();
+    if (!fs.exists(mappingFile)) {
+      docnoMapping.getBuilder().build(new Path(collectionPath), mappingFile, conf);
+    }
+    docnoMapping.loadMapping(mappingFile, fs);
+
+    env.writeCollectionName(collectionName);
+    env.writeCollectionPath(collectionPath);
+    env.writeInputFormat(inputFormat);
+    env.writeDocnoMappingClass(mappingClass);
+    env.writeTokenizerClass(tokenizer);
+    env.writeDocnoOffset(docnoOffset);
+
+    arenaBudget = Math.min((long) memoryBudget * 1024 * 1024 / threads, MAX_ARENA_BYTES);
+    runsPath = new Path(env.getTempDirectory());
+    fs.delete(runsPath, true);
+
+    ForkJoinPool pool = new ForkJoinPool(threads);
+    long startTime = System.currentTimeMillis();
+    try {
+      // Stage 1: term doc vectors, doc lengths and term statistics.
+      InputFormat format = (InputFormat) ReflectionUtils.newInstance(Class.forName(inputFormat),
+          conf);
+      Job job = Job.getInstance(conf);
+      FileInputFormat.addInputPaths(job, collectionPath);
+      @SuppressWarnings("unchecked")
+      List<InputSplit> splits = Lists.newArrayList(format.getSplits(job));
+      // Biggest splits first, which is also the order MapReduce numbers its map tasks in.
+      Collections.sort(splits, new Comparator<InputSplit>() {
+        @Override
+        public int compare(InputSplit s1, InputSplit s2) {
+          try {
+            long l1 = s1.getLength(), l2 = s2.getLength();
+            return l1 < l2 ? 1 : (l1 == l2 ? 0 : -1);
+          } catch (Exception e) {
+            throw new RuntimeException(e);
+          }
+        }
+      });
+
+      List<TermDocVectorsTask> parseTasks = Lists.newArrayList();
+      for (InputSplit split : splits) {
+        parseTasks.add(new TermDocVectorsTask(format, split, parseTasks.size()));
+      }
+      runAll(pool, parseTasks);
+      LOG.info(String.format("Parsed %d splits in %.1f seconds", splits.size(),
+          (System.currentTimeMillis() - startTime) / 1000.0));
+
+      int maxDocno = docnoOffset;
+      for (TermDocVectorsTask task : parseTasks) {
+        for (int i = 0; i < task.docnos.size(); i++) {
+          maxDocno = Math.max(maxDocno, task.docnos.get(i));
+        }
+      }
+
+      int[] doclengths = new int[maxDocno - docnoOffset];
+      long[] docVectorPositions = new long[maxDocno - docnoOffset];
+      Arrays.fill(docVectorPositions, -1);
+      int collectionDocCount = 0;
+      for (TermDocVectorsTask task : parseTasks) {
+        for (int i = 0; i < task.docnos.size(); i++) {
+          int docno = task.docnos.get(i);
+          if (docVectorPositions[docno - docnoOffset - 1] != -1) {
+            throw new RuntimeException("Error: more than one document with docno " + docno);
+          }
+          doclengths[docno - docnoOffset - 1] = task.doclengths.get(i);
+          docVectorPositions[docno - docnoOffset - 1] = task.positions.get(i);
+          collectionDocCount++;
+        }
+      }
+      parseTasks = null;
+
+      long collectionLength = writeDocLengths(doclengths);
+      doclengths = null;
+      writeDocVectorsForwardIndex(env.getTermDocVectorsForwardIndex(), docVectorPositions,
+          collectionDocCount);
+
+      env.writeCollectionDocumentCount(collectionDocCount);
+      env.writeCollectionAverageDocumentLength((float) collectionLength / collectionDocCount);
+      env.writeCollectionLength(collectionLength);
+
+      // Stage 2: dictionary.
+      List<String> terms = Lists.newArrayList();
+      for (Map.Entry<String, TermStatistics> e : termStatistics.entrySet()) {
+        if (e.getValue().df >= minDf && e.getValue().df <= maxDf) {
+          terms.add(e.getKey());
+        }
+      }
+      Collections.sort(terms, new DictionaryTransformationStrategy.Comparator());
+
+      int collectionTermCount = terms.size();
+      int[] dfs = new int[collectionTermCount];
+      long[] cfs = new long[collectionTermCount];
+      for (int i = 0; i < collectionTermCount; i++) {
+        TermStatistics stats = termStatistics.get(terms.get(i));
+        dfs[i] = stats.df;
+        cfs[i] = stats.cf;
+      }
+      termStatistics.clear();
+
+      env.writeCollectionTermCount(collectionTermCount);
+      BuildDictionary.writeDictionary(terms.toArray(new String[collectionTermCount]), dfs, cfs,
+          env, fs);
+      terms = null;
+      LOG.info(String.format("Wrote dictionary of %d terms", collectionTermCount));
+
+      DefaultFrequencySortedDictionary dictionary = new DefaultFrequencySortedDictionary(
+          new Path(env.getIndexTermsData()), new Path(env.getIndexTermIdsData()),
+          new Path(env.getIndexTermIdMappingData()), fs);
+
+      // Stage 3: int doc vectors, and runs of postings.
+      List<IntDocVectorsTask> invertTasks = Lists.newArrayList();
+      for (int i = 0; i < splits.size(); i++) {
+        invertTasks.add(new IntDocVectorsTask(dictionary, i));
+      }
+      runAll(pool, invertTasks);
+      LOG.info(String.format("Wrote %d runs of postings", runs.size()));
+
+      Arrays.fill(docVectorPositions, -1);
+      for (IntDocVectorsTask task : invertTasks) {
+        for (int i = 0; i < task.docnos.size(); i++) {
+          docVectorPositions[task.docnos.get(i) - docnoOffset - 1] = task.positions.get(i);
+        }
+      }
+      invertTasks = null;
+      writeDocVectorsForwardIndex(env.getIntDocVectorsForwardIndex(), docVectorPositions,
+          collectionDocCount);
+      docVectorPositions = null;
+
+      // Stage 4: merge the runs into postings.
+      @SuppressWarnings("unchecked")
+      Class<? extends PostingsList> postingsClass =
+          (Class<? extends PostingsList>) Class.forName(postingsType);
+      long[] postingsPositions = new long[collectionTermCount + 1];
+      Arrays.fill(postingsPositions, -1);
+
+      List<MergeTask> mergeTasks = Lists.newArrayList();
+      for (int i = 0; i < numPartitions; i++) {
+        mergeTasks.add(new MergeTask(i, postingsClass, collectionDocCount, postingsPositions));
+      }
+      runAll(pool, mergeTasks);
+
+      writePostingsForwardIndex(postingsPositions);
+      env.writePostingsType(postingsClass.getCanonicalName());
+    } finally {
+      pool.shutdown();
+      fs.delete(runsPath, true);
+    }
+
+    LOG.info("Index built in " + (System.currentTimeMillis() - startTime) / 1000.0 + " seconds");
+
+    return 0;
+  }
+
+  // Runs the tasks, rethrowing the first failure.
+  private static <T> void runAll(ForkJoinPool pool, List<? extends Callable<T>> tasks)
+      throws IOException {
+    for (Future<T> future : pool.invokeAll(tasks)) {
+      try {
+        future.get();
+      } catch (InterruptedException e) {
+        throw new RuntimeException(e);
+      } catch (ExecutionException e) {
+        if (e.getCause() instanceof IOException) {
+          throw (IOException) e.getCause();
+        }
+        throw new RuntimeException(e.getCause());
+      }
+    }
+  }
+
+  private static class TermStatistics {
+    int df;
+    long cf;
+  }
+
+  // Writes the doc length data in the same format as BuildTermDocVectors, and returns the sum of
+  // all doc lengths.
+  private long writeDocLengths(int[] doclengths) throws IOException {
+    FSDataOutputStream out = fs.create(env.getDoclengthsData(), true);
+    out.writeInt(docnoOffset);
+    out.writeInt(doclengths.length);
+
+    long sum = 0;
+    for (int i = 0; i < doclengths.length; i++) {
+      out.writeInt(doclengths[i]);
+      sum += doclengths[i];
+    }
+    out.writeLong(sum);
+    out.close();
+
+    return sum;
+  }
+
+  // Writes a forward index to doc vectors, which has an entry for each document in docno order.
+  private void writeDocVectorsForwardIndex(String file, long[] positions, int collectionDocCount)
+      throws IOException {
+    FSDataOutputStream out = fs.create(new Path(file), true);
+    out.writeInt(docnoOffset);
+    out.writeInt(collectionDocCount);
+    for (long pos : positions) {
+      if (pos != -1) {
+        out.writeLong(pos);
+      }
+    }
+    out.close();
+  }
+
+  // Writes the forward index to postings, padded for term ids without postings.
+  private void writePostingsForwardIndex(long[] positions) throws IOException {
+    FSDataOutputStream out = fs.create(new Path(env.getPostingsIndexData()), true);
+    out.writeInt(positions.length - 1);
+    for (int i = 1; i < positions.length; i++) {
+      out.writeLong(positions[i]);
+    }
+    out.close();
+  }
+
+  // Creates a writer with the same settings as SequenceFileOutputFormat, which compresses records
+  // if asked to, and otherwise only if the configuration says so.
+  private SequenceFile.Writer createWriter(Path path, Class<?> keyClass, Class<?> valueClass,
+      boolean compress) throws IOException {
+    if (compress || conf.getBoolean(FileOutputFormat.COMPRESS, false)) {
+      CompressionCodec codec = ReflectionUtils.newInstance(conf.getClass(
+          FileOutputFormat.COMPRESS_CODEC, DefaultCodec.class, CompressionCodec.class), conf);
+      return SequenceFile.createWriter(fs, conf, path, keyClass, valueClass,
+          SequenceFile.CompressionType.RECORD, codec);
+    }
+    return SequenceFile.createWriter(fs, conf, path, keyClass, valueClass,
+        SequenceFile.CompressionType.NONE);
+  }
+
+  private static String getPartName(String type, int n) {
+    return String.format("part-%s-%05d", type, n);
+  }
+
+  private int getPartition(int termid) {
+    return (termid & Integer.MAX_VALUE) % numPartitions;
+  }
+
+  /**
+   * Parses one input split into a part file of term doc vectors.
+   */
+  private class TermDocVectorsTask implements Callable<Void> {
+    @SuppressWarnings("rawtypes")
+    private final InputFormat format;
+    private final InputSplit split;
+    private final int partNo;
+
+    final ArrayListOfInts docnos = new ArrayListOfInts();
+    final ArrayListOfInts doclengths = new ArrayListOfInts();
+    final ArrayListOfLongs positions = new ArrayListOfLongs();
+
+    @SuppressWarnings("rawtypes")
+    TermDocVectorsTask(InputFormat format, InputSplit split, int partNo) {
+      this.format = format;
+      this.split = split;
+      this.partNo = partNo;
+    }
+
+    @Override
+    public Void call() throws Exception {
+      // Record readers and tokenizers may keep state in their configuration.
+      Configuration taskConf = new Configuration(conf);
+      Tokenizer tokenizer = (Tokenizer) Class.forName(conf.get(Constants.Tokenizer)).newInstance();
+      tokenizer.configure(taskConf, fs);
+
+      TaskAttemptContext context = new TaskAttemptContextImpl(taskConf, new TaskAttemptID());
+      RecordReader<?, ?> reader = format.createRecordReader(split, context);
+      reader.initialize(split, context);
+
+      SequenceFile.Writer out = createWriter(
+          new Path(env.getTermDocVectorsDirectory(), getPartName("m", partNo)),
+          IntWritable.class, LazyTermDocVector.class, true);
+      IntWritable key = new IntWritable();
+      LazyTermDocVector docVector = new LazyTermDocVector();
+      Map<String, TermStatistics> stats = Maps.newHashMap();
+
+      while (reader.nextKeyValue()) {
+        Indexable doc = (Indexable) reader.getCurrentValue();
+        int docno = docnoMapping.getDocno(doc.getDocid());
+
+        // Skip invalid docnos.
+        if (docno <= 0) {
+          continue;
+        }
+        if (docno <= docnoOffset) {
+          throw new RuntimeException("Error: docno " + docno + " <= docnoOffset " + docnoOffset
+              + "!");
+        }
+
+        Map<String, ArrayListOfInts> termPositionsMap =
+            DocumentProcessingUtils.parseDocument(doc, tokenizer);
+
+        int doclength = 0;
+        if (termPositionsMap.size() != 0) {
+          doclength = termPositionsMap.get("").get(0);
+          termPositionsMap.remove("");
+        }
+
+        for (Map.Entry<String, ArrayListOfInts> e : termPositionsMap.entrySet()) {
+          TermStatistics s = stats.get(e.getKey());
+          if (s == null) {
+            s = new TermStatistics();
+            stats.put(e.getKey(), s);
+          }
+          s.df++;
+          s.cf += e.getValue().size();
+        }
+
+        docnos.add(docno);
+        doclengths.add(doclength);
+        positions.add(TermDocVectorsForwardIndex.BigNumber * partNo + out.getLength());
+
+        key.set(docno);
+        docVector.setTermPositionsMap(termPositionsMap);
+        out.append(key, docVector);
+      }
+      reader.close();
+      out.close();
+
+      synchronized (termStatistics) {
+        for (Map.Entry<String, TermStatistics> e : stats.entrySet()) {
+          TermStatistics s = termStatistics.get(e.getKey());
+          if (s == null) {
+            termStatistics.put(e.getKey(), e.getValue());
+          } else {
+            s.df += e.getValue().df;
+            s.cf += e.getValue().cf;
+          }
+        }
+      }
+
+      return null;
+    }
+  }
+
+  /**
+   * Converts one part file of term doc vectors into int doc vectors, and inverts them into runs.
+   */
+  private class IntDocVectorsTask implements Callable<Void> {
+    private final DefaultFrequencySortedDictionary dictionary;
+    private final int partNo;
+
+    final ArrayListOfInts docnos = new ArrayListOfInts();
+    final ArrayListOfLongs positions = new ArrayListOfLongs();
+
+    IntDocVectorsTask(DefaultFrequencySortedDictionary dictionary, int partNo) {
+      this.dictionary = dictionary;
+      this.partNo = partNo;
+    }
+
+    @Override
+    public Void call() throws Exception {
+      SequenceFile.Reader in = new SequenceFile.Reader(fs,
+          new Path(env.getTermDocVectorsDirectory(), getPartName("m", partNo)), conf);
+      SequenceFile.Writer out = createWriter(
+          new Path(env.getIntDocVectorsDirectory(), getPartName("m", partNo)),
+          IntWritable.class, LazyIntDocVector.class, true);
+
+      IntWritable key = new IntWritable();
+      LazyTermDocVector termDocVector = new LazyTermDocVector();
+      LazyIntDocVector intDocVector = new LazyIntDocVector();
+      PostingsArena arena = new PostingsArena();
+      int prevDocno = 0;
+
+      while (in.next(key, termDocVector)) {
+        int docno = key.get();
+        SortedMap<Integer, int[]> termPositions =
+            DocumentProcessingUtils.integerizeTermDocVector(termDocVector, dictionary);
+
+        docnos.add(docno);
+        positions.add(IntDocVectorsForwardIndex.BigNumber * partNo + out.getLength());
+
+        intDocVector.setTermPositionsMap(termPositions);
+        out.append(key, intDocVector);
+
+        // Postings of a term in a run must be sorted by docno.
+        if (docno <= prevDocno) {
+          spill(arena);
+        }
+        prevDocno = docno;
+
+        for (Map.Entry<Integer, int[]> e : termPositions.entrySet()) {
+          arena.add(e.getKey(), docno, e.getValue(), e.getValue().length);
+        }
+
+        if (arena.getBytesUsed() > arenaBudget) {
+          spill(arena);
+        }
+      }
+      spill(arena);
+
+      in.close();
+      out.close();
+
+      return null;
+    }
+  }
+
+  /**
+   * Run of postings on disk. Holds the offset of the section of each index partition, plus the
+   * end of the last section.
+   */
+  private static class Run {
+    final Path path;
+    final long[] sections;
+
+    Run(Path path, long[] sections) {
+      this.path = path;
+      this.sections = sections;
+    }
+  }
+
+  // Writes out the postings in the arena as a run, and clears the arena. Each term is written as
+  // the term id, df, and number of bytes of postings, followed by the postings: the d-gap, tf and
+  // p-gaps of each posting as variable-length integers.
+  private void spill(PostingsArena arena) throws IOException {
+    int n = arena.size();
+    if (n == 0) {
+      return;
+    }
+
+    // Sort by term id, carrying along the index of each term in the arena.
+    long[] keys = new long[n];
+    for (int i = 0; i < n; i++) {
+      keys[i] = ((long) arena.getTermid(i) << 32) | i;
+    }
+    Arrays.sort(keys);
+    int[] termids = new int[n];
+    int[] index = new int[n];
+    for (int i = 0; i < n; i++) {
+      termids[i] = (int) (keys[i] >>> 32);
+      index[i] = (int) keys[i];
+    }
+
+    // Counting sort by partition, which keeps the terms in each partition sorted by term id.
+    int[] start = new int[numPartitions + 1];
+    for (int i = 0; i < n; i++) {
+      start[getPartition(termids[i]) + 1]++;
+    }
+    for (int p = 0; p < numPartitions; p++) {
+      start[p + 1] += start[p];
+    }
+    int[] order = new int[n];
+    int[] next = Arrays.copyOf(start, numPartitions);
+    for (int i = 0; i < n; i++) {
+      order[next[getPartition(termids[i])]++] = i;
+    }
+
+    Path path = new Path(runsPath, "run-" + numRuns.getAndIncrement());
+    DataOutputStream out =
+        new DataOutputStream(new BufferedOutputStream(fs.create(path, true), BUFFER_SIZE));
+    DataOutputBuffer buffer = new DataOutputBuffer();
+    PostingsArena.Reader reader = null;
+    long[] sections = new long[numPartitions + 1];
+    long pos = 0;
+
+    for (int p = 0; p < numPartitions; p++) {
+      sections[p] = pos;
+      for (int j = start[p]; j < start[p + 1]; j++) {
+        int t = index[order[j]];
+        if (reader == null) {
+          reader = arena.getReader(t);
+        } else {
+          reader.reset(t);
+        }
+
+        buffer.reset();
+        int prevDocno = 0;
+        while (reader.nextPosting()) {
+          WritableUtils.writeVInt(buffer, reader.getDocno() - prevDocno);
+          WritableUtils.writeVInt(buffer, reader.getTf());
+          int[] positions = reader.getPositions();
+          int prevPosition = 0;
+          for (int i = 0; i < reader.getTf(); i++) {
+            WritableUtils.writeVInt(buffer, positions[i] - prevPosition);
+            prevPosition = positions[i];
+          }
+          prevDocno = reader.getDocno();
+        }
+
+        out.writeInt(termids[order[j]]);
+        out.writeInt(arena.getDf(t));
+        out.writeInt(buffer.getLength());
+        out.write(buffer.getData(), 0, buffer.getLength());
+        pos += 12 + buffer.getLength();
+      }
+    }
+    sections[numPartitions] = pos;
+    out.close();
+
+    arena.clear();
+    runs.add(new Run(path, sections));
+  }
+
+  /**
+   * Reads the terms of one section of a run.
+   */
+  private static class SectionReader {
+    private final DataInputStream in;
+    private final int runNo;
+    private long remaining;
+
+    int termid;
+    int df;
+    byte[] bytes = new byte[1024];
+    int length;
+
+    SectionReader(FileSystem fs, Run run, int runNo, int partition) throws IOException {
+      FSDataInputStream stream = fs.open(run.path);
+      stream.seek(run.sections[partition]);
+      this.in = new DataInputStream(new BufferedInputStream(stream, BUFFER_SIZE));
+      this.runNo = runNo;
+      this.remaining = run.sections[partition + 1] - run.sections[partition];
+    }
+
+    boolean next() throws IOException {
+      if (remaining == 0) {
+        return false;
+      }
+
+      termid = in.readInt();
+      df = in.readInt();
+      length = in.readInt();
+      if (bytes.length < length) {
+        bytes = new byte[Math.max(length, bytes.length * 2)];
+      }
+      in.readFully(bytes, 0, length);
+      remaining -= 12 + length;
+
+      return true;
+    }
+
+    void close() throws IOException {
+      in.close();
+    }
+  }
+
+  /**
+   * Cursor over the postings of one term read by a {@link SectionReader}.
+   */
+  private static class PostingsCursor {
+    private final DataInputBuffer in = new DataInputBuffer();
+    private int remaining;
+
+    int docno;
+    int tf;
+    int[] positions = new int[16];
+
+    void reset(SectionReader section) {
+      in.reset(section.bytes, section.length);
+      remaining = section.df;
+      docno = 0;
+    }
+
+    boolean next() throws IOException {
+      if (remaining == 0) {
+        return false;
+      }
+      remaining--;
+
+      docno += WritableUtils.readVInt(in);
+      tf = WritableUtils.readVInt(in);
+      if (positions.length < tf) {
+        positions = new int[Math.max(tf, positions.length * 2)];
+      }
+      int p = 0;
+      for (int i = 0; i < tf; i++) {
+        p += WritableUtils.readVInt(in);
+        positions[i] = p;
+      }
+
+      return true;
+    }
+  }
+
+  /**
+   * Writes one index partition by merging its sections of all runs.
+   */
+  private class MergeTask implements Callable<Void> {
+    private final int partition;
+    private final Class<? extends PostingsList> postingsClass;
+    private final int collectionDocCount;
+    private final long[] postingsPositions;
+
+    MergeTask(int partition, Class<? extends PostingsList> postingsClass,
+        int collectionDocCount, long[] postingsPositions) {
+      this.partition = partition;
+      this.postingsClass = postingsClass;
+      this.collectionDocCount = collectionDocCount;
+      this.postingsPositions = postingsPositions;
+    }
+
+    @Override
+    public Void call() throws Exception {
+      // Terms in order of term id; the same term from several runs in order of run.
+      PriorityQueue<SectionReader> sections = new PriorityQueue<SectionReader>(
+          Math.max(1, runs.size()), new Comparator<SectionReader>() {
+            @Override
+            public int compare(SectionReader s1, SectionReader s2) {
+              if (s1.termid != s2.termid) {
+                return s1.termid < s2.termid ? -1 : 1;
+              }
+              return s1.runNo - s2.runNo;
+            }
+          });
+      for (int i = 0; i < runs.size(); i++) {
+        SectionReader section = new SectionReader(fs, runs.get(i), i, partition);
+        if (section.next()) {
+          sections.add(section);
+        } else {
+          section.close();
+        }
+      }
+
+      PriorityQueue<PostingsCursor> cursors = new PriorityQueue<PostingsCursor>(
+          Math.max(1, runs.size()), new Comparator<PostingsCursor>() {
+            @Override
+            public int compare(PostingsCursor c1, PostingsCursor c2) {
+              return c1.docno < c2.docno ? -1 : (c1.docno == c2.docno ? 0 : 1);
+            }
+          });
+      List<PostingsCursor> freeCursors = Lists.newArrayList();
+      List<SectionReader> current = Lists.newArrayList();
+
+      SequenceFile.Writer out = createWriter(
+          new Path(env.getPostingsDirectory(), getPartName("r", partition)),
+          IntWritable.class, postingsClass, false);
+      IntWritable key = new IntWritable();
+      PostingsList postings = postingsClass.newInstance();
+      postings.setCollectionDocumentCount(collectionDocCount);
+      TermPositions termPositions = new TermPositions();
+
+      while (!sections.isEmpty()) {
+        int termid = sections.peek().termid;
+        int df = 0;
+        current.clear();
+        while (!sections.isEmpty() && sections.peek().termid == termid) {
+          SectionReader section = sections.poll();
+          current.add(section);
+          df += section.df;
+
+          PostingsCursor cursor = freeCursors.isEmpty() ?
+              new PostingsCursor() : freeCursors.remove(freeCursors.size() - 1);
+          cursor.reset(section);
+          cursor.next();
+          cursors.add(cursor);
+        }
+
+        postings.clear();
+        postings.setNumberOfPostings(df);
+        int prevDocno = -1;
+        while (!cursors.isEmpty()) {
+          PostingsCursor cursor = cursors.poll();
+          if (cursor.docno == prevDocno) {
+            throw new RuntimeException(String.format(
+                "Error: more than one posting with the same (term, docno): docno=%d, term=%d",
+                cursor.docno, termid));
+          }
+          prevDocno = cursor.docno;
+
+          termPositions.set(Arrays.copyOf(cursor.positions, cursor.tf), (short) cursor.tf);
+          postings.add(cursor.docno, (short) cursor.tf, termPositions);
+
+          if (cursor.next()) {
+            cursors.add(cursor);
+          } else {
+            freeCursors.add(cursor);
+          }
+        }
+
+        if (postings.size() != df) {
+          throw new RuntimeException(String.format(
+              "Error: actual number of postings processed is different from expected! " +
+                  "expected: %d, got: %d for term %d", df, postings.size(), termid));
+        }
+
+        postingsPositions[termid] = IntPostingsForwardIndex.BigNumber * partition + out.getLength();
+        key.set(termid);
+        out.append(key, postings);
+
+        for (SectionReader section : current) {
+          if (section.next()) {
+            sections.add(section);
+          } else {
+            section.close();
+          }
+        }
+      }
+      out.close();
+
+      return null;
+    }
+  }
+}
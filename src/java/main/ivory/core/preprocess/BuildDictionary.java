@@ -22,6 +22,7 @@ import it.unimi.dsi.util.ShiftAddXorSignedStringMap;
 import ivory.core.Constants;
 import ivory.core.RetrievalEnvironment;
 import ivory.core.data.dictionary.DictionaryTransformationStrategy;
+import ivory.core.data.dictionary.MappedFrequencySortedDictionary;
 import ivory.core.util.QuickSort;
 
 import java.io.ByteArrayOutputStream;
@@ -59,10 +60,9 @@ public class BuildDictionary extends PowerTool {
 
   private static class MyReducer
       extends Reducer<Text, PairOfIntLong, NullWritable, NullWritable> {
-    private FSDataOutputStream termsOut, idsOut, idsToTermOut,
-        dfByTermOut, cfByTermOut, dfByIntOut, cfByIntOut;
+    private FileSystem fs;
+    private RetrievalEnvironment env;
     private int numTerms;
-    private int[] seqNums = null;
     private int[] dfs = null;
     private long[] cfs = null;
     private int curKeyIndex = 0;
@@ -74,36 +74,14 @@ public class BuildDictionary extends PowerTool {
         throws IOException {
       LOG.info("Starting setup.");
       Configuration conf = context.getConfiguration();
-      FileSystem fs = FileSystem.get(conf);
-      RetrievalEnvironment env = new RetrievalEnvironment(conf.get(Constants.IndexPath), fs);
+      fs = FileSystem.get(conf);
+      env = new RetrievalEnvironment(conf.get(Constants.IndexPath), fs);
 
       numTerms = conf.getInt(Constants.CollectionTermCount, 0);
 
       terms = new String[numTerms];
-      seqNums = new int[numTerms];
       dfs = new int[numTerms];
       cfs = new long[numTerms];
-
-      termsOut = fs.create(new Path(env.getIndexTermsData()), true);
-      //termsOut.writeInt(numTerms);
-
-      idsOut = fs.create(new Path(env.getIndexTermIdsData()), true);
-      idsOut.writeInt(numTerms);
-
-      idsToTermOut = fs.create(new Path(env.getIndexTermIdMappingData()), true);
-      idsToTermOut.writeInt(numTerms);
-
-      dfByTermOut = fs.create(new Path(env.getDfByTermData()), true);
-      dfByTermOut.writeInt(numTerms);
-
-      cfByTermOut = fs.create(new Path(env.getCfByTermData()), true);
-      cfByTermOut.writeInt(numTerms);
-
-      dfByIntOut = fs.create(new Path(env.getDfByIntData()), true);
-      dfByIntOut.writeInt(numTerms);
-
-      cfByIntOut = fs.create(new Path(env.getCfByIntData()), true);
-      cfByIntOut.writeInt(numTerms);
       LOG.info("Finished setup.");
     }
 
@@ -113,19 +91,14 @@ public class BuildDictionary extends PowerTool {
       String term = key.toString();
       Iterator<PairOfIntLong> iter = values.iterator();
       PairOfIntLong p = iter.next();
-      int df = p.getLeftElement();
-      long cf = p.getRightElement();
-      WritableUtils.writeVInt(dfByTermOut, df);
-      WritableUtils.writeVLong(cfByTermOut, cf);
 
       if (iter.hasNext()) {
         throw new RuntimeException("More than one record for term: " + term);
       }
 
       terms[curKeyIndex] = term;
-      seqNums[curKeyIndex] = curKeyIndex;
-      dfs[curKeyIndex] = -df;
-      cfs[curKeyIndex] = cf;
+      dfs[curKeyIndex] = p.getLeftElement();
+      cfs[curKeyIndex] = p.getRightElement();
       curKeyIndex++;
 
       context.getCounter(Terms.Total).increment(1);
@@ -140,70 +113,128 @@ public class BuildDictionary extends PowerTool {
         throw new RuntimeException("Total expected Terms: " + numTerms +
             ", Total observed terms: " + curKeyIndex + "!");
       }
-      // Sort based on df and change seqNums accordingly.
-      QuickSort.quicksortWithSecondary(seqNums, dfs, cfs, 0, numTerms - 1);
+      writeDictionary(terms, dfs, cfs, env, fs);
+      LOG.info("Finished cleanup.");
+    }
+  }
 
-      // Write sorted dfs and cfs by int here.
-      for (int i = 0; i < numTerms; i++) {
-        WritableUtils.writeVInt(dfByIntOut, -dfs[i]);
-        WritableUtils.writeVLong(cfByIntOut, cfs[i]);
-      }
-      cfs = null;
+  /**
+   * Writes out the dictionary of an index along with its df and cf tables. Term ids are assigned in
+   * order of decreasing df, with the first term id being 1.
+   *
+   * @param terms terms, sorted with {@link DictionaryTransformationStrategy.Comparator}
+   * @param dfs df of each term; overwritten
+   * @param cfs cf of each term; overwritten
+   * @param env retrieval environment of the index
+   * @param fs FileSystem to write to
+   * @throws IOException
+   */
+  public static void writeDictionary(String[] terms, int[] dfs, long[] cfs,
+      RetrievalEnvironment env, FileSystem fs) throws IOException {
+    int numTerms = terms.length;
 
-      // Encode the sorted dfs into ids ==> df values erased and become ids instead. Note that first
-      // term id is 1.
-      for (int i = 0; i < numTerms; i++) {
-        dfs[i] = i + 1;
-      }
+    FSDataOutputStream termsOut = fs.create(new Path(env.getIndexTermsData()), true);
 
-      // Write current seq nums to be index into the term array.
-      for (int i = 0; i < numTerms; i++)
-        idsToTermOut.writeInt(seqNums[i]);
+    FSDataOutputStream idsOut = fs.create(new Path(env.getIndexTermIdsData()), true);
+    idsOut.writeInt(numTerms);
 
-      // Sort on seqNums to get the right writing order.
-      QuickSort.quicksort(dfs, seqNums, 0, numTerms - 1);
-      for (int i = 0; i < numTerms; i++) {
-        idsOut.writeInt(dfs[i]);
-      }
+    FSDataOutputStream idsToTermOut = fs.create(new Path(env.getIndexTermIdMappingData()), true);
+    idsToTermOut.writeInt(numTerms);
 
-      ByteArrayOutputStream bytesOut;
-      ObjectOutputStream objOut;
-      byte[] bytes;
-
-      List<String> termList = Lists.newArrayList(terms);
-      FrontCodedStringList frontcodedList = new FrontCodedStringList(termList, 8, true);
-
-      bytesOut = new ByteArrayOutputStream();
-      objOut = new ObjectOutputStream(bytesOut);
-      objOut.writeObject(frontcodedList);
-      objOut.close();
-
-      bytes = bytesOut.toByteArray();
-      termsOut.writeInt(bytes.length);
-      termsOut.write(bytes);
-
-      ShiftAddXorSignedStringMap dict = new ShiftAddXorSignedStringMap(termList.iterator(),
-          new TwoStepsLcpMonotoneMinimalPerfectHashFunction<CharSequence>(termList,
-              DictionaryTransformationStrategy.getStrategy()));
-
-      bytesOut = new ByteArrayOutputStream();
-      objOut = new ObjectOutputStream(bytesOut);
-      objOut.writeObject(dict);
-      objOut.close();
-
-      bytes = bytesOut.toByteArray();
-      termsOut.writeInt(bytes.length);
-      termsOut.write(bytes);
-
-      termsOut.close();
-      idsOut.close();
-      idsToTermOut.close();
-      dfByTermOut.close();
-      cfByTermOut.close();
-      dfByIntOut.close();
-      cfByIntOut.close();
-      LOG.info("Finished cleanup.");
+    FSDataOutputStream dfByTermOut = fs.create(new Path(env.getDfByTermData()), true);
+    dfByTermOut.writeInt(numTerms);
+
+    FSDataOutputStream cfByTermOut = fs.create(new Path(env.getCfByTermData()), true);
+    cfByTermOut.writeInt(numTerms);
+
+    FSDataOutputStream dfByIntOut = fs.create(new Path(env.getDfByIntData()), true);
+    dfByIntOut.writeInt(numTerms);
+
+    FSDataOutputStream cfByIntOut = fs.create(new Path(env.getCfByIntData()), true);
+    cfByIntOut.writeInt(numTerms);
+
+    FSDataOutputStream dictionaryOut = fs.create(new Path(env.getIndexDictionaryData()), true);
+
+    int[] seqNums = new int[numTerms];
+    for (int i = 0; i < numTerms; i++) {
+      WritableUtils.writeVInt(dfByTermOut, dfs[i]);
+      WritableUtils.writeVLong(cfByTermOut, cfs[i]);
+
+      seqNums[i] = i;
+      dfs[i] = -dfs[i];
     }
+
+    // Sort based on df and change seqNums accordingly.
+    QuickSort.quicksortWithSecondary(seqNums, dfs, cfs, 0, numTerms - 1);
+
+    // Write sorted dfs and cfs by int here.
+    for (int i = 0; i < numTerms; i++) {
+      WritableUtils.writeVInt(dfByIntOut, -dfs[i]);
+      WritableUtils.writeVLong(cfByIntOut, cfs[i]);
+    }
+
+    // Encode the sorted dfs into ids ==> df values erased and become ids instead. Note that first
+    // term id is 1.
+    for (int i = 0; i < numTerms; i++) {
+      dfs[i] = i + 1;
+    }
+
+    // Write current seq nums to be index into the term array.
+    for (int i = 0; i < numTerms; i++)
+      idsToTermOut.writeInt(seqNums[i]);
+
+    // Write out the dictionary for MappedFrequencySortedDictionary, which wants the terms in
+    // order of term id.
+    String[] termsById = new String[numTerms];
+    for (int i = 0; i < numTerms; i++) {
+      termsById[i] = terms[seqNums[i]];
+    }
+    MappedFrequencySortedDictionary.write(termsById, dictionaryOut);
+    termsById = null;
+
+    // Sort on seqNums to get the right writing order.
+    QuickSort.quicksort(dfs, seqNums, 0, numTerms - 1);
+    for (int i = 0; i < numTerms; i++) {
+      idsOut.writeInt(dfs[i]);
+    }
+
+    ByteArrayOutputStream bytesOut;
+    ObjectOutputStream objOut;
+    byte[] bytes;
+
+    List<String> termList = Lists.newArrayList(terms);
+    FrontCodedStringList frontcodedList = new FrontCodedStringList(termList, 8, true);
+
+    bytesOut = new ByteArrayOutputStream();
+    objOut = new ObjectOutputStream(bytesOut);
+    objOut.writeObject(frontcodedList);
+    objOut.close();
+
+    bytes = bytesOut.toByteArray();
+    termsOut.writeInt(bytes.length);
+    termsOut.write(bytes);
+
+    ShiftAddXorSignedStringMap dict = new ShiftAddXorSignedStringMap(termList.iterator(),
+        new TwoStepsLcpMonotoneMinimalPerfectHashFunction<CharSequence>(termList,
+            DictionaryTransformationStrategy.getStrategy()));
+
+    bytesOut = new ByteArrayOutputStream();
+    objOut = new ObjectOutputStream(bytesOut);
+    objOut.writeObject(dict);
+    objOut.close();
+
+    bytes = bytesOut.toByteArray();
+    termsOut.writeInt(bytes.length);
+    termsOut.write(bytes);
+
+    termsOut.close();
+    idsOut.close();
+    idsToTermOut.close();
+    dfByTermOut.close();
+    cfByTermOut.close();
+    dfByIntOut.close();
+    cfByIntOut.close();
+    dictionaryOut.close();
   }
 
   public static final String[] RequiredParameters = {
@@ -240,7 +271,8 @@ public class BuildDictionary extends PowerTool {
         fs.exists(new Path(env.getDfByTermData())) &&
         fs.exists(new Path(env.getCfByTermData())) &&
         fs.exists(new Path(env.getDfByIntData())) &&
-        fs.exists(new Path(env.getCfByIntData()))) {
+        fs.exists(new Path(env.getCfByIntData())) &&
+        fs.exists(new Path(env.getIndexDictionaryData()))) {
       LOG.info("term and term id data exist: skipping!");
       return 0;
     }
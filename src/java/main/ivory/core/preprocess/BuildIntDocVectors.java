@@ -23,6 +23,8 @@ import ivory.core.data.document.IntDocVector;
 import ivory.core.data.document.LazyIntDocVector;
 import ivory.core.data.document.TermDocVector;
 import ivory.core.tokenize.DocumentProcessingUtils;
+import ivory.core.tokenize.IntDocVectorBuilder;
+import ivory.core.tokenize.Tokenizer;
 
 import java.io.IOException;
 import java.net.URI;
@@ -35,6 +37,8 @@ import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.IntWritable;
 import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapreduce.InputFormat;
 import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.mapreduce.Mapper;
 import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
@@ -45,14 +49,80 @@ import org.apache.log4j.Logger;
 
 import com.google.common.collect.Maps;
 
+import edu.umd.cloud9.collection.DocnoMapping;
+import edu.umd.cloud9.collection.Indexable;
 import edu.umd.cloud9.util.PowerTool;
 
+/**
+ * <p>
+ * Builds int doc vectors by mapping terms to termids with the dictionary. By default, the term doc
+ * vectors are integerized. With {@link Constants#IntDocVectorsFromCollection} set, or if there are
+ * no term doc vectors, the collection is tokenized straight into termids instead.
+ * </p>
+ *
+ * <p>
+ * Building an index from scratch still goes through the term doc vectors, since the df and cf of
+ * the dictionary are computed from them, and reading them back is cheaper than tokenizing the
+ * collection again. Tokenizing the collection is for rebuilding the int doc vectors of an index
+ * whose term doc vectors were deleted, e.g., to reclaim space: this is what
+ * {@link ivory.app.PreprocessCollection} does when run on an index that still has its dictionary.
+ * </p>
+ */
 public class BuildIntDocVectors extends PowerTool {
   private static final Logger LOG = Logger.getLogger(BuildIntDocVectors.class);
 
   protected static enum Docs { Skipped, Total }
   protected static enum MapTime { DecodingAndIdMapping, EncodingAndSpilling }
 
+  // Loads the dictionary from the DistributedCache.
+  private static DefaultFrequencySortedDictionary loadDictionary(Configuration conf)
+      throws IOException {
+    FileSystem fs = FileSystem.get(conf);
+
+    RetrievalEnvironment env = new RetrievalEnvironment(conf.get(Constants.IndexPath), fs);
+
+    String termsFile = env.getIndexTermsData();
+    String termidsFile = env.getIndexTermIdsData();
+    String idToTermFile = env.getIndexTermIdMappingData();
+
+    termsFile = termsFile.substring(termsFile.lastIndexOf("/") + 1);
+    termidsFile = termidsFile.substring(termidsFile.lastIndexOf("/") + 1);
+    idToTermFile = idToTermFile.substring(idToTermFile.lastIndexOf("/") + 1);
+
+    LOG.info("Looking for the following files in dcache: " + termsFile + ", " + termidsFile + ", " + idToTermFile);
+    // Take a different code path if we're in standalone mode.
+    if (conf.get("mapred.job.tracker").equals("local")) {
+      return new DefaultFrequencySortedDictionary(new Path(termsFile),
+          new Path(termidsFile), new Path(idToTermFile), FileSystem.getLocal(conf));
+    }
+
+    // We need to figure out which file in the DistributeCache is which...
+    Map<String, Path> pathMapping = Maps.newHashMap();
+    Path[] localFiles = DistributedCache.getLocalCacheFiles(conf);
+    for (Path p : localFiles) {
+      LOG.info("In DistributedCache: " + p);
+      if (p.toString().contains(termsFile)) {
+        pathMapping.put(termsFile, p);
+      } else if (p.toString().contains(termidsFile)) {
+        pathMapping.put(termidsFile, p);
+      } else if (p.toString().contains(idToTermFile)) {
+        pathMapping.put(idToTermFile, p);
+      }
+    }
+
+    LOG.info(" - terms: " + pathMapping.get(termsFile));
+    LOG.info(" - id: " + pathMapping.get(termidsFile));
+    LOG.info(" - idToTerms: " + pathMapping.get(idToTermFile));
+
+    String s = localFiles.length + " " + localFiles[0].toString() + " " + localFiles[1].toString() + " " + localFiles[2].toString();
+    if (pathMapping.get(termsFile) == null ) {
+      throw new RuntimeException(s);
+    }
+
+    return new DefaultFrequencySortedDictionary(pathMapping.get(termsFile),
+        pathMapping.get(termidsFile), pathMapping.get(idToTermFile), FileSystem.getLocal(conf));
+  }
+
   private static class MyMapper
       extends Mapper<IntWritable, TermDocVector, IntWritable, IntDocVector> {
     private DefaultFrequencySortedDictionary dictionary = null;
@@ -62,52 +132,7 @@ public class BuildIntDocVectors extends PowerTool {
     public void setup(
         Mapper<IntWritable, TermDocVector, IntWritable, IntDocVector>.Context context) {
       try {
-        Configuration conf = context.getConfiguration();
-        FileSystem fs = FileSystem.get(conf);
-
-        RetrievalEnvironment env = new RetrievalEnvironment(conf.get(Constants.IndexPath), fs);
-
-        String termsFile = env.getIndexTermsData();
-        String termidsFile = env.getIndexTermIdsData();
-        String idToTermFile = env.getIndexTermIdMappingData();
-
-        termsFile = termsFile.substring(termsFile.lastIndexOf("/") + 1);
-        termidsFile = termidsFile.substring(termidsFile.lastIndexOf("/") + 1);
-        idToTermFile = idToTermFile.substring(idToTermFile.lastIndexOf("/") + 1);
-
-        LOG.info("Looking for the following files in dcache: " + termsFile + ", " + termidsFile + ", " + idToTermFile);
-        // Take a different code path if we're in standalone mode.
-        if (conf.get("mapred.job.tracker").equals("local")) {
-          dictionary = new DefaultFrequencySortedDictionary(new Path(termsFile),
-              new Path(termidsFile), new Path(idToTermFile), FileSystem.getLocal(conf));
-        } else {
-          // We need to figure out which file in the DistributeCache is which...
-          Map<String, Path> pathMapping = Maps.newHashMap();
-          Path[] localFiles = DistributedCache.getLocalCacheFiles(context.getConfiguration());
-          for (Path p : localFiles) {
-            LOG.info("In DistributedCache: " + p);
-            if (p.toString().contains(termsFile)) {
-              pathMapping.put(termsFile, p);
-            } else if (p.toString().contains(termidsFile)) {
-              pathMapping.put(termidsFile, p);
-            } else if (p.toString().contains(idToTermFile)) {
-              pathMapping.put(idToTermFile, p);
-            }
-          }
-
-          LOG.info(" - terms: " + pathMapping.get(termsFile));
-          LOG.info(" - id: " + pathMapping.get(termidsFile));
-          LOG.info(" - idToTerms: " + pathMapping.get(idToTermFile));
-
-	  String s = localFiles.length + " " + localFiles[0].toString() + " " + localFiles[1].toString() + " " + localFiles[2].toString();
-	  if (pathMapping.get(termsFile) == null ) {
-
-	      throw new RuntimeException(s);
-	  }
-
-          dictionary = new DefaultFrequencySortedDictionary(pathMapping.get(termsFile),
-              pathMapping.get(termidsFile), pathMapping.get(idToTermFile), FileSystem.getLocal(conf));
-        }
+        dictionary = loadDictionary(context.getConfiguration());
       } catch (Exception e) {
         e.printStackTrace();
         throw new RuntimeException("Error initializing data!", e);
@@ -132,6 +157,86 @@ public class BuildIntDocVectors extends PowerTool {
     }
   }
 
+  // Tokenizes documents straight into termids, skipping the term doc vectors.
+  private static class CollectionMapper
+      extends Mapper<Writable, Indexable, IntWritable, IntDocVector> {
+    private static final IntWritable key = new IntWritable();
+    private static final LazyIntDocVector docVector = new LazyIntDocVector();
+
+    private IntDocVectorBuilder builder;
+    private Tokenizer tokenizer;
+    private DocnoMapping docMapping;
+
+    @Override
+    public void setup(Mapper<Writable, Indexable, IntWritable, IntDocVector>.Context context)
+        throws IOException {
+      Configuration conf = context.getConfiguration();
+
+      try {
+        builder = new IntDocVectorBuilder(loadDictionary(conf));
+      } catch (Exception e) {
+        e.printStackTrace();
+        throw new RuntimeException("Error initializing data!", e);
+      }
+
+      try {
+        docMapping =
+          (DocnoMapping) Class.forName(conf.get(Constants.DocnoMappingClass)).newInstance();
+
+        String mappingFile = new Path(conf.get(Constants.DocnoMappingFile)).getName();
+        boolean loaded = false;
+        URI[] cacheFiles = context.getCacheFiles();
+        if (cacheFiles != null) {
+          for (URI uri : cacheFiles) {
+            if (new Path(uri.toString()).getName().equals(mappingFile)) {
+              docMapping.loadMapping(new Path(uri.toString()), FileSystem.get(uri, conf));
+              loaded = true;
+              break;
+            }
+          }
+        }
+        if (!loaded) {
+          throw new IOException("Docno mapping " + mappingFile + " not found in DistributedCache!");
+        }
+      } catch (Exception e) {
+        throw new RuntimeException("Error initializing docno mapping!", e);
+      }
+
+      // Initialize the tokenizer.
+      try {
+        tokenizer = (Tokenizer) Class.forName(conf.get(Constants.Tokenizer)).newInstance();
+        tokenizer.configure(conf, FileSystem.get(conf));
+      } catch (Exception e) {
+        e.printStackTrace();
+        throw new RuntimeException("Error initializing tokenizer: " + e.getMessage());
+      }
+    }
+
+    @Override
+    public void map(Writable in, Indexable doc, Context context)
+        throws IOException, InterruptedException {
+      int docno = docMapping.getDocno(doc.getDocid());
+
+      // Skip invalid docnos.
+      if (docno <= 0) {
+        context.getCounter(Docs.Skipped).increment(1);
+        return;
+      }
+
+      long startTime = System.currentTimeMillis();
+      DocumentProcessingUtils.integerizeDocument(doc, tokenizer, builder, docVector);
+      context.getCounter(MapTime.DecodingAndIdMapping)
+          .increment(System.currentTimeMillis() - startTime);
+
+      startTime = System.currentTimeMillis();
+      key.set(docno);
+      context.write(key, docVector);
+      context.getCounter(MapTime.EncodingAndSpilling)
+          .increment(System.currentTimeMillis() - startTime);
+      context.getCounter(Docs.Total).increment(1);
+    }
+  }
+
   public static final String[] RequiredParameters = { Constants.IndexPath };
 
   public String[] getRequiredParameters() {
@@ -142,6 +247,7 @@ public class BuildIntDocVectors extends PowerTool {
     super(conf);
   }
 
+  @SuppressWarnings({ "unchecked", "rawtypes" })
   public int runTool() throws Exception {
     Configuration conf = getConf();
     FileSystem fs = FileSystem.get(conf);
@@ -154,6 +260,11 @@ public class BuildIntDocVectors extends PowerTool {
     LOG.info(String.format(" - %s: %s", Constants.CollectionName, collectionName));
     LOG.info(String.format(" - %s: %s", Constants.IndexPath, indexPath));
 
+    // Tokenize the collection directly if asked to, or if there are no term doc vectors to read.
+    boolean fromCollection = conf.getBoolean(Constants.IntDocVectorsFromCollection, false)
+        || !fs.exists(new Path(env.getTermDocVectorsDirectory()));
+    LOG.info(String.format(" - %s: %s", Constants.IntDocVectorsFromCollection, fromCollection));
+
     String termsFile = env.getIndexTermsData();
     String termIDsFile = env.getIndexTermIdsData();
     String idToTermFile = env.getIndexTermIdMappingData();
@@ -176,6 +287,34 @@ public class BuildIntDocVectors extends PowerTool {
     DistributedCache.addCacheFile(new URI(termIDsFile), conf);
     DistributedCache.addCacheFile(new URI(idToTermFile), conf);
 
+    String collectionPath = null;
+    String inputFormat = null;
+    if (fromCollection) {
+      // Use the same settings that the term doc vectors would have been built with.
+      collectionPath = conf.get(Constants.CollectionPath);
+      if (collectionPath == null) {
+        collectionPath = env.readCollectionPath();
+      }
+      inputFormat = conf.get(Constants.InputFormat);
+      if (inputFormat == null) {
+        inputFormat = env.readInputFormat();
+      }
+      if (conf.get(Constants.Tokenizer) == null) {
+        conf.set(Constants.Tokenizer, env.readTokenizerClass());
+      }
+      if (conf.get(Constants.DocnoMappingClass) == null) {
+        conf.set(Constants.DocnoMappingClass, env.readDocnoMappingClass());
+      }
+      conf.set(Constants.DocnoMappingFile, env.getDocnoMappingData().toString());
+      DistributedCache.addCacheFile(env.getDocnoMappingData().toUri(), conf);
+
+      LOG.info(String.format(" - %s: %s", Constants.CollectionPath, collectionPath));
+      LOG.info(String.format(" - %s: %s", Constants.InputFormat, inputFormat));
+      LOG.info(String.format(" - %s: %s", Constants.Tokenizer, conf.get(Constants.Tokenizer)));
+      LOG.info(String.format(" - %s: %s", Constants.DocnoMappingClass,
+          conf.get(Constants.DocnoMappingClass)));
+    }
+
     //conf.set("mapred.child.java.opts", "-Xmx2048m");
     conf.set("mapreduce.map.memory.mb", "2048");
     conf.set("mapreduce.map.java.opts", "-Xmx2048m");
@@ -188,10 +327,17 @@ public class BuildIntDocVectors extends PowerTool {
 
     job.setNumReduceTasks(0);
 
-    job.setInputFormatClass(SequenceFileInputFormat.class);
+    if (fromCollection) {
+      job.setInputFormatClass((Class<? extends InputFormat>) Class.forName(inputFormat));
+      FileInputFormat.addInputPaths(job, collectionPath);
+      job.setMapperClass(CollectionMapper.class);
+    } else {
+      job.setInputFormatClass(SequenceFileInputFormat.class);
+      FileInputFormat.setInputPaths(job, env.getTermDocVectorsDirectory());
+      job.setMapperClass(MyMapper.class);
+    }
     job.setOutputFormatClass(SequenceFileOutputFormat.class);
 
-    FileInputFormat.setInputPaths(job, env.getTermDocVectorsDirectory());
     FileOutputFormat.setOutputPath(job, outputPath);
     SequenceFileOutputFormat.setOutputCompressionType(job, SequenceFile.CompressionType.RECORD);
 
@@ -200,8 +346,6 @@ public class BuildIntDocVectors extends PowerTool {
     job.setOutputKeyClass(IntWritable.class);
     job.setOutputValueClass(LazyIntDocVector.class);
 
-    job.setMapperClass(MyMapper.class);
-
     long startTime = System.currentTimeMillis();
     job.waitForCompletion(true);
     LOG.info("Job Finished in " + (System.currentTimeMillis() - startTime) / 1000.0 + " seconds");
@@ -274,14 +274,21 @@ public class BuildTermDocVectors extends PowerTool {
         // Write out length of each document (docnos are sequentially
         // ordered, so no need to explicitly keep track).
         int n = 0;
+        long sum = 0;
         for (int i = 1; i <= maxDocno - docnoOffset; i++) {
           out.writeInt(doclengths[i]);
           n++;
+          sum += doclengths[i];
           context.getCounter(DocLengths.Count).increment(1);
           context.getCounter(DocLengths.SumOfDocLengths).increment(doclengths[i]);
         }
         LOG.info(n + " doc lengths written");
 
+        // Write out the sum of the doc lengths, so that DocLengthTableMapped doesn't have to
+        // compute the average doc length by reading through all of them. Readers that load the
+        // whole table ignore it.
+        out.writeLong(sum);
+
         out.close();
       } catch (IOException e) {
         throw new RuntimeException(e);
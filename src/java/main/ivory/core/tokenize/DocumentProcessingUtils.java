@@ -17,6 +17,7 @@
 package ivory.core.tokenize;
 
 import ivory.core.data.dictionary.Dictionary;
+import ivory.core.data.document.LazyIntDocVector;
 import ivory.core.data.document.TermDocVector;
 
 import java.io.IOException;
@@ -64,32 +65,51 @@ public class DocumentProcessingUtils {
     return positions;
   }
 
-  public static Map<String, ArrayListOfInts> parseDocument(Indexable doc, Tokenizer tokenizer) {
-    Map<String, ArrayListOfInts> positions = Maps.newHashMap();
+  /**
+   * Tokenizes a document straight into termids, and sets its term positions on an int doc vector.
+   * This yields the same doc vector as {@link #parseDocument(Indexable, Tokenizer)} followed by
+   * {@link #integerizeTermDocVector(TermDocVector, Dictionary)}, without materializing the term
+   * doc vector in between.
+   *
+   * @param doc document to parse
+   * @param tokenizer tokenizer
+   * @param builder builder, holding the dictionary that maps terms to termids
+   * @param docVector doc vector to set
+   * @return number of terms in the doc vector
+   */
+  public static int integerizeDocument(Indexable doc, Tokenizer tokenizer,
+      IntDocVectorBuilder builder, LazyIntDocVector docVector) {
+    builder.reset();
+    tokenizer.processContent(doc.getContent(), builder);
+    return builder.build(doc.getDocid(), docVector);
+  }
 
-    String text = doc.getContent();
-    String[] terms = tokenizer.processContent(text);
+  public static Map<String, ArrayListOfInts> parseDocument(Indexable doc, Tokenizer tokenizer) {
+    final Map<String, ArrayListOfInts> positions = Maps.newHashMap();
 
     // The tokenizer may return terms with zero length (empty terms), and the tf may exceed the
     // capacity of a short (in which case we need to handle separately).
 
-    for (int i = 0; i < terms.length; i++) {
-      String term = terms[i];
-      
-      // Guard against bad tokenization
-      if (term.length() == 0 || term.length() >= Byte.MAX_VALUE) {
-        continue;
-      }
-
+    tokenizer.processContent(doc.getContent(), new TokenSink() {
       // Remember, token position is numbered started from one...
-      if (positions.containsKey(term)) {
-        positions.get(term).add(i + 1);
-      } else {
-        ArrayListOfInts l = new ArrayListOfInts();
-        l.add(i + 1);
-        positions.put(term, l);
+      private int position = 0;
+
+      public void add(String term) {
+        position++;
+
+        // Guard against bad tokenization
+        if (term.length() == 0 || term.length() >= Byte.MAX_VALUE) {
+          return;
+        }
+
+        ArrayListOfInts l = positions.get(term);
+        if (l == null) {
+          l = new ArrayListOfInts();
+          positions.put(term, l);
+        }
+        l.add(position);
       }
-    }
+    });
 
     int doclength = 0;
     Iterator<Map.Entry<String, ArrayListOfInts>> it = positions.entrySet().iterator();
@@ -16,17 +16,13 @@
 
 package ivory.core.tokenize;
 
-import java.io.IOException;
-import java.util.List;
-import java.util.Map;
 import java.util.Set;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileSystem;
 import org.galagosearch.core.parse.Document;
 import org.galagosearch.core.parse.TagTokenizer;
+import org.galagosearch.core.parse.Utility;
 import org.tartarus.snowball.ext.englishStemmer;
-import com.google.common.collect.Lists;
-import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 
 public class GalagoTokenizer extends Tokenizer {
@@ -767,9 +763,13 @@ public class GalagoTokenizer extends Tokenizer {
  };
 
   private final englishStemmer stemmer = new englishStemmer();
-  private final Map<String, String> cache = Maps.newHashMap();
+  private final StemCache cache = new StemCache();
   private final Set<String> stopwords = Sets.newHashSet(TERRIER_STOP_WORDS);
 
+  // Reused across calls: Galago's tokenizer resets itself for every document.
+  private final StreamingTagTokenizer tokenizer = new StreamingTagTokenizer();
+  private final Document doc = new Document();
+
   @Override
   public boolean isStopWord(String word) {
     return stopwords.contains(word);
@@ -786,50 +786,53 @@ public class GalagoTokenizer extends Tokenizer {
   }
   
   public String[] processContent(String text) {
-    TagTokenizer tokenizer = new TagTokenizer();
-    Document doc = null;
+    return collectTokens(text);
+  }
 
+  @Override
+  public void processContent(String text, TokenSink sink) {
+    tokenizer.sink = sink;
+    doc.text = text;
     try {
-      doc = tokenizer.tokenize(text);
-    } catch (IOException e) {
-      e.printStackTrace();
-      return null;
+      tokenizer.tokenize(doc);
+    } finally {
+      tokenizer.sink = null;
+      doc.text = null;
     }
+  }
 
-    List<String> toks = doc.terms;
-    List<String> words = Lists.newArrayList();
-
-    for (String tok : toks) {
-      if (!stopwords.contains(tok)) {
-        words.add(tok);
-      }
+  private String stemWord(String word) {
+    String stem = cache.get(word);
+    if (stem == null) {
+      stemmer.setCurrent(word);
+      stem = stemmer.stem() ? stemmer.getCurrent() : word;
+      cache.put(word, stem);
     }
+    return stem;
+  }
 
-    for (int i = 0; i < words.size(); i++) {
-      String word = words.get(i);
-
-      if (word != null) {
-        if (cache.containsKey(word)) {
-          words.set(i, cache.get(word));
-        } else {
-          stemmer.setCurrent(word);
-          if (stemmer.stem()) {
-            String stem = stemmer.getCurrent();
-            words.set(i, stem);
-            cache.put(word, stem);
-          } else {
-            cache.put(word, word);
-          }
-        }
+  /**
+   * Passes tokens on to the sink as Galago finds them (dropping stopwords and stemming the rest),
+   * rather than collecting them into the document.
+   */
+  private class StreamingTagTokenizer extends TagTokenizer {
+    private TokenSink sink;
 
-        if (cache.size() > 50000) {
-          cache.clear();
-        }
+    @Override
+    protected void addToken(final String token, int start, int end) {
+      final int maxTokenLength = 100;
+      // Same checks as TagTokenizer: no zero length or overly long tokens.
+      if (token.length() <= 0) {
+        return;
+      }
+      if (token.length() > maxTokenLength / 6 &&
+          Utility.makeBytes(token).length >= maxTokenLength) {
+        return;
+      }
+      if (!stopwords.contains(token)) {
+        sink.add(stemWord(token));
       }
     }
-
-    String[] arr = new String[words.size()];
-    return (String[]) words.toArray(arr);
   }
 
   @Override
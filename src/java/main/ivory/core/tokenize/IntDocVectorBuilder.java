@@ -0,0 +1,138 @@
+/*
+ * Ivory: A Hadoop toolkit for web-scale information retrieval
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package ivory.core.tokenize;
+
+import ivory.core.data.dictionary.Dictionary;
+import ivory.core.data.document.LazyIntDocVector;
+
+import java.util.Arrays;
+
+import org.apache.log4j.Logger;
+
+import tl.lin.data.array.ArrayListOfInts;
+import tl.lin.data.map.HMapII;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Collects the term positions of a document by termid as it is being tokenized, so that its
+ * {@link LazyIntDocVector} can be encoded directly, without building a term doc vector first. Terms
+ * that are not in the dictionary are dropped, but still count towards positions. Position lists
+ * are reused from one document to the next.
+ *
+ * @see DocumentProcessingUtils#integerizeDocument(edu.umd.cloud9.collection.Indexable, Tokenizer,
+ *      IntDocVectorBuilder, LazyIntDocVector)
+ */
+public class IntDocVectorBuilder implements TokenSink {
+  private static final Logger LOG = Logger.getLogger(IntDocVectorBuilder.class);
+
+  private final Dictionary dictionary;
+
+  // Maps termids to slots; each slot holds a termid and its positions.
+  private final HMapII slots = new HMapII();
+  private int[] slotTerms = new int[256];
+  private ArrayListOfInts[] slotPositions = new ArrayListOfInts[256];
+  private int numSlots = 0;
+
+  // Termids in increasing order, and their positions.
+  private int[] terms = new int[256];
+  private ArrayListOfInts[] positions = new ArrayListOfInts[256];
+
+  // Remember, token position is numbered started from one...
+  private int position = 0;
+
+  public IntDocVectorBuilder(Dictionary dictionary) {
+    this.dictionary = Preconditions.checkNotNull(dictionary);
+  }
+
+  /**
+   * Clears all terms, to start a new document.
+   */
+  public void reset() {
+    for (int i = 0; i < numSlots; i++) {
+      slotPositions[i].clear();
+    }
+    slots.clear();
+    numSlots = 0;
+    position = 0;
+  }
+
+  @Override
+  public void add(String term) {
+    position++;
+
+    // Guard against bad tokenization
+    if (term.length() == 0 || term.length() >= Byte.MAX_VALUE) {
+      return;
+    }
+
+    int termid = dictionary.getId(term);
+    if (termid <= 0) {
+      return;
+    }
+
+    int slot;
+    if (slots.containsKey(termid)) {
+      slot = slots.get(termid);
+    } else {
+      slot = numSlots++;
+      if (slot == slotTerms.length) {
+        slotTerms = Arrays.copyOf(slotTerms, 2 * slot);
+        slotPositions = Arrays.copyOf(slotPositions, 2 * slot);
+      }
+      if (slotPositions[slot] == null) {
+        slotPositions[slot] = new ArrayListOfInts();
+      }
+      slotTerms[slot] = termid;
+      slots.put(termid, slot);
+    }
+    slotPositions[slot].add(position);
+  }
+
+  /**
+   * Sets the terms added since the last {@link #reset()} on a doc vector. Terms whose tf would
+   * overflow a short are dropped.
+   *
+   * @param docid document id, for logging
+   * @param docVector doc vector to set
+   * @return number of terms
+   */
+  public int build(String docid, LazyIntDocVector docVector) {
+    if (terms.length < numSlots) {
+      terms = new int[slotTerms.length];
+      positions = new ArrayListOfInts[slotTerms.length];
+    }
+
+    int n = 0;
+    for (int i = 0; i < numSlots; i++) {
+      // We're storing tfs as shorts, so check for overflow...
+      if (slotPositions[i].size() >= DocumentProcessingUtils.TF_CUT) {
+        LOG.warn("Error: tf of " + slotPositions[i].size()
+            + " will overflow max short value. docno=" + docid + ", termid=" + slotTerms[i]);
+      } else {
+        terms[n++] = slotTerms[i];
+      }
+    }
+    Arrays.sort(terms, 0, n);
+    for (int i = 0; i < n; i++) {
+      positions[i] = slotPositions[slots.get(terms[i])];
+    }
+
+    docVector.setTermPositions(terms, positions, n);
+    return n;
+  }
+}
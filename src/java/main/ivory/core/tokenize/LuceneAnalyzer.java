@@ -1,6 +1,7 @@
 package ivory.core.tokenize;
 
 import ivory.core.Constants;
+import java.io.IOException;
 import java.io.StringReader;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileSystem;
@@ -24,7 +25,9 @@ public class LuceneAnalyzer extends ivory.core.tokenize.Tokenizer {
     LOG.setLevel(Level.WARN);
   }
   private Tokenizer tokenizer;
+  private TokenStream tokenStream;
   private Stemmer stemmer;
+  private final StemCache stemCache = new StemCache();
   private int lang;
   private static final int SPANISH = 0, TURKISH = 1, CZECH = 2;
   private static final String[] classes = {
@@ -94,35 +97,76 @@ public class LuceneAnalyzer extends ivory.core.tokenize.Tokenizer {
     } 
   }
   
+  /**
+   * Runs text through the Lucene analysis chain, which is created once and reset for each text.
+   */
+  private String tokenize(String text) {
+    if (tokenStream == null) {
+      tokenizer = new StandardTokenizer(Version.LUCENE_35, new StringReader(text));
+      tokenStream = new StandardFilter(Version.LUCENE_35, tokenizer);
+      tokenStream = new LowerCaseFilter(Version.LUCENE_35, tokenStream);
+    } else {
+      try {
+        tokenizer.reset(new StringReader(text));
+        tokenStream.reset();
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }
+    return postNormalize(streamToString(tokenStream));
+  }
+
+  @Override
+  public String[] processContent(String text) {
+    String[] tokens = collectTokens(text);
+    // An empty text is a single empty token.
+    return tokens.length == 0 ? new String[] { "" } : tokens;
+  }
+
   @Override
-  public String[] processContent(String text) {  
-    tokenizer = new StandardTokenizer(Version.LUCENE_35, new StringReader(text));
-    TokenStream tokenStream = new StandardFilter(Version.LUCENE_35, tokenizer);
-    tokenStream = new LowerCaseFilter(Version.LUCENE_35, tokenStream);
-    String tokenized = postNormalize(streamToString(tokenStream));
+  public void processContent(String text, TokenSink sink) {
+    String tokenized = tokenize(text);
+
+    // Walk the space-separated tokens in place. Empty tokens (between consecutive spaces) are only
+    // passed on between two non-empty ones, since leading and trailing ones used to be trimmed.
+    boolean started = false;
+    int pendingEmpty = 0;
+    int start = 0;
+    while (start <= tokenized.length()) {
+      int end = tokenized.indexOf(' ', start);
+      if (end < 0) {
+        end = tokenized.length();
+      }
+      String token = tokenized.substring(start, end);
+      start = end + 1;
 
-    StringBuilder finalTokenized = new StringBuilder();
-    for (String token : tokenized.split(" ")) {
       if ( isStopwordRemoval() && isDiscard(false, token) ) {
         continue;
       }
       String stemmedToken = stem(token);
-      
+
       if ( vocab != null && vocab.get(stemmedToken) <= 0) {
         continue;
-      } 
-      finalTokenized.append(stemmedToken + " ");
+      }
+      if (stemmedToken.length() == 0) {
+        pendingEmpty++;
+        continue;
+      }
+      if (started) {
+        for (; pendingEmpty > 0; pendingEmpty--) {
+          sink.add("");
+        }
+      }
+      pendingEmpty = 0;
+      started = true;
+      sink.add(stemmedToken);
     }
-    return finalTokenized.toString().trim().split(" ");
   }
 
   @Override
   public Map<String, String> getStem2NonStemMapping(String text) {
     Map<String, String> stem2NonStemMapping = new HashMap<String, String>();
-    tokenizer = new StandardTokenizer(Version.LUCENE_35, new StringReader(text));
-    TokenStream tokenStream = new StandardFilter(Version.LUCENE_35, tokenizer);
-    tokenStream = new LowerCaseFilter(Version.LUCENE_35, tokenStream);
-    String tokenized = postNormalize(streamToString(tokenStream));
+    String tokenized = tokenize(text);
     
     StringBuilder finalTokenized = new StringBuilder();
     for (String token : tokenized.split(" ")) {
@@ -143,7 +187,12 @@ public class LuceneAnalyzer extends ivory.core.tokenize.Tokenizer {
   @Override
   public String stem(String token) {
     if ( stemmer != null ) {
-      return stemmer.toStem(token);
+      String stem = stemCache.get(token);
+      if (stem == null) {
+        stem = stemmer.toStem(token);
+        stemCache.put(token, stem);
+      }
+      return stem;
     }else {
       return token;
     }
@@ -152,10 +201,7 @@ public class LuceneAnalyzer extends ivory.core.tokenize.Tokenizer {
   @Override
   public float getOOVRate(String text, VocabularyWritable vocab) {
     int countOOV = 0, countAll = 0;
-    tokenizer = new StandardTokenizer(Version.LUCENE_35, new StringReader(text));
-    TokenStream tokenStream = new StandardFilter(Version.LUCENE_35, tokenizer);
-    tokenStream = new LowerCaseFilter(Version.LUCENE_35, tokenStream);
-    String tokenized = postNormalize(streamToString(tokenStream));
+    String tokenized = tokenize(text);
 
     for (String token : tokenized.split(" ")) {
       if ( isStopwordRemoval() && isDiscard(false, token) ) {
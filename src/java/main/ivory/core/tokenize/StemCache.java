@@ -0,0 +1,54 @@
+/*
+ * Ivory: A Hadoop toolkit for web-scale information retrieval
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package ivory.core.tokenize;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded cache of stems, evicting the least recently used entry once full. Stemming dominates
+ * the cost of tokenization, and term frequencies are heavily skewed, so a cache of moderate size
+ * catches most tokens. Not thread-safe, like the stemmers it fronts.
+ */
+public class StemCache extends LinkedHashMap<String, String> {
+  private static final long serialVersionUID = 1L;
+
+  public static final int DEFAULT_CAPACITY = 50000;
+
+  private final int capacity;
+
+  public StemCache() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  /**
+   * @param capacity maximum number of stems to keep
+   */
+  public StemCache(int capacity) {
+    super(16, 0.75f, true);
+    this.capacity = capacity;
+  }
+
+  public int getCapacity() {
+    return capacity;
+  }
+
+  @Override
+  protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+    return size() > capacity;
+  }
+}
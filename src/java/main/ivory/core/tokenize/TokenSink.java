@@ -14,20 +14,18 @@
  * permissions and limitations under the License.
  */
 
-package ivory.cascade.retrieval;
-
-import ivory.smrf.retrieval.Accumulator;
+package ivory.core.tokenize;
 
 /**
- * @author Lidan Wang
+ * Receives the tokens of a text, in order, from
+ * {@link Tokenizer#processContent(String, TokenSink)}. A single sink can be reused across texts.
  */
-public class CascadeAccumulator extends Accumulator{ 
-  private static final long serialVersionUID = 4029090556043927100L;
-
-  // Index into the kept docs array that will be passed through the cascade.
-	public int index_into_keptDocs = -1;
-
-	public CascadeAccumulator(int docno, float score) {
-		super(docno, score);
-	}
+public interface TokenSink {
+  /**
+   * Called for each token. Tokenizers that cache stems pass the same {@code String} instance for
+   * repeated tokens, so sinks shouldn't rely on tokens being distinct objects.
+   *
+   * @param token token
+   */
+  public void add(String token);
 }
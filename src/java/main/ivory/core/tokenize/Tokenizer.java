@@ -23,7 +23,9 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.Map;
 import org.apache.commons.cli.CommandLine;
@@ -51,6 +53,35 @@ public abstract class Tokenizer {
   public abstract void configure(Configuration conf);
   public abstract void configure(Configuration conf, FileSystem fs);
   public abstract String[] processContent(String text);
+
+  /**
+   * Streams the tokens of text into a sink, in the order {@link #processContent(String)} returns
+   * them. Subclasses that can tokenize without materializing the array should override this (and
+   * implement {@link #processContent(String)} with {@link #collectTokens(String)}).
+   *
+   * @param text
+   *    text to be processed.
+   * @param sink
+   *    receives each token
+   */
+  public void processContent(String text, TokenSink sink) {
+    for (String token : processContent(text)) {
+      sink.add(token);
+    }
+  }
+
+  /**
+   * Collects the tokens streamed by {@link #processContent(String, TokenSink)} into an array.
+   */
+  protected String[] collectTokens(String text) {
+    final List<String> tokens = new ArrayList<String>();
+    processContent(text, new TokenSink() {
+      public void add(String token) {
+        tokens.add(token);
+      }
+    });
+    return tokens.toArray(new String[tokens.size()]);
+  }
   
   /*
    A method to create a mapping from stemmed version of each token to non-stemmed version. Useful in IR tasks where we want to recover non-stemmed version.
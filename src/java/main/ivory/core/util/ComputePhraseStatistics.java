@@ -0,0 +1,169 @@
+/*
+ * Ivory: A Hadoop toolkit for web-scale information retrieval
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package ivory.core.util;
+
+import ivory.core.RetrievalEnvironment;
+import ivory.core.data.index.Posting;
+import ivory.core.data.index.PostingsReader;
+import ivory.core.data.stat.PhraseStatisticsTable;
+import ivory.smrf.model.builder.Expression;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.log4j.Logger;
+import org.w3c.dom.Document;
+import org.w3c.dom.NodeList;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Computes the document and collection frequencies of the ordered and unordered windows over pairs
+ * of adjacent terms in a query log, by reading their postings, and writes them out where
+ * {@link RetrievalEnvironment} picks them up (see
+ * {@link RetrievalEnvironment#getPhraseStatisticsData()}). Proximity expressions that have
+ * precomputed statistics are then scored with those rather than with the default df and cf.
+ *
+ * The query log is either a file of queries in the XML format read by
+ * {@link ivory.smrf.retrieval.BatchQueryRunner}, if its name ends with <code>.xml</code>, or a
+ * text file with one query per line, optionally preceded by a query id and a tab. Window sizes are
+ * the sizes in the expressions, e.g., an {@code UnorderedWindowExpressionGenerator} of width 4
+ * generates <code>#uw8</code> over two terms.
+ */
+public class ComputePhraseStatistics {
+  private static final Logger LOG = Logger.getLogger(ComputePhraseStatistics.class);
+
+  public static void main(String[] args) throws Exception {
+    if (args.length != 5) {
+      System.out.println("usage: [index-path] [query-log] [od-windows] [uw-windows] [min-count]");
+      System.out.println("  windows are comma-separated lists of sizes, or - for none; pairs of terms");
+      System.out.println("  occurring fewer than min-count times in the log are skipped");
+      System.exit(-1);
+    }
+
+    String indexPath = args[0];
+    String queryLog = args[1];
+    int[] odWindows = parseWindows(args[2]);
+    int[] uwWindows = parseWindows(args[3]);
+    int minCount = Integer.parseInt(args[4]);
+
+    Configuration conf = new Configuration();
+    FileSystem fs = FileSystem.get(conf);
+
+    RetrievalEnvironment env = new RetrievalEnvironment(indexPath, fs);
+    env.initialize(false);
+
+    // Count the pairs of adjacent terms in the queries.
+    Map<String, Integer> pairs = Maps.newTreeMap();
+    int numQueries = 0;
+    for (String query : readQueries(queryLog, fs)) {
+      numQueries++;
+      String[] terms = env.tokenize(query);
+      for (int i = 0; i + 1 < terms.length; i++) {
+        if (env.getIdFromTerm(terms[i]) <= 0 || env.getIdFromTerm(terms[i + 1]) <= 0) {
+          continue;
+        }
+        String pair = terms[i] + " " + terms[i + 1];
+        Integer count = pairs.get(pair);
+        pairs.put(pair, count == null ? 1 : count + 1);
+      }
+    }
+    LOG.info(numQueries + " queries, " + pairs.size() + " distinct pairs of terms");
+
+    long startTime = System.currentTimeMillis();
+    PhraseStatisticsTable.Writer writer = new PhraseStatisticsTable.Writer();
+    for (Map.Entry<String, Integer> pair : pairs.entrySet()) {
+      if (pair.getValue() < minCount) {
+        continue;
+      }
+
+      String[] terms = pair.getKey().split(" ");
+      int termid1 = env.getIdFromTerm(terms[0]);
+      int termid2 = env.getIdFromTerm(terms[1]);
+      for (int window : odWindows) {
+        long[] stats = computeStatistics(env, new Expression(Expression.Type.OD, window, terms));
+        writer.add(true, window, termid1, termid2, (int) stats[0], stats[1]);
+      }
+      for (int window : uwWindows) {
+        long[] stats = computeStatistics(env, new Expression(Expression.Type.UW, window, terms));
+        writer.add(false, window, termid1, termid2, (int) stats[0], stats[1]);
+      }
+    }
+
+    writer.write(new Path(env.getPhraseStatisticsData()), fs);
+    LOG.info(writer.size() + " phrases written to " + env.getPhraseStatisticsData() + " in "
+        + (System.currentTimeMillis() - startTime) / 1000.0 + " seconds");
+  }
+
+  // Returns the df and cf of an expression, counting the documents with at least one match.
+  private static long[] computeStatistics(RetrievalEnvironment env, Expression exp) {
+    long[] stats = new long[2];
+    PostingsReader reader = env.getPostingsReader(exp);
+    if (reader == null) {
+      return stats;
+    }
+
+    Posting posting = new Posting();
+    while (reader.nextPosting(posting)) {
+      if (posting.getTf() > 0) {
+        stats[0]++;
+        stats[1] += posting.getTf();
+      }
+    }
+    return stats;
+  }
+
+  private static int[] parseWindows(String s) {
+    if (s.equals("-")) {
+      return new int[0];
+    }
+    String[] arr = s.split(",");
+    int[] windows = new int[arr.length];
+    for (int i = 0; i < arr.length; i++) {
+      windows[i] = Integer.parseInt(arr[i].trim());
+    }
+    return windows;
+  }
+
+  private static List<String> readQueries(String file, FileSystem fs) throws Exception {
+    List<String> queries = Lists.newArrayList();
+    if (file.endsWith(".xml")) {
+      Document d = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(
+          fs.open(new Path(file)));
+      NodeList queryNodes = d.getElementsByTagName("query");
+      for (int i = 0; i < queryNodes.getLength(); i++) {
+        queries.add(queryNodes.item(i).getTextContent());
+      }
+    } else {
+      BufferedReader in = new BufferedReader(new InputStreamReader(fs.open(new Path(file)), "UTF-8"));
+      String line;
+      while ((line = in.readLine()) != null) {
+        queries.add(line.substring(line.indexOf('\t') + 1));
+      }
+      in.close();
+    }
+    return queries;
+  }
+}
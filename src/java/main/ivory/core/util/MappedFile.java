@@ -0,0 +1,128 @@
+/*
+ * Ivory: A Hadoop toolkit for web-scale information retrieval
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package ivory.core.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Read-only memory map of a local file, for data that is looked up in place instead of being
+ * loaded onto the heap. Mapping takes constant time regardless of the size of the file, and since
+ * pages live in the operating system's page cache, processes on the same host that map the same
+ * file share a single copy. Values are big-endian, as written by {@link java.io.DataOutput}.
+ * Reads don't change any state, so a {@code MappedFile} can be shared between threads.
+ *
+ * <p>
+ * A single {@link MappedByteBuffer} can't hold more than 2GB, so the file is mapped in segments of
+ * 1GB. Consecutive segments overlap by a few bytes so that any primitive value lies entirely
+ * within one of them.
+ * </p>
+ */
+public class MappedFile {
+  private static final int SEGMENT_BITS = 30;
+  private static final long SEGMENT_SIZE = 1L << SEGMENT_BITS;
+  private static final long SEGMENT_MASK = SEGMENT_SIZE - 1;
+  private static final int OVERLAP = 8;
+
+  private final long length;
+  private final MappedByteBuffer[] segments;
+
+  /**
+   * Maps a file.
+   *
+   * @param file file to map
+   * @throws IOException
+   */
+  public MappedFile(File file) throws IOException {
+    RandomAccessFile raf = new RandomAccessFile(file, "r");
+    try {
+      FileChannel channel = raf.getChannel();
+      length = channel.size();
+
+      segments = new MappedByteBuffer[(int) ((length + SEGMENT_SIZE - 1) >>> SEGMENT_BITS)];
+      for (int i = 0; i < segments.length; i++) {
+        long start = (long) i << SEGMENT_BITS;
+        segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start,
+            Math.min(length - start, SEGMENT_SIZE + OVERLAP));
+      }
+    } finally {
+      // The mapping stays valid after the file is closed.
+      raf.close();
+    }
+  }
+
+  /**
+   * Returns {@code true} if files on a {@code FileSystem} can be mapped, i.e., if it is the local
+   * file system.
+   *
+   * @param fs file system
+   * @return {@code true} if files on {@code fs} can be mapped
+   */
+  public static boolean canMap(FileSystem fs) {
+    return "file".equals(fs.getUri().getScheme());
+  }
+
+  /**
+   * Maps a file on the local file system.
+   *
+   * @param path path of the file
+   * @param fs file system, which must be the local file system
+   * @return mapped file
+   * @throws IOException
+   */
+  public static MappedFile map(Path path, FileSystem fs) throws IOException {
+    Preconditions.checkArgument(canMap(fs), "Can't map files on " + fs.getUri() + ": " + path);
+    return new MappedFile(new File(fs.makeQualified(path).toUri().getPath()));
+  }
+
+  /**
+   * Returns the length of the file in bytes.
+   *
+   * @return length of the file in bytes
+   */
+  public long length() {
+    return length;
+  }
+
+  public byte get(long pos) {
+    return segments[(int) (pos >>> SEGMENT_BITS)].get((int) (pos & SEGMENT_MASK));
+  }
+
+  public short getShort(long pos) {
+    return segments[(int) (pos >>> SEGMENT_BITS)].getShort((int) (pos & SEGMENT_MASK));
+  }
+
+  public int getInt(long pos) {
+    return segments[(int) (pos >>> SEGMENT_BITS)].getInt((int) (pos & SEGMENT_MASK));
+  }
+
+  public long getLong(long pos) {
+    return segments[(int) (pos >>> SEGMENT_BITS)].getLong((int) (pos & SEGMENT_MASK));
+  }
+
+  public float getFloat(long pos) {
+    return segments[(int) (pos >>> SEGMENT_BITS)].getFloat((int) (pos & SEGMENT_MASK));
+  }
+}
@@ -0,0 +1,99 @@
+package ivory.ffg.data;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+import tl.lin.data.map.HMapIL;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Random access to a file of document vectors, as written by
+ * {@link ivory.ffg.preprocessing.GenerateDocumentVectors}. The file is
+ * scanned once to record the offset of every document, and vectors are
+ * then read from disk on demand, so that only the offsets are held in
+ * memory.
+ */
+public class DocumentVectorStore {
+  private final String documentVectorClass;
+  private final Path path;
+  private final FileSystem fs;
+  private final HMapIL offsets = new HMapIL();
+
+  /**
+   * @param documentVectorClass DocumentVector class
+   * @param documentsPath Path to the document vectors
+   * @param fs File system
+   */
+  public DocumentVectorStore(String documentVectorClass, String documentsPath, FileSystem fs)
+    throws Exception {
+    this.documentVectorClass = Preconditions.checkNotNull(documentVectorClass);
+    this.path = new Path(Preconditions.checkNotNull(documentsPath));
+    this.fs = Preconditions.checkNotNull(fs);
+
+    FSDataInputStream input = fs.open(path);
+    int docid = input.readInt();
+    while(docid != -1) {
+      offsets.put(docid, input.getPos());
+      // Skip over the vector.
+      DocumentVectorUtility.readInstance(documentVectorClass, input);
+      docid = input.readInt();
+    }
+    input.close();
+  }
+
+  /**
+   * @param docid Document id
+   * @return Whether or not the store holds a vector for this document
+   */
+  public boolean contains(int docid) {
+    return offsets.containsKey(docid);
+  }
+
+  /**
+   * @return Number of documents in the store
+   */
+  public int size() {
+    return offsets.size();
+  }
+
+  /**
+   * Opens a new reader. Readers are not thread-safe, but any number of
+   * them may be used concurrently.
+   *
+   * @return A reader over this store
+   */
+  public Reader getReader() throws IOException {
+    return new Reader(fs.open(path));
+  }
+
+  /**
+   * Reads document vectors from a store.
+   */
+  public class Reader implements Closeable {
+    private final FSDataInputStream input;
+
+    private Reader(FSDataInputStream input) {
+      this.input = input;
+    }
+
+    /**
+     * @param docid Document id
+     * @return The vector of the given document
+     */
+    public DocumentVector read(int docid) throws Exception {
+      Preconditions.checkArgument(offsets.containsKey(docid), "Document " + docid + " not found!");
+
+      input.seek(offsets.get(docid));
+      return DocumentVectorUtility.readInstance(documentVectorClass, input);
+    }
+
+    @Override public void close() throws IOException {
+      input.close();
+    }
+  }
+}
@@ -23,7 +23,12 @@ import ivory.core.data.index.TermPositions;
 public class DocumentVectorUtility {
   public static final int BLOCK_SIZE = 128;
   public static final int MAX_POSITIONS = 100;
-  private static final int[] TEMP_POSITIONS = new int[MAX_POSITIONS];
+  // Scratch space for getPositions(), one per thread.
+  private static final ThreadLocal<int[]> TEMP_POSITIONS = new ThreadLocal<int[]>() {
+    @Override protected int[] initialValue() {
+      return new int[MAX_POSITIONS];
+    }
+  };
 
   /**
    * Given a document vector and an array of query terms, this function
@@ -35,18 +40,19 @@ public class DocumentVectorUtility {
    */
   public static int[][] getPositions(int[] doc, int[] terms) {
     int[][] positions = new int[terms.length][];
+    int[] temp = TEMP_POSITIONS.get();
     int pindex = 0;
 
     for(int i = 0; i < terms.length; i++) {
       pindex = 0;
-      for(int j = 0; j < doc.length && pindex < TEMP_POSITIONS.length; j++) {
+      for(int j = 0; j < doc.length && pindex < temp.length; j++) {
         if(doc[j] == terms[i]) {
-          TEMP_POSITIONS[pindex++] = j + 1;
+          temp[pindex++] = j + 1;
         }
       }
       positions[i] = new int[pindex];
       for(int j = 0; j < positions[i].length; j++) {
-        positions[i][j] = TEMP_POSITIONS[j];
+        positions[i][j] = temp[j];
       }
     }
 
@@ -0,0 +1,278 @@
+package ivory.ffg.driver;
+
+import ivory.bloomir.util.OptionManager;
+import ivory.bloomir.util.QueryUtility;
+import ivory.core.RetrievalEnvironment;
+import ivory.ffg.data.DocumentVector;
+import ivory.ffg.data.DocumentVectorStore;
+import ivory.ffg.feature.Feature;
+import ivory.ffg.stats.GlobalStats;
+import ivory.ffg.util.FeatureUtility;
+import ivory.ffg.util.QrelUtility;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.log4j.Logger;
+
+import tl.lin.data.map.HMapIF;
+import tl.lin.data.map.HMapIV;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+
+/**
+ * Computes feature values for query/document pairs on a pool of threads.
+ * Document vectors are read from disk on demand, and feature values are
+ * written out as they are computed, in the same order and format as
+ * {@link DocumentVectorOnTheFlyIndexing}. Neither the document vectors nor
+ * the feature values of a whole run are ever held in memory.
+ */
+public class ParallelFeatureExtraction {
+  private static final Logger LOGGER = Logger.getLogger(ParallelFeatureExtraction.class);
+
+  // Number of documents scored by one task.
+  private static final int BATCH_SIZE = 64;
+  // Number of tasks in flight per thread, which bounds the output that is buffered.
+  private static final int TASKS_PER_THREAD = 4;
+
+  private final DocumentVectorStore documents;
+  private final Feature[] features;
+  private final int numThreads;
+  private final ExecutorService threadPool;
+  private GlobalStats stats;
+
+  // Per-thread document readers and scratch space.
+  private final List<DocumentVectorStore.Reader> readers =
+    Collections.synchronizedList(Lists.<DocumentVectorStore.Reader>newArrayList());
+  private final ThreadLocal<DocumentVectorStore.Reader> localReader =
+    new ThreadLocal<DocumentVectorStore.Reader>() {
+      @Override protected DocumentVectorStore.Reader initialValue() {
+        try {
+          DocumentVectorStore.Reader reader = documents.getReader();
+          readers.add(reader);
+          return reader;
+        } catch(IOException e) {
+          throw new RuntimeException(e);
+        }
+      }
+    };
+  private final ThreadLocal<float[]> localValues = new ThreadLocal<float[]>() {
+    @Override protected float[] initialValue() {
+      return new float[features.length];
+    }
+  };
+  private final ThreadLocal<StringBuilder> localBuffer = new ThreadLocal<StringBuilder>() {
+    @Override protected StringBuilder initialValue() {
+      return new StringBuilder();
+    }
+  };
+
+  /**
+   * @param documents Document vectors
+   * @param features Features to compute
+   * @param numThreads Number of threads
+   */
+  public ParallelFeatureExtraction(DocumentVectorStore documents, Feature[] features, int numThreads) {
+    Preconditions.checkArgument(numThreads > 0);
+
+    this.documents = Preconditions.checkNotNull(documents);
+    this.features = Preconditions.checkNotNull(features);
+    this.numThreads = numThreads;
+    this.threadPool = Executors.newFixedThreadPool(numThreads);
+  }
+
+  public void prepareStats(RetrievalEnvironment env, HMapIF idfs, HMapIF cfs) throws Exception {
+    stats = new GlobalStats(idfs, cfs,
+                            (int) env.getDocumentCount(), env.getCollectionSize(),
+                            (float) env.getCollectionSize() / (float) env.getDocumentCount(),
+                            (float) env.getDefaultDf(), (float) env.getDefaultCf());
+  }
+
+  /**
+   * Computes the features of every judged document of every query and
+   * writes one line per query/document pair to the output.
+   *
+   * @param queries Query terms
+   * @param qrels Documents to compute features for, per query
+   * @param output Output stream, or null to discard feature values
+   * @return Number of query/document pairs
+   */
+  public long extract(HMapIV<int[]> queries, HMapIV<int[]> qrels, OutputStream output)
+    throws Exception {
+    Preconditions.checkState(stats != null, "Global statistics not prepared!");
+
+    ArrayDeque<Future<String>> pending = new ArrayDeque<Future<String>>();
+    int maxPending = numThreads * TASKS_PER_THREAD;
+    long cnt = 0;
+
+    for(int qid: qrels.keySet()) {
+      int[] qterms = queries.get(qid);
+      if(qterms == null || qterms.length == 0) {
+        continue;
+      }
+
+      int[] docids = qrels.get(qid);
+      for(int start = 0; start < docids.length; start += BATCH_SIZE) {
+        int end = Math.min(start + BATCH_SIZE, docids.length);
+        pending.add(threadPool.submit(new Task(qid, qterms, docids, start, end)));
+        cnt += end - start;
+
+        while(pending.size() >= maxPending) {
+          write(pending.poll().get(), output);
+        }
+      }
+    }
+
+    while(!pending.isEmpty()) {
+      write(pending.poll().get(), output);
+    }
+    return cnt;
+  }
+
+  private static void write(String rows, OutputStream output) throws IOException {
+    if(output != null) {
+      output.write(rows.getBytes());
+    }
+  }
+
+  /**
+   * Stops the threads, abandoning any tasks left over from a failed
+   * extraction, and closes the document readers.
+   */
+  public void close() throws IOException {
+    threadPool.shutdownNow();
+    synchronized(readers) {
+      for(DocumentVectorStore.Reader reader: readers) {
+        reader.close();
+      }
+    }
+  }
+
+  // Computes the feature values of a range of documents for one query.
+  private class Task implements Callable<String> {
+    private final int qid;
+    private final int[] qterms;
+    private final int[] docids;
+    private final int start;
+    private final int end;
+
+    public Task(int qid, int[] qterms, int[] docids, int start, int end) {
+      this.qid = qid;
+      this.qterms = qterms;
+      this.docids = docids;
+      this.start = start;
+      this.end = end;
+    }
+
+    @Override public String call() throws Exception {
+      DocumentVectorStore.Reader reader = localReader.get();
+      float[] fvalues = localValues.get();
+      StringBuilder rows = localBuffer.get();
+      rows.setLength(0);
+
+      for(int d = start; d < end; d++) {
+        if(!documents.contains(docids[d])) {
+          LOGGER.warn("Document " + docids[d] + " of query " + qid + " not found, skipping.");
+          continue;
+        }
+
+        DocumentVector compDoc = reader.read(docids[d]);
+        int[][] positions = compDoc.decompressPositions(qterms);
+        int dl = compDoc.getDocumentLength();
+        for(int i = 0; i < features.length; i++) {
+          fvalues[i] = features[i].computeScoreWithMiniIndexes(positions, qterms, dl, stats);
+        }
+
+        rows.append(qid).append('\t').append(docids[d]).append('\t');
+        for(int i = 0; i < features.length; i++) {
+          rows.append(fvalues[i]).append(' ');
+        }
+        rows.append('\n');
+      }
+      return rows.toString();
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    OptionManager options = new OptionManager(ParallelFeatureExtraction.class.getName());
+    options.addOption(OptionManager.INDEX_ROOT_PATH, "path", "index root", true);
+    options.addOption(OptionManager.DOCUMENT_VECTOR_CLASS, "class_name", "DocumentVector class", true);
+    options.addOption(OptionManager.DOCUMENT_PATH, "path", "documents", true);
+    options.addOption(OptionManager.QUERY_PATH, "path", "XML query", true);
+    options.addOption(OptionManager.JUDGMENT_PATH, "path", "Tab-Delimited documents", true);
+    options.addOption(OptionManager.FEATURE_PATH, "path", "XML features", true);
+    options.addOption(OptionManager.OUTPUT_PATH, "path", "output path (Optional)", false);
+    options.addOption(OptionManager.THREADS, "integer", "number of threads (default: number of processors)", false);
+
+    try {
+      options.parse(args);
+    } catch(Exception exp) {
+      return;
+    }
+
+    String indexPath = options.getOptionValue(OptionManager.INDEX_ROOT_PATH);
+    String documentVectorClass = options.getOptionValue(OptionManager.DOCUMENT_VECTOR_CLASS);
+    String documentsPath = options.getOptionValue(OptionManager.DOCUMENT_PATH);
+    String queryPath = options.getOptionValue(OptionManager.QUERY_PATH);
+    String qrelPath = options.getOptionValue(OptionManager.JUDGMENT_PATH);
+    String featurePath = options.getOptionValue(OptionManager.FEATURE_PATH);
+    boolean writeOutput = options.foundOption(OptionManager.OUTPUT_PATH);
+    int numThreads = Runtime.getRuntime().availableProcessors();
+    if(options.foundOption(OptionManager.THREADS)) {
+      numThreads = Integer.parseInt(options.getOptionValue(OptionManager.THREADS));
+    }
+
+    FileSystem fs = FileSystem.get(new Configuration());
+    RetrievalEnvironment env = new RetrievalEnvironment(indexPath, fs);
+    env.initialize(true);
+
+    //Parse queries, judgemnts and features
+    HMapIV<String> parsedQueries = QueryUtility.loadQueries(queryPath);
+    HMapIV<int[]> queries = QueryUtility.queryToIntegerCode(env, parsedQueries);
+    HMapIF idfs = QueryUtility.loadIdf(env, parsedQueries);
+    HMapIF cfs = QueryUtility.loadCf(env, parsedQueries);
+    HMapIV<int[]> qrels = QrelUtility.parseQrelsFromTabDelimited(qrelPath);
+    Map<String, Feature> featuresMap = FeatureUtility.parseFeatures(featurePath);
+    Feature[] features = new Feature[featuresMap.size()];
+    int index = 0;
+    for(String key: featuresMap.keySet()) {
+      features[index++] = featuresMap.get(key);
+    }
+
+    DocumentVectorStore documents = new DocumentVectorStore(documentVectorClass, documentsPath, fs);
+    LOGGER.info("Indexed " + documents.size() + " document vectors.");
+
+    ParallelFeatureExtraction generator = new ParallelFeatureExtraction(documents, features, numThreads);
+    generator.prepareStats(env, idfs, cfs);
+
+    OutputStream output = null;
+    if(writeOutput) {
+      output = new BufferedOutputStream(fs.create(new Path(options.getOptionValue(OptionManager.OUTPUT_PATH))));
+    }
+
+    try {
+      long start = System.currentTimeMillis();
+      long cnt = generator.extract(queries, qrels, output);
+      long end = System.currentTimeMillis();
+      LOGGER.info("Computed features for " + cnt + " query/document pairs in " + (end - start) + "ms");
+    } finally {
+      generator.close();
+      if(writeOutput) {
+        output.close();
+      }
+    }
+  }
+}
@@ -0,0 +1,110 @@
+package ivory.lsh.data;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import tl.lin.data.array.ArrayListOfIntsWritable;
+
+/**
+ * A permutation of bit positions, precomputed as a list of word masks so that it can be applied to
+ * signatures a word at a time. All bits that move from the same source word to the same destination
+ * word by the same shift share a mask, and are moved by a single and/shift/or. Permutations that
+ * keep runs of bits together (e.g., {@link PermutationByBlock}) reduce to a handful of masks.
+ *
+ * Bits are numbered msb to lsb, as in {@link Bits}: bit j of the result is bit
+ * <code>permutation[j]</code> of the input.
+ */
+public class BitPermutation {
+  private ArrayListOfIntsWritable permutation;
+  private int numWords;
+  private int[] srcWords, dstWords, shifts;
+  private long[] masks;
+
+  public BitPermutation(ArrayListOfIntsWritable permutation) {
+    this.permutation = permutation;
+    int[] perms = permutation.getArray();
+    int length = permutation.size();
+    numWords = Bits.numWords(length);
+
+    // group bit moves by (source word, destination word, shift)
+    Map<Long, Integer> groups = new HashMap<Long, Integer>();
+    srcWords = new int[length];
+    dstWords = new int[length];
+    shifts = new int[length];
+    masks = new long[length];
+    int n = 0;
+    for(int j=0;j<length;j++){
+      int p = perms[j];
+      if(p<0 || p>=length){
+        throw new IllegalArgumentException("Invalid permutation: " + p + " at position " + j);
+      }
+      int src = p>>>6, dst = j>>>6, shift = (j&63) - (p&63);
+      Long key = ((long) src << 40) | ((long) dst << 8) | (shift + 64);
+      Integer g = groups.get(key);
+      if(g == null){
+        g = n++;
+        groups.put(key, g);
+        srcWords[g] = src;
+        dstWords[g] = dst;
+        shifts[g] = shift;
+      }
+      masks[g] |= 1L << (63-(p&63));
+    }
+
+    srcWords = trim(srcWords, n);
+    dstWords = trim(dstWords, n);
+    shifts = trim(shifts, n);
+    long[] m = new long[n];
+    System.arraycopy(masks, 0, m, 0, n);
+    masks = m;
+  }
+
+  private static int[] trim(int[] a, int n) {
+    int[] b = new int[n];
+    System.arraycopy(a, 0, b, 0, n);
+    return b;
+  }
+
+  /**
+   * @return
+   *   the permutation, as a list of positions
+   */
+  public ArrayListOfIntsWritable getPermutation() {
+    return permutation;
+  }
+
+  /**
+   * @return
+   *   number of masks applied per permutation
+   */
+  public int getNumMasks() {
+    return masks.length;
+  }
+
+  /**
+   * Permute the bits in <code>src</code> into <code>dst</code>.
+   */
+  public void apply(long[] src, long[] dst) {
+    for(int i=0;i<numWords;i++){
+      dst[i] = 0;
+    }
+    for(int g=0;g<masks.length;g++){
+      long v = src[srcWords[g]] & masks[g];
+      int shift = shifts[g];
+      dst[dstWords[g]] |= (shift >= 0) ? (v >>> shift) : (v << -shift);
+    }
+  }
+
+  /**
+   * Permute the bits of a 64-bit word.
+   */
+  public long apply(long src) {
+    long dst = 0;
+    for(int g=0;g<masks.length;g++){
+      long v = src & masks[g];
+      int shift = shifts[g];
+      dst |= (shift >= 0) ? (v >>> shift) : (v << -shift);
+    }
+    return dst;
+  }
+}
@@ -28,16 +28,21 @@ package ivory.lsh.data;
  */
 
 
+
+import java.util.Arrays;
+
 /**
 	Bits is a bit-packet abstraction, containing a number of bits
-	inside a byte array
+	inside a long array
  */
 public class Bits {
 
-  /** Bits are stored in a byte array, lsb to msb */
-  public byte[] bits;
+  /** Bits are stored in a long array, msb to lsb: bit p is bit (63-p%64) of word p/64 */
+  public long[] words;
   /** The actual number of bits in this packet */
   public int length;
+  /** Number of bytes in the serialized form of this packet */
+  private int numBytes;
 
   /** Reverse a string */
   public static String reverse(String s) {
@@ -50,17 +55,20 @@ public class Bits {
 
   /** Reverse bits in a packet */
   public static Bits reverse(Bits b) {
-    byte[] nb = new byte[b.length];
+    Bits nb = new Bits(0, b.length);
     for (int i=0; i<b.length; ++i)
-      if ( ( b.bits[i/8] & (1<<(i%8)) ) != 0 )
-        nb[ (b.length-1-i)/8 ] |= 1<<( (b.length-1-i)%8 );
-    return new Bits(nb, b.length);
+      if (b.getBit(lsb(i)) != 0)
+        nb.setBit(lsb(b.length-1-i), 1);
+    return nb;
   }
 
-  /** Create new Bits object from existing bytes and length (number of bits) */
+  /** Create new Bits object from existing bytes (msb to lsb) and length (number of bits) */
   public Bits(byte[] b, int l) {
-    bits = b;
     length = l;
+    numBytes = b.length;
+    words = new long[Math.max(numWords(l), (b.length + 7) >>> 3)];
+    for (int i=0; i<b.length; ++i)
+      words[i>>>3] |= (b[i] & 0xffL) << (56 - ((i & 7) << 3));
   }
 
   /** Helper to create a Bits object from existing byte array containing bits */
@@ -75,27 +83,22 @@ public class Bits {
 
   /** Create new Bits object from String (bits are read right to left, lsb to msb) */
   public Bits(String s) {
-    length = s.length();
-    int r = length/8, m = length%8;
-    if (m != 0) bits = new byte[r+1];
-    else bits = new byte[r];
-
-    for (int i=0; i<length; ++i) {
-      int f = (s.charAt(length-i-1) == '0') ? 0 : 1;
-      f = f<<(7-i%8);
-      bits[i/8] |= f;
-    }
+    this(0, s.length());
+    for (int i=0; i<length; ++i)
+      if (s.charAt(length-i-1) != '0') setBit(i, 1);
   }
 
   /** Create new Bits object of constant value (0/1) and specified length */
   public Bits(int c, int l) {
     length = l;
-    int r = length/8, m = length%8;
-    if (m != 0) bits = new byte[r+1];
-    else bits = new byte[r];
-
-    for (int i=0; i<bits.length; ++i)
-      bits[i] = (c == 0) ? 0 : (byte)0xff;
+    numBytes = (l + 7) >>> 3;
+    words = new long[numWords(l)];
+    if (c != 0) {
+      Arrays.fill(words, -1L);
+      // Only the bits of the serialized bytes are set.
+      int tail = (numBytes << 3) & 63;
+      if (tail != 0) words[words.length-1] = -1L << (64 - tail);
+    }
   }
 
   /** Helper to create a constant-valued Bits object */
@@ -108,15 +111,42 @@ public class Bits {
     return (new Bits(c, l)).toString();
   }
 
+  /** Number of words needed to hold l bits */
+  static int numWords(int l) {
+    return (l + 63) >>> 6;
+  }
+
+  /** Position, msb to lsb, of the p-th bit of a byte array read lsb to msb */
+  private static int lsb(int p) {
+    return (p & ~7) | (7 - (p & 7));
+  }
+
   /** Set bit to value */
   public void setBit(int p, int v) {
-    if (v == 0) bits[p/8] &= ~(1<<(7-p%8)); // clear
-    else bits[p/8] |= 1<<(7-p%8); // set
+    if (v == 0) words[p>>>6] &= ~(1L<<(63-(p&63))); // clear
+    else words[p>>>6] |= 1L<<(63-(p&63)); // set
   }
 
   /** Get bit value */
   public int getBit(int p) {
-    return ((bits[p/8]>>(7-p%8)) & 1);
+    return (int) ((words[p>>>6]>>>(63-(p&63))) & 1);
+  }
+
+  /** Number of bytes in the serialized form */
+  public int getNumBytes() {
+    return numBytes;
+  }
+
+  /** Get the i-th byte of the serialized form */
+  public byte getByte(int i) {
+    return (byte) (words[i>>>3] >>> (56 - ((i & 7) << 3)));
+  }
+
+  /** Serialized form, as accepted by {@link #Bits(byte[], int)} */
+  public byte[] toBytes() {
+    byte[] b = new byte[numBytes];
+    for (int i=0; i<numBytes; ++i) b[i] = getByte(i);
+    return b;
   }
 
   /** Set a range of contiguous bits (up to 32) to a value.
@@ -125,19 +155,11 @@ public class Bits {
   public void setBits(int e, int b, int v) {
     if (b >= length || e >= length) throw new IllegalArgumentException();
     if (b <= e) // not reversed
-      for (int i=0; i<=(e-b); ++i) {
-        int p = b+i;
-        int w = v & (1<<i);
-        if (w == 0) bits[p/8] &= ~(1<<(p%8)); // clear
-        else bits[p/8] |= 1<<(p%8); // set
-      }
+      for (int i=0; i<=(e-b); ++i)
+        setBit(lsb(b+i), v & (1<<i));
     else // reversed
-      for (int i=0; i<=(b-e); ++i) {
-        int p = b-i;
-        int w = v & (1<<i);
-        if (w == 0) bits[p/8] &= ~(1<<(p%8)); // clear
-        else bits[p/8] |= 1<<(p%8); // set
-      }
+      for (int i=0; i<=(b-e); ++i)
+        setBit(lsb(b-i), v & (1<<i));
   }
 
   /** Set value of a range of contiguous bits (high/low encoded in a single int) */
@@ -155,13 +177,11 @@ public class Bits {
     int r = 0;
     if (b <= e) // not reversed
       for (int i=0; i<=(e-b); ++i) {
-        int p = b+i;
-        if ((bits[p/8] & (1<<(p%8))) != 0) r |= 1<<i;
+        if (getBit(lsb(b+i)) != 0) r |= 1<<i;
       }
     else // reversed
       for (int i=0; i<=(b-e); ++i) {
-        int p = b-i;
-        if ((bits[p/8] & (1<<(p%8))) != 0) r |= 1<<i;
+        if (getBit(lsb(b-i)) != 0) r |= 1<<i;
       }
     return r;
   }
@@ -174,40 +194,61 @@ public class Bits {
     else return getBits(re, rb); // normal
   }
 
+  /** Get the 64 bits starting at position p, msb first (bits past the end are 0) */
+  private long getWord(int p) {
+    int w = p>>>6, s = p & 63;
+    long r = words[w] << s;
+    if (s != 0 && w+1 < words.length) r |= words[w+1] >>> (64 - s);
+    return r;
+  }
+
   /** Get sub-Bits */
   public Bits extract(int e, int b) {
     if (b >= length || e >= length) throw new IllegalArgumentException();
 
     int l = 1 + ((b < e) ? e-b : b-e);
-    int r = l/8, m = l%8;
-    byte[] q = new byte[(m==0) ? r : r+1];
-
-    if (b <= e) // not reversed
-      for (int i=0; i<l; i++) {
-        int p = b+i;
-        if (((bits[p/8]>>(7-p%8)) & 1) != 0) q[i/8] |= 1<<(7-i%8);
-      }
+    Bits q = new Bits(0, l);
+    if (b <= e) { // not reversed
+      for (int i=0; i<q.words.length; ++i)
+        q.words[i] = getWord(b + (i<<6));
+      q.clearTail();
+    }
     //		else // reversed
     //			for (int i=0; i<l; ++i) {
     //				int p = b-i;
     //				if ((bits[p/8] & (1<<(p%8))) != 0) q[i/8] |= 1<<(i%8);
     //			}
-    return new Bits(q, l);
+    return q;
   }
 
   /** Append bit packets */
   public Bits append(Bits b) {
-    int l = length + b.length;
-    int r = l/8, m = l%8;
-    byte[] q = new byte[(m==0) ? r : r+1];
+    Bits q = new Bits(0, length + b.length);
+    int s = b.length & 63, w = b.length>>>6;
+    for (int i=0; i<numWords(b.length); ++i)
+      q.words[i] = b.words[i];
+    q.clearTail(b.length);
+    for (int i=0; i<numWords(length); ++i) {
+      long v = words[i];
+      if (i == numWords(length)-1 && (length & 63) != 0) v &= -1L << (64 - (length & 63));
+      q.words[w+i] |= v >>> s;
+      if (s != 0 && w+i+1 < q.words.length) q.words[w+i+1] |= v << (64 - s);
+    }
+    return q;
+  }
 
-    for (int i=0; i<b.length; ++i)
-      if ((b.bits[i/8] & (1<<(7-i%8))) != 0) q[i/8] |= 1<<(7-i%8);
-    for (int i=0; i<length; ++i) {
-      int p = i + b.length;
-      if ((bits[i/8] & (1<<(7-i%8))) != 0) q[p/8] |= 1<<(7-p%8);
+  /** Clear the bits past the end of this packet */
+  void clearTail() {
+    clearTail(length);
+  }
+
+  /** Clear the bits from position l on */
+  private void clearTail(int l) {
+    int w = l>>>6;
+    if (w < words.length) {
+      if ((l & 63) != 0) words[w++] &= -1L << (64 - (l & 63));
+      for (; w<words.length; ++w) words[w] = 0;
     }
-    return new Bits(q, l);
   }
 
   /** Reverse bits */
@@ -216,7 +257,75 @@ public class Bits {
     //		for (int i=0; i<length; ++i)
     //			if ((bits[i/8] & (1<<(i%8))) != 0) nb[(length-1-i)/8] |= 1<<((length-1-i)%8);
     //		bits = nb;
-    bits = Bits.reverse(this).bits;
+    Bits nb = Bits.reverse(this);
+    words = nb.words;
+    numBytes = nb.numBytes;
+  }
+
+  /** Number of bits set to 1 */
+  public int cardinality() {
+    int c = 0;
+    for (int i=0; i<words.length; ++i) c += Long.bitCount(words[i]);
+    return c;
+  }
+
+  /**
+   * Number of positions at which this packet and b differ. Stops counting once
+   * the count exceeds threshold, in which case the returned count is only a
+   * lower bound.
+   */
+  public int hammingDistance(Bits b, int threshold) {
+    long[] w1 = words, w2 = b.words;
+    int n = Math.min(w1.length, w2.length);
+    int count = 0;
+    for (int i=0; i<n; ++i) {
+      count += Long.bitCount(w1[i] ^ w2[i]);
+      if (count > threshold) return count;
+    }
+    return count;
+  }
+
+  /** Length of the longest common prefix of this packet and b */
+  public int longestCommonPrefix(Bits b) {
+    int l = Math.min(length, b.length);
+    int n = numWords(l);
+    for (int i=0; i<n; ++i) {
+      long x = words[i] ^ b.words[i];
+      if (x != 0) return Math.min(l, (i<<6) + Long.numberOfLeadingZeros(x));
+    }
+    return l;
+  }
+
+  /** Compare the first bit at which this packet and b differ, up to the length of this packet */
+  public int compareTo(Bits b) {
+    int n = numWords(length);
+    for (int i=0; i<n; ++i) {
+      long x = words[i] ^ b.words[i];
+      if (x != 0) {
+        int p = (i<<6) + Long.numberOfLeadingZeros(x);
+        if (p >= length) return 0;
+        return (words[i] & Long.highestOneBit(x)) != 0 ? 1 : -1;
+      }
+    }
+    return 0;
+  }
+
+  /** Permute bits into q, so that bit j of q is bit permutation[j] of this packet */
+  public void permute(BitPermutation permutation, Bits q) {
+    permutation.apply(words, q.words);
+  }
+
+  public void and(Bits b) {
+    for (int i=0; i<b.words.length; ++i) words[i] &= b.words[i];
+  }
+
+  public void or(Bits b) {
+    for (int i=0; i<b.words.length; ++i) words[i] |= b.words[i];
+  }
+
+  @Override
+  public int hashCode() {
+    return Arrays.hashCode(words) * 31 + length;
   }
 
   public String toString() {
@@ -33,9 +33,8 @@ public class NBitSignature extends Signature {
 
   public NBitSignature(Bits b){
     bits = new Bits(0, b.length);
-    for(int i=0;i<size();i++){
-      bits.setBit(i, b.getBit(i));
-    }
+    System.arraycopy(b.words, 0, bits.words, 0, bits.words.length);
+    bits.clearTail();
   }
 
   public NBitSignature(NBitSignature other){
@@ -94,16 +93,13 @@ public class NBitSignature extends Signature {
   }
 
   public void write(DataOutput out) throws IOException {
-    int numBits = size(), numBytes = bits.bits.length;
-
-    //    System.out.println("# bits: "+size());
-    //    System.out.println("# bytes: "+bits.bits.length);
+    int numBits = size(), numBytes = bits.getNumBytes();
 
     out.writeInt(numBits);
     out.writeInt(numBytes);
 
     for(int i=0;i<numBytes;i++){
-      out.writeByte(bits.bits[i]);
+      out.writeByte(bits.getByte(i));
     }
   }
 
@@ -135,12 +131,7 @@ public class NBitSignature extends Signature {
       return false;
     }
 
-    for(int i=0;i<other.bits.length;i++){
-      if((!other.get(i) && this.get(i))|| (other.get(i) && !this.get(i))){
-        return false;
-      }
-    }
-    return true;
+    return bits.longestCommonPrefix(other.bits) == size();
   }
 
   public int compareTo(Object obj) {
@@ -153,22 +144,12 @@ public class NBitSignature extends Signature {
     /*if(size()!=other.size()){
       throw new RuntimeException("Cannot compare different sized signatures!");
     }*/
-    boolean myBit, otherBit;
-    for(int i=0;i<size();i++){
-      myBit = get(i);
-      otherBit = other.get(i);
-      if(!myBit && otherBit){
-        return -1;
-      }else if(myBit && !otherBit){
-        return 1;
-      }
-    }
-    return 0;
+    return bits.compareTo(other.bits);
   }
 
   @Override
   public int hashCode(){
-    int h = bits.toString().hashCode();
+    int h = bits.hashCode();
     if(h>0){
       return h ^ Integer.MAX_VALUE;
     }else{
@@ -177,13 +158,7 @@ public class NBitSignature extends Signature {
   }
 
   public int countSetBits(){
-    int cnt = 0;
-    for(int i=0;i<this.size();i++){
-      if(this.get(i)){
-        cnt++;
-      }
-    }
-    return cnt;
+    return bits.cardinality();
   }
 
   public static int countSetBits2(int n){
@@ -205,14 +180,7 @@ public class NBitSignature extends Signature {
   }
 
   public float cosine(NBitSignature s2){
-    float dist = 0;
-    for(int i=0;i<size();i++){
-      if((this.get(i) && s2.get(i)) || (!this.get(i) && !s2.get(i))){
-
-      }else{
-        dist++;
-      }
-    }
+    float dist = hammingDistance(s2);
     return (float) Math.cos(Math.PI*(dist/size()));
   }
 
@@ -233,6 +201,16 @@ public class NBitSignature extends Signature {
     }
   }
 
+  @Override
+  public void perm(BitPermutation permutation, Signature newSign) {
+    NBitSignature newS = (NBitSignature) newSign;
+    if(newS.bits == null || newS.bits.words.length != Bits.numWords(size())){
+      newS.bits = new Bits(0, size());
+    }
+    newS.bits.length = size();
+    bits.permute(permutation, newS.bits);
+  }
+
   @Override
   public int hammingDistance(Signature s) {
     NBitSignature s2 = (NBitSignature) s;
@@ -241,54 +219,24 @@ public class NBitSignature extends Signature {
 
   @Override
   public int hammingDistance(Signature signature, int threshold) {
-    byte[] bb1 = bits.bits;
     NBitSignature s2 = (NBitSignature) signature;
-    byte[] bb2 = s2.bits.bits;
-
-    int count=0;
-
-    /*byte by byte*/
-    for(int i=0;i<bb1.length;i++){
-      byte n = (byte) (bb1[i] ^ bb2[i]);    //xor two bytes
-      while (n!=0)  {          //count number of 1s in the xor
-        count++;
-        n &= (n - 1);
-      }
-      if(count>threshold){
-        return count;
-      }
-    }
-    return count;
+
+    /*word by word*/
+    return bits.hammingDistance(s2.bits, threshold);
   }
 
   public void and(NBitSignature other) {
-    byte[] obb = other.bits.bits;
-
-    for(int i = 0; i < obb.length; i++) {
-      bits.bits[i] &= obb[i];
-    }
+    bits.and(other.bits);
   }
 
   public void or(NBitSignature other) {
-    byte[] obb = other.bits.bits;
-
-    for(int i = 0; i < obb.length; i++) {
-      bits.bits[i] |= obb[i];
-    }
+    bits.or(other.bits);
   }
 
   @Override
   public int getLongestPrefix(Signature s) {
     NBitSignature signature = (NBitSignature) s;
-    int cnt = 0;
-    for(int i=0; i<size(); i++){
-      if(signature.get(i) == this.get(i)){
-        cnt++;
-      }else{
-        return cnt;
-      }
-    }
-    return cnt;
+    return bits.longestCommonPrefix(signature.bits);
   }
 
   //  public BitsSignature permute(int[] permutation){
@@ -54,6 +54,14 @@ public abstract class Signature implements WritableComparable {
    */
   public abstract Signature perm(ArrayListOfIntsWritable permutation);
 
+  /**
+   * @param permutation
+   * permute this object w.r.t precomputed permutation object and save permuted signature in permSign
+   */
+  public void perm(BitPermutation permutation, Signature permSign) {
+    perm(permutation.getPermutation(), permSign);
+  }
+
   @SuppressWarnings("unchecked")
   public static Signature createSignature(Class subClass, int size){
     if(subClass.equals(NBitSignature.class) || subClass.equals(SixtyFourBitSignature.class)){
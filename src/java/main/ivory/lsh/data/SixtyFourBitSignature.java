@@ -1,25 +1,21 @@
 package ivory.lsh.data;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.DataInput;
-import java.io.DataInputStream;
 import java.io.DataOutput;
-import java.io.DataOutputStream;
 import java.io.IOException;
 
 import tl.lin.data.array.ArrayListOfIntsWritable;
 
 /**
- * 
- * 	A version of BitsSignature specifically tuned for 64 bits. Uses an array of 8 bytes instead of the Bits object.
- * 
+ *
+ * 	A version of BitsSignature specifically tuned for 64 bits. Uses a single long instead of the Bits object.
+ *
  * @see ivory.lsh.data.NBitSignature
- * 
+ *
  * @author ferhanture
  *
  */
 public class SixtyFourBitSignature extends Signature{//implements WritableComparable<BitsSignature64> {
-  private byte[] bits;
+  private long bits;	//bit i is bit (63-i) of the long, i.e., the 8 bytes in big-endian order
   static int NUM_BITS = 64;
   static int NUM_BYTES = 8;
 
@@ -28,19 +24,15 @@ public class SixtyFourBitSignature extends Signature{//implements WritableCompar
    */
   public SixtyFourBitSignature(){
     super();
-    setBits(new byte[NUM_BYTES]);
+    bits = 0;
   }
 
   public SixtyFourBitSignature(byte[] b){
-    setBits(new byte[NUM_BYTES]);
-    for(int i=0;i<b.length;i++){
-      getBits()[i]= b[i];
-    }
-    //		bits = b;
+    setBits(b);
   }
 
   public SixtyFourBitSignature(SixtyFourBitSignature other){
-    this(other.getBits());
+    bits = other.bits;
   }
 
   public SixtyFourBitSignature(int numBits){			//need this constructor for general purposes.
@@ -48,12 +40,20 @@ public class SixtyFourBitSignature extends Signature{//implements WritableCompar
     if(numBits!=NUM_BITS){
       throw new RuntimeException("Wrong number of bits!");
     }
-    setBits(new byte[NUM_BYTES]);
+    bits = 0;
   }
 
 
-  public void setBits(byte[] bits) {
-    this.bits = bits;
+  public void setBits(byte[] b) {
+    bits = 0;
+    for(int i=0;i<b.length;i++){
+      bits |= (b[i] & 0xffL) << (56 - 8*i);
+    }
+  }
+
+  /** Get bit p of the bytes, reading each byte lsb to msb */
+  private int getLsbBit(int p) {
+    return (int) ((bits >>> (56 - (p & ~7) + (p & 7))) & 1);
   }
 
   /**
@@ -66,22 +66,7 @@ public class SixtyFourBitSignature extends Signature{//implements WritableCompar
    */
   public NBitSignature getSubSignature(int b, int e){
     NBitSignature sub = new NBitSignature();
-    int l = 1 + ((b < e) ? e-b : b-e);
-    int r = l/8, m = l%8;
-    byte[] q = new byte[(m==0) ? r : r+1];
-
-    if (b <= e) // not reversed
-      for (int i=0; i<l; ++i) {
-        int p = b+i;
-        if ((getBits()[p/8] & (1<<(p%8))) != 0) q[i/8] |= 1<<(i%8);
-      }
-    else // reversed
-      for (int i=0; i<l; ++i) {
-        int p = b-i;
-        if ((getBits()[p/8] & (1<<(p%8))) != 0) q[i/8] |= 1<<(i%8);
-      }
-    sub.bits = new Bits(q,e-b+1);
-    return sub;
+    return getSubSignature(b, e, sub);
   }
 
   public NBitSignature getSubSignature(int b, int e, Signature subSign){
@@ -93,40 +78,35 @@ public class SixtyFourBitSignature extends Signature{//implements WritableCompar
     if (b <= e) // not reversed
       for (int i=0; i<l; ++i) {
         int p = b+i;
-        if ((getBits()[p/8] & (1<<(p%8))) != 0) q[i/8] |= 1<<(i%8);
+        if (getLsbBit(p) != 0) q[i/8] |= 1<<(i%8);
       }
     else // reversed
       for (int i=0; i<l; ++i) {
         int p = b-i;
-        if ((getBits()[p/8] & (1<<(p%8))) != 0) q[i/8] |= 1<<(i%8);
+        if (getLsbBit(p) != 0) q[i/8] |= 1<<(i%8);
       }
     sub.bits = new Bits(q,e-b+1);
     return sub;
   }
 
   public void readFields(DataInput in) throws IOException {
-    //		bits = new byte[NUM_BYTES];
-
-    for(int i=0;i<NUM_BYTES;i++){
-      getBits()[i]=in.readByte();
-    }
+    bits = in.readLong();
   }
 
   public void write(DataOutput out) throws IOException {
-    for(int i=0;i<NUM_BYTES;i++){
-      out.writeByte(getBits()[i]);
-    }
+    out.writeLong(bits);
   }
 
   public boolean get(int i) {
-    return (((getBits()[i/8]>>(7-i%8)) & 1)==1);
+    return ((bits >>> (63-i)) & 1) == 1;
   }
 
   public void set(int i, boolean sign) {
-    if (!sign) getBits()[i/8] &= ~(1<<(7-i%8)); // clear
-    else getBits()[i/8] |= 1<<(7-i%8); // set
+    if (!sign) bits &= ~(1L<<(63-i)); // clear
+    else bits |= 1L<<(63-i); // set
   }
 
+  @Override
   public int size() {
     return NUM_BITS;
   }
@@ -137,48 +117,30 @@ public class SixtyFourBitSignature extends Signature{//implements WritableCompar
       return false;
     }
     SixtyFourBitSignature other = (SixtyFourBitSignature) o;
-
-    if(other.size()!=this.size()){
-      return false;
-    }
-
-    for(int i=0;i<other.getBits().length;i++){
-      if((!other.get(i) && this.get(i))|| (other.get(i) && !this.get(i))){
-        return false;
-      }
-    }
-    return true;
+    return other.bits == this.bits;
   }
 
   public int compareTo(Object obj) {
     SixtyFourBitSignature other = (SixtyFourBitSignature) obj;
-    return this.compareTo(other);	
+    return this.compareTo(other);
   }
 
   public int compareTo(SixtyFourBitSignature other) {
-    /*if(size()!=other.size()){
-			throw new RuntimeException("Cannot compare different sized signatures!");
-		}*/
-    boolean myBit, otherBit;
-    for(int i=0;i<size();i++){
-      myBit = get(i);
-      otherBit = other.get(i);
-      if(!myBit && otherBit){
-        return -1;
-      }else if(myBit && !otherBit){
-        return 1;
-      }
+    // the first differing bit decides, i.e., unsigned comparison
+    long x = bits ^ other.bits;
+    if(x == 0){
+      return 0;
     }
-    return 0;	
+    return (bits & Long.highestOneBit(x)) != 0 ? 1 : -1;
   }
 
   @Override
   public int hashCode(){
-    int h = getBits().toString().hashCode();
+    int h = (int) (bits ^ (bits >>> 32));
     if(h>0){
       return h ^ Integer.MAX_VALUE;
     }else{
-      return h ^ Integer.MIN_VALUE;			
+      return h ^ Integer.MIN_VALUE;
     }
   }
 
@@ -186,25 +148,7 @@ public class SixtyFourBitSignature extends Signature{//implements WritableCompar
   public int hammingDistance(Signature signature, int threshold){
     //		float thr = (float) ((Math.acos(PWSimProbMethod.COSINE_TRESHOLD)/Math.PI)*this.size());
     SixtyFourBitSignature s2 = (SixtyFourBitSignature) signature;
-    byte[] bb1 = this.getBits();
-    byte[] bb2 = s2.getBits();
-
-    int count=0;
-
-    /*byte by byte*/
-    for(int i=0;i<bb1.length;i++){
-
-      byte i1 = bb1[i], i2=bb2[i];
-      byte n = (byte) (i1 ^ i2);
-      while (n!=0)  {
-        count++;
-        n &= (n - 1) ;
-        if(count>threshold){
-          return count;
-        }
-      }
-    }
-    return count;
+    return Long.bitCount(bits ^ s2.bits);
   }
 
   @Override
@@ -212,6 +156,12 @@ public class SixtyFourBitSignature extends Signature{//implements WritableCompar
     return this.hammingDistance(s, NUM_BITS);
   }
 
+  @Override
+  public int getLongestPrefix(Signature s) {
+    SixtyFourBitSignature signature = (SixtyFourBitSignature) s;
+    return Long.numberOfLeadingZeros(bits ^ signature.bits);
+  }
+
   public String toString(){
     String s = "";
     for(int i=0;i<size();i++){
@@ -220,76 +170,40 @@ public class SixtyFourBitSignature extends Signature{//implements WritableCompar
     return s;
   }
 
-  @Override
-  public Signature perm(ArrayListOfIntsWritable p) {
-    int[] subs = p.getArray();
-    long b = 0;	//byte array represented as a long
-    ByteArrayInputStream bis = new ByteArrayInputStream(getBits());
-    DataInputStream in = new DataInputStream(bis);
-    ByteArrayOutputStream bos = new ByteArrayOutputStream();
-    DataOutputStream dos = new DataOutputStream(bos);
-
-    try {
-      b = in.readLong();
-      long sbytes = 0;
-      for (int i = 0; i < NUM_BITS; i++) {
-        int shifts = subs[i];
-        //using a mask of intialized with one 
-        long mask = 1; 
-        mask = (mask << (NUM_BITS - shifts - 1));
-        long bit = (mask & b);
-        if (bit != 0) { //if the bit is one
-          mask = 1;
-          mask =  (mask << (NUM_BITS - i - 1));
-          sbytes = (sbytes | mask);
-        }
+  private long perm(int[] subs) {
+    long sbytes = 0;
+    for (int i = 0; i < NUM_BITS; i++) {
+      int shifts = subs[i];
+      if (((bits >>> (NUM_BITS - shifts - 1)) & 1) != 0) { //if the bit is one
+        sbytes |= 1L << (NUM_BITS - i - 1);
       }
-      dos.writeLong(sbytes);
-      dos.flush();
-    } catch (IOException e) {
-      e.printStackTrace();
     }
-    byte[] permutedBytes =  bos.toByteArray();
+    return sbytes;
+  }
 
-    return new SixtyFourBitSignature(permutedBytes);
+  @Override
+  public Signature perm(ArrayListOfIntsWritable p) {
+    SixtyFourBitSignature permSign = new SixtyFourBitSignature();
+    permSign.bits = perm(p.getArray());
+    return permSign;
   }
 
   @Override
   public void perm(ArrayListOfIntsWritable p, Signature permSign) {
-    int[] subs = p.getArray();
-    long b = 0;	//byte array represented as a long
-    ByteArrayInputStream bis = new ByteArrayInputStream(getBits());
-    DataInputStream in = new DataInputStream(bis);
-    ByteArrayOutputStream bos = new ByteArrayOutputStream();
-    DataOutputStream dos = new DataOutputStream(bos);
-
-    try {
-      b = in.readLong();
-      long sbytes = 0;
-      for (int i = 0; i < NUM_BITS; i++) {
-        int shifts = subs[i];
-        //using a mask of intialized with one 
-        long mask = 1; 
-        mask = (mask << (NUM_BITS - shifts - 1));
-        long bit = (mask & b);
-        if (bit != 0) { //if the bit is one
-          mask = 1;
-          mask =  (mask << (NUM_BITS - i - 1));
-          sbytes = (sbytes | mask);
-        }
-      }
-      dos.writeLong(sbytes);
-      dos.flush();
-    } catch (IOException e) {
-      e.printStackTrace();
-    }
-    byte[] permutedBytes =  bos.toByteArray();
+    ((SixtyFourBitSignature)permSign).bits = perm(p.getArray());
+  }
 
-    ((SixtyFourBitSignature)permSign).setBits(permutedBytes);		
+  @Override
+  public void perm(BitPermutation p, Signature permSign) {
+    ((SixtyFourBitSignature)permSign).bits = p.apply(bits);
   }
 
   public byte[] getBits() {
-    return bits;
+    byte[] b = new byte[NUM_BYTES];
+    for(int i=0;i<NUM_BYTES;i++){
+      b[i] = (byte) (bits >>> (56 - 8*i));
+    }
+    return b;
   }
 
 }
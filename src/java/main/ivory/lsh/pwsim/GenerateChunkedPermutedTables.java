@@ -1,6 +1,7 @@
 package ivory.lsh.pwsim;
 
 import ivory.core.RetrievalEnvironment;
+import ivory.lsh.data.BitPermutation;
 import ivory.lsh.data.BitsSignatureTable;
 import ivory.lsh.data.PairOfIntSignature;
 import ivory.lsh.data.Permutation;
@@ -78,6 +79,7 @@ public class GenerateChunkedPermutedTables extends Configured implements Tool {
 
     static Path[] localFiles;
     static List<Writable> randomPermutations;
+    static BitPermutation[] bitPermutations;
     static int numOfPermutations, numOfBits;
     static Signature permutedSignature;
     static Constructor pairConstructor;
@@ -115,6 +117,12 @@ public class GenerateChunkedPermutedTables extends Configured implements Tool {
           }
         }
         if (randomPermutations == null) throw new RuntimeException("Not found in local cache: " + randomPermsFile);
+
+        // precompute the word masks of each permutation once, rather than per signature
+        bitPermutations = new BitPermutation[numOfPermutations];
+        for (int i = 0; i < numOfPermutations; i++) {
+          bitPermutations[i] = new BitPermutation((ArrayListOfIntsWritable) randomPermutations.get(i));
+        }
       } catch (Exception e) {
         e.printStackTrace();
         throw new RuntimeException("Error reading random permutations " + randomPermsFile);
@@ -128,7 +136,7 @@ public class GenerateChunkedPermutedTables extends Configured implements Tool {
     throws IOException {
       // Map each signature to Q random permutations
       for (int i = 0; i < numOfPermutations; i++) {
-        signature.perm((ArrayListOfIntsWritable) randomPermutations.get(i), permutedSignature);
+        signature.perm(bitPermutations[i], permutedSignature);
         pair.setInt(i);
         pair.setSignature(permutedSignature);
         output.collect(pair, docno);
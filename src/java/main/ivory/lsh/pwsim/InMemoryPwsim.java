@@ -0,0 +1,457 @@
+package ivory.lsh.pwsim;
+
+import ivory.lsh.data.BitPermutation;
+import ivory.lsh.data.BitsSignatureTable;
+import ivory.lsh.data.Signature;
+import ivory.lsh.driver.PwsimEnvironment;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.GnuParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.OptionBuilder;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.log4j.Logger;
+
+import tl.lin.data.array.ArrayListOfIntsWritable;
+import tl.lin.data.map.HMapII;
+import tl.lin.data.pair.PairOfInts;
+
+/**
+ * In-memory version of the randomized pairwise similarity algorithm (see Ture et al, SIGIR'11),
+ * for answering "all signatures within Hamming distance d of this one" queries online, instead of
+ * running {@link ivory.lsh.pwsim.cl.CLSlidingWindowPwsim} over all pairs.
+ *
+ * The permuted tables written by {@link GenerateChunkedPermutedTables} are loaded once. A query is
+ * permuted by each of the Q permutations and located in the corresponding sorted table by binary
+ * search. Signatures around that position share a long prefix with the permuted query, and are
+ * candidates: up to B of them are checked on each side, stopping early once the common prefix gets
+ * shorter than a given minimum. The Hamming distance is preserved by permutations, so candidates are
+ * checked against the permuted query directly.
+ *
+ * Searching does not modify the tables, so any number of threads may search concurrently.
+ */
+public class InMemoryPwsim {
+  private static final Logger sLogger = Logger.getLogger(InMemoryPwsim.class);
+
+  // Signature implements the raw WritableComparable, so comparing two of them is an unchecked call.
+  private static final Comparator<Signature> SIGNATURE_ORDER = new Comparator<Signature>() {
+    @SuppressWarnings("unchecked")
+    public int compare(Signature a, Signature b) {
+      return a.compareTo(b);
+    }
+  };
+
+  private BitPermutation[] permutations;
+  private Signature[][] tables;
+  private int[][] docNos;
+  private int numOfBits;
+
+  /**
+   * @param permutations
+   *    permutation of each table
+   * @param tables
+   *    permuted signatures of each table, sorted
+   * @param docNos
+   *    docno of each signature in each table
+   */
+  public InMemoryPwsim(BitPermutation[] permutations, Signature[][] tables, int[][] docNos) {
+    if (permutations.length != tables.length || tables.length != docNos.length) {
+      throw new IllegalArgumentException("size mismatch: " + permutations.length + "\t" + tables.length + "\t" + docNos.length);
+    }
+    for (int i = 0; i < tables.length; i++) {
+      if (tables[i].length != docNos[i].length) {
+        throw new IllegalArgumentException("size mismatch in table " + i + ": " + tables[i].length + "\t" + docNos[i].length);
+      }
+    }
+    this.permutations = permutations;
+    this.tables = tables;
+    this.docNos = docNos;
+    this.numOfBits = permutations.length == 0 ? 0 : permutations[0].getPermutation().size();
+  }
+
+  /**
+   * Builds permuted tables in memory, without going through {@link GenerateChunkedPermutedTables}.
+   *
+   * @param signatures
+   *    signatures to index
+   * @param nos
+   *    docno of each signature
+   * @param perms
+   *    permutations, one per table
+   */
+  public static InMemoryPwsim create(Signature[] signatures, int[] nos, List<ArrayListOfIntsWritable> perms) {
+    if (signatures.length != nos.length) {
+      throw new IllegalArgumentException("size mismatch: " + signatures.length + "\t" + nos.length);
+    }
+    int numOfPermutations = perms.size();
+    BitPermutation[] permutations = new BitPermutation[numOfPermutations];
+    Signature[][] tables = new Signature[numOfPermutations][];
+    int[][] docNos = new int[numOfPermutations][];
+    for (int i = 0; i < numOfPermutations; i++) {
+      permutations[i] = new BitPermutation(perms.get(i));
+      final Signature[] permuted = new Signature[signatures.length];
+      Integer[] order = new Integer[signatures.length];
+      for (int j = 0; j < signatures.length; j++) {
+        permuted[j] = newSignature(signatures[j]);
+        signatures[j].perm(permutations[i], permuted[j]);
+        order[j] = j;
+      }
+      Arrays.sort(order, new Comparator<Integer>() {
+        public int compare(Integer a, Integer b) {
+          return SIGNATURE_ORDER.compare(permuted[a], permuted[b]);
+        }
+      });
+      tables[i] = new Signature[signatures.length];
+      docNos[i] = new int[signatures.length];
+      for (int j = 0; j < signatures.length; j++) {
+        tables[i][j] = permuted[order[j]];
+        docNos[i][j] = nos[order[j]];
+      }
+    }
+    return new InMemoryPwsim(permutations, tables, docNos);
+  }
+
+  /**
+   * Loads the permuted tables written by {@link GenerateChunkedPermutedTables}, merging the chunks
+   * of each table and dropping the signatures repeated in the overlap between chunks.
+   *
+   * @param tablesDir
+   *    output directory of {@link GenerateChunkedPermutedTables}
+   * @param permsFile
+   *    file of random permutations used to generate the tables
+   */
+  public static InMemoryPwsim load(String tablesDir, String permsFile, FileSystem fs) throws IOException {
+    Configuration conf = fs.getConf();
+
+    List<ArrayListOfIntsWritable> perms = new ArrayList<ArrayListOfIntsWritable>();
+    SequenceFile.Reader reader = new SequenceFile.Reader(fs, new Path(permsFile), conf);
+    IntWritable key = new IntWritable();
+    ArrayListOfIntsWritable perm = new ArrayListOfIntsWritable();
+    while (reader.next(key, perm)) {
+      if (key.get() != perms.size()) {
+        throw new RuntimeException("Unexpected permutation number " + key.get() + " in " + permsFile);
+      }
+      perms.add(perm);
+      perm = new ArrayListOfIntsWritable();
+    }
+    reader.close();
+
+    int numOfPermutations = perms.size();
+    List<List<Signature>> signatures = new ArrayList<List<Signature>>();
+    List<ArrayListOfIntsWritable> nos = new ArrayList<ArrayListOfIntsWritable>();
+    for (int i = 0; i < numOfPermutations; i++) {
+      signatures.add(new ArrayList<Signature>());
+      nos.add(new ArrayListOfIntsWritable());
+    }
+
+    FileStatus[] files = fs.listStatus(new Path(tablesDir));
+    Arrays.sort(files);
+    BitsSignatureTable table = new BitsSignatureTable();
+    for (FileStatus file : files) {
+      if (!file.getPath().getName().startsWith("part-")) {
+        continue;
+      }
+      reader = new SequenceFile.Reader(fs, file.getPath(), conf);
+      while (reader.next(key, table)) {
+        int permNo = key.get();
+        if (permNo < 0 || permNo >= numOfPermutations) {
+          throw new RuntimeException("Unexpected permutation number " + permNo + " in " + file.getPath());
+        }
+        append(signatures.get(permNo), nos.get(permNo), table);
+      }
+      reader.close();
+    }
+
+    BitPermutation[] permutations = new BitPermutation[numOfPermutations];
+    Signature[][] tables = new Signature[numOfPermutations][];
+    int[][] docNos = new int[numOfPermutations][];
+    for (int i = 0; i < numOfPermutations; i++) {
+      permutations[i] = new BitPermutation(perms.get(i));
+      tables[i] = signatures.get(i).toArray(new Signature[0]);
+      docNos[i] = Arrays.copyOf(nos.get(i).getArray(), nos.get(i).size());
+      sLogger.info("Table " + i + ": " + tables[i].length + " signatures");
+    }
+    return new InMemoryPwsim(permutations, tables, docNos);
+  }
+
+  // Appends a chunk to a table. A chunk starts with the last signatures of the previous chunk
+  // of the same table (see GenerateChunkedPermutedTables.MyReducer), which are skipped.
+  private static void append(List<Signature> signatures, ArrayListOfIntsWritable nos, BitsSignatureTable table) {
+    Signature[] chunk = table.getSignatures();
+    int[] chunkNos = table.getDocNos();
+    int n = table.getNumOfSignatures();
+
+    int overlap = 0;
+    int size = signatures.size();
+    for (int j = Math.max(0, size - n); j < size && overlap == 0; j++) {
+      int k = 0;
+      while (j + k < size && nos.get(j + k) == chunkNos[k] && signatures.get(j + k).equals(chunk[k])) {
+        k++;
+      }
+      if (j + k == size) {
+        overlap = k;
+      }
+    }
+    for (int k = overlap; k < n; k++) {
+      signatures.add(chunk[k]);
+      nos.add(chunkNos[k]);
+    }
+  }
+
+  public int getNumOfTables() {
+    return tables.length;
+  }
+
+  public int getNumOfSignatures() {
+    return tables.length == 0 ? 0 : tables[0].length;
+  }
+
+  /**
+   * @return
+   *    permuted signatures of a table, sorted
+   */
+  public Signature[] getSignatures(int table) {
+    return tables[table];
+  }
+
+  /**
+   * @return
+   *    docnos of the signatures of a table
+   */
+  public int[] getDocNos(int table) {
+    return docNos[table];
+  }
+
+  /**
+   * Finds the signatures within a Hamming distance of a query.
+   *
+   * @param query
+   *    signature to search for (not permuted)
+   * @param maxDist
+   *    maximum Hamming distance
+   * @param windowSize
+   *    number of signatures to check on each side of the query, in each table
+   * @param minPrefix
+   *    stop checking signatures once their common prefix with the permuted query is shorter
+   * @return
+   *    docnos of the signatures found, mapped to their distance to the query
+   */
+  public HMapII search(Signature query, int maxDist, int windowSize, int minPrefix) {
+    if (query.size() != numOfBits) {
+      throw new IllegalArgumentException("Expected a signature of " + numOfBits + " bits, got " + query.size());
+    }
+    HMapII results = new HMapII();
+    Signature permuted = newSignature(query);
+    for (int i = 0; i < tables.length; i++) {
+      query.perm(permutations[i], permuted);
+      Signature[] table = tables[i];
+      int[] nos = docNos[i];
+      int pos = find(table, permuted);
+
+      for (int j = pos - 1; j >= 0 && j >= pos - windowSize; j--) {
+        if (!check(table[j], nos[j], permuted, maxDist, minPrefix, results)) {
+          break;
+        }
+      }
+      for (int j = pos; j < table.length && j < pos + windowSize; j++) {
+        if (!check(table[j], nos[j], permuted, maxDist, minPrefix, results)) {
+          break;
+        }
+      }
+    }
+    return results;
+  }
+
+  // An empty signature of the same class and size.
+  private static Signature newSignature(Signature s) {
+    try {
+      return s.getClass().getConstructor(int.class).newInstance(s.size());
+    } catch (Exception e) {
+      throw new RuntimeException("Cannot create signature of class " + s.getClass(), e);
+    }
+  }
+
+  // Returns false once the common prefix is too short to continue in this direction.
+  private static boolean check(Signature signature, int docno, Signature permuted, int maxDist,
+      int minPrefix, HMapII results) {
+    if (minPrefix > 0 && signature.getLongestPrefix(permuted) < minPrefix) {
+      return false;
+    }
+    if (!results.containsKey(docno)) {
+      int dist = signature.hammingDistance(permuted, maxDist);
+      if (dist <= maxDist) {
+        results.put(docno, dist);
+      }
+    }
+    return true;
+  }
+
+  // Position of the first signature not smaller than the key.
+  private static int find(Signature[] table, Signature key) {
+    int lo = 0, hi = table.length;
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (SIGNATURE_ORDER.compare(table[mid], key) < 0) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      }
+    }
+    return lo;
+  }
+
+  /**
+   * Searches a batch of queries on a pool of threads.
+   *
+   * @return
+   *    results of each query, in the same order as the queries
+   * @see #search(Signature, int, int, int)
+   */
+  public HMapII[] search(Signature[] queries, final int maxDist, final int windowSize,
+      final int minPrefix, int numThreads) throws Exception {
+    ExecutorService threadPool = Executors.newFixedThreadPool(numThreads);
+    try {
+      List<Future<HMapII>> futures = new ArrayList<Future<HMapII>>();
+      for (final Signature query : queries) {
+        futures.add(threadPool.submit(new Callable<HMapII>() {
+          public HMapII call() {
+            return search(query, maxDist, windowSize, minPrefix);
+          }
+        }));
+      }
+      HMapII[] results = new HMapII[queries.length];
+      for (int i = 0; i < queries.length; i++) {
+        results[i] = futures.get(i).get();
+      }
+      return results;
+    } finally {
+      threadPool.shutdownNow();
+    }
+  }
+
+  private static final String WORKDIR_PATH_OPTION = "index";
+  private static final String QUERIES_OPTION = "queries";
+  private static final String OUTPUT_PATH_OPTION = "output";
+  private static final String THRESHOLD_OPTION = "T";
+  private static final String WINDOWSIZE_OPTION = "B";
+  private static final String PREFIX_OPTION = "prefix";
+  private static final String SIGNLENG_OPTION = "num_bits";
+  private static final String NUMPERMS_OPTION = "Q";
+  private static final String OVERLAPSIZE_OPTION = "overlap";
+  private static final String SIGNTYPE_OPTION = "type";
+  private static final String THREADS_OPTION = "threads";
+
+  /**
+   * Loads the permuted tables of an index and writes the neighbors of each query signature, in the
+   * same format as {@link ivory.lsh.pwsim.cl.CLSlidingWindowPwsim}.
+   */
+  @SuppressWarnings("static-access")
+  public static void main(String[] args) throws Exception {
+    Options options = new Options();
+    options.addOption(OptionBuilder.withDescription("path to index directory").withArgName("path").hasArg().isRequired().create(WORKDIR_PATH_OPTION));
+    options.addOption(OptionBuilder.withDescription("path to query signatures").withArgName("path").hasArg().isRequired().create(QUERIES_OPTION));
+    options.addOption(OptionBuilder.withDescription("path to output").withArgName("path").hasArg().isRequired().create(OUTPUT_PATH_OPTION));
+    options.addOption(OptionBuilder.withDescription("hamming distance threshold for similar pairs").withArgName("threshold").hasArg().isRequired().create(THRESHOLD_OPTION));
+    options.addOption(OptionBuilder.withDescription("window size on each side of a query").withArgName("window").hasArg().isRequired().create(WINDOWSIZE_OPTION));
+    options.addOption(OptionBuilder.withDescription("minimum prefix length of candidates (default: 0)").withArgName("bits").hasArg().create(PREFIX_OPTION));
+    options.addOption(OptionBuilder.withDescription("length of signature").withArgName("number of bits").hasArg().isRequired().create(SIGNLENG_OPTION));
+    options.addOption(OptionBuilder.withDescription("type of signature").withArgName("random|minhash|simhash").hasArg().isRequired().create(SIGNTYPE_OPTION));
+    options.addOption(OptionBuilder.withDescription("number of permutations (tables)").withArgName("permutations").hasArg().isRequired().create(NUMPERMS_OPTION));
+    options.addOption(OptionBuilder.withDescription("size of overlap between chunks").withArgName("overlap size").hasArg().isRequired().create(OVERLAPSIZE_OPTION));
+    options.addOption(OptionBuilder.withDescription("number of threads (default: number of processors)").withArgName("number").hasArg().create(THREADS_OPTION));
+
+    CommandLine cmdline;
+    CommandLineParser parser = new GnuParser();
+    try {
+      cmdline = parser.parse(options, args);
+    } catch (ParseException exp) {
+      System.err.println("Error parsing command line: " + exp.getMessage());
+      new HelpFormatter().printHelp(InMemoryPwsim.class.getCanonicalName(), options);
+      return;
+    }
+
+    String workDir = cmdline.getOptionValue(WORKDIR_PATH_OPTION);
+    String signatureType = cmdline.getOptionValue(SIGNTYPE_OPTION);
+    int numOfBits = Integer.parseInt(cmdline.getOptionValue(SIGNLENG_OPTION));
+    int numOfPermutations = Integer.parseInt(cmdline.getOptionValue(NUMPERMS_OPTION));
+    int chunkOverlapSize = Integer.parseInt(cmdline.getOptionValue(OVERLAPSIZE_OPTION));
+    int maxDist = Integer.parseInt(cmdline.getOptionValue(THRESHOLD_OPTION));
+    int windowSize = Integer.parseInt(cmdline.getOptionValue(WINDOWSIZE_OPTION));
+    int minPrefix = cmdline.hasOption(PREFIX_OPTION) ? Integer.parseInt(cmdline.getOptionValue(PREFIX_OPTION)) : 0;
+    int numThreads = cmdline.hasOption(THREADS_OPTION) ? Integer.parseInt(cmdline.getOptionValue(THREADS_OPTION)) : Runtime.getRuntime().availableProcessors();
+
+    Configuration conf = new Configuration();
+    FileSystem fs = FileSystem.get(conf);
+    String tablesDir = PwsimEnvironment.getTablesDir(workDir, fs, signatureType, numOfBits, chunkOverlapSize, numOfPermutations);
+    String permsFile = PwsimEnvironment.getPermutationsFile(workDir, fs, numOfBits, numOfPermutations);
+
+    long startTime = System.currentTimeMillis();
+    InMemoryPwsim pwsim = load(tablesDir, permsFile, fs);
+    sLogger.info("Loaded " + pwsim.getNumOfTables() + " tables of " + pwsim.getNumOfSignatures() + " signatures in " + (System.currentTimeMillis() - startTime) + "ms");
+
+    // query signatures: <docno, signature>
+    PwsimEnvironment.setClassTypes(signatureType, conf);
+    Class<?> signatureClass = Class.forName(conf.get("Ivory.SignatureClass"));
+    List<Signature> queries = new ArrayList<Signature>();
+    ArrayListOfIntsWritable queryNos = new ArrayListOfIntsWritable();
+    Path queriesPath = new Path(cmdline.getOptionValue(QUERIES_OPTION));
+    FileStatus[] files = fs.isFile(queriesPath) ? new FileStatus[] { fs.getFileStatus(queriesPath) } : fs.listStatus(queriesPath);
+    IntWritable key = new IntWritable();
+    for (FileStatus file : files) {
+      if (file.isDir() || file.getPath().getName().startsWith("_")) {
+        continue;
+      }
+      SequenceFile.Reader reader = new SequenceFile.Reader(fs, file.getPath(), conf);
+      Signature signature = (Signature) signatureClass.newInstance();
+      while (reader.next(key, signature)) {
+        queries.add(signature);
+        queryNos.add(key.get());
+        signature = (Signature) signatureClass.newInstance();
+      }
+      reader.close();
+    }
+
+    startTime = System.currentTimeMillis();
+    HMapII[] results = pwsim.search(queries.toArray(new Signature[0]), maxDist, windowSize, minPrefix, numThreads);
+    sLogger.info("Searched " + queries.size() + " queries in " + (System.currentTimeMillis() - startTime) + "ms");
+
+    SequenceFile.Writer writer = SequenceFile.createWriter(fs, conf, new Path(cmdline.getOptionValue(OUTPUT_PATH_OPTION)),
+        PairOfInts.class, IntWritable.class);
+    PairOfInts outKey = new PairOfInts();
+    IntWritable outValue = new IntWritable();
+    long cnt = 0;
+    for (int i = 0; i < results.length; i++) {
+      Integer[] nos = results[i].keySet().toArray(new Integer[0]);
+      Arrays.sort(nos);
+      for (int docno : nos) {
+        if (docno == queryNos.get(i)) {
+          continue;
+        }
+        outKey.set(docno, queryNos.get(i));
+        outValue.set(results[i].get(docno));
+        writer.append(outKey, outValue);
+        cnt++;
+      }
+    }
+    writer.close();
+    sLogger.info(cnt + " pairs written.");
+  }
+}
@@ -78,6 +78,8 @@ public class ExtractFeatures {
 
   private Map<String, Operator> operators = null;
 
+  private String binaryFile = null;           // binary instances file (or null to print text)
+
   public ExtractFeatures(String [] args, FileSystem fs) throws SAXException, IOException, ParserConfigurationException, NotBoundException, Exception {
     loadQueryRunner(args, fs);
     env = runner.getRetrievalEnvironment();
@@ -119,6 +121,14 @@ public class ExtractFeatures {
     runner = new BatchQueryRunner(args, fs);
   }
 
+  /**
+   * Writes features to a binary instances file (see {@link Instances#write(String)})
+   * instead of printing them as text.
+   */
+  public void setBinaryFile(String binaryFile) {
+    this.binaryFile = binaryFile;
+  }
+
   private void extract() throws Exception {
     // models specified in parameter files
     Set<String> modelNames = runner.getModels();
@@ -178,12 +188,19 @@ public class ExtractFeatures {
    // add judgment feature name
    featureNames.add(JUDGMENT_FEATURE_NAME);
 
+   // instances to write, if writing a binary file
+   List<String> instanceQids = new ArrayList<String>();
+   List<String> instanceDocNames = new ArrayList<String>();
+   List<double[]> instanceValues = new ArrayList<double[]>();
+
    // print feature name header
-   System.out.print(QUERY_FEATURE_NAME + "\t" + DOC_FEATURE_NAME);
-   for(String featureName : featureNames) {
-     System.out.print("\t" + featureName);
+   if(binaryFile == null) {
+     System.out.print(QUERY_FEATURE_NAME + "\t" + DOC_FEATURE_NAME);
+     for(String featureName : featureNames) {
+       System.out.print("\t" + featureName);
+     }
+     System.out.println();
    }
-   System.out.println();
 
    // extract features query-by-query
    for(Entry<String, String> queryEntry : queries.entrySet()) {
@@ -312,26 +329,82 @@ public class ExtractFeatures {
      // print feature values for current query
      for(Entry<String, SortedMap<String, Operator>> featureEntry : featureValues.entrySet()) {
        String docName = featureEntry.getKey();
-       System.out.print(qid + "\t" + docName);
        Map<String,Operator> docFeatures = featureEntry.getValue();
+       double [] values = new double[featureNames.size()];
+       int featureId = 0;
        for(String featureName : featureNames) {
          Operator op = docFeatures.get(featureName);
          double featVal = DEFAULT_FEATURE_VALUE;
          if(op != null) {
            featVal = op.getFinalScore();
          }
-         System.out.print("\t" + featVal);
+         values[featureId++] = featVal;
+       }
+
+       if(binaryFile != null) {
+         instanceQids.add(qid);
+         instanceDocNames.add(docName);
+         instanceValues.add(values);
+       } else {
+         System.out.print(qid + "\t" + docName);
+         for(double featVal : values) {
+           System.out.print("\t" + featVal);
+         }
+         System.out.println();
        }
-       System.out.println();
      }
    }
+
+   if(binaryFile != null) {
+     writeInstances(featureNames, instanceQids, instanceDocNames, instanceValues);
+   }
+  }
+
+  private void writeInstances(SortedSet<String> featureNames, List<String> qids, List<String> docNames,
+      List<double[]> values) throws IOException {
+    int numInstances = qids.size();
+
+    // the grade is a column of its own, all other features are stored by column
+    String [] names = new String[featureNames.size() - 1];
+    float [][] columns = new float[names.length][numInstances];
+    float [] grades = new float[numInstances];
+    int featureId = 0;
+    int column = 0;
+    for(String featureName : featureNames) {
+      float [] target;
+      if(JUDGMENT_FEATURE_NAME.equals(featureName)) {
+        target = grades;
+      } else {
+        names[column] = featureName;
+        target = columns[column++];
+      }
+      for(int i = 0; i < numInstances; i++) {
+        target[i] = (float) values.get(i)[featureId];
+      }
+      featureId++;
+    }
+
+    Instances instances = new Instances(names, qids.toArray(new String[numInstances]),
+        docNames.toArray(new String[numInstances]), grades, columns);
+    instances.write(binaryFile);
+    System.err.println("Wrote " + numInstances + " instances to " + binaryFile);
   }
 
   public static void main(String[] args) throws SAXException, ParserConfigurationException, NotBoundException, Exception {
     Configuration conf = new Configuration();
     FileSystem fs = FileSystem.getLocal(conf);
 
+    // optionally, write a binary instances file: -binary <file> <config files...>
+    String binaryFile = null;
+    if(args.length >= 2 && "-binary".equals(args[0])) {
+      binaryFile = args[1];
+      String [] rest = new String[args.length - 2];
+      System.arraycopy(args, 2, rest, 0, rest.length);
+      args = rest;
+    }
+
     ExtractFeatures extractor = new ExtractFeatures(args, fs);
+    extractor.setBinaryFile(binaryFile);
     extractor.extract();
   }
 }
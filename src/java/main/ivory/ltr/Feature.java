@@ -27,6 +27,18 @@ public abstract class Feature implements Serializable {
 	private static final long serialVersionUID = 1633564282627928542L;
 
 	public abstract float eval(float [] fv);
+
+	/**
+	 * @return value of this feature for each instance
+	 */
+	public float [] eval(Instances instances) {
+		float [] values = new float[instances.getNumInstances()];
+		for(int i = 0; i < values.length; i++) {
+			values[i] = eval(instances.getInstance(i));
+		}
+		return values;
+	}
+
 	public abstract String getName();
 
 }
@@ -19,8 +19,16 @@ package ivory.ltr;
 
 
 import ivory.core.ConfigurationException;
+import ivory.core.util.MappedFile;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
 import java.util.HashMap;
@@ -28,6 +36,19 @@ import java.util.Map;
 
 
 /**
+ * Feature values of a set of instances, stored by column: one column of
+ * values per feature, with the instances of each query contiguous.
+ * 
+ * Instances are read either from a tab-delimited text file, with a header
+ * naming the columns, or from a binary file written by {@link #write(String)},
+ * which is memory-mapped rather than parsed. The binary format is big-endian:
+ * <ul>
+ * <li>a header: the magic number, the number of instances, features and queries</li>
+ * <li>the grade column, then each feature column (float32 per instance)</li>
+ * <li>the query index: the offset of the first instance of each query, and the number of instances</li>
+ * <li>the feature names, query ids and document ids (modified UTF-8)</li>
+ * </ul>
+ * 
  * @author metzler
  *
  */
@@ -36,17 +57,58 @@ public class Instances {
 	private static final String QID_COLUMN_NAME = "qid";      // query id feature name
 	private static final String DOCID_COLUMN_NAME = "docid";  // document id feature name
 	private static final String GRADE_COLUMN_NAME = "grade";  // relevance grade feature name
+
+	private static final int MAGIC = 0x4c545231;              // binary instances file ("LTR1")
+	private static final int HEADER_SIZE = 16;                // magic, instances, features, queries
 	
+	private int numInstances = 0;                   // number of instances
 	private String [] queryIds = null;              // query ids
 	private String [] docIds = null;                // document ids
 	private float [] grades = null;                 // relevance grades
 	private String [] featureNames = null;          // feature names
-	private int [] featureCols = null;              // feature column indexes
 	private Map<String,Integer> featureMap = null;  // mapping from feature name to column index
-	private float [][] features = null;             // feature values
+	private float [][] features = null;             // feature values, by column (if not mapped)
+	private MappedFile data = null;                 // mapped binary file (if mapped)
+	private int [] queryOffsets = null;             // first instance of each query, followed by the number of instances
 	
 	public Instances(String featFile) throws IOException, ConfigurationException {
-		initialize(featFile);
+		if(isBinary(featFile)) {
+			map(featFile);
+		}
+		else {
+			initialize(featFile);
+		}
+	}
+
+	/**
+	 * Creates instances from columns of feature values. The instances of each
+	 * query must be contiguous.
+	 */
+	Instances(String [] featureNames, String [] queryIds, String [] docIds, float [] grades, float [][] features) {
+		this.numInstances = queryIds.length;
+		this.queryIds = queryIds;
+		this.docIds = docIds;
+		this.grades = grades;
+		this.featureNames = featureNames;
+		this.features = features;
+		this.featureMap = new HashMap<String,Integer>();
+		for(int i = 0; i < featureNames.length; i++) {
+			featureMap.put(featureNames[i], i);
+		}
+		computeQueryOffsets();
+	}
+
+	private static boolean isBinary(String featFile) throws IOException {
+		DataInputStream in = new DataInputStream(new FileInputStream(featFile));
+		try {
+			return in.readInt() == MAGIC;
+		}
+		catch(IOException e) {
+			return false;
+		}
+		finally {
+			in.close();
+		}
 	}
 
 	private void initialize(String featFile) throws IOException, ConfigurationException {
@@ -103,13 +165,14 @@ public class Instances {
 		in.close();
 		
 		// initialize query ids, doc ids, grades, and features
+		numInstances = numRows;
 		queryIds = new String[numRows];
 		docIds = new String[numRows];
 		grades = new float[numRows];
 		featureNames = new String[numFeats];
-		featureCols = new int[numFeats];
+		int [] featureCols = new int[numFeats];
 		featureMap = new HashMap<String,Integer>();
-		features = new float[numRows][numFeats];
+		features = new float[numFeats][numRows];
 		
 		// make second pass through feature file
 		in = new BufferedReader(new FileReader(featFile));
@@ -150,7 +213,7 @@ public class Instances {
 			
 			for(int i = 0; i < featureCols.length; i++) {
 				int featureCol = featureCols[i];
-				features[rowNum][i] = Float.parseFloat(fvals[featureCol]);
+				features[i][rowNum] = Float.parseFloat(fvals[featureCol]);
 			}
 
 			rowNum++;
@@ -161,14 +224,181 @@ public class Instances {
 		
 		// close feature file
 		in.close();
+
+		computeQueryOffsets();
+	}
+
+	private void computeQueryOffsets() {
+		// group instances by query (instances of a query are contiguous)
+		int numQueries = 0;
+		for(int i = 0; i < numInstances; i++) {
+			if(i == 0 || !queryIds[i].equals(queryIds[i-1])) {
+				numQueries++;
+			}
+		}
+		queryOffsets = new int[numQueries + 1];
+		numQueries = 0;
+		for(int i = 0; i < numInstances; i++) {
+			if(i == 0 || !queryIds[i].equals(queryIds[i-1])) {
+				queryOffsets[numQueries++] = i;
+			}
+		}
+		queryOffsets[numQueries] = numInstances;
+	}
+
+	private void map(String featFile) throws IOException, ConfigurationException {
+		data = new MappedFile(new File(featFile));
+		if(data.length() < HEADER_SIZE) {
+			throw new ConfigurationException("Instances file " + featFile + " is truncated!");
+		}
+		numInstances = data.getInt(4);
+		int numFeats = data.getInt(8);
+		int numQueries = data.getInt(12);
+		if(numInstances < 0 || numFeats < 0 || numQueries < 0) {
+			throw new ConfigurationException("Instances file " + featFile + " is corrupt!");
+		}
+
+		// grades, feature columns, and query offsets must all be in the file
+		long pos = HEADER_SIZE + 4L * (numFeats + 1L) * numInstances;
+		if(pos + 4L * (numQueries + 1L) > data.length()) {
+			throw new ConfigurationException("Instances file " + featFile + " is truncated!");
+		}
+
+		System.err.println("Number of features: "  + numFeats);
+		System.err.println("Number of instances: " + numInstances);
+
+		queryOffsets = new int[numQueries + 1];
+		for(int q = 0; q <= numQueries; q++, pos += 4) {
+			queryOffsets[q] = data.getInt(pos);
+		}
+		boolean sorted = queryOffsets[0] == 0 && queryOffsets[numQueries] == numInstances;
+		for(int q = 0; q < numQueries; q++) {
+			sorted &= queryOffsets[q] <= queryOffsets[q+1];
+		}
+		if(!sorted) {
+			throw new ConfigurationException("Instances file " + featFile + " is corrupt!");
+		}
+
+		grades = new float[numInstances];
+		for(int i = 0; i < numInstances; i++) {
+			grades[i] = data.getFloat(HEADER_SIZE + 4L * i);
+		}
+
+		// read names and ids
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(featFile)));
+		try {
+			while(pos > 0) {
+				long skipped = in.skip(pos);
+				if(skipped <= 0) {
+					throw new ConfigurationException("Instances file " + featFile + " is truncated!");
+				}
+				pos -= skipped;
+			}
+
+			featureNames = new String[numFeats];
+			featureMap = new HashMap<String,Integer>();
+			for(int i = 0; i < numFeats; i++) {
+				featureNames[i] = in.readUTF();
+				featureMap.put(featureNames[i], i);
+			}
+
+			queryIds = new String[numInstances];
+			for(int q = 0; q < numQueries; q++) {
+				String qid = in.readUTF();
+				for(int i = queryOffsets[q]; i < queryOffsets[q+1]; i++) {
+					queryIds[i] = qid;
+				}
+			}
+
+			docIds = new String[numInstances];
+			for(int i = 0; i < numInstances; i++) {
+				docIds[i] = in.readUTF();
+			}
+		}
+		finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Writes these instances to a binary file, which can be memory-mapped
+	 * by {@link #Instances(String)}.
+	 */
+	public void write(String file) throws IOException {
+		int numFeats = featureNames.length;
+		int numQueries = queryOffsets.length - 1;
+
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(numInstances);
+			out.writeInt(numFeats);
+			out.writeInt(numQueries);
+
+			for(int i = 0; i < numInstances; i++) {
+				out.writeFloat(grades[i]);
+			}
+			for(int f = 0; f < numFeats; f++) {
+				float [] column = getColumn(f);
+				for(int i = 0; i < numInstances; i++) {
+					out.writeFloat(column[i]);
+				}
+			}
+			for(int q = 0; q <= numQueries; q++) {
+				out.writeInt(queryOffsets[q]);
+			}
+
+			for(int f = 0; f < numFeats; f++) {
+				out.writeUTF(featureNames[f]);
+			}
+			for(int q = 0; q < numQueries; q++) {
+				out.writeUTF(queryIds[queryOffsets[q]]);
+			}
+			for(int i = 0; i < numInstances; i++) {
+				out.writeUTF(docIds[i]);
+			}
+		}
+		finally {
+			out.close();
+		}
 	}
 
 	public int getNumInstances() {
-		return features.length;
+		return numInstances;
 	}
 
+	/**
+	 * @return feature values of instance <code>i</code>
+	 */
 	public float [] getInstance(int i) {
-		return features[i];
+		float [] fv = new float[featureNames.length];
+		if(data != null) {
+			long pos = HEADER_SIZE + 4L * (numInstances + i);
+			for(int f = 0; f < fv.length; f++, pos += 4L * numInstances) {
+				fv[f] = data.getFloat(pos);
+			}
+		}
+		else {
+			for(int f = 0; f < fv.length; f++) {
+				fv[f] = features[f][i];
+			}
+		}
+		return fv;
+	}
+
+	/**
+	 * @return values of feature <code>index</code> for each instance
+	 */
+	public float [] getColumn(int index) {
+		if(data != null) {
+			float [] values = new float[numInstances];
+			long pos = HEADER_SIZE + 4L * numInstances * (index + 1);
+			for(int i = 0; i < numInstances; i++, pos += 4) {
+				values[i] = data.getFloat(pos);
+			}
+			return values;
+		}
+		return features[index].clone();
 	}
 
 	public Map<String, Integer> getFeatureMap() {
@@ -187,21 +417,29 @@ public class Instances {
 		return grades;
 	}
 
+	/**
+	 * @return offsets of the instances of each query: the instances of query
+	 * <code>q</code> are <code>queryOffsets[q]</code> to <code>queryOffsets[q+1]-1</code>
+	 */
+	public int[] getQueryOffsets() {
+		return queryOffsets;
+	}
+
+	/**
+	 * @return value of a feature for each instance
+	 */
+	public float[] evaluate(Feature f) {
+		return f.eval(this);
+	}
+
 	public boolean featureIsConstant(Feature f) {
-		String lastQid = null;
-		float lastFv = Float.NaN;
-		for(int i = 0; i < queryIds.length; i++) {
-			String qid = queryIds[i];
-			float fv = f.eval(features[i]);
-			if(lastQid == null) {
-				lastQid = qid;
-				lastFv = fv;
-			}
-			if(lastQid.equals(qid) && lastFv != fv) {
-				return false;
+		float [] values = f.eval(this);
+		for(int q = 0; q < queryOffsets.length - 1; q++) {
+			for(int i = queryOffsets[q] + 1; i < queryOffsets[q+1]; i++) {
+				if(values[i-1] != values[i]) {
+					return false;
+				}
 			}
-			lastQid = qid;
-			lastFv = fv;
 		}
 		
 		return true;
@@ -216,11 +454,13 @@ public class Instances {
 		double aa = 0.0;
 		double bb = 0.0;
 		
-		int n = features.length;
+		float [] xs = featA.eval(this);
+		float [] ys = featB.eval(this);
+		int n = numInstances;
 		
 		for(int i = 0; i < n; i++) {
-			float x = featA.eval(features[i]);
-			float y = featB.eval(features[i]);
+			float x = xs[i];
+			float y = ys[i];
 
 			a += x;
 			b += y;
@@ -57,9 +57,11 @@ public class LineSearch implements Callable<Map<Feature,AlphaMeasurePair>> {
 	public static AlphaMeasurePair lineSearch(Model model, Feature feature, ScoreTable scores, Measure measure) {
 		AlphaMeasurePair bestAlphaMeasure;
 
+		// feature values are computed once, and each step is evaluated without building a new score table
+		float [] values = scores.getInstances().evaluate(feature);
+
 		if (model.getNumFeatures() == 0) {
-			ScoreTable newScoreTable = scores.translate(feature, 1.0, 1.0);
-			double m = measure.evaluate(newScoreTable);
+			double m = measure.evaluate(scores, values, 1.0, 1.0);
 		    System.err.println("Feature: " + feature.getName() + ", Measure: " + m);
 			return new AlphaMeasurePair(1.0, m);
 		}
@@ -71,8 +73,7 @@ public class LineSearch implements Callable<Map<Feature,AlphaMeasurePair>> {
 
 		alpha = maxWeight * SCALE_FACTOR;
 		for (int iter = 0; iter < MAX_STEPS; iter++) {
-			ScoreTable newScoreTable = scores.translate(feature, alpha, 1.0);
-			double m = measure.evaluate(newScoreTable);
+			double m = measure.evaluate(scores, values, alpha, 1.0);
 			// System.err.println("Alpha: " + alpha + ", ERR: " + measure);
 			if (m < bestAlphaMeasure.alpha) {
 				break;
@@ -90,8 +91,7 @@ public class LineSearch implements Callable<Map<Feature,AlphaMeasurePair>> {
 
 		alpha = maxWeight * SCALE_FACTOR;
 		for (int iter = 0; iter < MAX_STEPS; iter++) {
-			ScoreTable newScoreTable = scores.translate(feature, -alpha, 1.0);
-			double m = measure.evaluate(newScoreTable);
+			double m = measure.evaluate(scores, values, -alpha, 1.0);
 			// System.err.println("Alpha: " + alpha + ", ERR: " + measure);
 			if (m < bestAlphaMeasure.alpha) {
 				break;
@@ -44,6 +44,18 @@ public class LogFeature extends Feature {
 		return 0;
 	}
 
+	/* (non-Javadoc)
+	 * @see ivory.ltr.Feature#eval(ivory.ltr.Instances)
+	 */
+	@Override
+	public float [] eval(Instances instances) {
+		float [] values = instances.getColumn(index);
+		for(int i = 0; i < values.length; i++) {
+			values[i] = values[i] > 0 ? (float) Math.log(values[i]) : 0;
+		}
+		return values;
+	}
+
 	/* (non-Javadoc)
 	 * @see edu.isi.rankir.Feature#getName()
 	 */
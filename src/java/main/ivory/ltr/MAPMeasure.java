@@ -17,10 +17,6 @@
 package ivory.ltr;
 
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
-
 /**
  * @author Don Metzler
  *
@@ -28,51 +24,12 @@ import java.util.List;
 public class MAPMeasure extends Measure {
 
 	@Override
-	public double evaluate(ScoreTable table) {
-		String [] qids = table.getQids();
-		float [] grades = table.getGrades();
-		float [] scores = table.getScores();
-
-		float map = 0;
-		int numQueries = 0;
-		
-		String lastQid = null;
-		List<ScoreGradePair> items = new ArrayList<ScoreGradePair>();
-		for(int i = 0; i < qids.length; i++) {
-			String curQid = qids[i];
-			float curGrade = grades[i];
-			float curScore = scores[i];
-			
-			if(lastQid == null || !lastQid.equals(curQid)) {
-				if(lastQid != null) {
-					map += computeQueryAP(items);
-					numQueries++;
-				}
-				
-				lastQid = curQid;
-				items = new ArrayList<ScoreGradePair>();
-			}
-			items.add(new ScoreGradePair(curScore, curGrade));
-		}
-		map += computeQueryAP(items);
-		numQueries++;
-
-		if(numQueries == 0) {
-			return 0;
-		}
-		
-		return map / numQueries;
-	}
-
-	private double computeQueryAP(List<ScoreGradePair> items) {
-		// rank documents for this query
-		Collections.sort(items, new ScoreComparator());
-		
+	protected double evaluateQuery(int query, float [] grades, int n) {
 		double ap = 0d;
 		int num_rel_ret = 0;
 		
-		for(int i = 0; i < items.size(); i++) {
-			if(items.get(i).grade != 0) {
+		for(int i = 0; i < n; i++) {
+			if(grades[i] != 0) {
 				num_rel_ret++;
 				ap += num_rel_ret / (double) (i+1);
 			}
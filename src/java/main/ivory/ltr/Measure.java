@@ -16,49 +16,117 @@
 
 package ivory.ltr;
 
-import java.util.Comparator;
+import java.util.Arrays;
 
 /**
+ * Evaluation metric over the queries of a score table. Instances are grouped
+ * by query, and each query is evaluated on the grades of its documents, ranked
+ * by decreasing score (ties keep the order of the instances).
+ *
+ * A measure reuses its sort buffers across calls, so it should not be shared
+ * between threads.
+ *
  * @author Don Metzler
  *
  */
 public abstract class Measure {
 
-	public abstract double evaluate(ScoreTable table);
+	private long [] keys = new long[0];     // sort keys: score, then instance position
+	private float [] ranked = new float[0]; // grades of a query, ranked by score
 
-	public class ScoreGradePair {
-		public float score;
-		public float grade;
+	/**
+	 * @param query query number (index into the query offsets of the table)
+	 * @param grades grades of the documents of the query, ranked by decreasing score
+	 * @param n number of documents
+	 * @return metric value for the query
+	 */
+	protected abstract double evaluateQuery(int query, float [] grades, int n);
 
-		public ScoreGradePair(float s, float g) {
-			score = s;
-			grade = g;
-		}
+	/**
+	 * Called before a table is evaluated, so that measures can set up
+	 * per-query state.
+	 */
+	protected void prepare(ScoreTable table) {
 	}
-	
-	public class ScoreComparator implements Comparator<ScoreGradePair> {
 
-		public int compare(ScoreGradePair o1, ScoreGradePair o2) {
-			if(o1.score > o2.score) {
-				return -1;
-			}
-			else if(o1.score < o2.score) {
-				return 1;
-			}
-			return 0;
-		}		
+	public double evaluate(ScoreTable table) {
+		return evaluate(table, null, 0.0, 1.0);
 	}
 
-	public class GradeComparator implements Comparator<ScoreGradePair> {
+	/**
+	 * Evaluates the scores <code>scale * (score + weight * value)</code>, i.e.,
+	 * the scores of <code>table.translate(feature, weight, scale)</code>, without
+	 * building a new score table.
+	 *
+	 * @param table score table
+	 * @param values feature values of each instance, or null to evaluate the table as is
+	 * @param weight feature weight
+	 * @param scale scale factor
+	 */
+	public double evaluate(ScoreTable table, float [] values, double weight, double scale) {
+		int [] offsets = table.getQueryOffsets();
+		float [] grades = table.getGrades();
+		float [] scores = table.getScores();
 
-		public int compare(ScoreGradePair o1, ScoreGradePair o2) {
-			if(o1.grade > o2.grade) {
-				return -1;
+		prepare(table);
+
+		float total = 0;
+		int numQueries = offsets.length - 1;
+		for(int q = 0; q < numQueries; q++) {
+			int start = offsets[q];
+			int n = offsets[q+1] - start;
+			if(keys.length < n) {
+				keys = new long[n];
+				ranked = new float[n];
+			}
+
+			for(int i = 0; i < n; i++) {
+				float score = scores[start + i];
+				if(values != null) {
+					score = (float) (scale * (score + weight * values[start + i]));
+				}
+				keys[i] = ((long) sortKey(score) << 32) | i;
 			}
-			else if(o1.grade < o2.grade) {
-				return 1;
+			Arrays.sort(keys, 0, n);
+			for(int i = 0; i < n; i++) {
+				ranked[i] = grades[start + (int) keys[i]];
 			}
+
+			total += evaluateQuery(q, ranked, n);
+		}
+
+		if(numQueries == 0) {
 			return 0;
-		}		
+		}
+
+		return total / numQueries;
+	}
+
+	private static final double [] GAINS = new double[32]; // gains of integer grades
+
+	static {
+		for(int g = 0; g < GAINS.length; g++) {
+			GAINS[g] = Math.pow(2.0, g) - 1.0;
+		}
+	}
+
+	/**
+	 * @return the gain of a grade, <code>2^grade - 1</code>
+	 */
+	protected static double gain(float grade) {
+		int g = (int) grade;
+		if(g == grade && g >= 0 && g < GAINS.length) {
+			return GAINS[g];
+		}
+		return Math.pow(2.0, grade) - 1.0;
+	}
+
+	// An int that sorts in the opposite order of the score.
+	private static int sortKey(float score) {
+		if(score == 0.0f) {
+			score = 0.0f; // -0.0 ties with 0.0
+		}
+		int bits = Float.floatToIntBits(score);
+		return ~(bits ^ ((bits >> 31) & 0x7fffffff));
 	}
 }
@@ -16,11 +16,7 @@
 
 package ivory.ltr;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.Arrays;
 
 /**
  * @author Don Metzler
@@ -28,73 +24,51 @@ import java.util.Map;
  */
 public class NDCGMeasure extends Measure {
 
-	private final Map<String, Double> idealGainLookup = new HashMap<String,Double>(); // query id -> ideal gain mapping
+	private Instances instances = null;  // instances the ideal gains were computed for
+	private double [] idealGains = null; // query number -> ideal gain mapping
+	private float [] idealGrades = new float[0];
+	private double [] discounts = new double[0]; // rank -> log(rank + 2)
 
-	public NDCGMeasure() {
-		idealGainLookup.clear();
-	}
-	
 	@Override
-	public double evaluate(ScoreTable table) {
-		String [] qids = table.getQids();
-		float [] grades = table.getGrades();
-		float [] scores = table.getScores();
-
-		float err = 0;
-		int numQueries = 0;
-		
-		String lastQid = null;
-		List<ScoreGradePair> items = new ArrayList<ScoreGradePair>();
-		for(int i = 0; i < qids.length; i++) {
-			String curQid = qids[i];
-			float curGrade = grades[i];
-			float curScore = scores[i];
-			
-			if(lastQid == null || !lastQid.equals(curQid)) {
-				//System.out.println("Computing ERR for: " + lastQid);
-				if(lastQid != null) {
-					err += computeQueryNDCG(curQid, items);
-					numQueries++;
-				}
-				
-				lastQid = curQid;
-				items = new ArrayList<ScoreGradePair>();
-			}
-			items.add(new ScoreGradePair(curScore, curGrade));
+	protected void prepare(ScoreTable table) {
+		if(instances != table.getInstances()) {
+			instances = table.getInstances();
+			idealGains = new double[table.getQueryOffsets().length - 1];
+			Arrays.fill(idealGains, Double.NaN);
 		}
-		err += computeQueryNDCG(qids[qids.length-1], items);
-		numQueries++;
+	}
 
-		if(numQueries == 0) {
-			return 0;
+	@Override
+	protected double evaluateQuery(int query, float [] grades, int n) {
+		if(discounts.length < n) {
+			discounts = new double[Math.max(n, 2 * discounts.length)];
+			for(int i = 0; i < discounts.length; i++) {
+				discounts[i] = Math.log(i + 2.0);
+			}
 		}
-		
-		return err / numQueries;
-	}
 
-	private double computeQueryNDCG(String qid, List<ScoreGradePair> items) {
 		// get ideal gain
-		Double idealGain = idealGainLookup.get(qid);
-		if(idealGain == null) {
-			List<ScoreGradePair> newList = new ArrayList<ScoreGradePair>(items);
-			Collections.sort(newList, new GradeComparator());
+		double idealGain = idealGains[query];
+		if(Double.isNaN(idealGain)) {
+			if(idealGrades.length < n) {
+				idealGrades = new float[n];
+			}
+			System.arraycopy(grades, 0, idealGrades, 0, n);
+			Arrays.sort(idealGrades, 0, n);
 			
 			double idcg = 0.0;
-			for(int i = 0; i < newList.size(); i++) {
-				idcg += (Math.pow(2.0, newList.get(i).grade) - 1.0) / Math.log(i + 2.0);
+			for(int i = 0; i < n; i++) {
+				idcg += gain(idealGrades[n - i - 1]) / discounts[i];
 			}
 			
 			idealGain = idcg;
-			idealGainLookup.put(qid, idealGain);
+			idealGains[query] = idealGain;
 		}
 
-		// rank documents for this query
-		Collections.sort(items, new ScoreComparator());
-		
 		// compute err for query
 		double dcg = 0.0;
-		for(int i = 0; i < items.size(); i++) {
-			dcg += (Math.pow(2.0, items.get(i).grade) - 1.0) / Math.log(i + 2.0);
+		for(int i = 0; i < n; i++) {
+			dcg += gain(grades[i]) / discounts[i];
 		}
 		
 		if(idealGain == 0.0) {
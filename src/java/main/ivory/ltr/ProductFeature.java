@@ -44,6 +44,19 @@ public class ProductFeature extends Feature {
 		return fv[indexA] * fv[indexB];
 	}
 
+	/* (non-Javadoc)
+	 * @see ivory.ltr.Feature#eval(ivory.ltr.Instances)
+	 */
+	@Override
+	public float [] eval(Instances instances) {
+		float [] values = instances.getColumn(indexA);
+		float [] valuesB = instances.getColumn(indexB);
+		for(int i = 0; i < values.length; i++) {
+			values[i] *= valuesB[i];
+		}
+		return values;
+	}
+
 	/* (non-Javadoc)
 	 * @see edu.isi.rankir.Feature#getName()
 	 */
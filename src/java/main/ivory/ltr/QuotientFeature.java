@@ -47,6 +47,19 @@ public class QuotientFeature extends Feature {
 		return 0;
 	}
 
+	/* (non-Javadoc)
+	 * @see ivory.ltr.Feature#eval(ivory.ltr.Instances)
+	 */
+	@Override
+	public float [] eval(Instances instances) {
+		float [] values = instances.getColumn(indexA);
+		float [] valuesB = instances.getColumn(indexB);
+		for(int i = 0; i < values.length; i++) {
+			values[i] = valuesB[i] != 0.0 ? values[i] / valuesB[i] : 0;
+		}
+		return values;
+	}
+
 	/* (non-Javadoc)
 	 * @see edu.isi.rankir.Feature#getName()
 	 */
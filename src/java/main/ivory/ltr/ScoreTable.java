@@ -37,9 +37,16 @@ public class ScoreTable {
 	}
 
 	public ScoreTable translate(Feature feat, double weight, double scale) {
+		return translate(instances.evaluate(feat), weight, scale);
+	}
+
+	/**
+	 * @param values feature values of each instance (see {@link Instances#evaluate(Feature)})
+	 */
+	public ScoreTable translate(float [] values, double weight, double scale) {
 		float [] newScores = new float[instances.getNumInstances()];
 		for(int i = 0; i < scores.length; i++) {
-			newScores[i] = (float) (scale * (scores[i] + weight * feat.eval(instances.getInstance(i))));
+			newScores[i] = (float) (scale * (scores[i] + weight * values[i]));
 		}
 		return new ScoreTable(this, newScores);
 	}
@@ -56,6 +63,10 @@ public class ScoreTable {
 		return instances.getGrades();
 	}
 
+	public int[] getQueryOffsets() {
+		return instances.getQueryOffsets();
+	}
+
 	public float[] getScores() {
 		return scores;
 	}
@@ -41,6 +41,14 @@ public class SimpleFeature extends Feature {
 		return fv[index];
 	}
 
+	/* (non-Javadoc)
+	 * @see ivory.ltr.Feature#eval(ivory.ltr.Instances)
+	 */
+	@Override
+	public float [] eval(Instances instances) {
+		return instances.getColumn(index);
+	}
+
 	/* (non-Javadoc)
 	 * @see edu.isi.rankir.Feature#getName()
 	 */
@@ -192,6 +192,32 @@ public class Clique {
     }
   }
 
+  /**
+   * Returns the max score of a particular document.
+   */
+  public float getMaxScore(int docno) {
+    if (combinedWeight == 0.0) {
+      return 0.0f;
+    } else if (combinedWeight < 0.0) {
+      return combinedWeight * potential.getMinScore();
+    } else {
+      return combinedWeight * potential.getMaxScore(docno);
+    }
+  }
+
+  /**
+   * Returns the max score of a document that this clique never returns as a candidate.
+   */
+  public float getMaxUnmatchedScore() {
+    if (combinedWeight == 0.0) {
+      return 0.0f;
+    } else if (combinedWeight < 0.0) {
+      return combinedWeight * potential.getMinScore();
+    } else {
+      return combinedWeight * potential.getMaxUnmatchedScore();
+    }
+  }
+
   /**
    * Sets the next candidate for evaluation.
    */
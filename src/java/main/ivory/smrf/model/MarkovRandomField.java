@@ -54,7 +54,6 @@ public class MarkovRandomField {
    * Initializes this MRF.
    */
   public void initialize() throws ConfigurationException {
-    env.clearPostingsReaderCache();
     for (Clique c : cliques) {
       c.initialize(globalEvidence);
     }
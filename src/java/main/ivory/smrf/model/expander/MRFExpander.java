@@ -63,6 +63,10 @@ public abstract class MRFExpander {
   // candidates being considered.
   protected int maxCandidates = 0;
 
+  // Document vectors reused from one feedback fetch to the next; expanders are not shared across
+  // threads.
+  private IntDocVector[] docVecs = new IntDocVector[0];
+
   /**
    * @param mrf
    * @param results
@@ -81,6 +85,20 @@ public abstract class MRFExpander {
     this.maxCandidates = maxCandidates;
   }
 
+  /**
+   * Fetches the document vectors for a set of feedback documents in one batch. The vectors are
+   * reused by the next call, and so are only valid until then.
+   *
+   * @param docSet docnos of the feedback documents
+   * @return document vectors, or {@code null} if they cannot be read
+   */
+  protected IntDocVector[] getDocumentVectors(int[] docSet) {
+    if (docVecs.length != docSet.length) {
+      docVecs = Arrays.copyOf(docVecs, docSet.length);
+    }
+    return env.documentVectors(docSet, docVecs);
+  }
+
   /**
    * @param env
    * @param model
@@ -85,7 +85,7 @@ public class NGramLatentConceptExpander extends MRFExpander {
       int[] docSet = Accumulator.accumulatorsToDocnos(fbResults);
 
       // Get document vectors for results.
-      IntDocVector[] docVecs = env.documentVectors(docSet);
+      IntDocVector[] docVecs = getDocumentVectors(docSet);
 
       // Extract vocabulary from results.
       VocabFrequencyPair[] vocab = null;
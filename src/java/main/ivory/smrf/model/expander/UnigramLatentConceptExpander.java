@@ -20,8 +20,6 @@ import ivory.core.ConfigurationException;
 import ivory.core.RetrievalEnvironment;
 import ivory.core.RetrievalException;
 import ivory.core.data.document.IntDocVector;
-import ivory.core.data.index.PostingsList;
-import ivory.core.data.index.PostingsReader;
 import ivory.core.util.XMLTools;
 import ivory.smrf.model.Clique;
 import ivory.smrf.model.DocumentNode;
@@ -32,7 +30,6 @@ import ivory.smrf.model.MarkovRandomField;
 import ivory.smrf.model.Parameter;
 import ivory.smrf.model.TermNode;
 import ivory.smrf.model.VocabFrequencyPair;
-import ivory.smrf.model.builder.Expression;
 import ivory.smrf.model.builder.ExpressionGenerator;
 import ivory.smrf.model.builder.TermExpressionGenerator;
 import ivory.smrf.model.importance.ConceptImportanceModel;
@@ -106,7 +103,7 @@ public class UnigramLatentConceptExpander extends MRFExpander {
     int[] docSet = Accumulator.accumulatorsToDocnos(fbResults);
 
     // Get document vectors for results.
-    IntDocVector[] docVecs = env.documentVectors(docSet);
+    IntDocVector[] docVecs = getDocumentVectors(docSet);
 
     // Extract tf and doclen information from document vectors.
     TfDoclengthStatistics stats = null;
@@ -142,15 +139,13 @@ public class UnigramLatentConceptExpander extends MRFExpander {
       // The current concept.
       String concept = vocab[conceptID].getKey();
 
-      // Get df and cf information for the concept.
-      PostingsReader reader = env.getPostingsReader(new Expression(concept));
-      if (reader == null) {
+      // Get df and cf information for the concept from the global term statistics, without
+      // reading its postings.
+      int df = env.documentFrequency(concept);
+      if (df == 0) {
         continue;
       }
-      PostingsList list = reader.getPostingsList();
-      int df = list.getDf();
-      long cf = list.getCf();
-      env.clearPostingsReaderCache();
+      long cf = env.collectionFrequency(concept);
 
       // Construct concept evidence.
       termEvidence.set(df, cf);
@@ -49,6 +49,24 @@ public abstract class PotentialFunction {
 
   public abstract float getMaxScore();
 
+  /**
+   * Returns the maximum possible score of a document that {@link #getNextCandidate()} never
+   * returns, e.g., a document that does not contain the term. Defaults to {@link #getMaxScore()},
+   * which is always a valid (if loose) bound.
+   */
+  public float getMaxUnmatchedScore() {
+    return getMaxScore();
+  }
+
+  /**
+   * Returns the maximum possible score of a particular document. Potentials backed by postings
+   * with skip information can bound this more tightly than {@link #getMaxScore()}, which is what
+   * this defaults to. Must not move any postings readers.
+   */
+  public float getMaxScore(int docno) {
+    return getMaxScore();
+  }
+
   public abstract void setNextCandidate(int docno);
 
   @SuppressWarnings("unchecked")
@@ -19,6 +19,7 @@ package ivory.smrf.model.potential;
 import ivory.core.ConfigurationException;
 import ivory.core.RetrievalEnvironment;
 import ivory.core.data.index.Posting;
+import ivory.core.data.index.PostingsListDocSortedPositionalWithSkips;
 import ivory.core.data.index.PostingsReader;
 import ivory.core.data.index.ProximityPostingsReader;
 import ivory.core.util.XMLTools;
@@ -58,9 +59,18 @@ public class QueryPotential extends PotentialFunction {
   protected DocumentNode docNode = null;
   protected PostingsReader postingsReader = null;
 
+  // Same reader as above, if its postings carry a skip table.
+  protected PostingsListDocSortedPositionalWithSkips.PostingsReader skipsReader = null;
+
   protected boolean endOfList = true; // Whether or not we're at the end of the postings list.
+  protected boolean exactCf = false;  // Whether termEvidence holds the actual cf of the expression.
   protected int lastScoredDocno = 0;
 
+  // Score bounds are asked for once per candidate while ranking, so cache them.
+  private float maxScore;
+  private short cachedMaxTf = -1;
+  private float cachedMaxTfScore;
+
   public QueryPotential() {}
   // Note, must have zero-arg constructor for creation by factory method in PotentialFunction
 
@@ -116,19 +126,26 @@ public class QueryPotential extends PotentialFunction {
 
     // Get inverted list for this expression.
     postingsReader = env.getPostingsReader(expression);
+    skipsReader = postingsReader instanceof PostingsListDocSortedPositionalWithSkips.PostingsReader
+        ? (PostingsListDocSortedPositionalWithSkips.PostingsReader) postingsReader : null;
 
     // Get collection statistics for the expression.
     if (postingsReader == null) {
       termEvidence.set(0, 0L);
+      exactCf = false;
     } else if (postingsReader instanceof ProximityPostingsReader) {
-      termEvidence.set(env.getDefaultDf(), env.getDefaultCf());
+      termEvidence.set(env.documentFrequency(expression), env.collectionFrequency(expression));
+      exactCf = env.hasPhraseStatistics(expression);
     } else {
       termEvidence.set(postingsReader.getPostingsList().getDf(),
           postingsReader.getPostingsList().getCf());
+      exactCf = true;
     }
 
     // Set global term evidence in scoring function.
     scoringFunction.initialize(termEvidence, globalEvidence);
+    maxScore = computeMaxScore();
+    cachedMaxTf = -1;
 
     // Read first posting.
     endOfList = false;
@@ -147,12 +164,11 @@ public class QueryPotential extends PotentialFunction {
       return DEFAULT_SCORE;
     }
 
-    // Advance postings reader. Invariant: curPosting will always point to
+    // Advance postings reader. Invariant: the reader will always point to
     // the next posting that has not yet been scored.
-    while (!endOfList && postingsReader.getDocno() < docNode.getDocno()) {
-      if (!postingsReader.nextPosting(curPosting)) {
-        endOfList = true;
-      }
+    if (!endOfList && postingsReader.getDocno() < docNode.getDocno()
+        && !postingsReader.skipTo(docNode.getDocno())) {
+      endOfList = true;
     }
 
     // Compute term frequency.
@@ -220,17 +236,46 @@ public class QueryPotential extends PotentialFunction {
 
   @Override
   public float getMaxScore() {
+    return maxScore;
+  }
+
+  private float computeMaxScore() {
+    // The tf of an expression can't exceed its collection frequency. Proximity expressions
+    // without precomputed statistics only carry the default cf, which isn't a bound.
+    if (postingsReader != null && exactCf) {
+      return scoringFunction.getMaxScore((int) Math.min(termEvidence.getCf(), Short.MAX_VALUE));
+    }
     return scoringFunction.getMaxScore();
   }
 
+  @Override
+  public float getMaxScore(int docno) {
+    if (skipsReader == null) {
+      return getMaxScore();
+    }
+
+    // Consecutive candidates mostly fall in the same block.
+    short maxTf = skipsReader.getMaxTf(docno);
+    if (maxTf != cachedMaxTf) {
+      cachedMaxTf = maxTf;
+      cachedMaxTfScore = scoringFunction.getMaxScore(maxTf);
+    }
+    return cachedMaxTfScore;
+  }
+
+  @Override
+  public float getMaxUnmatchedScore() {
+    if (postingsReader == null) {
+      return DEFAULT_SCORE;
+    }
+    return scoringFunction.getMaxScore(0);
+  }
+
   @Override
   public void setNextCandidate(int docno) {
-    // Advance postings reader. Invariant: curPosting will always point to
-    // the next posting that has not yet been scored.
-    while (!endOfList && postingsReader.getDocno() < docno) {
-      if (!postingsReader.nextPosting(curPosting)) {
-        endOfList = true;
-      }
+    // Advance postings reader, skipping over postings we don't need.
+    if (!endOfList && postingsReader.getDocno() < docno && !postingsReader.skipTo(docno)) {
+      endOfList = true;
     }
   }
 
@@ -88,6 +88,18 @@ public class BM25ScoringFunction extends ScoringFunction {
     return maxScore;
   }
 
+  @Override
+  public float getMaxScore(int maxTf) {
+    if (idf <= 0.0 || maxTf == 0) {
+      return 0;
+    }
+
+    // Score grows with tf and shrinks with document length, so the bound is attained at tf = maxTf
+    // for an empty document. Goes through getScore() so that subclasses with their own k1 and b
+    // are covered.
+    return getScore(maxTf, 0);
+  }
+
   /**
    * Sets the k1 parameter.
    *
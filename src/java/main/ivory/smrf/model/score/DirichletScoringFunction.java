@@ -64,4 +64,15 @@ public class DirichletScoringFunction extends ScoringFunction {
     // TODO: make a tighter upper bound for this score
     return 0.0f;
   }
+
+  @Override
+  public float getMaxScore(int maxTf) {
+    if (isOOV) {
+      return 0.0f;
+    }
+
+    // Since tf can't exceed the document length, (tf + mu * p) / (docLen + mu) peaks when both
+    // equal maxTf. Goes through getScore() so that subclasses with their own mu are covered.
+    return Math.min(0.0f, getScore(maxTf, maxTf));
+  }
 }
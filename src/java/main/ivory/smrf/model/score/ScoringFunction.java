@@ -92,6 +92,18 @@ public abstract class ScoringFunction {
     return Float.POSITIVE_INFINITY;
   }
 
+  /**
+   * Returns the maximum possible score for a document in which the term occurs at most
+   * {@code maxTf} times. Scoring functions that can take advantage of the extra information
+   * should override this method to return a tighter bound.
+   *
+   * @param maxTf upper bound on the term frequency
+   * @return maximum possible score
+   */
+  public float getMaxScore(int maxTf) {
+    return getMaxScore();
+  }
+
   /**
    * Creates a scoring function.
    */
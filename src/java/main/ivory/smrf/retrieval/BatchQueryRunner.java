@@ -20,8 +20,6 @@ import ivory.core.ConfigurationException;
 import ivory.core.RetrievalEnvironment;
 import ivory.core.util.ResultWriter;
 import ivory.core.util.XMLTools;
-import ivory.smrf.model.builder.MRFBuilder;
-import ivory.smrf.model.expander.MRFExpander;
 import ivory.smrf.model.importance.ConceptImportanceModel;
 
 import java.io.IOException;
@@ -122,28 +120,16 @@ public class BatchQueryRunner {
 
       // Initialize retrieval environment variables.
       QueryRunner runner = null;
-      MRFBuilder builder = null;
-      MRFExpander expander = null;
       try {
-        // Get the MRF builder.
-        builder = MRFBuilder.get(env, modelNode.cloneNode(true));
-
-        // Get the MRF expander.
-        expander = null;
-        if (expanderNode != null) {
-          expander = MRFExpander.getExpander(env, expanderNode.cloneNode(true));
-        }
-        if (stopwords != null && stopwords.size() != 0) {
-          expander.setStopwordList(stopwords);
-        }
-
         int numHits = XMLTools.getAttributeValue(modelNode, "hits", 1000);
+        int numThreads = XMLTools.getAttributeValue(modelNode, "threads", 1);
 
         LOG.info("number of hits: " + numHits);
+        LOG.info("number of threads: " + numThreads);
 
-        // Multi-threaded query evaluation still a bit unstable; setting
-        // thread=1 for now.
-        runner = new ThreadedQueryRunner(builder, expander, 1, numHits);
+        // Each thread gets its own MRF builder and expander.
+        runner = new ThreadedQueryRunner(env, modelNode, expanderNode, stopwords, numThreads,
+            numHits);
 
         queryRunners.put(modelID, runner);
       } catch (Exception e) {
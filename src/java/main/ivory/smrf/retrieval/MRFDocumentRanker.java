@@ -22,6 +22,7 @@ import ivory.smrf.model.DocumentNode;
 import ivory.smrf.model.GraphNode;
 import ivory.smrf.model.MarkovRandomField;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
@@ -38,6 +39,9 @@ import com.google.common.collect.Lists;
 public class MRFDocumentRanker {
   private static final Logger LOG = Logger.getLogger(MRFDocumentRanker.class);
 
+  // Relative slack used when comparing score bounds against the threshold.
+  private static final double PRUNING_SLACK = 1e-5;
+
   // Pool of accumulators.
   private Accumulator[] accumulators = null;
 
@@ -59,6 +63,15 @@ public class MRFDocumentRanker {
   // Maximum number of results to return.
   private int numResults;
 
+  // Whether MaxScore pruning may be used.
+  private boolean pruningEnabled = true;
+
+  // Position of each clique in MaxScore pruning order, indexed like the (sorted) MRF cliques.
+  private int[] pruningRank = null;
+
+  // Upper bounds on the score of documents matching only a prefix of the cliques in pruning order.
+  private double[] pruningBounds = null;
+
   public MRFDocumentRanker(MarkovRandomField mrf, int numResults) {
     this(mrf, null, numResults);
   }
@@ -95,15 +108,18 @@ public class MRFDocumentRanker {
       return null;
     }
 
-    // Maximum possible score that this MRF can achieve.
-    float mrfMaxScore = 0.0f;
-    for (Clique c : cliques) {
-      mrfMaxScore += c.getMaxScore();
-    }
-
     // Sort cliques according to their max scores.
     Collections.sort(cliques, maxscoreComparator);
 
+    // Set up MaxScore pruning, if the cliques allow it.
+    boolean pruning = pruningEnabled && docs == null && initPruning(cliques);
+
+    // Max score of each clique for the current document.
+    float[] docMaxScores = new float[cliques.size()];
+
+    // Number of cliques (in pruning order) whose postings no longer generate candidates.
+    int numNonEssential = 0;
+
     // Score that must be achieved to enter result set.
     double scoreThreshold = Double.NEGATIVE_INFINITY;
 
@@ -124,8 +140,19 @@ public class MRFDocumentRanker {
         documentNode.setDocno(docno);
       }
 
+      // Maximum possible score of this document. Cliques backed by skip tables can bound it much
+      // more tightly than the MRF as a whole, but it only matters once there's a threshold.
+      boolean bounded = scoreThreshold > Double.NEGATIVE_INFINITY;
+      float docMaxScore = Float.POSITIVE_INFINITY;
+      if (bounded) {
+        docMaxScore = 0.0f;
+        for (int i = 0; i < cliques.size(); i++) {
+          docMaxScores[i] = cliques.get(i).getMaxScore(docno);
+          docMaxScore += docMaxScores[i];
+        }
+      }
+
       // Document-at-a-time scoring.
-      float docMaxScore = mrfMaxScore;
       boolean skipped = false;
       for (int i = 0; i < cliques.size(); i++) {
         // Current clique that we're scoring.
@@ -134,9 +161,12 @@ public class MRFDocumentRanker {
         // If there's no way that this document can enter the result set
         // then exit.
         if (score + docMaxScore <= scoreThreshold) {
-          // Advance postings readers (but don't score).
+          // Advance postings readers (but don't score). Non-essential cliques no longer generate
+          // candidates, so they're left alone until a document actually needs them.
           for (int j = i; j < cliques.size(); j++) {
-            cliques.get(j).setNextCandidate(docno + 1);
+            if (!pruning || pruningRank[j] >= numNonEssential) {
+              cliques.get(j).setNextCandidate(docno + 1);
+            }
           }
           skipped = true;
           break;
@@ -151,7 +181,9 @@ public class MRFDocumentRanker {
         score += c.getWeight() * c.getPotential();
 
         // Update the max score for the rest of the cliques.
-        docMaxScore -= c.getMaxScore();
+        if (bounded) {
+          docMaxScore -= docMaxScores[i];
+        }
       }
 
       // Keep track of mNumResults best accumulators.
@@ -163,6 +195,20 @@ public class MRFDocumentRanker {
         if (sortedAccumulators.size() == numResults + 1) {
           a = sortedAccumulators.poll();
           scoreThreshold = sortedAccumulators.peek().score;
+
+          if (pruning) {
+            // A higher threshold may turn more cliques non-essential: documents that only
+            // match those can no longer make it into the result set.
+            while (numNonEssential < pruningBounds.length - 1
+                && canPrune(pruningBounds[numNonEssential + 1], scoreThreshold)) {
+              numNonEssential++;
+            }
+
+            // Nothing left can make it into the result set.
+            if (numNonEssential == pruningBounds.length - 1) {
+              break;
+            }
+          }
         } else {
           a = accumulators[sortedAccumulators.size()];
         }
@@ -170,6 +216,8 @@ public class MRFDocumentRanker {
 
       if (docs != null) {
         docno = docsetOffset < docs.length ? docs[docsetOffset++] : Integer.MAX_VALUE;
+      } else if (pruning) {
+        docno = getNextEssentialCandidate(cliques, numNonEssential);
       } else {
         docno = mrf.getNextCandidate();
       }
@@ -184,6 +232,79 @@ public class MRFDocumentRanker {
     return results;
   }
 
+  // Sets up MaxScore pruning (Turtle and Flood, 1995) for the cliques, which must already be in
+  // scoring order. Cliques are ordered by how much a match can add to the score of a document
+  // over a non-match. Once the threshold exceeds the score any document matching only the first
+  // k of them could possibly achieve, those k cliques are "non-essential": they stop generating
+  // candidates, and their postings are only read for documents found through the others.
+  // Returns false if pruning can't be applied safely.
+  private boolean initPruning(List<Clique> cliques) {
+    int n = cliques.size();
+    final double[] gains = new double[n];
+    double unmatched = 0.0;
+    for (int i = 0; i < n; i++) {
+      Clique c = cliques.get(i);
+
+      // Document independent cliques generate candidates they never score.
+      if (!c.isDocDependent()) {
+        return false;
+      }
+
+      double max = c.getMaxScore();
+      double min = c.getMaxUnmatchedScore();
+      if (Double.isInfinite(max) || Double.isNaN(max) || Double.isInfinite(min)
+          || Double.isNaN(min)) {
+        return false;
+      }
+
+      gains[i] = Math.max(0.0, max - min);
+      unmatched += min;
+    }
+
+    Integer[] order = new Integer[n];
+    for (int i = 0; i < n; i++) {
+      order[i] = i;
+    }
+    Arrays.sort(order, new Comparator<Integer>() {
+      public int compare(Integer a, Integer b) {
+        return Double.compare(gains[a], gains[b]);
+      }
+    });
+
+    // pruningBounds[k] bounds the score of a document that matches only the first k cliques in
+    // pruning order.
+    pruningRank = new int[n];
+    pruningBounds = new double[n + 1];
+    pruningBounds[0] = unmatched;
+    for (int k = 0; k < n; k++) {
+      pruningRank[order[k]] = k;
+      pruningBounds[k + 1] = pruningBounds[k] + gains[order[k]];
+    }
+
+    return true;
+  }
+
+  // Returns the next candidate from the essential cliques only.
+  private int getNextEssentialCandidate(List<Clique> cliques, int numNonEssential) {
+    int nextCandidate = Integer.MAX_VALUE;
+    for (int i = 0; i < cliques.size(); i++) {
+      if (pruningRank[i] >= numNonEssential) {
+        int candidate = cliques.get(i).getNextCandidate();
+        if (candidate < nextCandidate) {
+          nextCandidate = candidate;
+        }
+      }
+    }
+
+    return nextCandidate;
+  }
+
+  // Scores are accumulated in float, in a different order than the bounds, so leave a little room
+  // for rounding before deciding that a document can't make it.
+  private static boolean canPrune(double bound, double threshold) {
+    return bound + PRUNING_SLACK * (1.0 + Math.abs(threshold)) <= threshold;
+  }
+
   /**
    * Returns the Markov Random Field associated with this ranker.
    */
@@ -199,6 +320,14 @@ public class MRFDocumentRanker {
     this.numResults = numResults;
   }
 
+  /**
+   * Enables or disables MaxScore pruning, which is enabled by default. Pruning never changes the
+   * results, only how many documents are scored to find them.
+   */
+  public void setPruning(boolean enabled) {
+    this.pruningEnabled = enabled;
+  }
+
   private List<DocumentNode> getDocNodes() {
     List<DocumentNode> docNodes = Lists.newArrayList();
 
@@ -17,24 +17,43 @@
 package ivory.smrf.retrieval;
 
 import ivory.core.ConfigurationException;
+import ivory.core.RetrievalEnvironment;
+import ivory.core.RetrievalException;
 import ivory.smrf.model.MarkovRandomField;
 import ivory.smrf.model.builder.MRFBuilder;
 import ivory.smrf.model.expander.MRFExpander;
 
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
 import org.apache.log4j.Logger;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Maps;
 
 /**
+ * <p>
  * Multi-threaded implementation of class to run queries.
+ * </p>
+ *
+ * <p>
+ * {@code MRFBuilder}s and {@code MRFExpander}s hold on to their XML configuration, which is not
+ * safe to read from multiple threads, and expanders keep per-query state. When constructed from
+ * the model and expander XML, each worker thread therefore gets its own builder and expander, built
+ * from a private copy of the configuration; everything else shared between threads (the
+ * {@link RetrievalEnvironment} and its caches) is safe for concurrent use. Each query is evaluated
+ * entirely within one thread, so rankings do not depend on the number of threads.
+ * </p>
  *
  * @author Don Metzler
  * @author Jimmy Lin
@@ -42,21 +61,120 @@ import com.google.common.collect.Maps;
 public class ThreadedQueryRunner implements QueryRunner {
   private static final Logger LOG = Logger.getLogger(ThreadedQueryRunner.class);
 
-  private final MRFBuilder builder;
-  private final MRFExpander expander;
+  private final ThreadLocal<MRFBuilder> builders;
+  private final ThreadLocal<MRFExpander> expanders;
   private final ExecutorService threadPool;
   private final Map<String, Future<Accumulator[]>> queryResults = Maps.newLinkedHashMap();
   private final int numHits;
 
-  public ThreadedQueryRunner(MRFBuilder builder, MRFExpander expander, int numThreads, int numHits) {
+  /**
+   * Creates a runner in which all threads share the same builder and expander. This is only safe
+   * if {@code numThreads} is one, or if both are safe for concurrent use.
+   */
+  public ThreadedQueryRunner(final MRFBuilder builder, final MRFExpander expander, int numThreads,
+      int numHits) {
     Preconditions.checkArgument(numThreads > 0);
     Preconditions.checkArgument(numHits > 0);
-    this.builder = Preconditions.checkNotNull(builder);
-    this.expander = expander; // Expander can be null.
+    Preconditions.checkNotNull(builder);
+    // Expander can be null.
+
+    this.builders = new ThreadLocal<MRFBuilder>() {
+      @Override
+      protected MRFBuilder initialValue() {
+        return builder;
+      }
+    };
+    this.expanders = new ThreadLocal<MRFExpander>() {
+      @Override
+      protected MRFExpander initialValue() {
+        return expander;
+      }
+    };
     this.threadPool = Executors.newFixedThreadPool(numThreads);
     this.numHits = numHits;
   }
 
+  /**
+   * Creates a runner in which each thread builds its own builder and expander from the XML
+   * configuration.
+   *
+   * @param env retrieval environment
+   * @param model XML specification of the model
+   * @param expanderModel XML specification of the expander, or {@code null} for none
+   * @param stopwords stopwords for the expander, or {@code null} for none
+   * @param numThreads number of threads
+   * @param numHits number of hits to return per query
+   */
+  public ThreadedQueryRunner(final RetrievalEnvironment env, Node model, Node expanderModel,
+      final Set<String> stopwords, int numThreads, int numHits) throws ConfigurationException {
+    Preconditions.checkArgument(numThreads > 0);
+    Preconditions.checkArgument(numHits > 0);
+    Preconditions.checkNotNull(env);
+    Preconditions.checkNotNull(model);
+
+    // Take private copies, so that the caller is free to keep using the originals.
+    final Node modelCopy = copyOf(model);
+    final Node expanderCopy = expanderModel == null ? null : copyOf(expanderModel);
+
+    // Build once up front so that configuration errors surface here rather than in a worker.
+    createBuilder(env, modelCopy);
+    createExpander(env, expanderCopy, stopwords);
+
+    this.builders = new ThreadLocal<MRFBuilder>() {
+      @Override
+      protected MRFBuilder initialValue() {
+        try {
+          return createBuilder(env, modelCopy);
+        } catch (ConfigurationException e) {
+          throw new RetrievalException("Unable to create MRFBuilder!", e);
+        }
+      }
+    };
+    this.expanders = new ThreadLocal<MRFExpander>() {
+      @Override
+      protected MRFExpander initialValue() {
+        try {
+          return createExpander(env, expanderCopy, stopwords);
+        } catch (ConfigurationException e) {
+          throw new RetrievalException("Unable to create MRFExpander!", e);
+        }
+      }
+    };
+    this.threadPool = Executors.newFixedThreadPool(numThreads);
+    this.numHits = numHits;
+  }
+
+  private static MRFBuilder createBuilder(RetrievalEnvironment env, Node model)
+      throws ConfigurationException {
+    return MRFBuilder.get(env, copyOf(model));
+  }
+
+  private static MRFExpander createExpander(RetrievalEnvironment env, Node expanderModel,
+      Set<String> stopwords) throws ConfigurationException {
+    if (expanderModel == null) {
+      return null;
+    }
+
+    MRFExpander expander = MRFExpander.getExpander(env, copyOf(expanderModel));
+    if (stopwords != null && stopwords.size() != 0) {
+      expander.setStopwordList(stopwords);
+    }
+    return expander;
+  }
+
+  // Copies a node into a new document of its own. DOM objects aren't safe for concurrent access,
+  // even for reads, and nodes that belong to the same document share state.
+  private static Node copyOf(Node node) throws ConfigurationException {
+    try {
+      Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+      synchronized (node.getOwnerDocument()) {
+        return doc.appendChild(doc.importNode(node, true));
+      }
+    } catch (ParserConfigurationException e) {
+      throw new ConfigurationException(e.getMessage());
+    }
+  }
+
   /**
    * Runs a query asynchronously. Results can be fetched using {@link #getResults}.
    */
@@ -64,8 +182,7 @@ public class ThreadedQueryRunner implements QueryRunner {
     Preconditions.checkNotNull(qid);
     Preconditions.checkNotNull(query);
 
-    Future<Accumulator[]> future = threadPool.submit(new ThreadTask(query, builder,
-        expander, qid, numHits));
+    Future<Accumulator[]> future = threadPool.submit(new ThreadTask(query, qid, numHits));
     queryResults.put(qid, future);
   }
 
@@ -75,8 +192,7 @@ public class ThreadedQueryRunner implements QueryRunner {
   public Accumulator[] runQuery(String[] query) {
     Preconditions.checkNotNull(query);
 
-    Future<Accumulator[]> future = threadPool.submit(new ThreadTask(query, builder,
-        expander, "query", numHits));
+    Future<Accumulator[]> future = threadPool.submit(new ThreadTask(query, "query", numHits));
     Accumulator[] results = null;
     try {
       results = future.get();
@@ -129,16 +245,11 @@ public class ThreadedQueryRunner implements QueryRunner {
   // Thread for running a query. No need to expose implementation.
   private class ThreadTask implements Callable<Accumulator[]> {
     private final String[] query;
-    private final MRFBuilder builder;
-    private final MRFExpander expander;
     private final String qid;
     private final int numHits;
 
-    public ThreadTask(String[] query, MRFBuilder builder, MRFExpander expander, String qid,
-        int numHits) {
+    public ThreadTask(String[] query, String qid, int numHits) {
       this.query = query;
-      this.builder = builder;
-      this.expander = expander;
       this.qid = qid;
       this.numHits = numHits;
     }
@@ -150,6 +261,10 @@ public class ThreadedQueryRunner implements QueryRunner {
 
         startTime = System.currentTimeMillis();
 
+        // Builder and expander private to this thread.
+        MRFBuilder builder = builders.get();
+        MRFExpander expander = expanders.get();
+
         // Build the MRF for this query.
         MarkovRandomField mrf = builder.buildMRF(query);
 
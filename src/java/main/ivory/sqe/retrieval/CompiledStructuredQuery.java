@@ -0,0 +1,319 @@
+package ivory.sqe.retrieval;
+
+import ivory.core.RetrievalEnvironment;
+import ivory.core.data.index.Posting;
+import ivory.core.data.index.PostingsList;
+import ivory.core.data.index.PostingsReader;
+import ivory.core.data.index.ProximityPostingsReaderOrderedWindow;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.common.base.Preconditions;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+/**
+ * A structured query, compiled into a flat array of operators so that documents can be scored
+ * without walking the query tree or allocating per node. Nodes are laid out in post-order (children
+ * before their parent, root last), and each node writes its result into primitive scratch buffers.
+ *
+ * A node evaluates either to a pair of (tf, df) statistics, which is scored with BM25 when it is
+ * combined with others, or to a score. Terms and phrases evaluate to (tf, df); <code>#combine</code>
+ * and <code>#combweight</code> sum the (weighted) scores of their children; <code>#weight</code>
+ * sums the weighted statistics of its children if the first one is a (tf, df) pair, and their
+ * weighted scores otherwise. Children of the other kind are ignored.
+ */
+public class CompiledStructuredQuery {
+  private static final int TERM = 0, OOV = 1, COMBINE = 2, WEIGHT = 3, COMBWEIGHT = 4;
+
+  // BM25 parameters.
+  private static final float K1 = 0.5f;
+  private static final float B = 0.3f;
+
+  private final RetrievalEnvironment env;
+  private final int numDocs;
+  private final float avgDocLen;
+
+  // Nodes, in post-order.
+  private final int numNodes;
+  private final int[] ops;
+  private final boolean[] isTfDf;       // Whether the node evaluates to (tf, df) rather than a score.
+  private final int[] leafs;            // Index of the leaf for TERM nodes.
+  private final int[] childStart, childEnd;
+  private final int[] children;
+  private final float[] childWeights;
+
+  // Leaves, i.e., terms and phrases in the vocabulary.
+  private final int numLeafs;
+  private final PostingsReader[] readers;
+  private final float[] leafDfs;
+  private final boolean[] endOfList;
+  private final int[] lastScoredDocnos;
+  private final Posting curPosting = new Posting();
+
+  // Scratch buffers, one entry per node.
+  private final float[] tfs, dfs, scores;
+
+  public CompiledStructuredQuery(JsonObject query, RetrievalEnvironment env) {
+    this.env = Preconditions.checkNotNull(env);
+    this.numDocs = (int) env.getDocumentCount();
+    this.avgDocLen = env.getCollectionSize() / numDocs;
+
+    Compiler compiler = new Compiler();
+    compiler.compile(Preconditions.checkNotNull(query));
+
+    numNodes = compiler.ops.size();
+    ops = toIntArray(compiler.ops);
+    isTfDf = new boolean[numNodes];
+    for (int i = 0; i < numNodes; i++) {
+      isTfDf[i] = compiler.isTfDf.get(i);
+    }
+    leafs = toIntArray(compiler.leafs);
+    childStart = toIntArray(compiler.childStart);
+    childEnd = toIntArray(compiler.childEnd);
+    children = toIntArray(compiler.children);
+    childWeights = new float[compiler.childWeights.size()];
+    for (int i = 0; i < childWeights.length; i++) {
+      childWeights[i] = compiler.childWeights.get(i);
+    }
+
+    numLeafs = compiler.readers.size();
+    readers = compiler.readers.toArray(new PostingsReader[numLeafs]);
+    leafDfs = new float[numLeafs];
+    for (int i = 0; i < numLeafs; i++) {
+      leafDfs[i] = compiler.leafDfs.get(i);
+    }
+    endOfList = new boolean[numLeafs];
+    lastScoredDocnos = new int[numLeafs];
+
+    tfs = new float[numNodes];
+    dfs = new float[numNodes];
+    scores = new float[numNodes];
+  }
+
+  /**
+   * @return number of operators in the compiled query
+   */
+  public int getNumNodes() {
+    return numNodes;
+  }
+
+  /**
+   * Returns the smallest docno, among the postings of all terms and phrases, that has not been
+   * scored yet, or <code>Integer.MAX_VALUE</code> if there are none left.
+   */
+  public int nextCandidate() {
+    int docno = Integer.MAX_VALUE;
+    for (int i = 0; i < numLeafs; i++) {
+      if (endOfList[i]) {
+        continue;
+      }
+      PostingsReader reader = readers[i];
+      boolean t = true;
+      while (t && (reader.getTf() == 0 || reader.getDocno() == lastScoredDocnos[i])) {
+        t = reader.nextPosting(curPosting);
+      }
+      if (!t) {
+        endOfList[i] = true;
+      } else if (reader.getDocno() < docno) {
+        docno = reader.getDocno();
+      }
+    }
+    return docno;
+  }
+
+  /**
+   * Scores a document. Documents must be scored in increasing docno order.
+   */
+  public float score(int docno) {
+    int docLen = env.getDocumentLength(docno);
+
+    for (int n = 0; n < numNodes; n++) {
+      switch (ops[n]) {
+      case TERM: {
+        int i = leafs[n];
+        // Advance postings reader. Invariant: the reader will always point to the next posting
+        // that has not yet been scored.
+        PostingsReader reader = readers[i];
+        while (!endOfList[i] && reader.getDocno() < docno) {
+          if (!reader.nextPosting(curPosting)) {
+            endOfList[i] = true;
+          }
+        }
+        tfs[n] = docno == reader.getDocno() ? reader.getTf() : 0;
+        dfs[n] = leafDfs[i];
+        lastScoredDocnos[i] = docno;
+        break;
+      }
+      case OOV:
+        tfs[n] = 0;
+        dfs[n] = 0;
+        break;
+      case COMBINE: {
+        float score = 0f;
+        for (int c = childStart[n]; c < childEnd[n]; c++) {
+          score += getScore(children[c], docLen);
+        }
+        scores[n] = score;
+        break;
+      }
+      case WEIGHT:
+        if (isTfDf[n]) {
+          // tf,df = sum{weight_i * (tf_i,df_i)}
+          float tf = 0f, df = 0f;
+          for (int c = childStart[n]; c < childEnd[n]; c++) {
+            int child = children[c];
+            if (isTfDf[child]) {
+              tf += tfs[child] * childWeights[c];
+              df += dfs[child] * childWeights[c];
+            }
+          }
+          tfs[n] = tf;
+          dfs[n] = df;
+        } else {
+          float score = 0f;
+          for (int c = childStart[n]; c < childEnd[n]; c++) {
+            int child = children[c];
+            if (!isTfDf[child]) {
+              score += scores[child] * childWeights[c];
+            }
+          }
+          scores[n] = score;
+        }
+        break;
+      case COMBWEIGHT: {
+        float score = 0f;
+        for (int c = childStart[n]; c < childEnd[n]; c++) {
+          score += getScore(children[c], docLen) * childWeights[c];
+        }
+        scores[n] = score;
+        break;
+      }
+      }
+    }
+
+    return getScore(numNodes - 1, docLen);
+  }
+
+  private float getScore(int n, int docLen) {
+    return isTfDf[n] ? bm25(tfs[n], dfs[n], docLen) : scores[n];
+  }
+
+  private float bm25(float tf, float df, int docLen) {
+    float idf = (float) Math.log((numDocs - df + 0.5f) / (df + 0.5f));
+    return ((K1 + 1.0f) * tf) / (K1 * ((1.0f - B) + B * docLen / avgDocLen) + tf) * idf;
+  }
+
+  private static int[] toIntArray(List<Integer> list) {
+    int[] array = new int[list.size()];
+    for (int i = 0; i < array.length; i++) {
+      array[i] = list.get(i);
+    }
+    return array;
+  }
+
+  /**
+   * Lays out the query tree in post-order.
+   */
+  private class Compiler {
+    final List<Integer> ops = new ArrayList<Integer>();
+    final List<Boolean> isTfDf = new ArrayList<Boolean>();
+    final List<Integer> leafs = new ArrayList<Integer>();
+    final List<Integer> childStart = new ArrayList<Integer>();
+    final List<Integer> childEnd = new ArrayList<Integer>();
+    final List<Integer> children = new ArrayList<Integer>();
+    final List<Float> childWeights = new ArrayList<Float>();
+    final List<PostingsReader> readers = new ArrayList<PostingsReader>();
+    final List<Float> leafDfs = new ArrayList<Float>();
+
+    int compile(JsonElement element) {
+      if (element.isJsonPrimitive()) {
+        return compileLeaf(element.getAsString());
+      }
+
+      JsonObject query = element.getAsJsonObject();
+      String operator = query.entrySet().iterator().next().getKey();
+      JsonArray values = query.getAsJsonArray(operator);
+
+      int op;
+      if (operator.equals("#combine")) {
+        op = COMBINE;
+      } else if (operator.equals("#weight")) {
+        op = WEIGHT;
+      } else if (operator.equals("#combweight")) {
+        op = COMBWEIGHT;
+      } else {
+        throw new RuntimeException("Unknown operator: " + operator);
+      }
+
+      // In #weight or #combweight structure, even-numbered indices correspond to weights,
+      // odd-numbered indices correspond to terms/phrases.
+      int iterStart = 0, iterStep = 1;
+      if (op != COMBINE) {
+        iterStart = 1;
+        iterStep = 2;
+      }
+      List<Integer> nodes = new ArrayList<Integer>();
+      List<Float> weights = new ArrayList<Float>();
+      for (int i = iterStart; i < values.size(); i += iterStep) {
+        nodes.add(compile(values.get(i)));
+        weights.add(op == COMBINE ? 1.0f : (float) values.get(i - 1).getAsDouble());
+      }
+
+      childStart.add(children.size());
+      children.addAll(nodes);
+      childWeights.addAll(weights);
+      childEnd.add(children.size());
+      // #weight takes the kind of its first child.
+      return addNode(op, op == WEIGHT && !nodes.isEmpty() && isTfDf.get(nodes.get(0)), -1);
+    }
+
+    int compileLeaf(String termOrPhrase) {
+      String[] terms = termOrPhrase.split("\\s+");
+      PostingsReader reader;
+      float df;
+      if (terms.length > 1) {
+        PostingsReader[] prs = new PostingsReader[terms.length];
+        for (int i = 0; i < terms.length; i++) {
+          PostingsList pl = env.getPostingsList(terms[i]);
+          // If any of the tokens is OOV, then the phrase is considered OOV.
+          if (pl == null) {
+            return addOOV();
+          }
+          prs[i] = pl.getPostingsReader();
+        }
+        reader = new ProximityPostingsReaderOrderedWindow(prs, 2);
+        reader.nextPosting(curPosting);
+        df = env.getDefaultDf();
+      } else {
+        PostingsList pl = env.getPostingsList(termOrPhrase);
+        if (pl == null) {
+          return addOOV();
+        }
+        reader = pl.getPostingsReader();
+        df = pl.getDf();
+      }
+
+      readers.add(reader);
+      leafDfs.add(df);
+      return addNode(TERM, true, readers.size() - 1);
+    }
+
+    int addOOV() {
+      return addNode(OOV, true, -1);
+    }
+
+    int addNode(int op, boolean tfdf, int leaf) {
+      if (op == TERM || op == OOV) {
+        childStart.add(children.size());
+        childEnd.add(children.size());
+      }
+      ops.add(op);
+      isTfDf.add(tfdf);
+      leafs.add(leaf);
+      return ops.size() - 1;
+    }
+  }
+}
@@ -2,7 +2,6 @@ package ivory.sqe.retrieval;
 
 import ivory.core.ConfigurationException;
 import ivory.core.RetrievalEnvironment;
-import ivory.smrf.model.GlobalEvidence;
 import ivory.smrf.retrieval.Accumulator;
 
 import java.io.IOException;
@@ -32,28 +31,18 @@ public class StructuredQueryRanker {
   }
 
   public Accumulator[] rank(String qid, JsonObject query, int queryLength) {
-    GlobalEvidence globalEvidence = new GlobalEvidence(env.getDocumentCount(), env.getCollectionSize(), queryLength);
-
-    PostingsReaderWrapper structureReader;
-    structureReader = new PostingsReaderWrapper(query, env, globalEvidence);
+    CompiledStructuredQuery compiledQuery = new CompiledStructuredQuery(query, env);
 
     sortedAccumulators.clear();
     Accumulator a = new Accumulator(0, 0.0f);
 
-    // NodeWeight that must be achieved to enter result set.
+    // Score that must be achieved to enter result set.
     double scoreThreshold = Double.NEGATIVE_INFINITY;
 
-    int docno = Integer.MAX_VALUE;
-    int nextDocno = structureReader.getNextCandidate(docno);
-    if(nextDocno < docno){
-      docno = nextDocno;
-    }
+    int docno = compiledQuery.nextCandidate();
     while (docno < Integer.MAX_VALUE) {
-      float score = 0.0f;
-
       // Document-at-a-time scoring.
-      NodeWeight sc = structureReader.computeScore(docno);
-      score = sc.getScore();
+      float score = compiledQuery.score(docno);
 
       // Keep track of numResults best accumulators.
       if (score > scoreThreshold) {
@@ -70,11 +59,7 @@ public class StructuredQueryRanker {
       }     
 
       // Advance to next document
-      docno = Integer.MAX_VALUE;
-      nextDocno = structureReader.getNextCandidate(docno);
-      if(nextDocno < docno){
-        docno = nextDocno;
-      }
+      docno = compiledQuery.nextCandidate();
     }
 
     // Grab the accumulators off the stack, in (reverse) order.
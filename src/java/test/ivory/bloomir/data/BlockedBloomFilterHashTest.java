@@ -0,0 +1,115 @@
+package ivory.bloomir.data;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.BitSet;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BlockedBloomFilterHashTest {
+  private static final int[] members = new int[]{
+    10, 34, 3, 900, 832, 17, 436
+  };
+
+  @Test public void testOneHash() throws Exception {
+    BlockedBloomFilterHash bloom = new BlockedBloomFilterHash(members.length * 8, 1);
+    for(int i: members) {
+      bloom.add(i);
+    }
+
+    for(int i: members) {
+      assertTrue(bloom.membershipTest(i));
+    }
+  }
+
+  @Test public void testThreeHash() throws Exception {
+    BlockedBloomFilterHash bloom = new BlockedBloomFilterHash(members.length * 8, 3);
+    for(int i: members) {
+      bloom.add(i);
+    }
+
+    for(int i: members) {
+      assertTrue(bloom.membershipTest(i));
+    }
+  }
+
+  @Test public void testManyBlocks() throws Exception {
+    // Every third docid, 8 bits per element: 16 blocks.
+    int n = 1000;
+    BlockedBloomFilterHash bloom = new BlockedBloomFilterHash(n * 8, 3);
+    for(int i = 0; i < n; i++) {
+      bloom.add(i * 3);
+    }
+
+    int falsePositives = 0;
+    for(int i = 0; i < n * 3; i++) {
+      if(i % 3 == 0) {
+        assertTrue(bloom.membershipTest(i));
+      } else if(bloom.membershipTest(i)) {
+        falsePositives++;
+      }
+    }
+    // The expected false positive rate is about 3%.
+    assertTrue(falsePositives < n * 2 / 10);
+  }
+
+  @Test public void testBatch() throws Exception {
+    BlockedBloomFilterHash bloom = new BlockedBloomFilterHash(2000 * 8, 2);
+    for(int i = 0; i < 2000; i++) {
+      bloom.add(i * 2);
+    }
+
+    int[] keys = new int[1000];
+    for(int i = 0; i < keys.length; i++) {
+      keys[i] = i * 7;
+    }
+
+    // Only the first n keys with their bits set are tested.
+    int n = 900;
+    BitSet out = new BitSet();
+    out.set(0, keys.length);
+    out.clear(4);
+    bloom.membershipTest(keys, n, out);
+
+    for(int i = 0; i < keys.length; i++) {
+      if(i == 4) {
+        assertTrue(!out.get(i));
+      } else if(i >= n) {
+        assertTrue(out.get(i));
+      } else {
+        assertEquals(bloom.membershipTest(keys[i]), out.get(i));
+      }
+    }
+  }
+
+  @Test public void testIO() throws Exception {
+    BlockedBloomFilterHash bloom = new BlockedBloomFilterHash(members.length * 160, 3);
+    for(int i: members) {
+      bloom.add(i);
+    }
+
+    ByteArrayOutputStream byteOut = new ByteArrayOutputStream();
+    DataOutputStream dataOut = new DataOutputStream(byteOut);
+    bloom.write(dataOut);
+    dataOut.close();
+
+    ByteArrayInputStream byteIn = new ByteArrayInputStream(byteOut.toByteArray());
+    DataInputStream dataIn = new DataInputStream(byteIn);
+    BlockedBloomFilterHash bloomCopy = BlockedBloomFilterHash.readInstance(dataIn);
+
+    assertEquals(bloom, bloomCopy);
+    for(int i: members) {
+      assertTrue(bloomCopy.membershipTest(i));
+    }
+  }
+
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(BlockedBloomFilterHashTest.class);
+  }
+}
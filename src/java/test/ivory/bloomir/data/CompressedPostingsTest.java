@@ -70,6 +70,39 @@ public class CompressedPostingsTest {
     }
   }
 
+  @Test
+  public void testBlockHeaders() throws Exception {
+    CompressedPostings postings = CompressedPostings.newInstance(largeDataset);
+    int blockSize = CompressedPostings.getBlockSize();
+    int nbBlocks = postings.getBlockCount();
+
+    for (int i = 0; i < nbBlocks; i++) {
+      int last = Math.min((i + 1) * blockSize, largeDataset.length) - 1;
+      assertEquals(largeDataset[last], postings.getLastDocno(i));
+    }
+
+    // Every docid is found in its own block, from any earlier starting block.
+    for (int i = 0; i < largeDataset.length; i++) {
+      int block = i / blockSize;
+      assertEquals(block, postings.findBlock(largeDataset[i], 0));
+      assertEquals(block, postings.findBlock(largeDataset[i], block / 2));
+      assertEquals(block, postings.findBlock(largeDataset[i], block));
+      // Docids that fall in a gap belong to the block holding the next docid.
+      assertEquals(block, postings.findBlock(largeDataset[i] - 1, block));
+    }
+
+    assertEquals(0, postings.findBlock(0, 0));
+    assertEquals(nbBlocks - 1, postings.findBlock(1, nbBlocks - 1));
+    assertEquals(nbBlocks, postings.findBlock(largeDataset[largeDataset.length - 1] + 1, 0));
+    assertEquals(nbBlocks, postings.findBlock(0, nbBlocks));
+
+    postings = CompressedPostings.newInstance(smallDataset);
+    assertEquals(1, postings.getBlockCount());
+    assertEquals(5643, postings.getLastDocno(0));
+    assertEquals(0, postings.findBlock(5643, 0));
+    assertEquals(1, postings.findBlock(5644, 0));
+  }
+
   @Test
   public void testIO() throws Exception {
     CompressedPostings postings = CompressedPostings.newInstance(largeDataset);
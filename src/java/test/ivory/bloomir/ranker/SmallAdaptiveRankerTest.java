@@ -0,0 +1,134 @@
+package ivory.bloomir.ranker;
+
+import static org.junit.Assert.assertArrayEquals;
+import ivory.bloomir.data.CompressedPostings;
+import ivory.bloomir.data.CompressedPostingsIO;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Random;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class SmallAdaptiveRankerTest {
+  private static final String TMP_POSTINGS = "SmallAdaptiveRankerTest";
+  private static final int NUM_DOCS = 20000;
+
+  // Postings lists of all terms, indexed by term id, from dense to sparse so
+  // that intersections both skip whole blocks and search within them.
+  private static final int[] SIZES = new int[] {
+    0, 15000, 8000, 3000, 1000, 300, 129, 128, 40, 5, 1
+  };
+  private static int[][] lists;
+  private static SmallAdaptiveRanker ranker;
+
+  @BeforeClass public static void setUp() throws Exception {
+    Random r = new Random(42);
+    lists = new int[SIZES.length][];
+    for(int t = 1; t < SIZES.length; t++) {
+      BitSet docs = new BitSet();
+      while(docs.cardinality() < SIZES[t]) {
+        docs.set(1 + r.nextInt(NUM_DOCS));
+      }
+      lists[t] = new int[SIZES[t]];
+      for(int i = 0, d = docs.nextSetBit(0); d >= 0; i++, d = docs.nextSetBit(d + 1)) {
+        lists[t][i] = d;
+      }
+    }
+
+    // Write the postings the way GenerateCompressedPostings does.
+    FileSystem fs = FileSystem.getLocal(new Configuration());
+    FSDataOutputStream out = fs.create(new Path(TMP_POSTINGS + "/" + CompressedPostingsIO.LENGTH_FILE));
+    out.writeInt(SIZES.length - 1);
+    out.close();
+
+    out = fs.create(new Path(TMP_POSTINGS + "/part-00000"));
+    for(int t = 1; t < SIZES.length; t++) {
+      out.writeInt(t);
+      out.writeInt(lists[t].length);
+      CompressedPostings.newInstance(lists[t]).write(out);
+    }
+    out.close();
+
+    ranker = new SmallAdaptiveRanker(TMP_POSTINGS, fs);
+  }
+
+  @AfterClass public static void tearDown() throws IOException {
+    FileSystem.getLocal(new Configuration()).delete(new Path(TMP_POSTINGS), true);
+  }
+
+  // Intersects the uncompressed lists, and keeps the first hits documents.
+  private static int[] intersect(int[] query, int hits) {
+    BitSet docs = new BitSet();
+    for(int d : lists[query[0]]) {
+      docs.set(d);
+    }
+    for(int i = 1; i < query.length; i++) {
+      BitSet other = new BitSet();
+      for(int d : lists[query[i]]) {
+        other.set(d);
+      }
+      docs.and(other);
+    }
+
+    int[] results = new int[hits];
+    for(int i = 0, d = docs.nextSetBit(0); d >= 0 && i < hits; i++, d = docs.nextSetBit(d + 1)) {
+      results[i] = d;
+    }
+    return results;
+  }
+
+  private static void verify(int[] query, int hits) throws IOException {
+    assertArrayEquals(Arrays.toString(query) + ", " + hits,
+                      intersect(query, hits), ranker.rank(query, hits));
+  }
+
+  @Test public void testSingleTerms() throws IOException {
+    for(int t = 1; t < SIZES.length; t++) {
+      verify(new int[] {t}, 10);
+      verify(new int[] {t}, 200);
+    }
+  }
+
+  @Test public void testPairs() throws IOException {
+    for(int t1 = 1; t1 < SIZES.length; t1++) {
+      for(int t2 = 1; t2 < SIZES.length; t2++) {
+        if(t1 != t2) {
+          verify(new int[] {t1, t2}, 10);
+          verify(new int[] {t1, t2}, NUM_DOCS);
+        }
+      }
+    }
+  }
+
+  @Test public void testRandomQueries() throws IOException {
+    Random r = new Random(7);
+    // The ranker reuses its cursors from one query to the next.
+    for(int trial = 0; trial < 500; trial++) {
+      int[] query = new int[2 + r.nextInt(3)];
+      BitSet terms = new BitSet();
+      for(int i = 0; i < query.length; i++) {
+        int t;
+        do {
+          t = 1 + r.nextInt(SIZES.length - 1);
+        } while(terms.get(t));
+        terms.set(t);
+        query[i] = t;
+      }
+      verify(query, 1 + r.nextInt(2000));
+    }
+  }
+
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(SmallAdaptiveRankerTest.class);
+  }
+}
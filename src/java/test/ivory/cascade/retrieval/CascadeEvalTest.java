@@ -0,0 +1,191 @@
+/*
+ * Ivory: A Hadoop toolkit for web-scale information retrieval
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package ivory.cascade.retrieval;
+
+import static org.junit.Assert.assertEquals;
+import ivory.core.RetrievalException;
+import ivory.smrf.retrieval.Accumulator;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Random;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+public class CascadeEvalTest {
+
+  @Test
+  public void testWindowCounts() {
+    Random r = new Random(42);
+    for (int trial = 0; trial < 10000; trial++) {
+      int[] positions1 = randomPositions(r, 1 + r.nextInt(10), 30);
+      int[] positions2 = trial % 10 == 0 ? positions1 : randomPositions(r, 1 + r.nextInt(10), 30);
+      int size = 1 + r.nextInt(8);
+
+      assertEquals(countMatches(positions1, positions2, size, true),
+          CascadeEval.countOrderedWindows(positions1, positions1.length, positions2,
+              positions2.length, size));
+      assertEquals(countMatches(positions1, positions2, size, false),
+          CascadeEval.countUnorderedWindows(positions1, positions1.length, positions2,
+              positions2.length, size));
+    }
+  }
+
+  @Test
+  public void testSortByScore() {
+    Random r = new Random(42);
+    for (int trial = 0; trial < 100; trial++) {
+      int n = r.nextInt(500);
+      float[] scores = new float[n];
+      int[] docnos = new int[n];
+      int[] slots = new int[n];
+      Accumulator[] expected = new Accumulator[n];
+      for (int i = 0; i < n; i++) {
+        // Few distinct scores, so that there are lots of ties.
+        scores[i] = r.nextInt(20) / 4.0f;
+        docnos[i] = 1 + 3 * i;
+        slots[i] = i;
+        expected[i] = new Accumulator(docnos[i], scores[i]);
+      }
+      Collections.shuffle(Arrays.asList(expected), r);
+      for (int i = 0; i < n; i++) {
+        scores[i] = expected[i].score;
+        docnos[i] = expected[i].docno;
+        slots[i] = (docnos[i] - 1) / 3;
+      }
+      Arrays.sort(expected, Collections.reverseOrder());
+
+      CascadeEval.sortByScore(scores, docnos, slots, 0, n);
+      for (int i = 0; i < n; i++) {
+        assertEquals(expected[i].docno, docnos[i]);
+        assertEquals(expected[i].score, scores[i], 0.0f);
+        assertEquals((docnos[i] - 1) / 3, slots[i]);
+      }
+    }
+  }
+
+  @Test
+  public void testPruners() {
+    float[] scores = { 10.0f, 8.0f, 6.0f, 4.0f, 2.0f, 0.0f };
+
+    // Threshold at 5.0.
+    assertEquals(3, CascadePruner.SCORE.getRetainSize(scores, 6, 0.5f, 0.0f, false));
+    // Threshold at 6.0, which is kept only with ties.
+    assertEquals(2, CascadePruner.SCORE.getRetainSize(scores, 6, 0.6f, 0.0f, false));
+    assertEquals(3, CascadePruner.SCORE.getRetainSize(scores, 6, 0.6f, 0.0f, true));
+    // Threshold at 0.5 * 10.0 + 0.5 * 5.0 = 7.5.
+    assertEquals(2, CascadePruner.MEAN_MAX.getRetainSize(scores, 6, 0.5f, 5.0f, false));
+    // Drops the bottom half, regardless of scores.
+    assertEquals(3, CascadePruner.RANK.getRetainSize(scores, 6, 0.5f, 0.0f, false));
+    assertEquals(6, CascadePruner.RANK.getRetainSize(scores, 6, 0.0f, 0.0f, false));
+
+    assertEquals(0, CascadePruner.SCORE.getRetainSize(scores, 0, 0.5f, 0.0f, false));
+    assertEquals(0, CascadePruner.MEAN_MAX.getRetainSize(scores, 0, 0.5f, 0.0f, false));
+
+    assertEquals(CascadePruner.MEAN_MAX, CascadePruner.forName("mean-max"));
+    for (CascadePruner pruner : CascadePruner.values()) {
+      assertEquals(pruner, CascadePruner.forName(pruner.getName()));
+    }
+  }
+
+  @Test(expected = RetrievalException.class)
+  public void testUnknownPruner() {
+    CascadePruner.forName("foo");
+  }
+
+  // Pruning by z-score was never implemented, so models that ask for it must fail.
+  @Test(expected = RetrievalException.class)
+  public void testZScorePruner() {
+    CascadePruner.forName("z-score");
+  }
+
+  private static int[] randomPositions(Random r, int n, int max) {
+    BitSet set = new BitSet();
+    while (set.cardinality() < n) {
+      set.set(1 + r.nextInt(max));
+    }
+    int[] positions = new int[n];
+    for (int i = 0, p = set.nextSetBit(0); p >= 0; i++, p = set.nextSetBit(p + 1)) {
+      positions[i] = p;
+    }
+    return positions;
+  }
+
+  // The quadratic algorithm that the cascade used to count windows with, over the merged positions
+  // of the two terms.
+  private static int countMatches(int[] positions1, int[] positions2, int size, boolean ordered) {
+    int length = positions1.length + positions2.length;
+    int[] positions = new int[length];
+    int[] ids = new int[length];
+    int posA = 0;
+    int posB = 0;
+    for (int i = 0; i < length; i++) {
+      if (posB == positions2.length
+          || posA < positions1.length && positions1[posA] <= positions2[posB]) {
+        positions[i] = positions1[posA++];
+        ids[i] = 0;
+      } else {
+        positions[i] = positions2[posB++];
+        ids[i] = 1;
+      }
+    }
+
+    int matches = 0;
+    BitSet matchedIds = new BitSet(2);
+    for (int i = 0; i < length; i++) {
+      matchedIds.clear();
+      matchedIds.set(ids[i]);
+      int matchedIdCounts = 1;
+      int lastMatchedId = ids[i];
+      int lastMatchedPos = positions[i];
+      int maxGap = 0;
+      boolean inOrder = true;
+
+      for (int j = i + 1; j < length; j++) {
+        if (!matchedIds.get(ids[j])) {
+          matchedIds.set(ids[j]);
+          matchedIdCounts++;
+          if (ids[j] < lastMatchedId) {
+            inOrder = false;
+          }
+          if (positions[j] - lastMatchedPos > maxGap) {
+            maxGap = positions[j] - lastMatchedPos;
+          }
+        }
+        if (ordered) {
+          if (maxGap > size || !inOrder) {
+            break;
+          }
+        } else if (positions[j] - positions[i] + 1 > size) {
+          break;
+        }
+        if (matchedIdCounts == 2) {
+          matches++;
+          break;
+        }
+      }
+    }
+    return matches;
+  }
+
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(CascadeEvalTest.class);
+  }
+}
@@ -0,0 +1,126 @@
+/*
+ * Ivory: A Hadoop toolkit for web-scale information retrieval
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package ivory.core.compression;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import com.kamikaze.pfordelta.PForDelta;
+
+public class PForDeltaBlockDecoderTest {
+  private static final int[] BITS = { 0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 16, 20, 28 };
+  private static final int[] SIZES = { 1, 5, 31, 32, 33, 64, 100, 127, 128 };
+
+  private static int[] randomValues(Random r, int n, int bits, boolean exceptions) {
+    int[] values = new int[n];
+    for (int i = 0; i < n; i++) {
+      values[i] = bits == 0 ? 0 : r.nextInt(1 << bits);
+      if (exceptions && r.nextInt(10) == 0) {
+        // Simple16 codes the high bits of exceptions, so they can have at most 28 of them.
+        values[i] = r.nextInt(1 << Math.min(30, bits + 28));
+      }
+    }
+    return values;
+  }
+
+  private static int[] kamikazeDecode(int[] block, int n) {
+    int[] out = new int[n];
+    PForDelta.decompressOneBlock(out, block, n);
+    return out;
+  }
+
+  @Test
+  public void testEveryBitWidth() {
+    Random r = new Random(12345);
+    PForDeltaBlockDecoder decoder = new PForDeltaBlockDecoder();
+
+    for (int bits : BITS) {
+      for (int n : SIZES) {
+        for (boolean exceptions : new boolean[] { false, true }) {
+          int[] values = randomValues(r, n, bits, exceptions);
+          int[] block = PForDelta.compressOneBlock(values, bits, n);
+
+          int[] out = new int[n];
+          decoder.decode(out, block, n);
+          assertArrayEquals("bits=" + bits + ", n=" + n, values, out);
+          assertArrayEquals(kamikazeDecode(block, n), out);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testOptimizedBlocks() {
+    Random r = new Random(54321);
+    PForDeltaBlockDecoder decoder = new PForDeltaBlockDecoder();
+
+    // Let kamikaze pick the width, as the postings lists do.
+    for (int trial = 0; trial < 500; trial++) {
+      int n = SIZES[r.nextInt(SIZES.length)];
+      int[] values = randomValues(r, n, r.nextInt(20), r.nextBoolean());
+      int[] block = PForDelta.compressOneBlockOpt(values, n);
+
+      // Leftover values from a previous block must not leak into this one.
+      int[] out = new int[128];
+      Arrays.fill(out, -1);
+      decoder.decode(out, block, n);
+      assertArrayEquals(values, Arrays.copyOf(out, n));
+    }
+  }
+
+  @Test
+  public void testDecodeGaps() {
+    int[] docnos = { 3, 10, 11, 47, 1000, 1001, 250000 };
+    int[] gaps = new int[docnos.length];
+    gaps[0] = docnos[0];
+    for (int i = 1; i < docnos.length; i++) {
+      gaps[i] = docnos[i] - docnos[i - 1];
+    }
+
+    int[] out = new int[docnos.length];
+    new PForDeltaBlockDecoder().decodeGaps(out, PForDelta.compressOneBlockOpt(gaps, gaps.length),
+        gaps.length);
+    assertArrayEquals(docnos, out);
+  }
+
+  @Test
+  public void testManyExceptions() {
+    // More exceptions than the decoder starts out with room for.
+    int n = 1000;
+    int[] values = new int[n];
+    for (int i = 0; i < n; i++) {
+      values[i] = i % 2 == 0 ? 1 : 1 << 20;
+    }
+    int[] block = PForDelta.compressOneBlock(values, 1, n);
+
+    int[] out = new int[n];
+    new PForDeltaBlockDecoder().decode(out, block, n);
+    assertArrayEquals(values, out);
+    assertEquals(1 << 20, out[n - 1]);
+  }
+
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(PForDeltaBlockDecoderTest.class);
+  }
+}
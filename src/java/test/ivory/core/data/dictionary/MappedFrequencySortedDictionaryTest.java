@@ -0,0 +1,128 @@
+/*
+ * Ivory: A Hadoop toolkit for web-scale information retrieval
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package ivory.core.data.dictionary;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.util.Iterator;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.junit.Test;
+
+public class MappedFrequencySortedDictionaryTest {
+  private static final String TMP_FILENAME = "MappedFrequencySortedDictionaryTest.dat";
+
+  private static MappedFrequencySortedDictionary create(String[] terms, FileSystem fs)
+      throws IOException {
+    FSDataOutputStream out = fs.create(new Path(TMP_FILENAME), true);
+    MappedFrequencySortedDictionary.write(terms, out);
+    out.close();
+
+    return new MappedFrequencySortedDictionary(new Path(TMP_FILENAME), fs);
+  }
+
+  // Convert the actual dictionary for the TREC corpus and check every term.
+  @Test
+  public void testTrec() throws IOException {
+    FileSystem fs = FileSystem.getLocal(new Configuration());
+    DefaultFrequencySortedDictionary original = new DefaultFrequencySortedDictionary(
+        new Path("etc/trec-index-terms.dat"), new Path("etc/trec-index-termids.dat"),
+        new Path("etc/trec-index-termid-mapping.dat"), fs);
+
+    String[] terms = new String[original.size()];
+    for (int i = 0; i < terms.length; i++) {
+      terms[i] = original.getTerm(i + 1);
+    }
+
+    MappedFrequencySortedDictionary dictionary = create(terms, fs);
+    fs.delete(new Path(TMP_FILENAME), true);
+
+    assertEquals(312232, dictionary.size());
+    assertEquals("page", dictionary.getTerm(1));
+    assertEquals("nikaan", dictionary.getTerm(100000));
+    assertEquals(1, dictionary.getId("page"));
+    assertEquals(100000, dictionary.getId("nikaan"));
+
+    for (int id = 1; id <= terms.length; id++) {
+      assertEquals(terms[id - 1], dictionary.getTerm(id));
+      assertEquals(id, dictionary.getId(terms[id - 1]));
+    }
+
+    assertNull(dictionary.getTerm(0));
+    assertNull(dictionary.getTerm(312233));
+    assertEquals(-1, dictionary.getId("thisisnotaterm"));
+    assertEquals(-1, dictionary.getId("page "));
+    assertEquals(-1, dictionary.getId(""));
+
+    int cnt = 0;
+    Iterator<String> iter = dictionary.iterator();
+    while (iter.hasNext()) {
+      assertEquals(terms[cnt++], iter.next());
+    }
+    assertEquals(terms.length, cnt);
+  }
+
+  @Test
+  public void testSmall() throws IOException {
+    FileSystem fs = FileSystem.getLocal(new Configuration());
+
+    // Non-ASCII terms, terms that are prefixes of each other, and terms long enough to need more
+    // than one byte for their lengths.
+    StringBuilder longTerm = new StringBuilder();
+    for (int i = 0; i < 300; i++) {
+      longTerm.append((char) ('a' + i % 26));
+    }
+    String[] terms = { "b", "a", "ab", "abc", "über", "übers", "日本", "日本語", longTerm.toString(),
+        longTerm.toString() + "z", "" };
+
+    MappedFrequencySortedDictionary dictionary = create(terms, fs);
+    fs.delete(new Path(TMP_FILENAME), true);
+
+    assertEquals(terms.length, dictionary.size());
+    for (int id = 1; id <= terms.length; id++) {
+      assertEquals(terms[id - 1], dictionary.getTerm(id));
+      assertEquals(id, dictionary.getId(terms[id - 1]));
+    }
+    assertEquals(-1, dictionary.getId("abcd"));
+    assertEquals(-1, dictionary.getId("日"));
+  }
+
+  @Test
+  public void testEmpty() throws IOException {
+    FileSystem fs = FileSystem.getLocal(new Configuration());
+
+    MappedFrequencySortedDictionary dictionary = create(new String[0], fs);
+    fs.delete(new Path(TMP_FILENAME), true);
+
+    assertEquals(0, dictionary.size());
+    assertEquals(-1, dictionary.getId("a"));
+    assertNull(dictionary.getTerm(1));
+    assertFalse(dictionary.iterator().hasNext());
+  }
+
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(MappedFrequencySortedDictionaryTest.class);
+  }
+}
@@ -0,0 +1,181 @@
+/*
+ * Ivory: A Hadoop toolkit for web-scale information retrieval
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package ivory.core.data.document;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Maps;
+
+public class IntDocVectorsForwardIndexTest {
+  private static final String TMP_INDEX = "IntDocVectorsForwardIndexTest";
+  private static final int NUM_DOCS = 200;
+
+  private FileSystem fs;
+
+  // Odd docnos go into the first part file and even docnos into the second. Each doc vector holds
+  // a single term, whose id is the docno, at position (docno % 7) + 1.
+  @Before
+  public void setUp() throws IOException {
+    fs = FileSystem.getLocal(new Configuration());
+    long[] positions = new long[NUM_DOCS];
+
+    for (int fileNo = 0; fileNo < 2; fileNo++) {
+      SequenceFile.Writer writer = SequenceFile.createWriter(fs.getConf(),
+          SequenceFile.Writer.file(new Path(TMP_INDEX + "/int-doc-vectors/part-m-0000" + fileNo)),
+          SequenceFile.Writer.keyClass(IntWritable.class),
+          SequenceFile.Writer.valueClass(LazyIntDocVector.class));
+      for (int docno = fileNo + 1; docno <= NUM_DOCS; docno += 2) {
+        TreeMap<Integer, int[]> terms = Maps.newTreeMap();
+        terms.put(docno, new int[] { docno % 7 + 1 });
+        positions[docno - 1] = fileNo * IntDocVectorsForwardIndex.BigNumber + writer.getLength();
+        writer.append(new IntWritable(docno), new LazyIntDocVector(terms));
+      }
+      writer.close();
+    }
+
+    FSDataOutputStream out = fs.create(new Path(TMP_INDEX + "/int-doc-vectors-forward-index.dat"));
+    out.writeInt(0);
+    out.writeInt(NUM_DOCS);
+    for (long pos : positions) {
+      out.writeLong(pos);
+    }
+    out.close();
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    fs.delete(new Path(TMP_INDEX), true);
+  }
+
+  private static void verify(int docno, IntDocVector vector) throws IOException {
+    IntDocVector.Reader reader = vector.getReader();
+    assertEquals(1, reader.getNumberOfTerms());
+    assertEquals(docno, reader.nextTerm());
+    assertEquals(docno % 7 + 1, reader.getPositions()[0]);
+  }
+
+  @Test
+  public void testBatch() throws IOException {
+    IntDocVectorsForwardIndex index = new IntDocVectorsForwardIndex(TMP_INDEX, fs);
+
+    for (int docno = 1; docno <= NUM_DOCS; docno++) {
+      verify(docno, index.getDocVector(docno));
+    }
+
+    // Out of order, across both files, with a duplicate and adjacent records.
+    int[] docnos = { 150, 3, 200, 1, 2, 3, 99, 100, 101, 4 };
+    IntDocVector[] vectors = index.getDocVectors(docnos, new IntDocVector[docnos.length]);
+    assertEquals(docnos.length, vectors.length);
+    for (int i = 0; i < docnos.length; i++) {
+      verify(docnos[i], vectors[i]);
+    }
+
+    // Instances are reused on the next batch.
+    IntDocVector[] reused = vectors.clone();
+    int[] others = { 7, 8, 9, 10, 11, 12, 13, 14, 15, 16 };
+    assertSame(vectors, index.getDocVectors(others, vectors));
+    for (int i = 0; i < others.length; i++) {
+      assertSame(reused[i], vectors[i]);
+      verify(others[i], vectors[i]);
+    }
+  }
+
+  @Test
+  public void testCache() throws IOException {
+    IntDocVectorsForwardIndex index = new IntDocVectorsForwardIndex(TMP_INDEX, fs);
+    index.setCacheSize(4);
+
+    int[] docnos = { 40, 10, 20, 30, 50 };
+    IntDocVector[] vectors = index.getDocVectors(docnos, new IntDocVector[docnos.length]);
+    for (int i = 0; i < docnos.length; i++) {
+      verify(docnos[i], vectors[i]);
+    }
+
+    // With the doc vectors gone, the four most recently read vectors still come from the cache.
+    // Closing the index makes sure that the open part files can't serve them either.
+    index.close();
+    fs.delete(new Path(TMP_INDEX + "/int-doc-vectors"), true);
+    int[] cached = { 50, 40, 30, 20 };
+    vectors = index.getDocVectors(cached, vectors);
+    for (int i = 0; i < cached.length; i++) {
+      verify(cached[i], vectors[i]);
+    }
+  }
+
+  @Test
+  public void testConcurrentBatches() throws Exception {
+    final IntDocVectorsForwardIndex index = new IntDocVectorsForwardIndex(TMP_INDEX, fs);
+    final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+
+    // Threads share the open part files, and read their batches interleaved.
+    Thread[] threads = new Thread[4];
+    for (int t = 0; t < threads.length; t++) {
+      final Random r = new Random(t);
+      threads[t] = new Thread() {
+        @Override
+        public void run() {
+          try {
+            IntDocVector[] vectors = new IntDocVector[10];
+            for (int iter = 0; iter < 200; iter++) {
+              int[] docnos = new int[1 + r.nextInt(vectors.length)];
+              for (int i = 0; i < docnos.length; i++) {
+                docnos[i] = 1 + r.nextInt(NUM_DOCS);
+              }
+              index.getDocVectors(docnos, vectors);
+              for (int i = 0; i < docnos.length; i++) {
+                verify(docnos[i], vectors[i]);
+              }
+            }
+          } catch (Throwable e) {
+            error.compareAndSet(null, e);
+          }
+        }
+      };
+      threads[t].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    index.close();
+
+    if (error.get() != null) {
+      throw new AssertionError(error.get());
+    }
+  }
+
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(IntDocVectorsForwardIndexTest.class);
+  }
+}
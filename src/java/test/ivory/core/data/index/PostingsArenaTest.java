@@ -0,0 +1,141 @@
+/*
+ * Ivory: A Hadoop toolkit for web-scale information retrieval
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package ivory.core.data.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import com.google.common.collect.Maps;
+
+public class PostingsArenaTest {
+
+  // Adds random postings for a few thousand terms, with a skewed distribution so that some terms
+  // span many slices, and returns them keyed by term id.
+  private static Map<Integer, List<int[]>> fill(PostingsArena arena, Random r) {
+    Map<Integer, List<int[]>> expected = Maps.newHashMap();
+    for (int docno = 1; docno <= 3000; docno++) {
+      for (int j = 0; j < 50; j++) {
+        int termid = (int) Math.pow(r.nextInt(10000), 2) / 1000 + 1;
+        List<int[]> postings = expected.get(termid);
+        if (postings == null) {
+          postings = new ArrayList<int[]>();
+          expected.put(termid, postings);
+        }
+        if (!postings.isEmpty() && postings.get(postings.size() - 1)[0] == docno) {
+          continue;
+        }
+
+        // The posting is the docno followed by the positions.
+        int tf = 1 + r.nextInt(r.nextBoolean() ? 3 : 300);
+        int[] posting = new int[tf + 1];
+        posting[0] = docno;
+        int pos = 0;
+        for (int k = 1; k <= tf; k++) {
+          pos += 1 + r.nextInt(r.nextBoolean() ? 10 : 100000);
+          posting[k] = pos;
+        }
+        postings.add(posting);
+        arena.add(termid, docno, Arrays.copyOfRange(posting, 1, tf + 1), tf);
+      }
+    }
+    return expected;
+  }
+
+  private static void verify(PostingsArena arena, Map<Integer, List<int[]>> expected) {
+    assertEquals(expected.size(), arena.size());
+
+    PostingsArena.Reader reader = null;
+    for (int i = 0; i < arena.size(); i++) {
+      List<int[]> postings = expected.get(arena.getTermid(i));
+      assertEquals(postings.size(), arena.getDf(i));
+
+      if (reader == null) {
+        reader = arena.getReader(i);
+      } else {
+        reader.reset(i);
+      }
+      for (int[] posting : postings) {
+        assertTrue(reader.nextPosting());
+        assertEquals(posting[0], reader.getDocno());
+        assertEquals(posting.length - 1, reader.getTf());
+        for (int k = 1; k < posting.length; k++) {
+          assertEquals(posting[k], reader.getPositions()[k - 1]);
+        }
+      }
+      assertFalse(reader.nextPosting());
+    }
+  }
+
+  @Test
+  public void testRandom() {
+    PostingsArena arena = new PostingsArena();
+    assertEquals(0, arena.size());
+
+    Map<Integer, List<int[]>> expected = fill(arena, new Random(42));
+    verify(arena, expected);
+    long bytes = arena.getBytesUsed();
+    assertTrue(bytes > 0);
+
+    // After clearing, the buffer is refilled in the memory it already has.
+    arena.clear();
+    assertEquals(0, arena.size());
+    expected = fill(arena, new Random(43));
+    verify(arena, expected);
+    assertTrue(arena.getBytesUsed() < bytes * 1.1);
+  }
+
+  @Test
+  public void testSinglePosting() {
+    PostingsArena arena = new PostingsArena();
+    arena.add(7, 5, new int[] { 3, 9, 0 }, 2);
+
+    assertEquals(1, arena.size());
+    assertEquals(7, arena.getTermid(0));
+    assertEquals(1, arena.getDf(0));
+
+    PostingsArena.Reader reader = arena.getReader(0);
+    assertTrue(reader.nextPosting());
+    assertEquals(5, reader.getDocno());
+    assertEquals(2, reader.getTf());
+    assertEquals(3, reader.getPositions()[0]);
+    assertEquals(9, reader.getPositions()[1]);
+    assertFalse(reader.nextPosting());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testDocnosOutOfOrder() {
+    PostingsArena arena = new PostingsArena();
+    arena.add(1, 10, new int[] { 1 }, 1);
+    arena.add(2, 5, new int[] { 1 }, 1);
+    arena.add(1, 5, new int[] { 1 }, 1);
+  }
+
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(PostingsArenaTest.class);
+  }
+}
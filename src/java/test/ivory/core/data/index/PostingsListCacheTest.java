@@ -0,0 +1,167 @@
+/*
+ * Ivory: A Hadoop toolkit for web-scale information retrieval
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package ivory.core.data.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+public class PostingsListCacheTest {
+
+  // Loader that builds a postings list with n postings for term id n, counting loads.
+  private static class CountingLoader implements PostingsListCache.Loader {
+    int loads = 0;
+
+    @Override
+    public PostingsList load(int termid) throws IOException {
+      loads++;
+      if (termid == 0) {
+        return null;
+      }
+
+      PostingsListDocSortedPositional postings = new PostingsListDocSortedPositional();
+      postings.setCollectionDocumentCount(1000);
+      postings.setNumberOfPostings(termid);
+      for (int i = 1; i <= termid; i++) {
+        postings.add(i * 3, (short) 1, new TermPositions(new int[] { i }, (short) 1));
+      }
+
+      PostingsList list = PostingsListDocSortedPositional.create(postings.serialize());
+      list.setCollectionDocumentCount(1000);
+      return list;
+    }
+  }
+
+  @Test
+  public void testHitsAndMisses() throws IOException {
+    PostingsListCache cache = new PostingsListCache(1024 * 1024);
+    CountingLoader loader = new CountingLoader();
+
+    PostingsList p1 = cache.get(5, loader);
+    PostingsList p2 = cache.get(5, loader);
+    assertSame(p1, p2);
+    assertEquals(1, loader.loads);
+    assertEquals(1, cache.getHitCount());
+    assertEquals(1, cache.getMissCount());
+    assertEquals(1, cache.getCount());
+
+    assertNull(cache.get(0, loader));
+    assertEquals(2, cache.getMissCount());
+    assertEquals(1, cache.getCount());
+
+    cache.clear();
+    assertEquals(0, cache.getCount());
+    assertEquals(0, cache.getSize());
+    cache.get(5, loader);
+    assertEquals(3, loader.loads);
+  }
+
+  @Test
+  public void testFreshReaders() throws IOException {
+    PostingsListCache cache = new PostingsListCache(1024 * 1024);
+    CountingLoader loader = new CountingLoader();
+
+    PostingsList list = cache.get(3, loader);
+    PostingsReader r1 = list.getPostingsReader();
+    PostingsReader r2 = cache.get(3, loader).getPostingsReader();
+    assertNotSame(r1, r2);
+
+    Posting p = new Posting();
+    r1.nextPosting(p);
+    r1.nextPosting(p);
+    assertEquals(6, p.getDocno());
+
+    // Advancing one reader must not affect the other.
+    r2.nextPosting(p);
+    assertEquals(3, p.getDocno());
+  }
+
+  @Test
+  public void testEviction() throws IOException {
+    CountingLoader loader = new CountingLoader();
+    long size = new PostingsListCache(1024).get(100, loader).getSizeInBytes();
+
+    // Room for two lists of about this size, but not three. Term 100 is used more recently than
+    // term 101, so 101 should be evicted once 102 arrives.
+    loader = new CountingLoader();
+    PostingsListCache cache = new PostingsListCache(2 * (size + 128) + 10);
+    cache.get(100, loader);
+    cache.get(101, loader);
+    cache.get(100, loader);
+    cache.get(102, loader);
+    assertEquals(1, cache.getEvictionCount());
+    assertEquals(2, cache.getCount());
+    assertEquals(3, loader.loads);
+
+    cache.get(100, loader);
+    assertEquals(3, loader.loads);
+    cache.get(101, loader);
+    assertEquals(4, loader.loads);
+    assertEquals(true, cache.getSize() <= cache.getCapacity());
+  }
+
+  @Test
+  public void testSizeInBytes() throws IOException {
+    PostingsListDocSortedPositional positional = new PostingsListDocSortedPositional();
+    PostingsListDocSortedPositionalPForDelta pfor = new PostingsListDocSortedPositionalPForDelta();
+    positional.setCollectionDocumentCount(10000);
+    positional.setNumberOfPostings(1000);
+    pfor.setCollectionDocumentCount(10000);
+    pfor.setNumberOfPostings(1000);
+    for (int i = 1; i <= 1000; i++) {
+      TermPositions pos = new TermPositions(new int[] { i % 7 + 1, i % 7 + 5 }, (short) 2);
+      positional.add(i * 7, (short) 2, pos);
+      pfor.add(i * 7, (short) 2, pos);
+    }
+
+    PostingsList list = PostingsListDocSortedPositional.create(positional.serialize());
+    assertEquals(list.getRawBytes().length, list.getSizeInBytes());
+
+    // PForDelta lists have no raw bytes; the estimate counts the compressed blocks, which make up
+    // nearly all of the serialized form.
+    byte[] bytes = pfor.serialize();
+    list = PostingsListDocSortedPositionalPForDelta.create(bytes);
+    assertNull(list.getRawBytes());
+    assertTrue(list.getSizeInBytes() > 0);
+    assertTrue(list.getSizeInBytes() <= bytes.length);
+    assertTrue(list.getSizeInBytes() > bytes.length * 0.9);
+  }
+
+  @Test
+  public void testDisabled() throws IOException {
+    PostingsListCache cache = new PostingsListCache(0);
+    CountingLoader loader = new CountingLoader();
+
+    cache.get(5, loader);
+    cache.get(5, loader);
+    assertEquals(2, loader.loads);
+    assertEquals(0, cache.getCount());
+    assertEquals(0, cache.getEvictionCount());
+  }
+
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(PostingsListCacheTest.class);
+  }
+}
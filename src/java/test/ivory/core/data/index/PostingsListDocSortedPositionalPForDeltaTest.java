@@ -16,13 +16,17 @@
 
 package ivory.core.data.index;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 import ivory.core.data.index.Posting;
 import ivory.core.data.index.PostingsListDocSortedPositionalPForDelta;
 import ivory.core.data.index.PostingsReader;
 
 import java.io.IOException;
+import java.util.Arrays;
 
 import junit.framework.JUnit4TestAdapter;
 
@@ -454,6 +458,66 @@ public class PostingsListDocSortedPositionalPForDeltaTest {
     assertEquals(2, p.getTf());
   }
 
+  @Test
+  public void testNextBlock() throws IOException {
+    // Enough postings for a few blocks, with positions spilling across position blocks.
+    int numPostings = 300;
+    PostingsListDocSortedPositionalPForDelta postings = new PostingsListDocSortedPositionalPForDelta();
+    postings.setCollectionDocumentCount(2000);
+    postings.setNumberOfPostings(numPostings);
+
+    for (int i = 0; i < numPostings; i++) {
+      short tf = (short) (i % 9 + 1);
+      int[] pos = new int[tf];
+      for (int j = 0; j < tf; j++) {
+        pos[j] = 3 * j + i % 4 + 1;
+      }
+      postings.add(5 * i + 2, tf, new TermPositions(pos, tf));
+    }
+
+    PostingsListDocSortedPositionalPForDelta postings2 =
+        PostingsListDocSortedPositionalPForDelta.create(postings.serialize());
+    postings2.setCollectionDocumentCount(2000);
+
+    int blockSize = PostingsListDocSortedPositionalPForDelta.BLOCK_SIZE;
+    int[] docnos = new int[blockSize];
+    int[] tfs = new int[blockSize];
+    int[] offsets = new int[blockSize + 1];
+    int[] positions = new int[9 * blockSize];
+
+    // Read a single posting first, so that the first block is read from the middle.
+    Posting posting = new Posting();
+    PostingsListDocSortedPositionalPForDelta.PostingsReader reader = postings2.getPostingsReader();
+    PostingsReader expected = postings2.getPostingsReader();
+    assertTrue(reader.nextPosting(posting));
+    assertTrue(expected.nextPosting(posting));
+
+    int read = 1;
+    int n;
+    while ((n = reader.nextBlock(docnos, tfs)) > 0) {
+      assertEquals(read < blockSize ? blockSize - read : Math.min(blockSize, numPostings - read), n);
+      reader.getBlockPositions(offsets, positions);
+
+      for (int i = 0; i < n; i++) {
+        assertTrue(expected.nextPosting(posting));
+        assertEquals(posting.getDocno(), docnos[i]);
+        assertEquals(posting.getTf(), tfs[i]);
+        assertEquals(posting.getTf(), offsets[i + 1] - offsets[i]);
+        assertArrayEquals(expected.getPositions(),
+            Arrays.copyOfRange(positions, offsets[i], offsets[i + 1]));
+      }
+
+      // The reader is left on the last posting of the block.
+      assertEquals(docnos[n - 1], reader.getDocno());
+      assertArrayEquals(expected.getPositions(), reader.getPositions());
+      read += n;
+    }
+
+    assertEquals(numPostings, read);
+    assertFalse(expected.nextPosting(posting));
+    assertFalse(reader.nextPosting(posting));
+  }
+
   public static junit.framework.Test suite() {
     return new JUnit4TestAdapter(PostingsListDocSortedPositionalPForDeltaTest.class);
   }
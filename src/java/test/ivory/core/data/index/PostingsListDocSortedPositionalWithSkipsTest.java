@@ -0,0 +1,175 @@
+/*
+ * Ivory: A Hadoop toolkit for web-scale information retrieval
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package ivory.core.data.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+public class PostingsListDocSortedPositionalWithSkipsTest {
+  private static final int NUM_POSTINGS = 1000;
+  private static final int NUM_DOCS = 5000;
+
+  // Docnos 1, 4, 7, ... with tfs cycling through 1 to 7.
+  private static int docno(int i) {
+    return 3 * i + 1;
+  }
+
+  private static short tf(int i) {
+    return (short) (i % 7 + 1);
+  }
+
+  private static PostingsListDocSortedPositionalWithSkips createPostings() throws IOException {
+    PostingsListDocSortedPositionalWithSkips postings =
+        new PostingsListDocSortedPositionalWithSkips();
+    postings.setCollectionDocumentCount(NUM_DOCS);
+    postings.setNumberOfPostings(NUM_POSTINGS);
+
+    for (int i = 0; i < NUM_POSTINGS; i++) {
+      int[] pos = new int[tf(i)];
+      for (int j = 0; j < pos.length; j++) {
+        pos[j] = 2 * j + i % 5 + 1;
+      }
+      postings.add(docno(i), tf(i), new TermPositions(pos, tf(i)));
+    }
+
+    PostingsListDocSortedPositionalWithSkips postings2 =
+        PostingsListDocSortedPositionalWithSkips.create(postings.serialize());
+    postings2.setCollectionDocumentCount(NUM_DOCS);
+
+    return postings2;
+  }
+
+  @Test
+  public void testSequential() throws IOException {
+    PostingsListDocSortedPositionalWithSkips postings = createPostings();
+
+    assertEquals(NUM_POSTINGS, postings.getDf());
+    assertEquals((NUM_POSTINGS + PostingsListDocSortedPositionalWithSkips.SKIP_INTERVAL - 1)
+        / PostingsListDocSortedPositionalWithSkips.SKIP_INTERVAL, postings.getNumberOfBlocks());
+    assertEquals(7, postings.getMaxTf());
+
+    Posting posting = new Posting();
+    PostingsReader reader = postings.getPostingsReader();
+    for (int i = 0; i < NUM_POSTINGS; i++) {
+      assertTrue(reader.nextPosting(posting));
+      assertEquals(docno(i), posting.getDocno());
+      assertEquals(tf(i), posting.getTf());
+      assertEquals(i % 5 + 1, reader.getPositions()[0]);
+    }
+    assertFalse(reader.nextPosting(posting));
+  }
+
+  @Test
+  public void testSkipTo() throws IOException {
+    PostingsListDocSortedPositionalWithSkips postings = createPostings();
+    Posting posting = new Posting();
+
+    // Skip to every docno from a fresh reader, hitting and missing postings, including the
+    // first and last postings of each block.
+    for (int target = 0; target <= docno(NUM_POSTINGS - 1); target++) {
+      PostingsListDocSortedPositionalWithSkips.PostingsReader reader =
+          postings.getPostingsReader();
+      int i = target <= 1 ? 0 : (target - 1 + 2) / 3;
+
+      assertTrue(reader.skipTo(target));
+      assertEquals(docno(i), reader.getDocno());
+      assertEquals(tf(i), reader.getTf());
+      assertEquals(i % 5 + 1, reader.getPositions()[0]);
+
+      // Reading carries on from where we skipped to.
+      if (i + 1 < NUM_POSTINGS) {
+        assertTrue(reader.nextPosting(posting));
+        assertEquals(docno(i + 1), posting.getDocno());
+        assertEquals(tf(i + 1), posting.getTf());
+      }
+    }
+
+    PostingsListDocSortedPositionalWithSkips.PostingsReader reader = postings.getPostingsReader();
+    assertFalse(reader.skipTo(docno(NUM_POSTINGS - 1) + 1));
+  }
+
+  @Test
+  public void testSkipToAscending() throws IOException {
+    PostingsListDocSortedPositionalWithSkips postings = createPostings();
+    PostingsListDocSortedPositionalWithSkips.PostingsReader reader = postings.getPostingsReader();
+
+    // Skips of varying lengths on the same reader, some within a block and some across blocks.
+    int i = 0;
+    for (int step = 1; docno(i) < docno(NUM_POSTINGS - 1); step = step * 3 % 401) {
+      i = Math.min(i + step, NUM_POSTINGS - 1);
+      assertTrue(reader.skipTo(docno(i)));
+      assertEquals(docno(i), reader.getDocno());
+      assertEquals(tf(i), reader.getTf());
+
+      // Skipping to the current posting or before it does nothing.
+      assertTrue(reader.skipTo(docno(i) - 1));
+      assertEquals(docno(i), reader.getDocno());
+    }
+
+    assertFalse(reader.skipTo(docno(NUM_POSTINGS - 1) + 1));
+  }
+
+  @Test
+  public void testMaxTf() throws IOException {
+    PostingsListDocSortedPositionalWithSkips postings = createPostings();
+    PostingsListDocSortedPositionalWithSkips.PostingsReader reader = postings.getPostingsReader();
+    int interval = PostingsListDocSortedPositionalWithSkips.SKIP_INTERVAL;
+
+    for (int i = 0; i < NUM_POSTINGS; i++) {
+      // The bound must hold for the posting itself and for the docnos missing around it.
+      assertTrue(reader.getMaxTf(docno(i)) >= tf(i));
+      assertTrue(reader.getMaxTf(docno(i) - 1) >= 1);
+
+      int block = i / interval;
+      short maxTf = 0;
+      for (int j = block * interval; j < Math.min((block + 1) * interval, NUM_POSTINGS); j++) {
+        maxTf = (short) Math.max(maxTf, tf(j));
+      }
+      assertEquals(maxTf, reader.getMaxTf(docno(i)));
+
+      // Bounds don't depend on where the reader is.
+      if (i % 37 == 0) {
+        reader.skipTo(docno(i));
+      }
+    }
+
+    assertEquals(0, reader.getMaxTf(docno(NUM_POSTINGS - 1) + 1));
+  }
+
+  @Test
+  public void testSerializeTwice() throws IOException {
+    PostingsListDocSortedPositionalWithSkips postings =
+        PostingsListDocSortedPositionalWithSkips.create(createPostings().serialize());
+    postings.setCollectionDocumentCount(NUM_DOCS);
+
+    PostingsListDocSortedPositionalWithSkips.PostingsReader reader = postings.getPostingsReader();
+    assertTrue(reader.skipTo(docno(500)));
+    assertEquals(docno(500), reader.getDocno());
+    assertEquals(tf(500), reader.getTf());
+  }
+
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(PostingsListDocSortedPositionalWithSkipsTest.class);
+  }
+}
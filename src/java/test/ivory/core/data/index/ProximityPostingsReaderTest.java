@@ -0,0 +1,231 @@
+/*
+ * Ivory: A Hadoop toolkit for web-scale information retrieval
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package ivory.core.data.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Random;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+public class ProximityPostingsReaderTest {
+  private static final int NUM_DOCS = 200;
+
+  // Random positions for each term in each document. With probability dup, a term copies the
+  // positions of the term before it, as happens when a term is repeated in the query.
+  private static int[][][] randomPositions(Random r, int numTerms, int docLength, double dup) {
+    int[][][] positions = new int[NUM_DOCS][numTerms][];
+    for (int d = 0; d < NUM_DOCS; d++) {
+      for (int t = 0; t < numTerms; t++) {
+        if (t > 0 && r.nextDouble() < dup) {
+          positions[d][t] = positions[d][t - 1];
+          continue;
+        }
+        BitSet set = new BitSet();
+        int tf = 1 + r.nextInt(docLength / 3);
+        while (set.cardinality() < tf) {
+          set.set(1 + r.nextInt(docLength));
+        }
+        int[] p = new int[tf];
+        for (int i = 0, pos = set.nextSetBit(0); pos >= 0; i++, pos = set.nextSetBit(pos + 1)) {
+          p[i] = pos;
+        }
+        positions[d][t] = p;
+      }
+    }
+    return positions;
+  }
+
+  private static PostingsReader[] readers(int[][][] positions) throws IOException {
+    int numTerms = positions[0].length;
+    PostingsReader[] readers = new PostingsReader[numTerms];
+    for (int t = 0; t < numTerms; t++) {
+      PostingsListDocSortedPositional postings = new PostingsListDocSortedPositional();
+      postings.setCollectionDocumentCount(NUM_DOCS);
+      postings.setNumberOfPostings(NUM_DOCS);
+      for (int d = 0; d < NUM_DOCS; d++) {
+        short tf = (short) positions[d][t].length;
+        postings.add(d + 1, tf, new TermPositions(positions[d][t], tf));
+      }
+
+      PostingsListDocSortedPositional postings2 =
+          PostingsListDocSortedPositional.create(postings.serialize());
+      postings2.setCollectionDocumentCount(NUM_DOCS);
+      readers[t] = postings2.getPostingsReader();
+    }
+    return readers;
+  }
+
+  // The merged stream of positions and term ids the readers used to build.
+  private static int[][] merge(int[][] positions) {
+    int length = 0;
+    for (int[] p : positions) {
+      length += p.length;
+    }
+    int[] merged = new int[length];
+    int[] ids = new int[length];
+    int[] cursors = new int[positions.length];
+    for (int i = 0; i < length; i++) {
+      int id = -1;
+      for (int t = 0; t < positions.length; t++) {
+        if (cursors[t] < positions[t].length
+            && (id == -1 || positions[t][cursors[t]] < positions[id][cursors[id]])) {
+          id = t;
+        }
+      }
+      merged[i] = positions[id][cursors[id]++];
+      ids[i] = id;
+    }
+    return new int[][] { merged, ids };
+  }
+
+  // Reference implementation: the quadratic scan the ordered window reader used to do.
+  private static int countOrdered(int[][] termPositions, int size) {
+    int[][] merged = merge(termPositions);
+    int[] positions = merged[0];
+    int[] ids = merged[1];
+    int matches = 0;
+
+    for (int i = 0; i < positions.length; i++) {
+      int maxGap = 0;
+      boolean ordered = true;
+      BitSet matchedIds = new BitSet();
+      matchedIds.set(ids[i]);
+      int matchedIdCounts = 1;
+      int lastMatchedId = ids[i];
+      int lastMatchedPos = positions[i];
+
+      for (int j = i + 1; j < positions.length; j++) {
+        if (!matchedIds.get(ids[j])) {
+          matchedIds.set(ids[j]);
+          matchedIdCounts++;
+          if (ids[j] < lastMatchedId) {
+            ordered = false;
+          }
+          maxGap = Math.max(maxGap, positions[j] - lastMatchedPos);
+          lastMatchedPos = positions[j];
+          lastMatchedId = ids[j];
+        }
+        if (maxGap > size || !ordered) {
+          break;
+        }
+        if (matchedIdCounts == termPositions.length) {
+          matches++;
+          break;
+        }
+      }
+    }
+    return matches;
+  }
+
+  // Reference implementation: the quadratic scan the unordered window reader used to do.
+  private static int countUnordered(int[][] termPositions, int size) {
+    int[][] merged = merge(termPositions);
+    int[] positions = merged[0];
+    int[] ids = merged[1];
+    int matches = 0;
+
+    for (int i = 0; i < positions.length; i++) {
+      BitSet matchedIds = new BitSet();
+      matchedIds.set(ids[i]);
+      int matchedIdCounts = 1;
+
+      for (int j = i + 1; j < positions.length; j++) {
+        if (!matchedIds.get(ids[j])) {
+          matchedIds.set(ids[j]);
+          matchedIdCounts++;
+        }
+        if (positions[j] - positions[i] + 1 > size) {
+          break;
+        }
+        if (matchedIdCounts == termPositions.length) {
+          matches++;
+          break;
+        }
+      }
+    }
+    return matches;
+  }
+
+  private static void verify(boolean ordered, int numTerms, int size, int docLength, double dup,
+      long seed) throws IOException {
+    int[][][] positions = randomPositions(new Random(seed), numTerms, docLength, dup);
+    PostingsReader reader = ordered
+        ? new ProximityPostingsReaderOrderedWindow(readers(positions), size)
+        : new ProximityPostingsReaderUnorderedWindow(readers(positions), size);
+
+    Posting posting = new Posting();
+    for (int d = 0; d < NUM_DOCS; d++) {
+      assertTrue(reader.nextPosting(posting));
+      assertEquals(d + 1, posting.getDocno());
+
+      int expected = ordered
+          ? countOrdered(positions[d], size) : countUnordered(positions[d], size);
+      assertEquals("doc " + (d + 1) + ": " + Arrays.deepToString(positions[d]),
+          expected, posting.getTf());
+    }
+    assertFalse(reader.nextPosting(posting));
+  }
+
+  @Test
+  public void testOrderedWindow() throws IOException {
+    long seed = 1;
+    for (int numTerms = 1; numTerms <= 4; numTerms++) {
+      for (int size : new int[] { 1, 2, 4, 8 }) {
+        verify(true, numTerms, size, 30, 0.0, seed++);
+        verify(true, numTerms, size, 12, 0.3, seed++);
+      }
+    }
+  }
+
+  @Test
+  public void testUnorderedWindow() throws IOException {
+    long seed = 1000;
+    for (int numTerms = 1; numTerms <= 4; numTerms++) {
+      for (int size : new int[] { 1, 2, 4, 8, 16 }) {
+        verify(false, numTerms, size, 30, 0.0, seed++);
+        verify(false, numTerms, size, 12, 0.3, seed++);
+      }
+    }
+  }
+
+  @Test
+  public void testOrderedWindowExample() throws IOException {
+    // "a b" within gaps of 2: a@1 b@3 and a@5 b@6 match, a@9 has no b after it.
+    int[][][] positions = new int[NUM_DOCS][][];
+    for (int d = 0; d < NUM_DOCS; d++) {
+      positions[d] = new int[][] { { 1, 5, 9 }, { 3, 6 } };
+    }
+    ProximityPostingsReaderOrderedWindow reader =
+        new ProximityPostingsReaderOrderedWindow(readers(positions), 2);
+
+    Posting posting = new Posting();
+    assertTrue(reader.nextPosting(posting));
+    assertEquals(2, posting.getTf());
+  }
+
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(ProximityPostingsReaderTest.class);
+  }
+}
@@ -0,0 +1,147 @@
+/*
+ * Ivory: A Hadoop toolkit for web-scale information retrieval
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package ivory.core.data.stat;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.Random;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.junit.Test;
+
+public class DocLengthTableMappedTest {
+  private static final String TMP_FILENAME = "DocLengthTableMappedTest.dat";
+  private static final int DOCNO_OFFSET = 1000;
+  private static final int NUM_DOCS = 5000;
+
+  private static int[] writeLengths(FileSystem fs, boolean withSum) throws IOException {
+    Random r = new Random(42);
+    int[] lengths = new int[NUM_DOCS];
+    long sum = 0;
+
+    FSDataOutputStream out = fs.create(new Path(TMP_FILENAME), true);
+    out.writeInt(DOCNO_OFFSET);
+    out.writeInt(NUM_DOCS);
+    for (int i = 0; i < NUM_DOCS; i++) {
+      lengths[i] = r.nextInt(2000);
+      out.writeInt(lengths[i]);
+      sum += lengths[i];
+    }
+    if (withSum) {
+      out.writeLong(sum);
+    }
+    out.close();
+
+    return lengths;
+  }
+
+  private static void verify(boolean withSum) throws IOException {
+    FileSystem fs = FileSystem.getLocal(new Configuration());
+    int[] lengths = writeLengths(fs, withSum);
+
+    DocLengthTable mapped = new DocLengthTableMapped(new Path(TMP_FILENAME), fs);
+    DocLengthTable loaded = new DocLengthTable4B(new Path(TMP_FILENAME), fs);
+    fs.delete(new Path(TMP_FILENAME), true);
+
+    assertEquals(DOCNO_OFFSET, mapped.getDocnoOffset());
+    assertEquals(NUM_DOCS, mapped.getDocCount());
+    assertEquals(loaded.getAvgDocLength(), mapped.getAvgDocLength(), 0.0f);
+
+    // Docnos start at the offset plus one.
+    for (int i = 0; i < NUM_DOCS; i++) {
+      assertEquals(lengths[i], mapped.getDocLength(DOCNO_OFFSET + 1 + i));
+      assertEquals(loaded.getDocLength(DOCNO_OFFSET + 1 + i),
+          mapped.getDocLength(DOCNO_OFFSET + 1 + i));
+    }
+  }
+
+  @Test
+  public void testWithSum() throws IOException {
+    verify(true);
+  }
+
+  @Test
+  public void testWithoutSum() throws IOException {
+    verify(false);
+  }
+
+  @Test
+  public void testLongDocuments() throws IOException {
+    FileSystem fs = FileSystem.getLocal(new Configuration());
+    int[] lengths = { 10, 65535, 65536, 100000, 0, 42 };
+
+    FSDataOutputStream out = fs.create(new Path(TMP_FILENAME), true);
+    out.writeInt(DOCNO_OFFSET);
+    out.writeInt(lengths.length);
+    for (int length : lengths) {
+      out.writeInt(length);
+    }
+    out.close();
+
+    DocLengthTable mapped = new DocLengthTableMapped(new Path(TMP_FILENAME), fs);
+    DocLengthTable loaded = new DocLengthTable2B(new Path(TMP_FILENAME), fs);
+    fs.delete(new Path(TMP_FILENAME), true);
+
+    // Lengths are capped the same way as in the table that is loaded onto the heap.
+    assertEquals(loaded.getAvgDocLength(), mapped.getAvgDocLength(), 0.0f);
+    for (int i = 0; i < lengths.length; i++) {
+      assertEquals(Math.min(lengths[i], 65535), mapped.getDocLength(DOCNO_OFFSET + 1 + i));
+      assertEquals(loaded.getDocLength(DOCNO_OFFSET + 1 + i),
+          mapped.getDocLength(DOCNO_OFFSET + 1 + i));
+    }
+  }
+
+  @Test
+  public void testDocScores() throws IOException {
+    FileSystem fs = FileSystem.getLocal(new Configuration());
+    Random r = new Random(42);
+    float[] scores = new float[NUM_DOCS];
+
+    FSDataOutputStream out = fs.create(new Path(TMP_FILENAME), true);
+    out.writeInt(DOCNO_OFFSET);
+    out.writeInt(NUM_DOCS);
+    for (int i = 0; i < NUM_DOCS; i++) {
+      scores[i] = r.nextFloat() * 10 - 5;
+      out.writeFloat(scores[i]);
+    }
+    out.close();
+
+    DocScoreTable mapped = new DocScoreTableMapped();
+    mapped.initialize(TMP_FILENAME, fs);
+    DocScoreTable loaded = new DocScoreTable4BF();
+    loaded.initialize(TMP_FILENAME, fs);
+    fs.delete(new Path(TMP_FILENAME), true);
+
+    assertEquals(DOCNO_OFFSET, mapped.getDocnoOffset());
+    assertEquals(NUM_DOCS, mapped.getDocCount());
+    for (int i = 0; i < NUM_DOCS; i++) {
+      assertEquals(scores[i], mapped.getScore(DOCNO_OFFSET + 1 + i), 0.0f);
+      assertEquals(loaded.getScore(DOCNO_OFFSET + 1 + i), mapped.getScore(DOCNO_OFFSET + 1 + i),
+          0.0f);
+    }
+  }
+
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(DocLengthTableMappedTest.class);
+  }
+}
@@ -0,0 +1,82 @@
+/*
+ * Ivory: A Hadoop toolkit for web-scale information retrieval
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package ivory.core.data.stat;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.WritableUtils;
+import org.junit.Test;
+
+public class GlobalTermStatisticsTest {
+  private static final String TMP_DF = "GlobalTermStatisticsTest.df";
+  private static final String TMP_CF = "GlobalTermStatisticsTest.cf";
+  private static final int NUM_TERMS = 5000;
+
+  @Test
+  public void testLookup() throws Exception {
+    FileSystem fs = FileSystem.getLocal(new Configuration());
+    Random r = new Random(42);
+    int[] dfs = new int[NUM_TERMS];
+    long[] cfs = new long[NUM_TERMS];
+
+    // Same format as written by BuildDictionary.
+    FSDataOutputStream dfOut = fs.create(new Path(TMP_DF), true);
+    FSDataOutputStream cfOut = fs.create(new Path(TMP_CF), true);
+    dfOut.writeInt(NUM_TERMS);
+    cfOut.writeInt(NUM_TERMS);
+    for (int i = 0; i < NUM_TERMS; i++) {
+      dfs[i] = 1 + r.nextInt(1000);
+      cfs[i] = dfs[i] + r.nextInt(100000);
+      WritableUtils.writeVInt(dfOut, dfs[i]);
+      WritableUtils.writeVLong(cfOut, cfs[i]);
+    }
+    dfOut.close();
+    cfOut.close();
+
+    try {
+      GlobalTermStatistics stats = new GlobalTermStatistics(
+          new DfTableArray(new Path(TMP_DF), fs), new CfTableArray(new Path(TMP_CF), fs));
+
+      assertEquals(NUM_TERMS, stats.getVocabularySize());
+      for (int i = 0; i < NUM_TERMS; i++) {
+        assertEquals(dfs[i], stats.getDf(i + 1));
+        assertEquals(cfs[i], stats.getCf(i + 1));
+      }
+
+      // Term ids that aren't in the dictionary have no statistics.
+      assertEquals(0, stats.getDf(0));
+      assertEquals(0, stats.getCf(-1));
+      assertEquals(0, stats.getDf(NUM_TERMS + 1));
+      assertEquals(0L, stats.getCf(NUM_TERMS + 1));
+    } finally {
+      fs.delete(new Path(TMP_DF), true);
+      fs.delete(new Path(TMP_CF), true);
+    }
+  }
+
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(GlobalTermStatisticsTest.class);
+  }
+}
@@ -0,0 +1,102 @@
+/*
+ * Ivory: A Hadoop toolkit for web-scale information retrieval
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package ivory.core.data.stat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.junit.Test;
+
+public class PhraseStatisticsTableTest {
+  private static final String TMP = "PhraseStatisticsTableTest.dat";
+
+  @Test
+  public void testLookup() throws Exception {
+    FileSystem fs = FileSystem.getLocal(new Configuration());
+
+    // Added out of order; the writer sorts them.
+    PhraseStatisticsTable.Writer writer = new PhraseStatisticsTable.Writer();
+    for (int t1 = 100; t1 > 0; t1--) {
+      for (int t2 = 1; t2 <= 20; t2++) {
+        writer.add(false, 8, t1, t2, t1 + t2, 10000000000L + t1 * 100 + t2);
+        writer.add(true, 1, t1, t2, t1 * t2, t1 * 100 + t2);
+      }
+    }
+    assertEquals(4000, writer.size());
+    writer.write(new Path(TMP), fs);
+
+    try {
+      PhraseStatisticsTable table = new PhraseStatisticsTable(new Path(TMP), fs);
+      assertEquals(4000, table.getNumPhrases());
+
+      for (int t1 = 1; t1 <= 100; t1++) {
+        for (int t2 = 1; t2 <= 20; t2++) {
+          int i = table.find(true, 1, t1, t2);
+          assertTrue(i >= 0);
+          assertEquals(t1 * t2, table.getDf(i));
+          assertEquals(t1 * 100 + t2, table.getCf(i));
+
+          i = table.find(false, 8, t1, t2);
+          assertTrue(i >= 0);
+          assertEquals(t1 + t2, table.getDf(i));
+          assertEquals(10000000000L + t1 * 100 + t2, table.getCf(i));
+        }
+      }
+
+      // Other windows and term ids aren't there.
+      assertEquals(-1, table.find(true, 8, 1, 1));
+      assertEquals(-1, table.find(false, 1, 1, 1));
+      assertEquals(-1, table.find(true, 2, 1, 1));
+      assertEquals(-1, table.find(true, 1, 0, 1));
+      assertEquals(-1, table.find(true, 1, 1, 21));
+      assertEquals(-1, table.find(false, 8, 101, 1));
+    } finally {
+      fs.delete(new Path(TMP), true);
+    }
+  }
+
+  @Test
+  public void testDuplicate() throws Exception {
+    FileSystem fs = FileSystem.getLocal(new Configuration());
+
+    PhraseStatisticsTable.Writer writer = new PhraseStatisticsTable.Writer();
+    writer.add(true, 1, 5, 7, 1, 1);
+    writer.add(false, 1, 5, 7, 1, 1);
+    writer.add(true, 1, 5, 7, 2, 2);
+
+    try {
+      writer.write(new Path(TMP), fs);
+      fail("duplicate phrase should not be written");
+    } catch (IOException e) {
+      // Expected.
+    } finally {
+      fs.delete(new Path(TMP), true);
+    }
+  }
+
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(PhraseStatisticsTableTest.class);
+  }
+}
@@ -0,0 +1,231 @@
+/*
+ * Ivory: A Hadoop toolkit for web-scale information retrieval
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package ivory.core.tokenize;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import ivory.core.data.dictionary.Dictionary;
+import ivory.core.data.document.IntDocVector;
+import ivory.core.data.document.LazyIntDocVector;
+import ivory.core.data.document.LazyTermDocVector;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.apache.hadoop.io.Writable;
+import org.junit.Test;
+
+import tl.lin.data.array.ArrayListOfInts;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import edu.umd.cloud9.collection.Indexable;
+
+public class IntDocVectorBuilderTest {
+  private static final String[] DOCS = {
+    "The quick brown fox jumps over the lazy dog.",
+    "A dog, a fox, and another dog: the dog sleeps while the fox runs over the hill.",
+    "Zebras and aardvarks are not in the dictionary at all.",
+    "",
+    "fox fox fox fox fox dog fox fox brown fox quick fox"
+  };
+
+  // Dictionary holding the terms of the docs that occur at least twice over all of them, so that
+  // the others are out of vocabulary.
+  private static Dictionary createDictionary(Tokenizer tokenizer) {
+    Map<String, Integer> counts = Maps.newHashMap();
+    for (String doc : DOCS) {
+      for (String term : tokenizer.processContent(doc)) {
+        Integer count = counts.get(term);
+        counts.put(term, count == null ? 1 : count + 1);
+      }
+    }
+
+    final List<String> terms = Lists.newArrayList();
+    for (Map.Entry<String, Integer> e : counts.entrySet()) {
+      if (e.getValue() >= 2) {
+        terms.add(e.getKey());
+      }
+    }
+
+    return new Dictionary() {
+      @Override
+      public String getTerm(int id) {
+        return terms.get(id - 1);
+      }
+
+      @Override
+      public int getId(String term) {
+        return terms.indexOf(term) + 1;
+      }
+
+      @Override
+      public int size() {
+        return terms.size();
+      }
+
+      @Override
+      public Iterator<String> iterator() {
+        return terms.iterator();
+      }
+    };
+  }
+
+  private static class Document extends Indexable {
+    private final String docid;
+    private final String content;
+
+    Document(String docid, String content) {
+      this.docid = docid;
+      this.content = content;
+    }
+
+    @Override
+    public String getDocid() {
+      return docid;
+    }
+
+    @Override
+    public String getContent() {
+      return content;
+    }
+
+    @Override
+    public void readFields(DataInput in) throws IOException {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+  private static byte[] toBytes(Writable w) throws IOException {
+    ByteArrayOutputStream bytesOut = new ByteArrayOutputStream();
+    w.write(new DataOutputStream(bytesOut));
+    return bytesOut.toByteArray();
+  }
+
+  // Lazy doc vectors are only readable once they have been written out and read back.
+  private static IntDocVector.Reader read(LazyIntDocVector docVector) throws IOException {
+    LazyIntDocVector copy = new LazyIntDocVector();
+    copy.readFields(new DataInputStream(new ByteArrayInputStream(toBytes(docVector))));
+    return copy.getReader();
+  }
+
+  // Builds the int doc vector the way it is built from the term doc vectors.
+  private static LazyIntDocVector integerizeTermDocVector(Indexable doc, Tokenizer tokenizer,
+      Dictionary dictionary) throws IOException {
+    Map<String, ArrayListOfInts> positions = DocumentProcessingUtils.parseDocument(doc, tokenizer);
+    positions.remove("");
+
+    LazyTermDocVector termDocVector = new LazyTermDocVector();
+    termDocVector.readFields(new DataInputStream(new ByteArrayInputStream(
+        toBytes(new LazyTermDocVector(positions)))));
+
+    return new LazyIntDocVector(
+        DocumentProcessingUtils.integerizeTermDocVector(termDocVector, dictionary));
+  }
+
+  private static void verify(Tokenizer tokenizer) throws IOException {
+    Dictionary dictionary = createDictionary(tokenizer);
+    IntDocVectorBuilder builder = new IntDocVectorBuilder(dictionary);
+    LazyIntDocVector docVector = new LazyIntDocVector();
+
+    // The builder is reused from one doc to the next.
+    for (int i = 0; i < DOCS.length; i++) {
+      Document doc = new Document("doc" + i, DOCS[i]);
+      LazyIntDocVector expected = integerizeTermDocVector(doc, tokenizer, dictionary);
+      int n = DocumentProcessingUtils.integerizeDocument(doc, tokenizer, builder, docVector);
+
+      assertEquals(read(expected).getNumberOfTerms(), n);
+      assertArrayEquals(toBytes(expected), toBytes(docVector));
+    }
+  }
+
+  @Test
+  public void testGalago() throws IOException {
+    verify(new GalagoTokenizer());
+  }
+
+  @Test
+  public void testOutOfVocabulary() throws IOException {
+    Tokenizer tokenizer = new GalagoTokenizer();
+    Dictionary dictionary = createDictionary(tokenizer);
+    IntDocVectorBuilder builder = new IntDocVectorBuilder(dictionary);
+    LazyIntDocVector docVector = new LazyIntDocVector();
+
+    // Only "dog" and "fox" are in the dictionary, but the other terms still count towards positions.
+    DocumentProcessingUtils.integerizeDocument(new Document("doc", "zebra dog aardvark fox dog"),
+        tokenizer, builder, docVector);
+    IntDocVector.Reader reader = read(docVector);
+    assertEquals(2, reader.getNumberOfTerms());
+    int dog = dictionary.getId("dog");
+    int fox = dictionary.getId("fox");
+    int[] dogPositions = new int[] { 2, 5 };
+    int[] foxPositions = new int[] { 4 };
+
+    int first = reader.nextTerm();
+    assertEquals(Math.min(dog, fox), first);
+    assertArrayEquals(first == dog ? dogPositions : foxPositions, reader.getPositions());
+    assertEquals(Math.max(dog, fox), reader.nextTerm());
+    assertArrayEquals(first == dog ? foxPositions : dogPositions, reader.getPositions());
+    assertFalse(reader.hasMoreTerms());
+  }
+
+  @Test
+  public void testTfCut() throws IOException {
+    short tfCut = DocumentProcessingUtils.TF_CUT;
+    try {
+      // Terms occurring this many times or more in a doc are dropped, e.g., "fox" in the last doc.
+      DocumentProcessingUtils.TF_CUT = 3;
+      verify(new GalagoTokenizer());
+
+      Tokenizer tokenizer = new GalagoTokenizer();
+      Dictionary dictionary = createDictionary(tokenizer);
+      LazyIntDocVector docVector = new LazyIntDocVector();
+      DocumentProcessingUtils.integerizeDocument(new Document("doc", DOCS[4]), tokenizer,
+          new IntDocVectorBuilder(dictionary), docVector);
+
+      IntDocVector.Reader reader = read(docVector);
+      while (reader.hasMoreTerms()) {
+        int termid = reader.nextTerm();
+        assertFalse(termid == dictionary.getId("fox"));
+        assertEquals(1, reader.getTf());
+      }
+    } finally {
+      DocumentProcessingUtils.TF_CUT = tfCut;
+    }
+  }
+
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(IntDocVectorBuilderTest.class);
+  }
+}
@@ -1,11 +1,13 @@
 package ivory.core.tokenize;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import java.io.BufferedReader;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import junit.framework.JUnit4TestAdapter;
 
@@ -237,6 +239,65 @@ public class TokenizationTest {
     testOOV("en", vocab, false, false, enExpectedOOVRates);    
   }
 
+  @Test
+  public void testStreaming() {
+    // Tokens streamed into a sink must match the golden outputs.
+    for (String language : languages) {
+      String rawFile = dir + "data/tokenizer/test/" + language + "-test.raw";
+      String tokenizedFile = dir + "data/tokenizer/test/" + language + "-test.tok";
+      String tokenizer = dir + "data/tokenizer/" + language + "-token.bin";
+      String stopwords = dir + "data/tokenizer/" + language + ".stop";
+      assertStreamed(TokenizerFactory.createTokenizer(language, tokenizer, false, null, null, null),
+          rawFile, tokenizedFile);
+      assertStreamed(TokenizerFactory.createTokenizer(language, tokenizer, true, null, null, null),
+          rawFile, tokenizedFile + ".stemmed");
+      assertStreamed(TokenizerFactory.createTokenizer(language, tokenizer, false, stopwords, null, null),
+          rawFile, tokenizedFile + ".stop");
+      assertStreamed(TokenizerFactory.createTokenizer(language, tokenizer, true, stopwords, null, null),
+          rawFile, tokenizedFile + ".stemmed.stop");
+
+      if (language.equals("en")) {
+        assertStreamed(new GalagoTokenizer(), rawFile, tokenizedFile + "-galago");
+      }
+    }
+
+    assertStreamed(new GalagoTokenizer(), "<b>Bold</b> &amp; U.S.A. isn't 2nd-rate",
+        new String[] { "bold", "usa", "isnt", "2nd", "rate" });
+    assertStreamed(new GalagoTokenizer(), "", new String[0]);
+  }
+
+  private void assertStreamed(Tokenizer tokenizer, String inputFile, String expectedFile) {
+    List<String> sentences = readInput(inputFile);
+    List<String> expectedSentences = readInput(expectedFile);
+    for (int i = 0; i < sentences.size(); i++) {
+      String expected = expectedSentences.get(i).trim();
+      assertStreamed(tokenizer, sentences.get(i),
+          expected.length() == 0 ? new String[0] : expected.split("\\s+"));
+    }
+  }
+
+  private void assertStreamed(Tokenizer tokenizer, String sentence, String[] expected) {
+    final List<String> streamed = new ArrayList<String>();
+    tokenizer.processContent(sentence, new TokenSink() {
+      public void add(String token) {
+        streamed.add(token);
+      }
+    });
+    assertEquals(sentence, Arrays.asList(expected), streamed);
+  }
+
+  @Test
+  public void testStemCache() {
+    StemCache cache = new StemCache(2);
+    cache.put("a", "a");
+    cache.put("b", "b");
+    cache.get("a");
+    cache.put("c", "c");
+    assertEquals(2, cache.size());
+    assertTrue(cache.containsKey("a"));
+    assertTrue(!cache.containsKey("b"));
+  }
+
   public static junit.framework.Test suite() {
     return new JUnit4TestAdapter(TokenizationTest.class);
   }
@@ -0,0 +1,71 @@
+package ivory.ffg.data;
+
+import java.util.Random;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DocumentVectorStoreTest {
+  private static final String TMP_FILENAME = "DocumentVectorStoreTest.dat";
+  private static final String[] documentVectorClass = new String[] {
+    "ivory.ffg.data.DocumentVectorPForDeltaArray",
+    "ivory.ffg.data.DocumentVectorVIntArray"
+  };
+
+  @Test public void testRead() throws Exception {
+    FileSystem fs = FileSystem.getLocal(new Configuration());
+    Random random = new Random(0);
+
+    int[] docids = new int[] { 42, 7, 1000, 3, 99 };
+    int[][] documents = new int[docids.length][];
+    for(int d = 0; d < docids.length; d++) {
+      documents[d] = new int[random.nextInt(300) + 1];
+      for(int i = 0; i < documents[d].length; i++) {
+        documents[d][i] = random.nextInt(70000) + 1;
+      }
+    }
+
+    for(String dvclass: documentVectorClass) {
+      FSDataOutputStream output = fs.create(new Path(TMP_FILENAME), true);
+      for(int d = 0; d < docids.length; d++) {
+        output.writeInt(docids[d]);
+        if(dvclass.endsWith("PForDeltaArray")) {
+          DocumentVectorPForDeltaArray.newInstance(documents[d]).write(output);
+        } else {
+          DocumentVectorVIntArray.newInstance(documents[d]).write(output);
+        }
+      }
+      output.writeInt(-1);
+      output.close();
+
+      DocumentVectorStore store = new DocumentVectorStore(dvclass, TMP_FILENAME, fs);
+      assertEquals(docids.length, store.size());
+      assertTrue(!store.contains(8));
+
+      // Read in a different order than the vectors were written, with two readers.
+      DocumentVectorStore.Reader reader1 = store.getReader();
+      DocumentVectorStore.Reader reader2 = store.getReader();
+      for(int d = docids.length - 1; d >= 0; d--) {
+        assertTrue(store.contains(docids[d]));
+        assertArrayEquals(documents[d], reader1.read(docids[d]).decompressDocument());
+        int e = (d + 2) % docids.length;
+        assertArrayEquals(documents[e], reader2.read(docids[e]).decompressDocument());
+      }
+      reader1.close();
+      reader2.close();
+    }
+    fs.delete(new Path(TMP_FILENAME), true);
+  }
+
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(DocumentVectorStoreTest.class);
+  }
+}
@@ -0,0 +1,194 @@
+package ivory.lsh;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import ivory.lsh.data.BitsSignatureTable;
+import ivory.lsh.data.NBitSignature;
+import ivory.lsh.data.PermutationByBit;
+import ivory.lsh.data.Signature;
+import ivory.lsh.data.SixtyFourBitSignature;
+import ivory.lsh.pwsim.InMemoryPwsim;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.junit.Test;
+
+import tl.lin.data.array.ArrayListOfIntsWritable;
+import tl.lin.data.map.HMapII;
+
+public class InMemoryPwsimTest {
+  private static final String TMP_DIRNAME = "tmp-tables";
+  private static final String TMP_PERMS = "tmp-perms";
+  private static int D = 100, N = 2000, Q = 10;
+
+  // N random signatures, every tenth of which is a near-duplicate of the previous one
+  private NBitSignature[] getSignatures(Random r) {
+    NBitSignature[] signatures = new NBitSignature[N];
+    for (int i = 0; i < N; i++) {
+      signatures[i] = new NBitSignature(D);
+      for (int j = 0; j < D; j++) {
+        signatures[i].set(j, i % 10 == 1 ? signatures[i - 1].get(j) ^ (r.nextInt(20) == 0) : r.nextBoolean());
+      }
+    }
+    return signatures;
+  }
+
+  private List<ArrayListOfIntsWritable> getPermutations(int numBits) {
+    PermutationByBit p = new PermutationByBit(numBits);
+    List<ArrayListOfIntsWritable> perms = new ArrayList<ArrayListOfIntsWritable>();
+    for (int i = 0; i < Q; i++) {
+      perms.add(p.nextPermutation());
+    }
+    return perms;
+  }
+
+  private int[] getDocnos() {
+    int[] docnos = new int[N];
+    for (int i = 0; i < N; i++) {
+      docnos[i] = i + 1;
+    }
+    return docnos;
+  }
+
+  @Test
+  public void testExhaustive() throws Exception {
+    Random r = new Random(1);
+    NBitSignature[] signatures = getSignatures(r);
+    InMemoryPwsim pwsim = InMemoryPwsim.create(signatures, getDocnos(), getPermutations(D));
+
+    // a window covering the whole table finds exactly the signatures within the threshold
+    int maxDist = 30;
+    for (int i = 0; i < N; i += 37) {
+      HMapII results = pwsim.search(signatures[i], maxDist, N, 0);
+      for (int j = 0; j < N; j++) {
+        int dist = signatures[i].hammingDistance(signatures[j]);
+        if (dist <= maxDist) {
+          assertEquals(dist, results.get(j + 1));
+        } else {
+          assertTrue(!results.containsKey(j + 1));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testNearDuplicates() throws Exception {
+    Random r = new Random(2);
+    NBitSignature[] signatures = getSignatures(r);
+    InMemoryPwsim pwsim = InMemoryPwsim.create(signatures, getDocnos(), getPermutations(D));
+
+    HMapII[] results = pwsim.search(signatures, 15, 10, 0, 4);
+    int found = 0, total = 0;
+    for (int i = 1; i < N; i += 10) {
+      if (signatures[i].hammingDistance(signatures[i - 1]) <= 15) {
+        total++;
+        if (results[i].containsKey(i)) {
+          found++;
+        }
+      }
+      assertEquals(0, results[i].get(i + 1));
+    }
+    assertTrue(found + "/" + total, found >= total * 0.9);
+
+    // a minimum prefix only drops candidates
+    for (int i = 0; i < N; i += 50) {
+      HMapII all = pwsim.search(signatures[i], 15, 10, 0);
+      HMapII some = pwsim.search(signatures[i], 15, 10, 8);
+      for (int docno : some.keySet()) {
+        assertTrue(all.containsKey(docno));
+      }
+    }
+  }
+
+  @Test
+  public void test64Bits() throws Exception {
+    Random r = new Random(3);
+    SixtyFourBitSignature[] signatures = new SixtyFourBitSignature[N];
+    for (int i = 0; i < N; i++) {
+      signatures[i] = new SixtyFourBitSignature();
+      for (int j = 0; j < 64; j++) {
+        signatures[i].set(j, r.nextBoolean());
+      }
+    }
+    InMemoryPwsim pwsim = InMemoryPwsim.create(signatures, getDocnos(), getPermutations(64));
+    for (int i = 0; i < N; i += 100) {
+      HMapII results = pwsim.search(signatures[i], 0, 1, 0);
+      assertEquals(1, results.size());
+      assertEquals(0, results.get(i + 1));
+    }
+  }
+
+  @Test
+  public void testLoad() throws Exception {
+    Random r = new Random(4);
+    NBitSignature[] signatures = getSignatures(r);
+    List<ArrayListOfIntsWritable> perms = getPermutations(D);
+    InMemoryPwsim expected = InMemoryPwsim.create(signatures, getDocnos(), perms);
+
+    Configuration conf = new Configuration();
+    FileSystem fs = FileSystem.getLocal(conf);
+    try {
+      SequenceFile.Writer writer = SequenceFile.createWriter(fs, conf, new Path(TMP_PERMS),
+          IntWritable.class, ArrayListOfIntsWritable.class);
+      for (int i = 0; i < Q; i++) {
+        writer.append(new IntWritable(i), perms.get(i));
+      }
+      writer.close();
+
+      // write each table in overlapping chunks, as GenerateChunkedPermutedTables does
+      int chunkSize = 300, overlapSize = 20;
+      writer = SequenceFile.createWriter(fs, conf, new Path(TMP_DIRNAME + "/part-00000"),
+          IntWritable.class, BitsSignatureTable.class);
+      for (int i = 0; i < Q; i++) {
+        Signature[] sorted = expected.getSignatures(i);
+        int[] sortedNos = expected.getDocNos(i);
+        for (int start = 0; ; start += chunkSize - overlapSize) {
+          int end = Math.min(N, start + chunkSize);
+          Signature[] chunk = new Signature[end - start];
+          int[] nos = new int[end - start];
+          System.arraycopy(sorted, start, chunk, 0, end - start);
+          System.arraycopy(sortedNos, start, nos, 0, end - start);
+          BitsSignatureTable table = new BitsSignatureTable();
+          table.set(chunk, nos, end - start);
+          writer.append(new IntWritable(i), table);
+          if (end == N) {
+            break;
+          }
+        }
+      }
+      writer.close();
+
+      InMemoryPwsim loaded = InMemoryPwsim.load(TMP_DIRNAME, TMP_PERMS, fs);
+      assertEquals(Q, loaded.getNumOfTables());
+      assertEquals(N, loaded.getNumOfSignatures());
+      for (int i = 0; i < Q; i++) {
+        assertTrue(Arrays.equals(expected.getDocNos(i), loaded.getDocNos(i)));
+      }
+      for (int i = 0; i < N; i += 23) {
+        HMapII a = expected.search(signatures[i], 20, 5, 0);
+        HMapII b = loaded.search(signatures[i], 20, 5, 0);
+        assertEquals(a.size(), b.size());
+        for (int docno : a.keySet()) {
+          assertEquals(a.get(docno), b.get(docno));
+        }
+      }
+    } finally {
+      fs.delete(new Path(TMP_DIRNAME), true);
+      fs.delete(new Path(TMP_PERMS), true);
+    }
+  }
+
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(InMemoryPwsimTest.class);
+  }
+}
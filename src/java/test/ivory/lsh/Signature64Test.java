@@ -1,6 +1,7 @@
 package ivory.lsh;
 
 import static org.junit.Assert.assertTrue;
+import ivory.lsh.data.BitPermutation;
 import ivory.lsh.data.NBitSignature;
 import ivory.lsh.data.PermutationByBit;
 import ivory.lsh.data.SixtyFourBitSignature;
@@ -49,6 +50,25 @@ public class Signature64Test {
     }
   }
 
+  @Test
+  public void testBitPermutation() throws IOException {
+    SixtyFourBitSignature s = new SixtyFourBitSignature();
+    for (int i = 0; i < s.size(); i++) {
+      s.set(i, (Math.random() > 0.5 ? true : false));
+    }
+
+    PermutationByBit p = new PermutationByBit(64);
+    SixtyFourBitSignature expected = new SixtyFourBitSignature(64);
+    SixtyFourBitSignature permutedS = new SixtyFourBitSignature(64);
+    for (int loopcnt = 0; loopcnt < 100; loopcnt++) {
+      ArrayListOfIntsWritable a = p.nextPermutation();
+      s.perm(a, expected);
+      s.perm(new BitPermutation(a), permutedS);
+      assertTrue(expected.equals(permutedS));
+      assertTrue(s.getLongestPrefix(permutedS) == s.getLongestPrefix(expected));
+    }
+  }
+
   @Test
   public void testReadWrite() throws IOException {
     SixtyFourBitSignature s = new SixtyFourBitSignature();
@@ -1,6 +1,7 @@
 package ivory.lsh;
 
 import static org.junit.Assert.assertTrue;
+import ivory.lsh.data.BitPermutation;
 import ivory.lsh.data.Bits;
 import ivory.lsh.data.MinhashSignature;
 import ivory.lsh.data.NBitSignature;
@@ -93,6 +94,51 @@ public class SignatureTest {
     }
   }
 
+  @Test
+  public void testBitPermutation() throws IOException {
+    int tempD = D;
+    D = 1000;
+    PermutationByBit p = new PermutationByBit(D);
+    NBitSignature s = getRandomSignature();
+    NBitSignature expected = new NBitSignature(D);
+    NBitSignature permutedS = new NBitSignature(D);
+    for (int loopcnt = 0; loopcnt < 20; loopcnt++) {
+      ArrayListOfIntsWritable a = p.nextPermutation();
+      s.perm(a, expected);
+      s.perm(new BitPermutation(a), permutedS);
+      assertTrue(expected.equals(permutedS));
+      assertTrue(s.countSetBits() == permutedS.countSetBits());
+    }
+
+    // block permutations move runs of bits with few masks
+    D = 64;
+    PermutationByBlock pb = new PermutationByBlock(D);
+    s = getRandomSignature();
+    expected = new NBitSignature(D);
+    permutedS = new NBitSignature(D);
+    ArrayListOfIntsWritable a = pb.nextPermutation();
+    BitPermutation bp = new BitPermutation(a);
+    s.perm(a, expected);
+    s.perm(bp, permutedS);
+    assertTrue(expected.equals(permutedS));
+    assertTrue(bp.getNumMasks() < D / 2);
+    D = tempD;
+  }
+
+  @Test
+  public void testLongestPrefix() {
+    NBitSignature s1 = new NBitSignature(200);
+    NBitSignature s2 = new NBitSignature(200);
+    assertTrue(s1.getLongestPrefix(s2) == 200);
+    for (int i : new int[] { 150, 64, 63, 0 }) {
+      s2.set(i, true);
+      assertTrue(s1.getLongestPrefix(s2) == i);
+      assertTrue(s1.compareTo(s2) < 0 && s2.compareTo(s1) > 0);
+      assertTrue(s1.hammingDistance(s2, 0) > 0);
+    }
+    assertTrue(s1.hammingDistance(s2) == 4);
+  }
+
   @Test
   public void testReadWrite() throws IOException {
     NBitSignature s = getRandomSignature();
@@ -0,0 +1,132 @@
+/*
+ * Ivory: A Hadoop toolkit for web-scale information retrieval
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0 
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package ivory.ltr;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import ivory.core.ConfigurationException;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+public class InstancesTest {
+
+	private static final String [] LINES = {
+		"qid\tdocid\tf1\tgrade\tf2\tf3",
+		"q1\td1\t0.5\t2\t-1\t3",
+		"q1\td2\t1.5\t0\t0\t4",
+		"q1\td3\t2.5\t1\t1\t5",
+		"q2\td4\t3.5\t0\t2\t6",
+		"q3\td5\t4.5\t4\t3\t7",
+		"q3\td6\t5.5\t0\t4\t8",
+	};
+
+	private static File textFile() throws IOException {
+		File file = File.createTempFile("instances", ".txt");
+		file.deleteOnExit();
+		FileWriter out = new FileWriter(file);
+		for(String line : LINES) {
+			out.write(line + "\n");
+		}
+		out.close();
+		return file;
+	}
+
+	private static File binaryFile(Instances instances) throws IOException {
+		File file = File.createTempFile("instances", ".bin");
+		file.deleteOnExit();
+		instances.write(file.getPath());
+		return file;
+	}
+
+	@Test
+	public void testRoundTrip() throws Exception {
+		Instances text = new Instances(textFile().getPath());
+		Instances mapped = new Instances(binaryFile(text).getPath());
+
+		assertEquals(LINES.length - 1, mapped.getNumInstances());
+		assertEquals(text.getNumInstances(), mapped.getNumInstances());
+		assertArrayEquals(new int[] { 0, 3, 4, 6 }, mapped.getQueryOffsets());
+		assertArrayEquals(text.getQueryOffsets(), mapped.getQueryOffsets());
+		assertArrayEquals(text.getGrades(), mapped.getGrades(), 0.0f);
+		assertArrayEquals(text.getQids(), mapped.getQids());
+		assertArrayEquals(text.getDocids(), mapped.getDocids());
+		assertEquals(text.getFeatureMap(), mapped.getFeatureMap());
+		assertEquals(3, mapped.getFeatureMap().size());
+		assertEquals(Integer.valueOf(2), mapped.getFeatureMap().get("f3"));
+
+		for(int f = 0; f < 3; f++) {
+			assertArrayEquals(text.getColumn(f), mapped.getColumn(f), 0.0f);
+		}
+		assertArrayEquals(new float[] { 3.5f, 2, 6 }, mapped.getInstance(3), 0.0f);
+		for(int i = 0; i < mapped.getNumInstances(); i++) {
+			assertArrayEquals(text.getInstance(i), mapped.getInstance(i), 0.0f);
+		}
+
+		// writing mapped instances gives the same file
+		Instances remapped = new Instances(binaryFile(mapped).getPath());
+		assertArrayEquals(mapped.getQids(), remapped.getQids());
+		assertArrayEquals(mapped.getColumn(1), remapped.getColumn(1), 0.0f);
+	}
+
+	@Test
+	public void testTruncated() throws Exception {
+		File file = binaryFile(new Instances(textFile().getPath()));
+
+		// header, grades and feature columns take 16 + 4 * 6 * 4 bytes: cut
+		// into the query offsets, then into the feature columns
+		for(long newLength : new long[] { 16 + 4 * 6 * 4 + 8, 16 + 4 * 6 * 2 }) {
+			RandomAccessFile raf = new RandomAccessFile(file, "rw");
+			raf.setLength(newLength);
+			raf.close();
+			try {
+				new Instances(file.getPath());
+				fail("Expected ConfigurationException for length " + newLength);
+			}
+			catch(ConfigurationException e) {
+			}
+		}
+	}
+
+	@Test
+	public void testCorruptHeader() throws Exception {
+		File file = binaryFile(new Instances(textFile().getPath()));
+
+		// claim more instances than the file holds
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		raf.seek(4);
+		raf.writeInt(1 << 30);
+		raf.close();
+		try {
+			new Instances(file.getPath());
+			fail("Expected ConfigurationException");
+		}
+		catch(ConfigurationException e) {
+		}
+	}
+
+	public static junit.framework.Test suite() {
+		return new JUnit4TestAdapter(InstancesTest.class);
+	}
+}
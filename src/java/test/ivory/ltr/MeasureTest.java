@@ -0,0 +1,186 @@
+/*
+ * Ivory: A Hadoop toolkit for web-scale information retrieval
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0 
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package ivory.ltr;
+
+import static org.junit.Assert.assertEquals;
+import ivory.core.ConfigurationException;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+public class MeasureTest {
+
+	private static final String [] FEATURES = { "f1", "f2" };
+
+	// Writes instances to a text feature file, and loads them.
+	private static Instances load(String [] features, String [] qids, float [] grades, float [][] values)
+			throws IOException, ConfigurationException {
+		File file = File.createTempFile("instances", ".txt");
+		file.deleteOnExit();
+		FileWriter out = new FileWriter(file);
+		out.write("qid\tdocid\tgrade");
+		for(String feature : features) {
+			out.write("\t" + feature);
+		}
+		out.write("\n");
+		for(int i = 0; i < qids.length; i++) {
+			out.write(qids[i] + "\td" + i + "\t" + grades[i]);
+			for(int f = 0; f < features.length; f++) {
+				out.write("\t" + values[f][i]);
+			}
+			out.write("\n");
+		}
+		out.close();
+		return new Instances(file.getPath());
+	}
+
+	// Random instances of 50 queries, with coarse feature values so that scores tie.
+	private static Instances randomInstances(Random r) throws IOException, ConfigurationException {
+		int numInstances = 0;
+		int [] sizes = new int[50];
+		for(int q = 0; q < sizes.length; q++) {
+			sizes[q] = 1 + r.nextInt(40);
+			numInstances += sizes[q];
+		}
+
+		String [] qids = new String[numInstances];
+		float [] grades = new float[numInstances];
+		float [][] features = new float[FEATURES.length][numInstances];
+		int i = 0;
+		for(int q = 0; q < sizes.length; q++) {
+			boolean relevant = r.nextInt(5) != 0;
+			for(int d = 0; d < sizes[q]; d++, i++) {
+				qids[i] = "q" + q;
+				grades[i] = relevant ? r.nextInt(5) : 0;
+				for(int f = 0; f < FEATURES.length; f++) {
+					features[f][i] = r.nextInt(8) - 2;
+				}
+			}
+		}
+		return load(FEATURES, qids, grades, features);
+	}
+
+	// Ranks each query with a stable sort on decreasing score, as the measures used to.
+	private static double reference(Measure measure, ScoreTable table) {
+		int [] offsets = table.getQueryOffsets();
+		float [] grades = table.getGrades();
+		final float [] scores = table.getScores();
+
+		measure.prepare(table);
+
+		float total = 0;
+		int numQueries = offsets.length - 1;
+		for(int q = 0; q < numQueries; q++) {
+			int n = offsets[q+1] - offsets[q];
+			Integer [] order = new Integer[n];
+			for(int i = 0; i < n; i++) {
+				order[i] = offsets[q] + i;
+			}
+			Arrays.sort(order, new Comparator<Integer>() {
+				public int compare(Integer o1, Integer o2) {
+					if(scores[o1] > scores[o2]) {
+						return -1;
+					}
+					else if(scores[o1] < scores[o2]) {
+						return 1;
+					}
+					return 0;
+				}
+			});
+			float [] ranked = new float[n];
+			for(int i = 0; i < n; i++) {
+				ranked[i] = grades[order[i]];
+			}
+			total += measure.evaluateQuery(q, ranked, n);
+		}
+		return total / numQueries;
+	}
+
+	private static void verify(Measure fast, Measure slow) throws Exception {
+		Random r = new Random(1);
+		for(int trial = 0; trial < 10; trial++) {
+			Instances instances = randomInstances(r);
+			float [] scores = new float[instances.getNumInstances()];
+			for(int i = 0; i < scores.length; i++) {
+				scores[i] = r.nextInt(4) * 0.5f;
+			}
+			ScoreTable table = new ScoreTable(new ScoreTable(instances), scores);
+			assertEquals(reference(slow, table), fast.evaluate(table), 0.0);
+
+			for(int f = 0; f < FEATURES.length; f++) {
+				float [] values = instances.evaluate(new SimpleFeature(f, FEATURES[f]));
+				for(double weight : new double[] { 0.0, 0.25, -1.0, 3.0 }) {
+					for(double scale : new double[] { 1.0, 0.5, -2.0 }) {
+						double expected = reference(slow, table.translate(values, weight, scale));
+						assertEquals(expected, fast.evaluate(table, values, weight, scale), 0.0);
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testERR() throws Exception {
+		verify(new ERRMeasure(), new ERRMeasure());
+	}
+
+	@Test
+	public void testMAP() throws Exception {
+		verify(new MAPMeasure(), new MAPMeasure());
+	}
+
+	@Test
+	public void testNDCG() throws Exception {
+		verify(new NDCGMeasure(), new NDCGMeasure());
+	}
+
+	@Test
+	public void testNDCGOfLastQuery() throws Exception {
+		// two queries, with different ideal gains
+		String [] qids = { "q1", "q1", "q2", "q2", "q2" };
+		float [] grades = { 1, 0, 0, 3, 1 };
+		float [][] features = { { 1, 2, 3, 2, 1 } };
+		Instances instances = load(new String[] { "f" }, qids, grades, features);
+		ScoreTable table = new ScoreTable(instances).translate(new SimpleFeature(0, "f"), 1.0, 1.0);
+
+		// q1 ranks its second document first: gains 0, 1
+		double ndcg1 = (1.0 / Math.log(3.0)) / (1.0 / Math.log(2.0));
+		// q2 keeps its order: gains 0, 7, 1, where the ideal order gives 7, 1, 0
+		double ndcg2 = (7.0 / Math.log(3.0) + 1.0 / Math.log(4.0))
+			/ (7.0 / Math.log(2.0) + 1.0 / Math.log(3.0));
+
+		Measure measure = new NDCGMeasure();
+		assertEquals((ndcg1 + ndcg2) / 2, measure.evaluate(table), 1e-6);
+
+		// the last query alone
+		Instances last = load(new String[] { "f" }, new String[] { "q2", "q2", "q2" },
+			new float[] { 0, 3, 1 }, new float[][] { { 3, 2, 1 } });
+		assertEquals(ndcg2, measure.evaluate(new ScoreTable(last).translate(new SimpleFeature(0, "f"), 1.0, 1.0)), 1e-6);
+	}
+
+	public static junit.framework.Test suite() {
+		return new JUnit4TestAdapter(MeasureTest.class);
+	}
+}
@@ -0,0 +1,97 @@
+/*
+ * Ivory: A Hadoop toolkit for web-scale information retrieval
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package ivory.smrf.retrieval;
+
+import static org.junit.Assert.assertEquals;
+import ivory.app.BuildIndex;
+import ivory.app.PreprocessCollection;
+import ivory.core.RetrievalEnvironment;
+import ivory.core.tokenize.GalagoTokenizer;
+
+import java.io.File;
+import java.util.Map;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.util.ToolRunner;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import com.google.common.collect.Maps;
+
+import edu.umd.cloud9.collection.trec.TrecDocnoMapping;
+import edu.umd.cloud9.collection.trec.TrecDocumentInputFormat;
+
+/**
+ * Index of the CACM collection in {@code data/cacm}, for tests that need to run queries against a
+ * real index. The index is built as in the getting started guide, with the MapReduce jobs run by the
+ * local job runner.
+ */
+public class CacmTestIndex {
+  public static final String COLLECTION = "data/cacm/cacm-collection.xml.gz";
+  public static final String QUERIES = "data/cacm/queries.cacm.xml";
+
+  private CacmTestIndex() {}
+
+  /**
+   * Builds the index, and opens it.
+   *
+   * @param indexPath where to build the index
+   * @return retrieval environment for the index
+   */
+  public static RetrievalEnvironment build(String indexPath) throws Exception {
+    Configuration conf = new Configuration();
+    FileSystem fs = FileSystem.getLocal(conf);
+    fs.delete(new Path(indexPath), true);
+
+    assertEquals(0, ToolRunner.run(conf, new PreprocessCollection(), new String[] {
+        "-" + PreprocessCollection.COLLECTION_NAME, "CACM",
+        "-" + PreprocessCollection.COLLECTION_PATH, COLLECTION,
+        "-" + PreprocessCollection.INDEX_PATH, indexPath,
+        "-" + PreprocessCollection.DOCNO_MAPPING, TrecDocnoMapping.class.getCanonicalName(),
+        "-" + PreprocessCollection.INPUTFORMAT, TrecDocumentInputFormat.class.getCanonicalName(),
+        "-" + PreprocessCollection.TOKENIZER, GalagoTokenizer.class.getCanonicalName(),
+        "-" + PreprocessCollection.MIN_DF, "2" }));
+    assertEquals(0, ToolRunner.run(conf, new BuildIndex(), new String[] {
+        "-" + BuildIndex.INDEX_PATH, indexPath,
+        "-" + BuildIndex.INDEX_PARTITIONS, "1",
+        "-" + BuildIndex.POSITIONAL_INDEX_IP }));
+
+    RetrievalEnvironment env = new RetrievalEnvironment(indexPath, fs);
+    env.initialize(true);
+    return env;
+  }
+
+  /**
+   * Loads the CACM queries.
+   *
+   * @return query text, keyed by query id, in file order
+   */
+  public static Map<String, String> loadQueries() throws Exception {
+    NodeList queries = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+        .parse(new File(QUERIES)).getElementsByTagName("query");
+    Map<String, String> results = Maps.newLinkedHashMap();
+    for (int i = 0; i < queries.getLength(); i++) {
+      Element query = (Element) queries.item(i);
+      results.put(query.getAttribute("id"), query.getTextContent());
+    }
+    return results;
+  }
+}
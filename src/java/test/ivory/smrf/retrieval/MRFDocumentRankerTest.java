@@ -0,0 +1,165 @@
+/*
+ * Ivory: A Hadoop toolkit for web-scale information retrieval
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package ivory.smrf.retrieval;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import ivory.core.RetrievalEnvironment;
+import ivory.core.util.ComputePhraseStatistics;
+import ivory.smrf.model.builder.MRFBuilder;
+
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.w3c.dom.Node;
+import org.xml.sax.InputSource;
+
+import com.google.common.collect.Lists;
+
+public class MRFDocumentRankerTest {
+  private static final String INDEX = "tmp-mrf-ranker-index";
+
+  private static final String BM25 =
+      "scoreFunction=\"ivory.smrf.model.score.BM25ScoringFunction\" k1=\"0.5\" b=\"0.3\"";
+  private static final String DIRICHLET =
+      "scoreFunction=\"ivory.smrf.model.score.DirichletScoringFunction\" mu=\"%s\"";
+
+  private static RetrievalEnvironment env;
+  private static List<String[]> queries = Lists.newArrayList();
+
+  @BeforeClass
+  public static void setUp() throws Exception {
+    env = CacmTestIndex.build(INDEX);
+    for (String query : CacmTestIndex.loadQueries().values()) {
+      queries.add(env.tokenize(query));
+    }
+    assertTrue(queries.size() > 50);
+  }
+
+  @AfterClass
+  public static void tearDown() throws Exception {
+    FileSystem.getLocal(new Configuration()).delete(new Path(INDEX), true);
+  }
+
+  private static String feature(String id, float weight, String cliqueSet, String generator,
+      String scoreFunction) {
+    return String.format("<feature id=\"%s\" weight=\"%s\" cliqueSet=\"%s\""
+        + " potential=\"ivory.smrf.model.potential.QueryPotential\" generator=\"%s\" %s />",
+        id, weight, cliqueSet, generator, scoreFunction);
+  }
+
+  private static String termFeature(float weight, String scoreFunction) {
+    return feature("termWt", weight, "ivory.smrf.model.builder.TermCliqueSet",
+        "ivory.smrf.model.builder.TermExpressionGenerator", scoreFunction);
+  }
+
+  // Sequential dependence model: terms, plus ordered and unordered windows of adjacent terms.
+  private static String sequentialDependence(String termScore, String windowScore) {
+    String window = "dependence=\"sequential\" width=\"%d\" %s";
+    return termFeature(0.82f, termScore)
+        + feature("orderedWt", 0.09f, "ivory.smrf.model.builder.OrderedCliqueSet",
+            "ivory.smrf.model.builder.OrderedWindowExpressionGenerator",
+            String.format(window, 1, windowScore))
+        + feature("unorderedWt", 0.09f, "ivory.smrf.model.builder.OrderedCliqueSet",
+            "ivory.smrf.model.builder.UnorderedWindowExpressionGenerator",
+            String.format(window, 4, windowScore));
+  }
+
+  private static Node parseModel(String features) throws Exception {
+    String xml = "<model id=\"test\" type=\"Feature\">" + features + "</model>";
+    return DocumentBuilderFactory.newInstance().newDocumentBuilder()
+        .parse(new InputSource(new StringReader(xml))).getDocumentElement();
+  }
+
+  private static void verify(String features) throws Exception {
+    verify(env, features);
+  }
+
+  private static void verify(RetrievalEnvironment env, String features) throws Exception {
+    MRFBuilder builder = MRFBuilder.get(env, parseModel(features));
+    for (int numResults : new int[] { 1, 10, 100 }) {
+      for (String[] query : queries) {
+        MRFDocumentRanker exhaustive = new MRFDocumentRanker(builder.buildMRF(query), numResults);
+        exhaustive.setPruning(false);
+        Accumulator[] expected = exhaustive.rank();
+
+        Accumulator[] actual = new MRFDocumentRanker(builder.buildMRF(query), numResults).rank();
+
+        String message = Arrays.toString(query) + ", " + numResults;
+        assertEquals(message, expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++) {
+          assertEquals(message, expected[i].docno, actual[i].docno);
+          assertEquals(message, expected[i].score, actual[i].score, 0.0f);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testBM25() throws Exception {
+    verify(termFeature(1.0f, BM25));
+  }
+
+  @Test
+  public void testDirichlet() throws Exception {
+    verify(termFeature(1.0f, String.format(DIRICHLET, 1000.0f)));
+  }
+
+  @Test
+  public void testBM25SequentialDependence() throws Exception {
+    verify(sequentialDependence(BM25, BM25));
+  }
+
+  @Test
+  public void testDirichletSequentialDependence() throws Exception {
+    verify(sequentialDependence(String.format(DIRICHLET, 1000.0f),
+        String.format(DIRICHLET, 750.0f)));
+  }
+
+  @Test
+  public void testPhraseStatistics() throws Exception {
+    // With precomputed statistics, window potentials bound their scores with the actual cf.
+    ComputePhraseStatistics.main(new String[] { INDEX, CacmTestIndex.QUERIES, "1", "8", "1" });
+    FileSystem fs = FileSystem.getLocal(new Configuration());
+    try {
+      RetrievalEnvironment phraseEnv = new RetrievalEnvironment(INDEX, fs);
+      phraseEnv.initialize(true);
+      assertTrue(phraseEnv.getPhraseStatistics().getNumPhrases() > 100);
+
+      verify(phraseEnv, sequentialDependence(BM25, BM25));
+      verify(phraseEnv, sequentialDependence(String.format(DIRICHLET, 1000.0f),
+          String.format(DIRICHLET, 750.0f)));
+    } finally {
+      fs.delete(new Path(env.getPhraseStatisticsData()), true);
+    }
+  }
+
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(MRFDocumentRankerTest.class);
+  }
+}
@@ -0,0 +1,136 @@
+/*
+ * Ivory: A Hadoop toolkit for web-scale information retrieval
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package ivory.smrf.retrieval;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import ivory.core.RetrievalEnvironment;
+
+import java.io.StringReader;
+import java.util.Map;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+import org.xml.sax.InputSource;
+
+public class ThreadedQueryRunnerTest {
+  private static final String INDEX = "tmp-threaded-runner-index";
+  private static final int NUM_HITS = 100;
+
+  private static final String TERMS =
+      "<feature id=\"termWt\" weight=\"%s\" cliqueSet=\"ivory.smrf.model.builder.TermCliqueSet\""
+      + " potential=\"ivory.smrf.model.potential.QueryPotential\""
+      + " generator=\"ivory.smrf.model.builder.TermExpressionGenerator\""
+      + " scoreFunction=\"ivory.smrf.model.score.DirichletScoringFunction\" mu=\"1000.0\" />";
+  private static final String WINDOWS =
+      "<feature id=\"orderedWt\" weight=\"0.09\""
+      + " cliqueSet=\"ivory.smrf.model.builder.OrderedCliqueSet\" dependence=\"sequential\""
+      + " potential=\"ivory.smrf.model.potential.QueryPotential\""
+      + " generator=\"ivory.smrf.model.builder.OrderedWindowExpressionGenerator\" width=\"1\""
+      + " scoreFunction=\"ivory.smrf.model.score.DirichletScoringFunction\" mu=\"750.0\" />"
+      + "<feature id=\"unorderedWt\" weight=\"0.09\""
+      + " cliqueSet=\"ivory.smrf.model.builder.OrderedCliqueSet\" dependence=\"sequential\""
+      + " potential=\"ivory.smrf.model.potential.QueryPotential\""
+      + " generator=\"ivory.smrf.model.builder.UnorderedWindowExpressionGenerator\" width=\"4\""
+      + " scoreFunction=\"ivory.smrf.model.score.DirichletScoringFunction\" mu=\"750.0\" />";
+  private static final String EXPANDER =
+      "<expander type=\"UnigramLatentConcept\" fbDocs=\"10\" fbTerms=\"25\">"
+      + "<conceptscore id=\"expansionTermWt\" weight=\"0.85\""
+      + " scoreFunction=\"ivory.smrf.model.score.DirichletScoringFunction\" mu=\"1.0\" />"
+      + "</expander>";
+
+  private static RetrievalEnvironment env;
+  private static Map<String, String> queries;
+
+  @BeforeClass
+  public static void setUp() throws Exception {
+    env = CacmTestIndex.build(INDEX);
+    queries = CacmTestIndex.loadQueries();
+    assertTrue(queries.size() > 50);
+  }
+
+  @AfterClass
+  public static void tearDown() throws Exception {
+    FileSystem.getLocal(new Configuration()).delete(new Path(INDEX), true);
+  }
+
+  private static Document parse(String xml) throws Exception {
+    return DocumentBuilderFactory.newInstance().newDocumentBuilder()
+        .parse(new InputSource(new StringReader(xml)));
+  }
+
+  private static Map<String, Accumulator[]> run(Node model, Node expander, int numThreads)
+      throws Exception {
+    ThreadedQueryRunner runner =
+        new ThreadedQueryRunner(env, model, expander, null, numThreads, NUM_HITS);
+    for (Map.Entry<String, String> query : queries.entrySet()) {
+      runner.runQuery(query.getKey(), env.tokenize(query.getValue()));
+    }
+    return runner.getResults();
+  }
+
+  private static void verify(String features, String expander) throws Exception {
+    Document doc = parse("<model id=\"test\" type=\"Feature\">" + features + expander + "</model>");
+    Node model = doc.getDocumentElement();
+    Node expanderModel = expander.isEmpty() ? null : doc.getElementsByTagName("expander").item(0);
+
+    Map<String, Accumulator[]> expected = run(model, expanderModel, 1);
+    assertEquals(queries.size(), expected.size());
+    for (int numThreads : new int[] { 2, 8 }) {
+      Map<String, Accumulator[]> actual = run(model, expanderModel, numThreads);
+      assertEquals(expected.keySet(), actual.keySet());
+      for (String qid : expected.keySet()) {
+        Accumulator[] e = expected.get(qid);
+        Accumulator[] a = actual.get(qid);
+        assertEquals(qid, e.length, a.length);
+        for (int i = 0; i < e.length; i++) {
+          assertEquals(qid, e[i].docno, a[i].docno);
+          assertEquals(qid, e[i].score, a[i].score, 0.0f);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testTerms() throws Exception {
+    verify(String.format(TERMS, 1.0f), "");
+  }
+
+  @Test
+  public void testSequentialDependence() throws Exception {
+    verify(String.format(TERMS, 0.82f) + WINDOWS, "");
+  }
+
+  @Test
+  public void testRelevanceFeedback() throws Exception {
+    verify(String.format(TERMS, 0.15f), EXPANDER);
+  }
+
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(ThreadedQueryRunnerTest.class);
+  }
+}
@@ -0,0 +1,511 @@
+package ivory.sqe.retrieval;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import ivory.core.RetrievalEnvironment;
+import ivory.core.data.index.Posting;
+import ivory.core.data.index.PostingsList;
+import ivory.core.data.index.PostingsReader;
+import ivory.core.data.index.ProximityPostingsReaderOrderedWindow;
+import ivory.smrf.retrieval.Accumulator;
+import ivory.smrf.retrieval.CacmTestIndex;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+
+public class CompiledStructuredQueryTest {
+  private static final String INDEX = "tmp-sqe-index";
+  private static final int NUM_RESULTS = 100;
+
+  private static RetrievalEnvironment env;
+  private static StructuredQueryRanker ranker;
+  private static List<String[]> queries = Lists.newArrayList();
+
+  @BeforeClass
+  public static void setUp() throws Exception {
+    env = CacmTestIndex.build(INDEX);
+    ranker = new StructuredQueryRanker(INDEX, FileSystem.getLocal(new Configuration()),
+        NUM_RESULTS);
+
+    // Queries with at least two terms in the vocabulary, so that they make phrases.
+    for (String query : CacmTestIndex.loadQueries().values()) {
+      List<String> terms = Lists.newArrayList();
+      for (String term : env.tokenize(query)) {
+        if (env.getPostingsList(term) != null) {
+          terms.add(term);
+        }
+      }
+      if (terms.size() >= 2) {
+        queries.add(terms.toArray(new String[terms.size()]));
+      }
+    }
+    assertTrue(queries.size() > 20);
+  }
+
+  @AfterClass
+  public static void tearDown() throws Exception {
+    FileSystem.getLocal(new Configuration()).delete(new Path(INDEX), true);
+  }
+
+  private static JsonObject node(String operator, Object... values) {
+    JsonArray array = new JsonArray();
+    for (Object value : values) {
+      if (value instanceof JsonObject) {
+        array.add((JsonObject) value);
+      } else if (value instanceof String) {
+        array.add(new JsonPrimitive((String) value));
+      } else {
+        array.add(new JsonPrimitive((Number) value));
+      }
+    }
+    JsonObject node = new JsonObject();
+    node.add(operator, array);
+    return node;
+  }
+
+  private static void verify(JsonObject query) {
+    // Round trip through the string form, which is what the query engine parses.
+    query = new JsonParser().parse(query.toString()).getAsJsonObject();
+
+    Accumulator[] expected = rank(query, env, NUM_RESULTS);
+    Accumulator[] actual = ranker.rank("q", query, 0);
+    assertEquals(query.toString(), expected.length, actual.length);
+    for (int i = 0; i < expected.length; i++) {
+      assertEquals(query.toString(), expected[i].docno, actual[i].docno);
+      assertEquals(query.toString(), expected[i].score, actual[i].score, 0.0f);
+    }
+  }
+
+  @Test
+  public void testCombine() {
+    for (String[] terms : queries) {
+      verify(node("#combine", (Object[]) terms));
+    }
+  }
+
+  @Test
+  public void testWeightOfTerms() {
+    for (String[] terms : queries) {
+      // Each term with a translation alternative: #weight of (tf, df) children.
+      Object[] children = new Object[terms.length];
+      for (int i = 0; i < terms.length; i++) {
+        children[i] = node("#weight", 0.7f, terms[i], 0.3f, terms[(i + 1) % terms.length]);
+      }
+      verify(node("#combine", children));
+    }
+  }
+
+  @Test
+  public void testWeightOfScores() {
+    for (String[] terms : queries) {
+      JsonObject first = node("#combine", terms[0], terms[1]);
+      JsonObject rest = node("#combine", (Object[]) terms);
+      verify(node("#weight", 0.6f, first, 0.4f, rest));
+      // Children of the other kind than the first one don't count.
+      verify(node("#combine", node("#weight", 0.5f, terms[0], 0.5f, rest)));
+      verify(node("#weight", 0.5f, rest, 0.5f, terms[1]));
+    }
+  }
+
+  @Test
+  public void testEmptyWeight() {
+    for (String[] terms : queries) {
+      verify(node("#combine", terms[0], node("#weight"), terms[1]));
+      verify(node("#weight", 1.0f, node("#combine", (Object[]) terms), 0.5f, node("#weight")));
+    }
+  }
+
+  @Test
+  public void testCombWeight() {
+    for (String[] terms : queries) {
+      Object[] children = new Object[2 * terms.length];
+      for (int i = 0; i < terms.length; i++) {
+        children[2 * i] = 1.0f / (i + 1);
+        children[2 * i + 1] = i % 2 == 0 ? terms[i]
+            : node("#weight", 0.8f, terms[i], 0.2f, terms[i - 1]);
+      }
+      verify(node("#combweight", children));
+    }
+  }
+
+  @Test
+  public void testPhrases() {
+    for (String[] terms : queries) {
+      Object[] children = new Object[terms.length];
+      for (int i = 0; i < terms.length; i++) {
+        children[i] = i + 1 < terms.length ? terms[i] + " " + terms[i + 1] : terms[i];
+      }
+      verify(node("#combine", children));
+      verify(node("#combine", node("#weight", 0.9f, terms[0], 0.1f, terms[0] + " " + terms[1])));
+    }
+  }
+
+  @Test
+  public void testOutOfVocabulary() {
+    for (String[] terms : queries) {
+      verify(node("#combine", terms[0], "zzyzxq", terms[1]));
+      verify(node("#combine", terms[0], terms[1] + " zzyzxq"));
+      verify(node("#combine", node("#weight", 0.5f, "zzyzxq", 0.5f, terms[0]), terms[1]));
+      verify(node("#combweight", 0.5f, "zzyzxq", 0.5f, node("#combine", (Object[]) terms)));
+    }
+    assertEquals(0, ranker.rank("q", node("#combine", "zzyzxq"), 0).length);
+  }
+
+  // The ranker as it was before queries were compiled, walking the query tree for every document.
+  private static Accumulator[] rank(JsonObject query, RetrievalEnvironment env, int numResults) {
+    PostingsReaderWrapper structureReader = new PostingsReaderWrapper(query, env);
+
+    PriorityQueue<Accumulator> sortedAccumulators = new PriorityQueue<Accumulator>();
+    Accumulator a = new Accumulator(0, 0.0f);
+
+    // NodeWeight that must be achieved to enter result set.
+    double scoreThreshold = Double.NEGATIVE_INFINITY;
+
+    int docno = Integer.MAX_VALUE;
+    int nextDocno = structureReader.getNextCandidate(docno);
+    if (nextDocno < docno) {
+      docno = nextDocno;
+    }
+    while (docno < Integer.MAX_VALUE) {
+      // Document-at-a-time scoring.
+      float score = structureReader.computeScore(docno).getScore();
+
+      // Keep track of numResults best accumulators.
+      if (score > scoreThreshold) {
+        a.docno = docno;
+        a.score = score;
+        sortedAccumulators.add(a);
+
+        if (sortedAccumulators.size() == numResults + 1) {
+          a = sortedAccumulators.poll();
+          scoreThreshold = sortedAccumulators.peek().score;
+        } else {
+          a = new Accumulator(0, 0.0f);
+        }
+      }
+
+      // Advance to next document
+      docno = Integer.MAX_VALUE;
+      nextDocno = structureReader.getNextCandidate(docno);
+      if (nextDocno < docno) {
+        docno = nextDocno;
+      }
+    }
+
+    // Grab the accumulators off the stack, in (reverse) order.
+    Accumulator[] accs = new Accumulator[Math.min(numResults, sortedAccumulators.size())];
+    for (int i = 0; i < accs.length; i++) {
+      accs[accs.length - 1 - i] = sortedAccumulators.poll();
+    }
+    return accs;
+  }
+
+  private static interface NodeWeight {
+    public float getScore();
+
+    public void add(NodeWeight other);
+
+    public NodeWeight multiply(float weight);
+  }
+
+  private static class TfDfWeight implements NodeWeight {
+    private float tf, df;
+    private int docLen;
+    private int numDocs;
+    private float avgDocLen;
+
+    public TfDfWeight(float tf, float df, int docLen, int numDocs, float avgDocLen) {
+      this.tf = tf;
+      this.df = df;
+      this.numDocs = numDocs;
+      this.docLen = docLen;
+      this.avgDocLen = avgDocLen;
+    }
+
+    public float getScore() {
+      float b = 0.3f;
+      float k1 = 0.5f;
+
+      float idf = (float) Math.log((numDocs - df + 0.5f) / (df + 0.5f));
+      float bm25 = ((k1 + 1.0f) * tf) / (k1 * ((1.0f - b) + b * docLen / avgDocLen) + tf) * idf;
+      return bm25;
+    }
+
+    public void add(NodeWeight o) {
+      if (o instanceof TfDfWeight) {
+        TfDfWeight other = (TfDfWeight) o;
+        tf += other.tf;
+        df += other.df;
+      }
+    }
+
+    public TfDfWeight multiply(float weight) {
+      return new TfDfWeight(tf * weight, df * weight, docLen, numDocs, avgDocLen);
+    }
+  }
+
+  private static class FloatWeight implements NodeWeight {
+    private float score;
+
+    public FloatWeight() {
+      score = 0;
+    }
+
+    public FloatWeight(float s) {
+      score = s;
+    }
+
+    public float getScore() {
+      return score;
+    }
+
+    public void add(NodeWeight o) {
+      if (o instanceof FloatWeight) {
+        FloatWeight other = (FloatWeight) o;
+        this.score += other.score;
+      }
+    }
+
+    public FloatWeight multiply(float weight) {
+      return new FloatWeight(score * weight);
+    }
+  }
+
+  private static class PostingsReaderWrapper {
+    private final Posting curPosting = new Posting();
+    private RetrievalEnvironment env;
+    private PostingsReader postingsReader = null;
+    private int df;
+
+    private boolean endOfList = true; // Whether or not we're at the end of the postings list.
+    private int lastScoredDocno = 0, iterStart = 0, iterStep = 1;
+
+    private String operator;
+    private JsonArray values;
+    private List<PostingsReaderWrapper> children;
+
+    private boolean isOOV = false;
+    private float weights[];
+
+    private final int numDocs;
+    private final float avgDocLen;
+
+    public PostingsReaderWrapper(JsonObject query, RetrievalEnvironment env) {
+      this.operator = query.entrySet().iterator().next().getKey();
+      this.values = query.getAsJsonArray(operator);
+
+      if (operator.equals("#weight") || operator.equals("#combweight")) {
+        iterStart = 1;
+        iterStep = 2;
+        weights = new float[values.size() / 2];
+
+        // in #weight or #combweight structure, even-numbered indices corr. to
+        // weights, odd-numbered indices corr. to terms/phrases
+        for (int i = 0; i < values.size(); i = i + iterStep) {
+          weights[i / 2] = (float) values.get(i).getAsDouble();
+        }
+      }
+
+      this.env = env;
+      this.numDocs = (int) env.getDocumentCount();
+      this.avgDocLen = env.getCollectionSize() / numDocs;
+
+      // Read first posting.
+      endOfList = false;
+
+      // If this is not a leaf node, create children
+      children = new ArrayList<PostingsReaderWrapper>();
+      for (int i = iterStart; i < values.size(); i = i + iterStep) {
+        if (!values.get(i).isJsonPrimitive()) {
+          // If child is an object (non-leaf), call nonleaf-constructor
+          children.add(new PostingsReaderWrapper(values.get(i).getAsJsonObject(), env));
+        } else {
+          // If child is leaf, call leaf-constructor
+          children.add(new PostingsReaderWrapper(values.get(i).getAsString(), env));
+        }
+      }
+
+      lastScoredDocno = 0;
+    }
+
+    public PostingsReaderWrapper(String termOrPhrase, RetrievalEnvironment env) {
+      this.env = env;
+      this.numDocs = (int) env.getDocumentCount();
+      this.avgDocLen = env.getCollectionSize() / numDocs;
+
+      // Read first posting.
+      endOfList = false;
+
+      // If this is a leaf node (i.e., single term), create postings list
+      String[] terms = termOrPhrase.split("\\s+");
+      if (terms.length > 1) {
+        operator = "phrase";
+        List<PostingsReader> prs = new ArrayList<PostingsReader>();
+        for (String term : terms) {
+          PostingsList pl = env.getPostingsList(term);
+          // if any of the tokens is OOV, then the phrase is considered OOV
+          if (pl == null) {
+            isOOV = true;
+            endOfList = true;
+            return;
+          }
+          prs.add(pl.getPostingsReader());
+        }
+        postingsReader = new ProximityPostingsReaderOrderedWindow(
+            prs.toArray(new PostingsReader[0]), 2);
+        postingsReader.nextPosting(curPosting);
+        df = env.getDefaultDf();
+        lastScoredDocno = 0;
+      } else {
+        operator = "term";
+        PostingsList pl = env.getPostingsList(termOrPhrase);
+        if (pl == null) {
+          isOOV = true;
+          endOfList = true;
+        } else {
+          postingsReader = pl.getPostingsReader();
+          df = pl.getDf();
+          lastScoredDocno = 0;
+        }
+      }
+    }
+
+    public NodeWeight computeScore(int curDocno) {
+      NodeWeight score;
+      if (isOOV) {
+        int docLen = env.getDocumentLength(curDocno);
+        score = new TfDfWeight(0, 0, docLen, numDocs, avgDocLen);
+      } else if (!isLeaf()) {
+        score = runOperator(curDocno);
+        lastScoredDocno = curDocno;
+      } else { // leaf node
+        // Advance postings reader. Invariant: curPosting will always point
+        // to the next posting that has not yet been scored.
+        while (!endOfList && postingsReader.getDocno() < curDocno) {
+          if (!postingsReader.nextPosting(curPosting)) {
+            endOfList = true;
+          }
+        }
+
+        // Compute term frequency if postings list contains this docno,
+        // otherwise tf=0
+        int tf = 0;
+        if (curDocno == postingsReader.getDocno()) {
+          tf = postingsReader.getTf();
+        }
+
+        int docLen = env.getDocumentLength(curDocno);
+        score = new TfDfWeight(tf, df, docLen, numDocs, avgDocLen);
+
+        lastScoredDocno = curDocno;
+      }
+      return score;
+    }
+
+    private NodeWeight runOperator(int curDocno) {
+      // If this is not a leaf node, compute scores from children and
+      // combine them w.r.t operator
+      NodeWeight[] scores = new NodeWeight[children.size()];
+      for (int i = 0; i < children.size(); i++) {
+        scores[i] = children.get(i).computeScore(curDocno);
+      }
+      int docLen = env.getDocumentLength(curDocno);
+
+      NodeWeight resultScore;
+      if (operator.equals("#combine")) {
+        // sum bm25 scores
+        float score = 0f;
+        for (int i = 0; i < scores.length; i++) {
+          score += scores[i].getScore();
+        }
+        resultScore = new FloatWeight(score);
+      } else if (operator.equals("#weight")) {
+        if (scores.length == 0) {
+          resultScore = new FloatWeight();
+        } else {
+          if (scores[0] instanceof TfDfWeight) {
+            resultScore = new TfDfWeight(0, 0, docLen, numDocs, avgDocLen);
+          } else {
+            resultScore = new FloatWeight();
+          }
+          // tf,df = sum{weight_i * (tf_i,df_i)}
+          for (int i = 0; i < scores.length; i++) {
+            resultScore.add(scores[i].multiply(weights[i]));
+          }
+        }
+      } else if (operator.equals("#combweight")) {
+        // sum bm25 scores
+        float score = 0f;
+        for (int i = 0; i < scores.length; i++) {
+          score += scores[i].getScore() * weights[i];
+        }
+        resultScore = new FloatWeight(score);
+      } else {
+        throw new RuntimeException("Unknown operator: " + operator);
+      }
+      return resultScore;
+    }
+
+    /**
+     * @return next smallest docno from posting lists of leaf nodes
+     */
+    public int getNextCandidate(int docno) {
+      if (isOOV) {
+        return docno;
+      } else if (!isLeaf()) { // not a leaf node
+        for (int i = 0; i < children.size(); i++) {
+          int nextDocno = children.get(i).getNextCandidate(docno);
+          if (nextDocno != lastScoredDocno && nextDocno < docno) {
+            docno = nextDocno;
+          }
+        }
+        return docno;
+      } else { // leaf node
+        if (endOfList) {
+          return Integer.MAX_VALUE;
+        }
+        int nextDocno = findNextDocnoWithPositiveTF();
+        if (nextDocno == Integer.MAX_VALUE) {
+          endOfList = true;
+        }
+        return nextDocno;
+      }
+    }
+
+    private int findNextDocnoWithPositiveTF() {
+      boolean t = true;
+      while (t && (postingsReader.getTf() == 0 || postingsReader.getDocno() == lastScoredDocno)) {
+        t = postingsReader.nextPosting(curPosting);
+      }
+      if (t) {
+        return postingsReader.getDocno();
+      } else {
+        return Integer.MAX_VALUE;
+      }
+    }
+
+    private boolean isLeaf() {
+      return postingsReader != null;
+    }
+  }
+
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(CompiledStructuredQueryTest.class);
+  }
+}